@@ -0,0 +1,143 @@
+package com.sergej.game;
+
+/**
+ * An axis-aligned bounding box. Like {@link android.graphics.RectF} the
+ * coordinates are public fields, so bounds can be updated in the frame loop
+ * without allocating.
+ */
+public final class Aabb {
+
+    public float minX, minY, minZ;
+    public float maxX, maxY, maxZ;
+
+    /**
+     * Creates an empty box.
+     */
+    public Aabb() {
+        setEmpty();
+    }
+
+    /**
+     * Makes the box empty, so that including any point makes it that point.
+     *
+     * @return - This box.
+     */
+    public Aabb setEmpty() {
+        minX = minY = minZ = Float.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return minX > maxX || minY > maxY || minZ > maxZ;
+    }
+
+    public Aabb set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        return this;
+    }
+
+    public Aabb set(Aabb other) {
+        return set(other.minX, other.minY, other.minZ, other.maxX, other.maxY, other.maxZ);
+    }
+
+    /**
+     * Grows the box to contain a point.
+     *
+     * @return - This box.
+     */
+    public Aabb include(float x, float y, float z) {
+        if (x < minX) minX = x;
+        if (y < minY) minY = y;
+        if (z < minZ) minZ = z;
+        if (x > maxX) maxX = x;
+        if (y > maxY) maxY = y;
+        if (z > maxZ) maxZ = z;
+        return this;
+    }
+
+    /**
+     * Grows the box to contain another one.
+     *
+     * @return - This box.
+     */
+    public Aabb union(Aabb other) {
+        if (other.minX < minX) minX = other.minX;
+        if (other.minY < minY) minY = other.minY;
+        if (other.minZ < minZ) minZ = other.minZ;
+        if (other.maxX > maxX) maxX = other.maxX;
+        if (other.maxY > maxY) maxY = other.maxY;
+        if (other.maxZ > maxZ) maxZ = other.maxZ;
+        return this;
+    }
+
+    /**
+     * Sets this box to the bounds of another box after an affine transform.
+     * Every row of the matrix adds its smallest and largest product with the
+     * source extents, which gives the tightest box around the transformed one.
+     *
+     * @param src - Box in object coordinates. Must not be this box.
+     * @param m - Column-major affine transform.
+     * @return - This box.
+     */
+    public Aabb setTransformed(Aabb src, float[] m) {
+        if (src.isEmpty()) {
+            return setEmpty();
+        }
+
+        minX = maxX = m[12];
+        minY = maxY = m[13];
+        minZ = maxZ = m[14];
+
+        for (int column = 0; column < 3; column++) {
+            float lo = column == 0 ? src.minX : column == 1 ? src.minY : src.minZ;
+            float hi = column == 0 ? src.maxX : column == 1 ? src.maxY : src.maxZ;
+
+            float a = m[column * 4] * lo, b = m[column * 4] * hi;
+            minX += Math.min(a, b);
+            maxX += Math.max(a, b);
+
+            a = m[column * 4 + 1] * lo;
+            b = m[column * 4 + 1] * hi;
+            minY += Math.min(a, b);
+            maxY += Math.max(a, b);
+
+            a = m[column * 4 + 2] * lo;
+            b = m[column * 4 + 2] * hi;
+            minZ += Math.min(a, b);
+            maxZ += Math.max(a, b);
+        }
+        return this;
+    }
+
+    /**
+     * @param axis - 0 for x, 1 for y, 2 for z.
+     * @return - Center of the box along the axis.
+     */
+    public float getCenter(int axis) {
+        return axis == 0 ? (minX + maxX) / 2 : axis == 1 ? (minY + maxY) / 2 : (minZ + maxZ) / 2;
+    }
+
+    /**
+     * @return - Radius of the sphere around the center of the box that contains it.
+     */
+    public float getRadius() {
+        float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        return 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public boolean equalsBounds(Aabb other) {
+        return minX == other.minX && minY == other.minY && minZ == other.minZ
+                && maxX == other.maxX && maxY == other.maxY && maxZ == other.maxZ;
+    }
+
+    @Override
+    public String toString() {
+        return "Aabb[" + minX + ", " + minY + ", " + minZ + " - " + maxX + ", " + maxY + ", " + maxZ + "]";
+    }
+}
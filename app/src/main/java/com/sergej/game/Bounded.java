@@ -0,0 +1,13 @@
+package com.sergej.game;
+
+/**
+ * A {@link Renderable} that knows the space it occupies, so the scene can
+ * skip drawing it when it is outside the view frustum.
+ */
+public interface Bounded extends Renderable {
+
+    /**
+     * @param out - Receives the bounds in object coordinates.
+     */
+    void getBounds(Aabb out);
+}
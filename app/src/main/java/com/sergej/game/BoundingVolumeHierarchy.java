@@ -0,0 +1,268 @@
+package com.sergej.game;
+
+import java.util.List;
+
+/**
+ * A binary tree of bounding boxes over the bounded nodes of a {@link Scene},
+ * so that whole groups of nodes outside the view frustum are rejected with a
+ * single test. It only sees its items through {@link Item}, so it does not
+ * depend on the rest of the scene.
+ *
+ * <p>The tree is built top-down, splitting every range of nodes at the
+ * median along the longest axis of their centers. When nodes move, their
+ * leaves are refit: the boxes of their ancestors are recomputed, while the
+ * shape of the tree stays the same. Every subtree covers a contiguous range
+ * of the leaf order, so a subtree that is completely inside the frustum is
+ * accepted without visiting it.</p>
+ *
+ * <p>Only {@link #build} allocates. Must only be used on the thread its
+ * {@link Scene} is used on, the simulation thread when it is threaded.</p>
+ *
+ * @param <T> - Type of the items.
+ */
+public class BoundingVolumeHierarchy<T extends BoundingVolumeHierarchy.Item> {
+
+    /**
+     * Something with world bounds that can be put into the tree.
+     */
+    public interface Item {
+        /**
+         * @return - Bounds in world coordinates.
+         */
+        Aabb getWorldBounds();
+
+        /**
+         * @return - Index of the leaf last stored by {@link #setBvhLeaf}.
+         */
+        int getBvhLeaf();
+
+        /**
+         * @param leaf - Index of the leaf holding the item, for
+         * {@link #refit}.
+         */
+        void setBvhLeaf(int leaf);
+    }
+
+    // the depth of a median split tree is at most 33 for any int count of
+    // items, and culling pushes at most one node more than the depth
+    private static final int STACK_SIZE = 64;
+
+    private static final int NONE = -1;
+
+    private Item[] mItems = new Item[0];
+    private int mItemCount;
+
+    private Aabb[] mBounds = new Aabb[0];
+    private int[] mLeft = new int[0];
+    private int[] mRight = new int[0];
+    private int[] mParent = new int[0];
+    private int[] mFirst = new int[0];
+    private int[] mCount = new int[0];
+    private int mNodeCount;
+
+    private final int[] mStack = new int[STACK_SIZE];
+    private final Aabb mScratch = new Aabb();
+
+    // build only
+    private float[] mCenters = new float[0];
+
+    /**
+     * Builds the tree from scratch.
+     *
+     * @param items - Items with up to date world bounds. Their leaf index is
+     * stored in them, for {@link #refit}.
+     */
+    public void build(List<? extends T> items) {
+        mItemCount = items.size();
+        if (mItems.length < mItemCount) {
+            mItems = new Item[mItemCount];
+            mCenters = new float[3 * mItemCount];
+        }
+
+        int capacity = Math.max(1, 2 * mItemCount - 1);
+        if (mBounds.length < capacity) {
+            mBounds = new Aabb[capacity];
+            for (int i = 0; i < capacity; i++) {
+                mBounds[i] = new Aabb();
+            }
+            mLeft = new int[capacity];
+            mRight = new int[capacity];
+            mParent = new int[capacity];
+            mFirst = new int[capacity];
+            mCount = new int[capacity];
+        }
+
+        for (int i = 0; i < mItemCount; i++) {
+            Item item = items.get(i);
+            mItems[i] = item;
+            for (int axis = 0; axis < 3; axis++) {
+                mCenters[3 * i + axis] = item.getWorldBounds().getCenter(axis);
+            }
+        }
+
+        mNodeCount = 0;
+        if (mItemCount > 0) {
+            buildRange(0, mItemCount, NONE);
+        }
+    }
+
+    /**
+     * Updates the boxes above an item whose world bounds changed.
+     *
+     * @param item - An item passed to the last {@link #build}.
+     */
+    public void refit(T item) {
+        int node = item.getBvhLeaf();
+        mBounds[node].set(item.getWorldBounds());
+
+        for (node = mParent[node]; node != NONE; node = mParent[node]) {
+            mScratch.set(mBounds[mLeft[node]]).union(mBounds[mRight[node]]);
+            if (mScratch.equalsBounds(mBounds[node])) {
+                // nothing above can change either
+                break;
+            }
+            mBounds[node].set(mScratch);
+        }
+    }
+
+    /**
+     * Collects the items whose bounds are not completely outside a frustum.
+     *
+     * @param frustum - The view frustum in world coordinates.
+     * @param visible - Receives the visible items. Cleared first; it does not
+     * allocate once its capacity covers the scene.
+     * @return - Number of boxes tested.
+     */
+    @SuppressWarnings("unchecked")
+    public int cull(Frustum frustum, List<? super T> visible) {
+        visible.clear();
+        if (mNodeCount == 0) {
+            return 0;
+        }
+
+        int tests = 0;
+        int top = 0;
+        mStack[top++] = 0;
+
+        while (top > 0) {
+            int node = mStack[--top];
+            tests++;
+
+            int result = frustum.classify(mBounds[node]);
+            if (result == Frustum.OUTSIDE) {
+                continue;
+            }
+
+            if (result == Frustum.INSIDE || mLeft[node] == NONE) {
+                // accept the whole subtree without testing it further
+                int end = mFirst[node] + mCount[node];
+                for (int i = mFirst[node]; i < end; i++) {
+                    visible.add((T) mItems[i]);
+                }
+            } else {
+                mStack[top++] = mRight[node];
+                mStack[top++] = mLeft[node];
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * @return - Number of items in the tree.
+     */
+    public int size() {
+        return mItemCount;
+    }
+
+    /**
+     * @return - Number of boxes in the tree, leaves and inner ones.
+     */
+    public int getBoxCount() {
+        return mNodeCount;
+    }
+
+    /**
+     * @return - Height of the tree, 0 when empty.
+     */
+    public int getDepth() {
+        return mNodeCount == 0 ? 0 : depth(0);
+    }
+
+    private int depth(int node) {
+        return mLeft[node] == NONE ? 1 : 1 + Math.max(depth(mLeft[node]), depth(mRight[node]));
+    }
+
+    private int buildRange(int start, int end, int parent) {
+        int node = mNodeCount++;
+        mParent[node] = parent;
+        mFirst[node] = start;
+        mCount[node] = end - start;
+
+        Aabb bounds = mBounds[node].setEmpty();
+        for (int i = start; i < end; i++) {
+            bounds.union(mItems[i].getWorldBounds());
+        }
+
+        if (end - start == 1) {
+            mLeft[node] = mRight[node] = NONE;
+            mItems[start].setBvhLeaf(node);
+            return node;
+        }
+
+        int axis = longestCenterAxis(start, end);
+        int middle = (start + end) >>> 1;
+        select(start, end - 1, middle, axis);
+
+        mLeft[node] = buildRange(start, middle, node);
+        mRight[node] = buildRange(middle, end, node);
+        return node;
+    }
+
+    private int longestCenterAxis(int start, int end) {
+        mScratch.setEmpty();
+        for (int i = start; i < end; i++) {
+            mScratch.include(mCenters[3 * i], mCenters[3 * i + 1], mCenters[3 * i + 2]);
+        }
+        float x = mScratch.maxX - mScratch.minX;
+        float y = mScratch.maxY - mScratch.minY;
+        float z = mScratch.maxZ - mScratch.minZ;
+        return x >= y && x >= z ? 0 : y >= z ? 1 : 2;
+    }
+
+    /**
+     * Partially sorts items[left..right] by center along an axis, so that
+     * the k-th item is in place and no item before it is greater.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            float pivot = mCenters[3 * ((left + right) >>> 1) + axis];
+            int i = left, j = right;
+            while (i <= j) {
+                while (mCenters[3 * i + axis] < pivot) i++;
+                while (mCenters[3 * j + axis] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        Item item = mItems[a];
+        mItems[a] = mItems[b];
+        mItems[b] = item;
+
+        for (int axis = 0; axis < 3; axis++) {
+            float center = mCenters[3 * a + axis];
+            mCenters[3 * a + axis] = mCenters[3 * b + axis];
+            mCenters[3 * b + axis] = center;
+        }
+    }
+}
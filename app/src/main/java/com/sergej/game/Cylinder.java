@@ -1,62 +1,180 @@
 package com.sergej.game;
 
-import android.text.BoringLayout;
-
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
-public class OpenGLPipe {
+/**
+ * A section of a thick walled pipe around the z axis, cut to an angle range: the outer and
+ * 		inner walls and the annular caps at both ends.
+ */
+public class Cylinder implements Tessellated, Bounded, Submittable {
 	// 	By this class we describe a pipe, so the variables that are declared in it should apply
 	// 	only to the pipe. Information about how this pipe is cut is beyond the scope
 	// 	of this set of variables.
-	static private float _ANGLE_FROM = 0f, _ANGLE_TO  = 3 * (float) Math.PI / 2;
+	private final float _inner_radius, _outer_radius, _height, _angle_from, _angle_to;
+
+	// shared by the elements of every level, so creating a level does not touch GL
+	private final FlatColorProgram _shaderProgram;
+	private final GpuBufferManager _buffers;
+
+	// tessellation levels, each one created the first time it is selected
+	private final LodSelector _lod;
+	private final OpenGLPipeElement [][] _levels;
+	private int _level;
+
+	// meshes of levels being built in the background, null to build them right away
+	private final MeshLoader _loader;
+	private final MeshLoader.Request [][] _requests;
+	private static final OpenGLPipeElement [] _NO_ELEMENTS = {};
+	private static final int _ELEMENTS = 4;
+
+	public Cylinder(ShaderProgramCache programs, GpuBufferManager buffers, float outer_radius, float inner_radius,
+			float height, float angle_from, float angle_to) {
+		this(programs, buffers, LodSelector.getDefault(), outer_radius, inner_radius, height, angle_from, angle_to);
+		}
 
-	static private int _MAX_SLICES = 8;
+	/**
+	 * @param lod - Tessellation levels, the coarsest one is used until {@link #updateLevel} is called.
+	 * @param outer_radius - Radius of the outer wall.
+	 * @param inner_radius - Radius of the inner wall.
+	 * @param height - Half length of the pipe, it spans z from -height to height.
+	 * @param angle_from - Start angle of the section in radians.
+	 * @param angle_to - End angle of the section in radians.
+	 */
+	public Cylinder(ShaderProgramCache programs, GpuBufferManager buffers, LodSelector lod, float outer_radius,
+			float inner_radius, float height, float angle_from, float angle_to) {
+		this(programs, buffers, null, lod, outer_radius, inner_radius, height, angle_from, angle_to);
+		}
 
-	private float _inner_radius, _outer_radius, _height;
+	/**
+	 * @param loader - Builds the meshes of each level in the background. Until
+	 * a level is uploaded the nearest loaded one is drawn, at first nothing.
+	 * Null to build them on first use.
+	 */
+	public Cylinder(ShaderProgramCache programs, GpuBufferManager buffers, MeshLoader loader, LodSelector lod,
+			float outer_radius, float inner_radius, float height, float angle_from, float angle_to) {
+		_shaderProgram = new FlatColorProgram(programs);
+		_buffers = buffers;
+		_loader = loader;
+		_lod = lod;
+		_levels = new OpenGLPipeElement[lod.getLevelCount()][];
+		_requests = new MeshLoader.Request[lod.getLevelCount()][];
+
+		_outer_radius = outer_radius;
+		_inner_radius = inner_radius;
+		_height = height;
+		_angle_from = angle_from;
+		_angle_to = angle_to;
+		}
 
-	private interface VertexInitializationRule {
-		abstract public float [] apply();
+	/**
+	 * Selects the tessellation level for this frame from the size of the pipe on screen.
+	 *
+	 * @param modelViewMatrix - View matrix times model matrix of this pipe.
+	 * @param projectionMatrix - Perspective projection matrix.
+	 * @param viewportHeight - Viewport height in pixels.
+	 */
+	public void updateLevel(float [] modelViewMatrix, float [] projectionMatrix, float viewportHeight) {
+		float radius = LodSelector.projectedRadius(modelViewMatrix, projectionMatrix, viewportHeight, getBoundingRadius());
+		_level = _lod.select(_level, radius);
 		}
 
-	static private int _SLICES = (_ANGLE_TO - _ANGLE_FROM) / (/*degrees per one slice*/ 2 * Math.PI / _MAX_SLICES), _COORDS_PER_VERTEX = 3;
+	@Override public void submit(DrawList queue, float [] mvpMatrix) {
+		for (OpenGLPipeElement item : getElements())
+			item.submit(queue, mvpMatrix);
+		}
 
-	class TubeVerticesRule implements VertexInitializationRule {
-		private float _radius; TubeVerticesRule(float radius) { _radius = radius; }
+	public void draw(float [] mvpMatrix) {
+		for (OpenGLPipeElement item : getElements())
+			item.draw(mvpMatrix);
+		}
 
-		@Override public float [] apply() {
-			// calculate coordinates array for shape coordinates
-			float [] coords = new float[2 * _SLICES * _COORDS_PER_VERTEX];
+	/**
+	 * @return - Level the pipe is drawn with, 0 being the coarsest.
+	 */
+	public int getLevel() {
+		return _level;
+		}
 
-			// calculating theta step for every slice
-			float theta = (_ANGLE_TO - _ANGLE_FROM) / _MAX_SLICES;
+	/**
+	 * @return - Radius of a sphere around the object origin containing the whole pipe.
+	 */
+	public float getBoundingRadius() {
+		return (float) Math.sqrt(_outer_radius * _outer_radius + _height * _height);
+		}
 
-			for (int i = 0; i < _SLICES; i++) {
-				int offset = 2 * _COORDS_PER_VERTEX * i;
-				coords[offset + 0] = coords[offset + 3] = _radius * (float) Math.cos(_ANGLE_FROM + i * theta);
-				coords[offset + 1] = coords[offset + 4] = _radius * (float) Math.sin(_ANGLE_FROM + i * theta);
-				coords[offset + 2] = _height;
-				coords[offset + 5] =-_height;
-				}
+	/**
+	 * Bounds of the exact arcs, so they hold for every tessellation level.
+	 */
+	@Override public void getBounds(Aabb out) {
+		out.setEmpty();
+		MeshFactory.includeArc(out, _outer_radius, _angle_from, _angle_to, -_height, _height);
+		MeshFactory.includeArc(out, _inner_radius, _angle_from, _angle_to, -_height, _height);
+		}
 
-			return coords;
-			}
+	/**
+	 * @return - The walls and caps of this pipe section at the current level,
+	 * or of the nearest loaded level while the current one is being loaded.
+	 */
+	public OpenGLPipeElement [] getElements() {
+		OpenGLPipeElement [] elements = _levels[_level];
+		if (elements == null)
+			elements = _loader == null ? (_levels[_level] = createElements(_level)) : loadElements(_level);
+		return elements;
 		}
 
-	private OpenGLPipeElement[] _elements = new OpenGLPipeElement[2];
+	private OpenGLPipeElement [] createElements(int level) {
+		OpenGLPipeElement [] elements = new OpenGLPipeElement[_ELEMENTS];
+		for (int i = 0; i < _ELEMENTS; i++)
+			elements[i] = new OpenGLPipeElement(_shaderProgram, _buffers).initializeVertexBuffer(buildMesh(level, i));
+		return elements;
+		}
 
-	public Pipe(float inner_radius, float outer_radius, float height) {
+	private OpenGLPipeElement [] loadElements(final int level) {
+		MeshLoader.Request [] requests = _requests[level];
+		if (requests == null) {
+			requests = _requests[level] = new MeshLoader.Request[_ELEMENTS];
+			for (int i = 0; i < _ELEMENTS; i++) {
+				final int element = i;
+				requests[i] = _loader.load(() -> buildMesh(level, element));
+				}
+			}
 
-		VertexInitializationRule [] rules = {
-				TubeVerticesRule.withParamater   .of("a", _height, "b", iiner_radius), Map.of("a", _height, "b", iiner_radius) };
+		for (MeshLoader.Request request : requests)
+			if (!request.isReady())
+				return nearestLoaded(level);
 
-		int i = 0;
-		for (VertexInitializationRule rule : rules)
-		 	_elements[i++] = new OpenGLPipeElement().initializeVertexBuffer(rule.apply());
+		OpenGLPipeElement [] elements = _levels[level] = new OpenGLPipeElement[_ELEMENTS];
+		for (int i = 0; i < _ELEMENTS; i++)
+			elements[i] = new OpenGLPipeElement(_shaderProgram, _buffers).initializeVertexBuffer(requests[i]);
+		_requests[level] = null;
+		return elements;
 		}
 
-	public void draw(float [] mvpMatrix) {
-		for (OpenGLPipeElement item : _elements)
-			item.draw(mvpMatrix);
+	private OpenGLPipeElement [] nearestLoaded(int level) {
+		for (int distance = 1; distance < _levels.length; distance++) {
+			// a coarser level first, it is cheaper to draw
+			if (level - distance >= 0 && _levels[level - distance] != null)
+				return _levels[level - distance];
+			if (level + distance < _levels.length && _levels[level + distance] != null)
+				return _levels[level + distance];
+			}
+		return _NO_ELEMENTS;
+		}
+
+	/**
+	 * @param element - 0 and 1 the outer and inner wall, 2 and 3 the top and bottom cap.
+	 */
+	private Mesh buildMesh(int level, int element) {
+		// sections of the same size share their meshes
+		MeshFactory factory = MeshFactory.shared();
+		int slices = _lod.getSegments(level, _angle_from, _angle_to);
+		switch (element) {
+			case 0:
+				return factory.tube(_outer_radius, -_height, _height, _angle_from, _angle_to, slices, true);
+			case 1:
+				return factory.tube(_inner_radius, -_height, _height, _angle_from, _angle_to, slices, false);
+			case 2:
+				return factory.annulus(_inner_radius, _outer_radius, _height, _angle_from, _angle_to, slices, true);
+			default:
+				return factory.annulus(_inner_radius, _outer_radius, -_height, _angle_from, _angle_to, slices, false);
+			}
 		}
 	}
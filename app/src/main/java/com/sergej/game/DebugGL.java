@@ -0,0 +1,466 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * {@link GL} for debug builds. Every call has its arguments validated before
+ * it is forwarded and is followed by a glGetError check, so a failure throws
+ * right at the call that caused it instead of at some later check. Calls can
+ * also be traced, one line each.
+ *
+ * <p>glGetError is a sync point on many drivers, so release builds use the
+ * GL without this layer; see {@link MyGLRenderer#createGL()}.</p>
+ *
+ * <p>Must only be used on the GL thread.</p>
+ */
+public class DebugGL implements GL {
+
+    /**
+     * Receives every call before it is made, for example to write it to the
+     * log.
+     */
+    public interface Tracer {
+        /**
+         * @param call - The call with its arguments, such as "glUseProgram(3)".
+         */
+        void trace(String call);
+    }
+
+    private final GL mGL;
+    private Tracer mTracer;
+
+    /**
+     * @param gl - GL the calls are forwarded to.
+     */
+    public DebugGL(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * @param tracer - Receives every call, null to stop tracing.
+     */
+    public void setTracer(Tracer tracer) {
+        mTracer = tracer;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        if (mTracer != null) trace("glClear(0x" + Integer.toHexString(mask) + ")");
+        mGL.glClear(mask);
+        check("glClear");
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        if (mTracer != null) trace("glClearColor(" + red + ", " + green + ", " + blue + ", " + alpha + ")");
+        mGL.glClearColor(red, green, blue, alpha);
+        check("glClearColor");
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        if (mTracer != null) trace("glEnable(0x" + Integer.toHexString(cap) + ")");
+        mGL.glEnable(cap);
+        check("glEnable");
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        if (mTracer != null) trace("glViewport(" + x + ", " + y + ", " + width + ", " + height + ")");
+        require(width >= 0 && height >= 0, "glViewport", "negative size");
+        mGL.glViewport(x, y, width, height);
+        check("glViewport");
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        if (mTracer != null) trace("glCreateShader(0x" + Integer.toHexString(type) + ")");
+        require(type == GLES20.GL_VERTEX_SHADER || type == GLES20.GL_FRAGMENT_SHADER, "glCreateShader", "unknown type");
+        int shader = mGL.glCreateShader(type);
+        check("glCreateShader");
+        return shader;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        if (mTracer != null) trace("glShaderSource(" + shader + ", ...)");
+        require(string != null, "glShaderSource", "no source");
+        mGL.glShaderSource(shader, string);
+        check("glShaderSource");
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        if (mTracer != null) trace("glCompileShader(" + shader + ")");
+        mGL.glCompileShader(shader);
+        check("glCompileShader");
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        if (mTracer != null) trace("glGetShaderiv(" + shader + ", 0x" + Integer.toHexString(pname) + ")");
+        requireArray(params, offset, 1, "glGetShaderiv");
+        mGL.glGetShaderiv(shader, pname, params, offset);
+        check("glGetShaderiv");
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        if (mTracer != null) trace("glGetShaderInfoLog(" + shader + ")");
+        String log = mGL.glGetShaderInfoLog(shader);
+        check("glGetShaderInfoLog");
+        return log;
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        if (mTracer != null) trace("glDeleteShader(" + shader + ")");
+        mGL.glDeleteShader(shader);
+        check("glDeleteShader");
+    }
+
+    @Override
+    public int glCreateProgram() {
+        if (mTracer != null) trace("glCreateProgram()");
+        int program = mGL.glCreateProgram();
+        check("glCreateProgram");
+        return program;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        if (mTracer != null) trace("glAttachShader(" + program + ", " + shader + ")");
+        mGL.glAttachShader(program, shader);
+        check("glAttachShader");
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        if (mTracer != null) trace("glLinkProgram(" + program + ")");
+        mGL.glLinkProgram(program);
+        check("glLinkProgram");
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        if (mTracer != null) trace("glGetProgramiv(" + program + ", 0x" + Integer.toHexString(pname) + ")");
+        requireArray(params, offset, 1, "glGetProgramiv");
+        mGL.glGetProgramiv(program, pname, params, offset);
+        check("glGetProgramiv");
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        if (mTracer != null) trace("glGetProgramInfoLog(" + program + ")");
+        String log = mGL.glGetProgramInfoLog(program);
+        check("glGetProgramInfoLog");
+        return log;
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (mTracer != null) trace("glDeleteProgram(" + program + ")");
+        mGL.glDeleteProgram(program);
+        check("glDeleteProgram");
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (mTracer != null) trace("glUseProgram(" + program + ")");
+        mGL.glUseProgram(program);
+        check("glUseProgram");
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        if (mTracer != null) trace("glGetAttribLocation(" + program + ", " + name + ")");
+        require(name != null, "glGetAttribLocation", "no name");
+        int location = mGL.glGetAttribLocation(program, name);
+        check("glGetAttribLocation");
+        return location;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        if (mTracer != null) trace("glGetUniformLocation(" + program + ", " + name + ")");
+        require(name != null, "glGetUniformLocation", "no name");
+        int location = mGL.glGetUniformLocation(program, name);
+        check("glGetUniformLocation");
+        return location;
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (mTracer != null) trace("glEnableVertexAttribArray(" + index + ")");
+        require(index >= 0, "glEnableVertexAttribArray", "negative index, attribute not found?");
+        mGL.glEnableVertexAttribArray(index);
+        check("glEnableVertexAttribArray");
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (mTracer != null) trace("glDisableVertexAttribArray(" + index + ")");
+        require(index >= 0, "glDisableVertexAttribArray", "negative index, attribute not found?");
+        mGL.glDisableVertexAttribArray(index);
+        check("glDisableVertexAttribArray");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        if (mTracer != null) trace("glVertexAttribPointer(" + index + ", " + size + ", 0x" + Integer.toHexString(type)
+                + ", " + normalized + ", " + stride + ", " + ptr + ")");
+        requirePointer(index, size, stride, "glVertexAttribPointer");
+        require(ptr != null, "glVertexAttribPointer", "no client array");
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+        check("glVertexAttribPointer");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        if (mTracer != null) trace("glVertexAttribPointer(" + index + ", " + size + ", 0x" + Integer.toHexString(type)
+                + ", " + normalized + ", " + stride + ", " + offset + ")");
+        requirePointer(index, size, stride, "glVertexAttribPointer");
+        require(offset >= 0, "glVertexAttribPointer", "negative offset");
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        check("glVertexAttribPointer");
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        if (mTracer != null) trace("glUniform4fv(" + location + ", " + count + ")");
+        requireArray(v, offset, 4 * count, "glUniform4fv");
+        mGL.glUniform4fv(location, count, v, offset);
+        check("glUniform4fv");
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (mTracer != null) trace("glUniformMatrix4fv(" + location + ", " + count + ", " + transpose + ")");
+        // OpenGL ES 2.0 has no transposed uniforms
+        require(!transpose, "glUniformMatrix4fv", "transpose must be false");
+        requireArray(value, offset, 16 * count, "glUniformMatrix4fv");
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+        check("glUniformMatrix4fv");
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        if (mTracer != null) trace("glDrawArrays(" + mode + ", " + first + ", " + count + ")");
+        require(first >= 0 && count >= 0, "glDrawArrays", "negative range");
+        mGL.glDrawArrays(mode, first, count);
+        check("glDrawArrays");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        if (mTracer != null) trace("glDrawElements(" + mode + ", " + count + ", 0x" + Integer.toHexString(type)
+                + ", " + indices + ")");
+        require(count >= 0, "glDrawElements", "negative count");
+        require(indices != null, "glDrawElements", "no client indices");
+        require(remainingBytes(indices) >= (long) count * indexSize(type, "glDrawElements"),
+                "glDrawElements", "count exceeds the indices");
+        mGL.glDrawElements(mode, count, type, indices);
+        check("glDrawElements");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        if (mTracer != null) trace("glDrawElements(" + mode + ", " + count + ", 0x" + Integer.toHexString(type)
+                + ", " + offset + ")");
+        require(count >= 0 && offset >= 0, "glDrawElements", "negative range");
+        require(offset % indexSize(type, "glDrawElements") == 0, "glDrawElements", "misaligned offset");
+        mGL.glDrawElements(mode, count, type, offset);
+        check("glDrawElements");
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        if (mTracer != null) trace("glGenBuffers(" + n + ")");
+        requireArray(buffers, offset, n, "glGenBuffers");
+        mGL.glGenBuffers(n, buffers, offset);
+        check("glGenBuffers");
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (mTracer != null) trace("glBindBuffer(0x" + Integer.toHexString(target) + ", " + buffer + ")");
+        mGL.glBindBuffer(target, buffer);
+        check("glBindBuffer");
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (mTracer != null) trace("glBufferData(0x" + Integer.toHexString(target) + ", " + size + ", " + data
+                + ", 0x" + Integer.toHexString(usage) + ")");
+        require(size >= 0, "glBufferData", "negative size");
+        require(data == null || remainingBytes(data) >= size, "glBufferData", "size exceeds the data");
+        mGL.glBufferData(target, size, data, usage);
+        check("glBufferData");
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        if (mTracer != null) trace("glBufferSubData(0x" + Integer.toHexString(target) + ", " + offset + ", " + size
+                + ", " + data + ")");
+        require(offset >= 0 && size >= 0, "glBufferSubData", "negative range");
+        require(data != null && remainingBytes(data) >= size, "glBufferSubData", "size exceeds the data");
+        mGL.glBufferSubData(target, offset, size, data);
+        check("glBufferSubData");
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        if (mTracer != null) trace("glDeleteBuffers(" + n + ")");
+        requireArray(buffers, offset, n, "glDeleteBuffers");
+        mGL.glDeleteBuffers(n, buffers, offset);
+        check("glDeleteBuffers");
+    }
+
+    @Override
+    public String glGetString(int name) {
+        if (mTracer != null) trace("glGetString(0x" + Integer.toHexString(name) + ")");
+        String value = mGL.glGetString(name);
+        check("glGetString");
+        return value;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        if (mTracer != null) trace("glGetIntegerv(0x" + Integer.toHexString(pname) + ")");
+        requireArray(params, offset, 1, "glGetIntegerv");
+        mGL.glGetIntegerv(pname, params, offset);
+        check("glGetIntegerv");
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        if (mTracer != null) trace("glVertexAttribDivisor(" + index + ", " + divisor + ")");
+        require(index >= 0, "glVertexAttribDivisor", "negative index, attribute not found?");
+        mGL.glVertexAttribDivisor(index, divisor);
+        check("glVertexAttribDivisor");
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        if (mTracer != null) trace("glDrawElementsInstanced(" + mode + ", " + count + ", 0x"
+                + Integer.toHexString(type) + ", " + offset + ", " + instanceCount + ")");
+        require(count >= 0 && offset >= 0 && instanceCount >= 0, "glDrawElementsInstanced", "negative range");
+        require(offset % indexSize(type, "glDrawElementsInstanced") == 0, "glDrawElementsInstanced",
+                "misaligned offset");
+        mGL.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+        check("glDrawElementsInstanced");
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        if (mTracer != null) trace("glGenQueries(" + n + ")");
+        requireArray(ids, offset, n, "glGenQueries");
+        mGL.glGenQueries(n, ids, offset);
+        check("glGenQueries");
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        if (mTracer != null) trace("glDeleteQueries(" + n + ")");
+        requireArray(ids, offset, n, "glDeleteQueries");
+        mGL.glDeleteQueries(n, ids, offset);
+        check("glDeleteQueries");
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        if (mTracer != null) trace("glBeginQuery(0x" + Integer.toHexString(target) + ", " + id + ")");
+        mGL.glBeginQuery(target, id);
+        check("glBeginQuery");
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        if (mTracer != null) trace("glEndQuery(0x" + Integer.toHexString(target) + ")");
+        mGL.glEndQuery(target);
+        check("glEndQuery");
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        if (mTracer != null) trace("glGetQueryObjectuiv(" + id + ", 0x" + Integer.toHexString(pname) + ")");
+        requireArray(params, offset, 1, "glGetQueryObjectuiv");
+        mGL.glGetQueryObjectuiv(id, pname, params, offset);
+        check("glGetQueryObjectuiv");
+    }
+
+    @Override
+    public int glGetError() {
+        return mGL.glGetError();
+    }
+
+    private void trace(String call) {
+        mTracer.trace(call);
+    }
+
+    /**
+     * Throws if the call raised a GL error.
+     */
+    private void check(String call) {
+        int error = mGL.glGetError();
+        if (error == GLES20.GL_NO_ERROR) {
+            return;
+        }
+        // read the remaining flags, there may be one per error kind
+        StringBuilder message = new StringBuilder(call).append(": glError 0x").append(Integer.toHexString(error));
+        while ((error = mGL.glGetError()) != GLES20.GL_NO_ERROR) {
+            message.append(", 0x").append(Integer.toHexString(error));
+        }
+        throw new IllegalStateException(message.toString());
+    }
+
+    private static void require(boolean valid, String call, String problem) {
+        if (!valid) {
+            throw new IllegalArgumentException(call + ": " + problem);
+        }
+    }
+
+    private static void requireArray(int[] array, int offset, int count, String call) {
+        require(array != null, call, "no array");
+        require(count >= 0 && offset >= 0 && offset + count <= array.length, call, "array too short");
+    }
+
+    private static void requireArray(float[] array, int offset, int count, String call) {
+        require(array != null, call, "no array");
+        require(count >= 0 && offset >= 0 && offset + count <= array.length, call, "array too short");
+    }
+
+    private static void requirePointer(int index, int size, int stride, String call) {
+        require(index >= 0, call, "negative index, attribute not found?");
+        require(size >= 1 && size <= 4, call, "size must be 1 to 4");
+        require(stride >= 0, call, "negative stride");
+    }
+
+    private static int indexSize(int type, String call) {
+        switch (type) {
+            case GLES20.GL_UNSIGNED_BYTE:
+                return 1;
+            case GLES20.GL_UNSIGNED_SHORT:
+                return 2;
+            case GLES20.GL_UNSIGNED_INT:
+                return 4;
+            default:
+                throw new IllegalArgumentException(call + ": unknown index type 0x" + Integer.toHexString(type));
+        }
+    }
+
+    private static long remainingBytes(Buffer buffer) {
+        if (buffer instanceof ByteBuffer) {
+            return buffer.remaining();
+        }
+        if (buffer instanceof ShortBuffer) {
+            return 2L * buffer.remaining();
+        }
+        // float and int buffers, the only others used
+        return 4L * buffer.remaining();
+    }
+}
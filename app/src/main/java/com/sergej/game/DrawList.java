@@ -0,0 +1,31 @@
+package com.sergej.game;
+
+/**
+ * Receives the draw calls of a frame, either to issue them sorted by GL
+ * state ({@link RenderQueue}) or to record them for another thread
+ * ({@link FramePacket}).
+ */
+public interface DrawList {
+
+    /**
+     * Adds an indexed or, without indices, a non-indexed triangle list.
+     *
+     * @param program - Program the geometry is drawn with.
+     * @param vertices - Vertex buffer; its {@link GpuBuffer#getFormat() format}
+     * describes the layout, of which only the positions are read.
+     * @param indices - GL_UNSIGNED_SHORT triangle indices, or null.
+     * @param count - Number of indices, or of vertices if there are no indices.
+     * @param color - RGBA color.
+     * @param mvpMatrix - The Model View Projection matrix.
+     */
+    void add(FlatColorProgram program, GpuBuffer vertices, GpuBuffer indices, int count,
+            float[] color, float[] mvpMatrix);
+
+    /**
+     * Adds a renderable that draws itself rather than through {@link #add}.
+     *
+     * @param renderable - Renderable to draw.
+     * @param mvpMatrix - The Model View Projection matrix.
+     */
+    void addRenderable(Renderable renderable, float[] mvpMatrix);
+}
@@ -0,0 +1,118 @@
+package com.sergej.game;
+
+/**
+ * Binding of the shared flat color program ({@link Shaders#FLAT_COLOR_VERTEX}
+ * and {@link Shaders#FLAT_COLOR_FRAGMENT}) that every shape draws through.
+ *
+ * <p>All attribute and uniform locations are resolved once right after the
+ * program is taken from the cache, so drawing never asks the driver for a
+ * location by name. If the EGL context is lost the program is linked and its
+ * locations resolved again on the next {@link #use()}.</p>
+ */
+public class FlatColorProgram {
+
+    private final GL mGL;
+    private final ShaderProgramCache mPrograms;
+    private ShaderProgram mProgram;
+
+    private int mPositionHandle;
+    private int mColorHandle;
+    private int mMVPMatrixHandle;
+
+    /**
+     * Takes the flat color program from the cache and resolves its locations.
+     *
+     * @param programs - Cache the program is linked in.
+     */
+    public FlatColorProgram(ShaderProgramCache programs) {
+        mGL = programs.getGL();
+        mPrograms = programs;
+        acquire();
+    }
+
+    /**
+     * @return - The cache the program is taken from, for other programs
+     * drawing alongside it.
+     */
+    public ShaderProgramCache getPrograms() {
+        return mPrograms;
+    }
+
+    /**
+     * @return - The GL the program is linked with.
+     */
+    public GL getGL() {
+        return mGL;
+    }
+
+    /**
+     * @return - GL name of the program, linking it again first if the EGL
+     * context was lost.
+     */
+    public int getProgramId() {
+        if (!mProgram.isValid()) {
+            acquire();
+        }
+        return mProgram.getId();
+    }
+
+    /**
+     * Adds the program to the OpenGL environment.
+     */
+    public void use() {
+        // the EGL context may have been lost, then the program is linked again
+        mGL.glUseProgram(getProgramId());
+    }
+
+    /**
+     * Enables the vPosition attribute and points it at the positions in the
+     * given vertex buffer object. Other attributes of its vertices are
+     * skipped.
+     *
+     * @param vertices - Vertex buffer; its format tells where the positions are.
+     */
+    public void enablePosition(GpuBuffer vertices) {
+        vertices.bind();
+        vertices.getFormat().enable(mGL, VertexFormat.POSITION, mPositionHandle);
+    }
+
+    /**
+     * Disables the vPosition attribute enabled by {@link #enablePosition}.
+     */
+    public void disablePosition() {
+        mGL.glDisableVertexAttribArray(mPositionHandle);
+    }
+
+    /**
+     * Sets the vColor uniform.
+     *
+     * @param color - RGBA color.
+     */
+    public void setColor(float[] color) {
+        mGL.glUniform4fv(mColorHandle, 1, color, 0);
+    }
+
+    /**
+     * Sets the uMVPMatrix uniform.
+     *
+     * @param mvpMatrix - The Model View Projection matrix.
+     */
+    public void setMVPMatrix(float[] mvpMatrix) {
+        mGL.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+    }
+
+    /**
+     * Gives the program back to the cache.
+     */
+    public void release() {
+        mProgram.release();
+    }
+
+    private void acquire() {
+        mProgram = mPrograms.acquire(Shaders.FLAT_COLOR_VERTEX, Shaders.FLAT_COLOR_FRAGMENT);
+
+        mPositionHandle = mProgram.getAttribLocation("vPosition");
+        mColorHandle = mProgram.getUniformLocation("vColor");
+        mMVPMatrixHandle = mProgram.getUniformLocation("uMVPMatrix");
+    }
+}
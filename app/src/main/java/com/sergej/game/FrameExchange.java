@@ -0,0 +1,71 @@
+package com.sergej.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Triple buffered hand-off of {@link FramePacket}s from the simulation
+ * thread to the GL thread without locks. The producer records into the back
+ * packet and publishes it by swapping it with the middle one; the consumer
+ * takes the middle one, if it is newer, by swapping it with the front one.
+ * Neither thread ever waits for the other, and the consumer always gets the
+ * newest published frame, skipping older ones it was too slow for.
+ *
+ * <p>Each side must only be used by one thread.</p>
+ */
+public class FrameExchange {
+
+    // the packet index in the middle slot and whether it was published
+    // since the consumer last took it
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final FramePacket[] mPackets;
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+
+    // owned by the producer and the consumer respectively
+    private int mBack = 2;
+    private int mFront = 0;
+    private boolean mHasFrame;
+
+    /**
+     * @param capacity - Draw calls every packet preallocates for.
+     */
+    public FrameExchange(int capacity) {
+        mPackets = new FramePacket[] {
+                new FramePacket(capacity), new FramePacket(capacity), new FramePacket(capacity) };
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return - The packet to record the next frame into. Not seen by the
+     * consumer until {@link #publish()}.
+     */
+    public FramePacket getBack() {
+        return mPackets[mBack];
+    }
+
+    /**
+     * Producer side: hands the back packet to the consumer.
+     */
+    public void publish() {
+        int previous = mMiddle.getAndSet(mBack | FRESH);
+        mBack = previous & INDEX_MASK;
+    }
+
+    /**
+     * Consumer side: takes the newest published packet.
+     *
+     * @return - The newest packet, the one returned last time if nothing was
+     * published since, or null if nothing was published yet. It stays
+     * unchanged until the next call.
+     */
+    public FramePacket acquire() {
+        if ((mMiddle.get() & FRESH) != 0) {
+            int previous = mMiddle.getAndSet(mFront);
+            mFront = previous & INDEX_MASK;
+            mHasFrame = true;
+        }
+        return mHasFrame ? mPackets[mFront] : null;
+    }
+}
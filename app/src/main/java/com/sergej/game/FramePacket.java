@@ -0,0 +1,151 @@
+package com.sergej.game;
+
+/**
+ * The draw calls of one frame, recorded by the simulation thread and
+ * replayed on the GL thread. Colors and matrices are copied when recorded,
+ * so the packet does not change once published through a
+ * {@link FrameExchange}, whatever the scene does meanwhile.
+ *
+ * <p>Items are pooled, so recording allocates nothing once the packet has
+ * held its largest frame.</p>
+ */
+public class FramePacket implements DrawList {
+
+    private Item[] mItems;
+    private int mCount;
+    private long mSequence;
+    private long mUpdateNanos;
+    private long mCullNanos;
+
+    /**
+     * @param capacity - Draw calls to preallocate for; the packet grows if a
+     * frame needs more.
+     */
+    public FramePacket(int capacity) {
+        mItems = new Item[0];
+        grow(Math.max(1, capacity));
+    }
+
+    /**
+     * Empties the packet for recording a new frame.
+     *
+     * @param sequence - Number of the frame, increasing.
+     */
+    public void reset(long sequence) {
+        for (int i = 0; i < mCount; i++) {
+            mItems[i].clear();
+        }
+        mCount = 0;
+        mSequence = sequence;
+        mUpdateNanos = -1;
+        mCullNanos = -1;
+    }
+
+    /**
+     * Stores how long the simulation took to record this frame, for the
+     * {@link FrameProfiler} of the GL thread.
+     *
+     * @param updateNanos - Time spent updating the scene.
+     * @param cullNanos - Time spent culling and recording.
+     */
+    public void setTimes(long updateNanos, long cullNanos) {
+        mUpdateNanos = updateNanos;
+        mCullNanos = cullNanos;
+    }
+
+    /**
+     * @return - Time spent updating the scene, -1 if unknown.
+     */
+    public long getUpdateNanos() {
+        return mUpdateNanos;
+    }
+
+    /**
+     * @return - Time spent culling and recording, -1 if unknown.
+     */
+    public long getCullNanos() {
+        return mCullNanos;
+    }
+
+    /**
+     * @return - Number of the frame recorded in the packet.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return - Number of recorded draw calls.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    @Override
+    public void add(FlatColorProgram program, GpuBuffer vertices, GpuBuffer indices, int count,
+            float[] color, float[] mvpMatrix) {
+        Item item = next(mvpMatrix);
+        item.program = program;
+        item.vertices = vertices;
+        item.indices = indices;
+        item.count = count;
+        System.arraycopy(color, 0, item.color, 0, 4);
+    }
+
+    @Override
+    public void addRenderable(Renderable renderable, float[] mvpMatrix) {
+        next(mvpMatrix).renderable = renderable;
+    }
+
+    /**
+     * Issues the recorded draw calls. Must be called on the GL thread.
+     *
+     * @param list - Usually the {@link RenderQueue} of the GL thread,
+     * flushed by the caller. The packet must not be reset before that.
+     */
+    public void replay(DrawList list) {
+        for (int i = 0; i < mCount; i++) {
+            Item item = mItems[i];
+            if (item.renderable != null) {
+                list.addRenderable(item.renderable, item.mvp);
+            } else {
+                list.add(item.program, item.vertices, item.indices, item.count, item.color, item.mvp);
+            }
+        }
+    }
+
+    private Item next(float[] mvpMatrix) {
+        if (mCount == mItems.length) {
+            grow(2 * mItems.length);
+        }
+        Item item = mItems[mCount++];
+        System.arraycopy(mvpMatrix, 0, item.mvp, 0, 16);
+        return item;
+    }
+
+    private void grow(int capacity) {
+        Item[] items = new Item[capacity];
+        System.arraycopy(mItems, 0, items, 0, mItems.length);
+        for (int i = mItems.length; i < capacity; i++) {
+            items[i] = new Item();
+        }
+        mItems = items;
+    }
+
+    private static final class Item {
+        Renderable renderable;
+        FlatColorProgram program;
+        GpuBuffer vertices;
+        GpuBuffer indices;
+        int count;
+        final float[] color = new float[4];
+        final float[] mvp = new float[16];
+
+        void clear() {
+            renderable = null;
+            program = null;
+            vertices = null;
+            indices = null;
+        }
+    }
+}
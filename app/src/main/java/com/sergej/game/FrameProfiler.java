@@ -0,0 +1,238 @@
+package com.sergej.game;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Keeps the timings and counters of the last frames: CPU time of the
+ * update, cull, sort and submit phases, GPU time, draw calls, triangles and
+ * GL state changes. Percentiles over the window feed the on-screen overlay,
+ * and the window can be written out as a CSV trace.
+ *
+ * <p>Frames are recorded on the GL thread without allocating; the results
+ * may be read on any thread.</p>
+ */
+public class FrameProfiler {
+
+    // nanoseconds, update and cull happen on the simulation thread
+    public static final int UPDATE = 0;
+    public static final int CULL = 1;
+    public static final int SORT = 2;
+    public static final int SUBMIT = 3;
+    public static final int FRAME = 4;
+    public static final int GPU = 5;
+    // counts
+    public static final int DRAW_CALLS = 6;
+    public static final int TRIANGLES = 7;
+    public static final int STATE_CHANGES = 8;
+    public static final int STATE_SKIPPED = 9;
+
+    public static final int METRICS = 10;
+
+    private static final String[] NAMES = {
+            "update_ns", "cull_ns", "sort_ns", "submit_ns", "frame_ns", "gpu_ns",
+            "draw_calls", "triangles", "state_changes", "state_skipped" };
+
+    private final int mWindow;
+    private final long[] mTimes;
+    private final long[][] mValues;
+    private final long[] mScratch;
+    private int mNext;
+    private int mCount;
+    private long mTotalFrames;
+
+    // the frame being recorded, GL thread only
+    private final long[] mCurrent = new long[METRICS];
+    private long mFrameStart;
+
+    /**
+     * @param window - Number of frames kept, for example 600 for ten
+     * seconds at 60 fps.
+     */
+    public FrameProfiler(int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        mWindow = window;
+        mTimes = new long[window];
+        mValues = new long[METRICS][window];
+        mScratch = new long[window];
+    }
+
+    /**
+     * Starts recording a frame. Every metric starts out unknown.
+     */
+    public void beginFrame() {
+        for (int i = 0; i < METRICS; i++) {
+            mCurrent[i] = -1;
+        }
+        mFrameStart = System.nanoTime();
+    }
+
+    /**
+     * @param metric - One of the metric constants.
+     * @param value - Value of the metric in the current frame; negative if unknown.
+     */
+    public void set(int metric, long value) {
+        mCurrent[metric] = value;
+    }
+
+    /**
+     * @return - Start of the current frame, as given by System.nanoTime().
+     */
+    public long getFrameStart() {
+        return mFrameStart;
+    }
+
+    /**
+     * Finishes the current frame. Its {@link #FRAME} time runs from
+     * {@link #beginFrame()} to now, unless it was set.
+     */
+    public void endFrame() {
+        if (mCurrent[FRAME] < 0) {
+            mCurrent[FRAME] = System.nanoTime() - mFrameStart;
+        }
+
+        synchronized (this) {
+            mTimes[mNext] = mFrameStart;
+            for (int i = 0; i < METRICS; i++) {
+                mValues[i][mNext] = mCurrent[i];
+            }
+            mNext = (mNext + 1) % mWindow;
+            mCount = Math.min(mCount + 1, mWindow);
+            mTotalFrames++;
+        }
+    }
+
+    /**
+     * @return - Number of frames in the window.
+     */
+    public synchronized int getFrameCount() {
+        return mCount;
+    }
+
+    /**
+     * @return - Number of frames recorded since the profiler was created.
+     */
+    public synchronized long getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    /**
+     * Nearest rank percentile of a metric over the frames in the window
+     * that know it.
+     *
+     * @param metric - One of the metric constants.
+     * @param percent - 50 for the median, 95, 99 and so on.
+     * @return - The percentile, or -1 if no frame knows the metric.
+     */
+    public synchronized long getPercentile(int metric, float percent) {
+        int n = 0;
+        long[] values = mValues[metric];
+        for (int i = 0; i < mCount; i++) {
+            if (values[i] >= 0) {
+                mScratch[n++] = values[i];
+            }
+        }
+        if (n == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percent / 100f * n) - 1;
+        return select(mScratch, n, Math.min(Math.max(rank, 0), n - 1));
+    }
+
+    /**
+     * @return - p50, p95 and p99 of the frame time, GPU time and counters,
+     * one metric per line, for the overlay.
+     */
+    public String formatSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.US, "%-14s %8s %8s %8s%n", "", "p50", "p95", "p99"));
+        for (int metric = 0; metric < METRICS; metric++) {
+            long p50 = getPercentile(metric, 50);
+            if (p50 < 0) {
+                continue;
+            }
+            long p95 = getPercentile(metric, 95);
+            long p99 = getPercentile(metric, 99);
+            if (metric <= GPU) {
+                summary.append(String.format(Locale.US, "%-14s %8.2f %8.2f %8.2f%n",
+                        NAMES[metric].replace("_ns", " ms"), p50 / 1e6, p95 / 1e6, p99 / 1e6));
+            } else {
+                summary.append(String.format(Locale.US, "%-14s %8d %8d %8d%n",
+                        NAMES[metric].replace('_', ' '), p50, p95, p99));
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the frames of the window, oldest first, one per line. Unknown
+     * values are left empty.
+     *
+     * @param out - Receives the CSV text; not closed.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        long[] times;
+        long[][] values;
+        int first, count;
+        synchronized (this) {
+            // copy, so the GL thread is not held up while writing
+            times = mTimes.clone();
+            values = new long[METRICS][];
+            for (int i = 0; i < METRICS; i++) {
+                values[i] = mValues[i].clone();
+            }
+            count = mCount;
+            first = (mNext - count + mWindow) % mWindow;
+        }
+
+        out.write("time_ns");
+        for (String name : NAMES) {
+            out.write(',');
+            out.write(name);
+        }
+        out.write('\n');
+
+        for (int i = 0; i < count; i++) {
+            int frame = (first + i) % mWindow;
+            out.write(Long.toString(times[frame] - times[first]));
+            for (int metric = 0; metric < METRICS; metric++) {
+                out.write(',');
+                if (values[metric][frame] >= 0) {
+                    out.write(Long.toString(values[metric][frame]));
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @return - The k-th smallest of values[0..n), reordering them.
+     */
+    private static long select(long[] values, int n, int k) {
+        int left = 0, right = n - 1;
+        while (right > left) {
+            long pivot = values[(left + right) >>> 1];
+            int i = left, j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    long value = values[i];
+                    values[i++] = values[j];
+                    values[j--] = value;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
@@ -0,0 +1,160 @@
+package com.sergej.game;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides on which vsyncs a frame is produced. While something animates the
+ * scheduler asks for every vsync and renders continuously, limited to a
+ * maximum frame rate; otherwise it only renders requested frames and then
+ * stops asking for vsyncs, so an idle scene costs nothing.
+ *
+ * <p>The scheduler keeps no clock of its own: time is the vsync timestamps
+ * passed to {@link #onVsync}, on Android those of Choreographer, in tests
+ * made up ones. Frames are requested and animations reported from any
+ * thread; {@link #onVsync} and {@link #needsVsync()} must be called on the
+ * thread that delivers the vsyncs.</p>
+ */
+public class FrameScheduler {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // assumed until two vsyncs were seen
+    private static final long DEFAULT_VSYNC_PERIOD = NANOS_PER_SECOND / 60;
+
+    private final AtomicBoolean mRequested = new AtomicBoolean();
+    private volatile boolean mAnimating;
+    private volatile Runnable mWakeUp;
+
+    private long mMinInterval;
+
+    // vsync thread only
+    private long mLastVsync = -1;
+    private long mVsyncPeriod = DEFAULT_VSYNC_PERIOD;
+    private boolean mPeriodMeasured;
+    private long mLastFrame = -1;
+    private int mFrames;
+    private int mSkipped;
+
+    /**
+     * @param maxFps - Highest frame rate to render at, at most the display rate.
+     */
+    public FrameScheduler(float maxFps) {
+        setMaxFps(maxFps);
+    }
+
+    /**
+     * @param maxFps - Highest frame rate to render at, at most the display rate.
+     */
+    public void setMaxFps(float maxFps) {
+        if (!(maxFps > 0)) {
+            throw new IllegalArgumentException("maxFps must be positive: " + maxFps);
+        }
+        mMinInterval = (long) (NANOS_PER_SECOND / maxFps);
+    }
+
+    /**
+     * @param wakeUp - Called when vsyncs are needed again after the
+     * scheduler went idle, on the thread that requested the frame.
+     */
+    public void setWakeUp(Runnable wakeUp) {
+        mWakeUp = wakeUp;
+    }
+
+    /**
+     * Asks for one frame on the next vsync the frame rate allows.
+     */
+    public void requestFrame() {
+        mRequested.set(true);
+        wakeUp();
+    }
+
+    /**
+     * @param animating - Whether every frame changes, like a running
+     * animation or a fling coming to rest. Renders continuously while true.
+     */
+    public void setAnimating(boolean animating) {
+        boolean was = mAnimating;
+        mAnimating = animating;
+        if (animating && !was) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * @return - Whether frames are currently rendered continuously.
+     */
+    public boolean isContinuous() {
+        return mAnimating;
+    }
+
+    /**
+     * @return - Whether the scheduler wants to see the next vsync.
+     */
+    public boolean needsVsync() {
+        return mAnimating || mRequested.get();
+    }
+
+    /**
+     * Called on every vsync while {@link #needsVsync()} was true.
+     *
+     * @param frameTimeNanos - Time of the vsync.
+     * @return - true if a frame should be produced for this vsync.
+     */
+    public boolean onVsync(long frameTimeNanos) {
+        if (mLastVsync >= 0) {
+            long period = frameTimeNanos - mLastVsync;
+            if (!mPeriodMeasured && period > 0 && period < 4 * DEFAULT_VSYNC_PERIOD) {
+                mVsyncPeriod = period;
+                mPeriodMeasured = true;
+            } else if (period > 0 && period < 2 * mVsyncPeriod) {
+                // a longer gap means vsyncs were not asked for, not a slower display
+                mVsyncPeriod += (period - mVsyncPeriod) / 8;
+            }
+        }
+        mLastVsync = frameTimeNanos;
+
+        if (!needsVsync()) {
+            return false;
+        }
+
+        // vsyncs jitter, half a period of slack keeps e.g. 30 fps on a 60 Hz
+        // display from alternating between one and three vsyncs per frame
+        if (mLastFrame >= 0 && frameTimeNanos - mLastFrame < mMinInterval - mVsyncPeriod / 2) {
+            mSkipped++;
+            return false;
+        }
+
+        mRequested.set(false);
+        mLastFrame = frameTimeNanos;
+        mFrames++;
+        return true;
+    }
+
+    /**
+     * @return - Estimated time between vsyncs.
+     */
+    public long getVsyncPeriod() {
+        return mVsyncPeriod;
+    }
+
+    /**
+     * @return - Frames produced so far.
+     */
+    public int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return - Vsyncs skipped to stay under the maximum frame rate.
+     */
+    public int getSkipped() {
+        return mSkipped;
+    }
+
+    private void wakeUp() {
+        Runnable wakeUp = mWakeUp;
+        if (wakeUp != null) {
+            wakeUp.run();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.sergej.game;
+
+/**
+ * The six planes of the view frustum, extracted from a view projection
+ * matrix, to test bounding volumes against.
+ */
+public class Frustum {
+
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTING = 1;
+    public static final int INSIDE = 2;
+
+    private static final int PLANES = 6;
+
+    // a, b, c, d of every plane, normalized, with the inside where
+    // a * x + b * y + c * z + d >= 0
+    private final float[] mPlanes = new float[PLANES * 4];
+
+    /**
+     * Extracts the planes from the rows of a matrix: every clip plane is the
+     * last row plus or minus one of the others.
+     *
+     * @param viewProjection - Projection times view, column-major. Points
+     * are tested in world coordinates.
+     */
+    public void set(float[] viewProjection) {
+        float[] m = viewProjection;
+        for (int i = 0; i < 3; i++) {
+            setPlane(2 * i, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+            setPlane(2 * i + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+        }
+    }
+
+    /**
+     * @param box - Box in world coordinates.
+     * @return - {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}.
+     */
+    public int classify(Aabb box) {
+        int result = INSIDE;
+        for (int i = 0; i < PLANES * 4; i += 4) {
+            float a = mPlanes[i], b = mPlanes[i + 1], c = mPlanes[i + 2], d = mPlanes[i + 3];
+
+            // the corner furthest along the plane normal
+            float far = a * (a > 0 ? box.maxX : box.minX)
+                    + b * (b > 0 ? box.maxY : box.minY)
+                    + c * (c > 0 ? box.maxZ : box.minZ) + d;
+            if (far < 0) {
+                return OUTSIDE;
+            }
+
+            // and the one furthest against it
+            float near = a * (a > 0 ? box.minX : box.maxX)
+                    + b * (b > 0 ? box.minY : box.maxY)
+                    + c * (c > 0 ? box.minZ : box.maxZ) + d;
+            if (near < 0) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return - false if the sphere is completely outside.
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANES * 4; i += 4) {
+            if (mPlanes[i] * x + mPlanes[i + 1] * y + mPlanes[i + 2] * z + mPlanes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        mPlanes[plane * 4] = a / length;
+        mPlanes[plane * 4 + 1] = b / length;
+        mPlanes[plane * 4 + 2] = c / length;
+        mPlanes[plane * 4 + 3] = d / length;
+    }
+}
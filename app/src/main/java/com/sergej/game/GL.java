@@ -0,0 +1,119 @@
+package com.sergej.game;
+
+import java.nio.Buffer;
+
+/**
+ * The subset of OpenGL ES 2.0 the renderer uses. Methods keep the names and
+ * signatures of {@link android.opengl.GLES20} so call sites read the same;
+ * going through an instance instead of the static class lets the renderer
+ * and shapes be driven by a fake implementation in JVM unit tests.
+ */
+public interface GL {
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glEnable(int cap);
+
+    void glViewport(int x, int y, int width, int height);
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String string);
+
+    void glCompileShader(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glLinkProgram(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glDeleteProgram(int program);
+
+    void glUseProgram(int program);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    String glGetString(int name);
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasInstancing()} first.
+     */
+    void glVertexAttribDivisor(int index, int divisor);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasInstancing()} first.
+     */
+    void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasTimerQuery()} first.
+     */
+    void glGenQueries(int n, int[] ids, int offset);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasTimerQuery()} first.
+     */
+    void glDeleteQueries(int n, int[] ids, int offset);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasTimerQuery()} first.
+     */
+    void glBeginQuery(int target, int id);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasTimerQuery()} first.
+     */
+    void glEndQuery(int target);
+
+    /**
+     * OpenGL ES 3.0 only, check {@link GLCapabilities#hasTimerQuery()} first.
+     */
+    void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+    int glGetError();
+}
@@ -0,0 +1,104 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What the current EGL context supports, queried once after it is created.
+ */
+public class GLCapabilities {
+
+    // first API level with the android.opengl.GLES30 bindings
+    private static final int GLES30_API_LEVEL = 18;
+
+    private final int mMajorVersion;
+    private final boolean mInstancing;
+    private final int mMaxVertexUniformVectors;
+    private final Set<String> mExtensions;
+
+    GLCapabilities(int majorVersion, boolean instancing, int maxVertexUniformVectors, Set<String> extensions) {
+        mMajorVersion = majorVersion;
+        mInstancing = instancing;
+        mMaxVertexUniformVectors = maxVertexUniformVectors;
+        mExtensions = extensions;
+    }
+
+    /**
+     * Queries the context current on the calling thread.
+     *
+     * @param gl - GL of the current context.
+     * @param apiLevel - Build.VERSION.SDK_INT of the device.
+     * @return - The capabilities of the context.
+     */
+    public static GLCapabilities query(GL gl, int apiLevel) {
+        // "OpenGL ES N.M <vendor-specific information>"
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        int major = 2;
+        if (version != null && version.startsWith("OpenGL ES ") && version.length() > 10
+                && Character.isDigit(version.charAt(10))) {
+            major = version.charAt(10) - '0';
+        }
+
+        int[] value = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, value, 0);
+
+        String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+        Set<String> set = new HashSet<>();
+        if (extensions != null) {
+            set.addAll(Arrays.asList(extensions.trim().split("\\s+")));
+        }
+
+        return new GLCapabilities(major, major >= 3 && apiLevel >= GLES30_API_LEVEL, value[0], set);
+    }
+
+    /**
+     * @return - Major version of the OpenGL ES context.
+     */
+    public int getMajorVersion() {
+        return mMajorVersion;
+    }
+
+    /**
+     * @return - true if glDrawElementsInstanced and glVertexAttribDivisor
+     * can be called.
+     */
+    public boolean hasInstancing() {
+        return mInstancing;
+    }
+
+    /**
+     * @return - true if vertex attributes can be GL_HALF_FLOAT and
+     * GL_INT_2_10_10_10_REV, both core in OpenGL ES 3.0.
+     */
+    public boolean hasPackedVertexFormats() {
+        // only enums, no GLES30 bindings needed
+        return mMajorVersion >= 3;
+    }
+
+    /**
+     * @return - true if GPU time can be measured with GL_TIME_ELAPSED_EXT
+     * queries through the OpenGL ES 3.0 query functions.
+     */
+    public boolean hasTimerQuery() {
+        return mInstancing && hasExtension("GL_EXT_disjoint_timer_query");
+    }
+
+    /**
+     * @return - GL_MAX_VERTEX_UNIFORM_VECTORS, at least 128 on every
+     * OpenGL ES 2.0 implementation.
+     */
+    public int getMaxVertexUniformVectors() {
+        return mMaxVertexUniformVectors;
+    }
+
+    /**
+     * @param name - Extension name, for example "GL_OES_element_index_uint".
+     * @return - true if the context advertises the extension.
+     */
+    public boolean hasExtension(String name) {
+        return mExtensions.contains(name);
+    }
+}
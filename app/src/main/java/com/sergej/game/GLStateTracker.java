@@ -0,0 +1,477 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * {@link GL} that remembers the state it has set and drops calls that would
+ * set it to what it already is: the current program, the buffer bound to
+ * each target, enabled vertex attribute arrays, vertex attribute pointers
+ * into buffer objects and single vec4 and mat4 uniforms. Array uploads are
+ * always forwarded but update the values tracked for every element they
+ * cover. Everything else is forwarded unchanged.
+ *
+ * <p>The tracker only knows about calls made through it, so all GL calls of
+ * the renderer must go through the same instance. After a context loss the
+ * state of the new context is unknown; {@link #invalidate()} makes the next
+ * call of every kind go through again.</p>
+ *
+ * <p>Must only be used on the GL thread.</p>
+ */
+public class GLStateTracker implements GL {
+
+    private static final int UNKNOWN = -1;
+
+    // vertex attributes tracked, GL_MAX_VERTEX_ATTRIBS is at least 8 and rarely above 16
+    private static final int MAX_ATTRIBS = 16;
+
+    // vertex attribute pointer state: buffer, size, type, normalized, stride, offset
+    private static final int POINTER_FIELDS = 6;
+
+    private final GL mGL;
+
+    private int mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private final int[] mAttribEnabled = new int[MAX_ATTRIBS];
+    private final int[] mPointers = new int[MAX_ATTRIBS * POINTER_FIELDS];
+
+    // uniform values per program and location
+    private final UniformTable mVec4Uniforms = new UniformTable(4);
+    private final UniformTable mMat4Uniforms = new UniformTable(16);
+
+    private int mIssued;
+    private int mSkipped;
+
+    /**
+     * @param gl - GL the calls that change state are forwarded to.
+     */
+    public GLStateTracker(GL gl) {
+        mGL = gl;
+        invalidate();
+    }
+
+    /**
+     * Forgets all tracked state, for example because the EGL context was
+     * recreated.
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        for (int i = 0; i < MAX_ATTRIBS; i++) {
+            mAttribEnabled[i] = UNKNOWN;
+        }
+        forgetPointers();
+        mVec4Uniforms.clear();
+        mMat4Uniforms.clear();
+    }
+
+    /**
+     * @return - State changing calls forwarded since the last reset.
+     */
+    public int getIssued() {
+        return mIssued;
+    }
+
+    /**
+     * @return - State changing calls dropped as redundant since the last reset.
+     */
+    public int getSkipped() {
+        return mSkipped;
+    }
+
+    /**
+     * Resets the issued and skipped counters, usually once per frame.
+     */
+    public void resetCounters() {
+        mIssued = 0;
+        mSkipped = 0;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (program == mProgram) {
+            mSkipped++;
+            return;
+        }
+        mIssued++;
+        mProgram = program;
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        int bound = target == GLES20.GL_ARRAY_BUFFER ? mArrayBuffer
+                : target == GLES20.GL_ELEMENT_ARRAY_BUFFER ? mElementArrayBuffer : UNKNOWN;
+        if (buffer == bound) {
+            mSkipped++;
+            return;
+        }
+        mIssued++;
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            mElementArrayBuffer = buffer;
+        }
+        mGL.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index < MAX_ATTRIBS) {
+            if (mAttribEnabled[index] == 1) {
+                mSkipped++;
+                return;
+            }
+            mAttribEnabled[index] = 1;
+        }
+        mIssued++;
+        mGL.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index < MAX_ATTRIBS) {
+            if (mAttribEnabled[index] == 0) {
+                mSkipped++;
+                return;
+            }
+            mAttribEnabled[index] = 0;
+        }
+        mIssued++;
+        mGL.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        if (index < MAX_ATTRIBS && mArrayBuffer != UNKNOWN) {
+            int p = index * POINTER_FIELDS;
+            int norm = normalized ? 1 : 0;
+            if (mPointers[p] == mArrayBuffer && mPointers[p + 1] == size && mPointers[p + 2] == type
+                    && mPointers[p + 3] == norm && mPointers[p + 4] == stride && mPointers[p + 5] == offset) {
+                mSkipped++;
+                return;
+            }
+            mPointers[p] = mArrayBuffer;
+            mPointers[p + 1] = size;
+            mPointers[p + 2] = type;
+            mPointers[p + 3] = norm;
+            mPointers[p + 4] = stride;
+            mPointers[p + 5] = offset;
+        }
+        mIssued++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        // client side arrays can change behind our back, always set them
+        if (index < MAX_ATTRIBS) {
+            mPointers[index * POINTER_FIELDS] = UNKNOWN;
+        }
+        mIssued++;
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        if (count == 1 && mProgram != UNKNOWN && !mVec4Uniforms.update(mProgram, location, v, offset)) {
+            mSkipped++;
+            return;
+        }
+        if (count > 1 && mProgram != UNKNOWN) {
+            // array elements have consecutive locations, keep each of them current
+            for (int i = 0; i < count; i++) {
+                mVec4Uniforms.update(mProgram, location + i, v, offset + 4 * i);
+            }
+        }
+        mIssued++;
+        mGL.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (count == 1 && !transpose && mProgram != UNKNOWN
+                && !mMat4Uniforms.update(mProgram, location, value, offset)) {
+            mSkipped++;
+            return;
+        }
+        if (transpose) {
+            // the values are stored in another order than the table compares
+            mMat4Uniforms.clear();
+        } else if (count > 1 && mProgram != UNKNOWN) {
+            for (int i = 0; i < count; i++) {
+                mMat4Uniforms.update(mProgram, location + i, value, offset + 16 * i);
+            }
+        }
+        mIssued++;
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        // linking resets every uniform of the program
+        mVec4Uniforms.clear();
+        mMat4Uniforms.clear();
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        // the name may be handed out again for a new program
+        mVec4Uniforms.clear();
+        mMat4Uniforms.clear();
+        if (program == mProgram) {
+            mProgram = UNKNOWN;
+        }
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        // deleting a bound buffer unbinds it
+        for (int i = offset; i < offset + n; i++) {
+            if (buffers[i] == mArrayBuffer) {
+                mArrayBuffer = UNKNOWN;
+            }
+            if (buffers[i] == mElementArrayBuffer) {
+                mElementArrayBuffer = UNKNOWN;
+            }
+        }
+        forgetPointers();
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    // Calls below do not change tracked state and are forwarded as they are.
+
+    @Override
+    public void glClear(int mask) {
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mGL.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        mGL.glEnable(cap);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        mGL.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return mGL.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mGL.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        mGL.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return mGL.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return mGL.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mGL.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        mGL.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return mGL.glGetString(name);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        mGL.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        mGL.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        mGL.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        mGL.glGenQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        mGL.glDeleteQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        mGL.glBeginQuery(target, id);
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        mGL.glEndQuery(target);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        mGL.glGetQueryObjectuiv(id, pname, params, offset);
+    }
+
+    @Override
+    public int glGetError() {
+        return mGL.glGetError();
+    }
+
+    private void forgetPointers() {
+        for (int i = 0; i < MAX_ATTRIBS; i++) {
+            mPointers[i * POINTER_FIELDS] = UNKNOWN;
+        }
+    }
+
+    /**
+     * Open addressing table of uniform values keyed by program and location,
+     * so looking a value up never allocates.
+     */
+    private static final class UniformTable {
+        private static final int CAPACITY = 256;
+
+        private final int mWidth;
+        private final long[] mKeys = new long[CAPACITY];
+        private final boolean[] mUsed = new boolean[CAPACITY];
+        private final float[] mValues;
+        private int mSize;
+
+        UniformTable(int width) {
+            mWidth = width;
+            mValues = new float[CAPACITY * width];
+        }
+
+        void clear() {
+            for (int i = 0; i < CAPACITY; i++) {
+                mUsed[i] = false;
+            }
+            mSize = 0;
+        }
+
+        /**
+         * Stores the value of a uniform.
+         *
+         * @return - false if the uniform already held the value.
+         */
+        boolean update(int program, int location, float[] value, int offset) {
+            long key = ((long) program << 32) | (location & 0xFFFFFFFFL);
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 56) & (CAPACITY - 1);
+
+            while (mUsed[slot] && mKeys[slot] != key) {
+                slot = (slot + 1) & (CAPACITY - 1);
+            }
+
+            int base = slot * mWidth;
+            if (mUsed[slot]) {
+                boolean same = true;
+                for (int i = 0; i < mWidth && same; i++) {
+                    same = mValues[base + i] == value[offset + i];
+                }
+                if (same) {
+                    return false;
+                }
+            } else {
+                if (mSize == CAPACITY / 2) {
+                    // keep probing short, start over instead of growing
+                    clear();
+                    return update(program, location, value, offset);
+                }
+                mUsed[slot] = true;
+                mKeys[slot] = key;
+                mSize++;
+            }
+
+            System.arraycopy(value, offset, mValues, base, mWidth);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A vertex or index buffer object created by a {@link GpuBufferManager}.
+ *
+ * <p>The buffer keeps a reference to the direct buffer it was filled from,
+ * so it can upload the same data again when the EGL context has been lost.
+ * The upload happens lazily on the next {@link #bind()}.</p>
+ */
+public class GpuBuffer {
+
+    private final GpuBufferManager mManager;
+    private final int mTarget;
+    private final int mUsage;
+    private final int mSortId;
+    private final VertexFormat mFormat;
+
+    private Buffer mData;
+    private int mSize;
+    private int mAllocated;
+
+    private int mBufferId;
+    private int mGeneration = -1;
+
+    GpuBuffer(GpuBufferManager manager, int target, int usage, Buffer data, VertexFormat format) {
+        mManager = manager;
+        mTarget = target;
+        mUsage = usage;
+        mFormat = format;
+        mSortId = manager.nextSortId();
+        mData = data;
+        mSize = data != null ? sizeInBytes(data) : 0;
+    }
+
+    /**
+     * @return - GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+     */
+    public int getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * @return - Layout of the vertices of a GL_ARRAY_BUFFER, null for
+     * index buffers.
+     */
+    public VertexFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return - Number identifying the buffer for sorting draw calls. Unlike
+     * the GL name it is known before the first upload and survives a context
+     * loss.
+     */
+    public int getSortId() {
+        return mSortId;
+    }
+
+    /**
+     * @return - Size of the current contents in bytes.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Binds the buffer to its target, creating and uploading it first if it
+     * does not exist in the current EGL context yet.
+     */
+    public void bind() {
+        GL gl = mManager.getGL();
+
+        if (!mManager.isCurrent(mGeneration)) {
+            mBufferId = mManager.generate();
+            mGeneration = mManager.getGeneration();
+            mAllocated = 0;
+
+            gl.glBindBuffer(mTarget, mBufferId);
+            if (mData != null) {
+                upload(gl);
+            }
+            return;
+        }
+
+        gl.glBindBuffer(mTarget, mBufferId);
+    }
+
+    /**
+     * Replaces the contents of a dynamic buffer. The data must stay untouched
+     * until the next update, as it is uploaded again after a context loss.
+     *
+     * @param data - Direct buffer holding the new contents from its position
+     * to its limit.
+     */
+    public void update(Buffer data) {
+        if (mUsage == GLES20.GL_STATIC_DRAW) {
+            throw new IllegalStateException("GL_STATIC_DRAW buffers cannot be updated");
+        }
+
+        mData = data;
+        mSize = sizeInBytes(data);
+
+        if (!mManager.isCurrent(mGeneration)) {
+            // uploaded on the next bind
+            return;
+        }
+
+        GL gl = mManager.getGL();
+        gl.glBindBuffer(mTarget, mBufferId);
+        upload(gl);
+    }
+
+    /**
+     * Deletes the buffer object and forgets its contents.
+     */
+    public void release() {
+        mManager.release(this);
+    }
+
+    /**
+     * Binds the buffer if it has contents not uploaded to the current EGL
+     * context yet, which uploads them.
+     *
+     * @return - Whether the buffer was uploaded.
+     */
+    boolean restore() {
+        if (mData == null || mManager.isCurrent(mGeneration)) {
+            return false;
+        }
+        bind();
+        return true;
+    }
+
+    int getBufferId() {
+        return mBufferId;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    void forget() {
+        mData = null;
+        mSize = 0;
+        mGeneration = -1;
+    }
+
+    private void upload(GL gl) {
+        if (mSize > mAllocated || mUsage == GLES20.GL_STATIC_DRAW) {
+            gl.glBufferData(mTarget, mSize, mData, mUsage);
+            mAllocated = mSize;
+        } else {
+            // orphan the old storage so the driver does not wait for draws still reading it
+            gl.glBufferData(mTarget, mAllocated, null, mUsage);
+            gl.glBufferSubData(mTarget, 0, mSize, mData);
+        }
+        mManager.onUpload(mSize);
+    }
+
+    private static int sizeInBytes(Buffer data) {
+        if (data instanceof ByteBuffer) {
+            return data.remaining();
+        }
+        if (data instanceof ShortBuffer) {
+            return data.remaining() * 2;
+        }
+        // FloatBuffer and IntBuffer
+        return data.remaining() * 4;
+    }
+}
@@ -0,0 +1,235 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the vertex and index buffer objects the shapes draw from, so the
+ * geometry is copied to the GPU once instead of being passed as client-side
+ * arrays on every draw call.
+ *
+ * <p>Static buffers are uploaded once with GL_STATIC_DRAW. Dynamic buffers
+ * are meant for geometry that changes and re-specify their storage on every
+ * {@link GpuBuffer#update}. After {@link #invalidate()} every buffer uploads
+ * its last data again the next time it is bound.</p>
+ *
+ * <p>Buffers may be created on any thread, as meshes are built while a frame
+ * is recorded on the simulation thread. They are only uploaded when bound,
+ * which like releasing and invalidating must happen on the GL thread.</p>
+ */
+public class GpuBufferManager {
+
+    private final GL mGL;
+    private final List<GpuBuffer> mBuffers = new ArrayList<>();
+    private final int[] mName = new int[1];
+
+    private int mGeneration;
+    private long mUploadedBytes;
+    private int mNextSortId;
+    private volatile VertexFormat mMeshFormat = VertexFormat.POSITION_FLOAT;
+
+    public GpuBufferManager(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * @return - The GL the buffers are created with.
+     */
+    public GL getGL() {
+        return mGL;
+    }
+
+    /**
+     * Creates a buffer whose contents never change.
+     *
+     * @param target - GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+     * @param data - Direct buffer holding the contents from its position to
+     * its limit. It is kept for re-uploads and must not be modified.
+     * @return - The new buffer, uploaded on its first bind.
+     */
+    public GpuBuffer createStatic(int target, Buffer data) {
+        return add(new GpuBuffer(this, target, GLES20.GL_STATIC_DRAW, data, defaultFormat(target)));
+    }
+
+    /**
+     * Creates a GL_ARRAY_BUFFER of interleaved vertices whose contents never
+     * change.
+     *
+     * @param data - Direct buffer of vertices from its position to its
+     * limit, usually from a {@link VertexWriter}. It is kept for re-uploads
+     * and must not be modified.
+     * @param format - Layout of the vertices.
+     * @return - The new buffer, uploaded on its first bind.
+     */
+    public GpuBuffer createStaticVertices(Buffer data, VertexFormat format) {
+        return add(new GpuBuffer(this, GLES20.GL_ARRAY_BUFFER, GLES20.GL_STATIC_DRAW, data, format));
+    }
+
+    /**
+     * Creates a static GL_ARRAY_BUFFER holding the vertices of a mesh in the
+     * {@link #getMeshFormat() mesh format}, or as float positions if the
+     * mesh has no normals.
+     *
+     * @param mesh - Geometry to upload.
+     * @return - The new buffer, uploaded on its first bind.
+     */
+    public GpuBuffer createStaticVertices(Mesh mesh) {
+        VertexFormat format = getMeshFormat(mesh);
+        return createStaticVertices(VertexWriter.write(format, mesh), format);
+    }
+
+    /**
+     * Copies positions into a new direct buffer and creates a static
+     * GL_ARRAY_BUFFER from it.
+     *
+     * @param vertices - Vertex data.
+     * @param count - Number of floats to copy.
+     * @return - The new buffer, uploaded on its first bind.
+     */
+    public GpuBuffer createStaticVertices(float[] vertices, int count) {
+        FloatBuffer data = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        data.put(vertices, 0, count).position(0);
+        return createStatic(GLES20.GL_ARRAY_BUFFER, data);
+    }
+
+    /**
+     * Copies indices into a new direct buffer and creates a static
+     * GL_ELEMENT_ARRAY_BUFFER from it.
+     *
+     * @param indices - Index data.
+     * @param count - Number of indices to copy.
+     * @return - The new buffer, uploaded on its first bind.
+     */
+    public GpuBuffer createStaticIndices(short[] indices, int count) {
+        ShortBuffer data = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        data.put(indices, 0, count).position(0);
+        return createStatic(GLES20.GL_ELEMENT_ARRAY_BUFFER, data);
+    }
+
+    /**
+     * Creates a buffer for geometry that is updated over time.
+     *
+     * @param target - GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+     * @param usage - GL_DYNAMIC_DRAW for data reused by several draws,
+     * GL_STREAM_DRAW for data replaced every frame.
+     * @return - An empty buffer to be filled with {@link GpuBuffer#update}.
+     */
+    public GpuBuffer createDynamic(int target, int usage) {
+        return add(new GpuBuffer(this, target, usage, null, defaultFormat(target)));
+    }
+
+    /**
+     * @param format - Layout the vertices of meshes are uploaded in from now
+     * on, usually the most compact one the context supports.
+     */
+    public void setMeshFormat(VertexFormat format) {
+        mMeshFormat = format;
+    }
+
+    /**
+     * @return - Layout the vertices of meshes are uploaded in.
+     */
+    public VertexFormat getMeshFormat() {
+        return mMeshFormat;
+    }
+
+    /**
+     * @param mesh - Geometry to upload.
+     * @return - Layout the vertices of the mesh are uploaded in: the mesh
+     * format, or float positions if the mesh has no normals.
+     */
+    public VertexFormat getMeshFormat(Mesh mesh) {
+        return mesh.getNormals() != null ? mMeshFormat : VertexFormat.POSITION_FLOAT;
+    }
+
+    /**
+     * Drops all buffer objects of the previous EGL context. Called from
+     * {@link MyGLRenderer#onSurfaceCreated}; the buffers re-upload themselves
+     * when next bound.
+     */
+    public void invalidate() {
+        mGeneration++;
+    }
+
+    /**
+     * Uploads every buffer with contents into the current EGL context, so
+     * the first frames after a context loss do not upload them one draw at
+     * a time. Must be called on the GL thread after {@link #invalidate()}.
+     *
+     * @return - Number of buffers uploaded.
+     */
+    public synchronized int restore() {
+        int restored = 0;
+        for (int i = 0; i < mBuffers.size(); i++) {
+            if (mBuffers.get(i).restore()) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * @return - Number of buffers currently managed.
+     */
+    public synchronized int size() {
+        return mBuffers.size();
+    }
+
+    /**
+     * @return - Total number of bytes copied to the GPU so far.
+     */
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    void release(GpuBuffer buffer) {
+        synchronized (this) {
+            if (!mBuffers.remove(buffer)) {
+                return;
+            }
+        }
+        if (isCurrent(buffer.getGeneration())) {
+            mName[0] = buffer.getBufferId();
+            mGL.glDeleteBuffers(1, mName, 0);
+        }
+        buffer.forget();
+    }
+
+    int generate() {
+        mGL.glGenBuffers(1, mName, 0);
+        return mName[0];
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    synchronized int nextSortId() {
+        return mNextSortId++;
+    }
+
+    void onUpload(int bytes) {
+        mUploadedBytes += bytes;
+    }
+
+    private static VertexFormat defaultFormat(int target) {
+        // raw vertex data is tightly packed float positions
+        return target == GLES20.GL_ARRAY_BUFFER ? VertexFormat.POSITION_FLOAT : null;
+    }
+
+    private synchronized GpuBuffer add(GpuBuffer buffer) {
+        mBuffers.add(buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,119 @@
+package com.sergej.game;
+
+/**
+ * Registry of every GPU resource the renderer owns, each kept together with
+ * the CPU-side data it was created from: programs with their shader sources
+ * in a {@link ShaderProgramCache}, vertex and index buffers with their
+ * contents in a {@link GpuBufferManager}.
+ *
+ * <p>{@link MyGLSurfaceView} asks Android to keep the EGL context while the
+ * activity is paused, so usually nothing is lost. Where the context is lost
+ * anyway, {@link #onContextCreated()} restores everything in one pass right
+ * away: every program in use is linked again and every buffer uploaded from
+ * the data it kept, without generating a single mesh again. Otherwise the
+ * first frames would do that one shape at a time as they draw them.</p>
+ *
+ * <p>The package has no textures yet; they would be registered and restored
+ * here as well. Apart from setting the listener it must only be used on
+ * the GL thread.</p>
+ */
+public class GpuResources {
+
+    private final ShaderProgramCache mPrograms;
+    private final GpuBufferManager mBuffers;
+    private volatile RestoreListener mRestoreListener;
+
+    private int mContexts;
+    private int mRestoredPrograms;
+    private int mRestoredBuffers;
+    private long mRestoreNanos;
+
+    /**
+     * @param programs - Cache every program is linked by.
+     * @param buffers - Manager every buffer is created by.
+     */
+    public GpuResources(ShaderProgramCache programs, GpuBufferManager buffers) {
+        mPrograms = programs;
+        mBuffers = buffers;
+    }
+
+    public ShaderProgramCache getPrograms() {
+        return mPrograms;
+    }
+
+    public GpuBufferManager getBuffers() {
+        return mBuffers;
+    }
+
+    /**
+     * @param listener - Told how long each restore took; null for none.
+     */
+    public void setRestoreListener(RestoreListener listener) {
+        mRestoreListener = listener;
+    }
+
+    /**
+     * Forgets the GL objects of the previous EGL context and, unless this
+     * is the first context, creates all of them again in the new one. Called
+     * from {@link MyGLRenderer#onSurfaceCreated} after the GL state is reset.
+     */
+    public void onContextCreated() {
+        mPrograms.invalidate();
+        mBuffers.invalidate();
+        if (mContexts++ == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        mRestoredPrograms = mPrograms.restore();
+        mRestoredBuffers = mBuffers.restore();
+        mRestoreNanos = System.nanoTime() - start;
+
+        RestoreListener listener = mRestoreListener;
+        if (listener != null) {
+            listener.onRestored(mRestoredPrograms, mRestoredBuffers, mRestoreNanos);
+        }
+    }
+
+    /**
+     * @return - Number of EGL contexts created so far; more than one means
+     * the context was lost at least once.
+     */
+    public int getContextCount() {
+        return mContexts;
+    }
+
+    /**
+     * @return - Programs linked by the last restore.
+     */
+    public int getRestoredPrograms() {
+        return mRestoredPrograms;
+    }
+
+    /**
+     * @return - Buffers uploaded by the last restore.
+     */
+    public int getRestoredBuffers() {
+        return mRestoredBuffers;
+    }
+
+    /**
+     * @return - Time the last restore took in nanoseconds, 0 before the
+     * first context loss.
+     */
+    public long getRestoreNanos() {
+        return mRestoreNanos;
+    }
+
+    /**
+     * Told about every restore after a context loss.
+     */
+    public interface RestoreListener {
+        /**
+         * @param programs - Programs linked.
+         * @param buffers - Buffers uploaded.
+         * @param nanos - Time the restore took.
+         */
+        void onRestored(int programs, int buffers, long nanos);
+    }
+}
@@ -0,0 +1,114 @@
+package com.sergej.game;
+
+import android.opengl.GLES30;
+
+/**
+ * Measures the GPU time of frames with GL_EXT_disjoint_timer_query. Results
+ * arrive a few frames late, so the queries of several frames are kept in
+ * flight and read back once available, never stalling the pipeline.
+ *
+ * <p>Must only be used on the GL thread, and only if
+ * {@link GLCapabilities#hasTimerQuery()}.</p>
+ */
+public class GpuTimer {
+
+    static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    // frames a result may take to arrive before the query is reused
+    private static final int QUERIES = 4;
+
+    private final GL mGL;
+    private final int[] mQueries = new int[QUERIES];
+    private final int[] mValue = new int[1];
+
+    // queries in flight are mFirst .. mFirst + mPending - 1, modulo QUERIES
+    private int mFirst;
+    private int mPending;
+    private boolean mRunning;
+    private boolean mCreated;
+
+    /**
+     * @param gl - GL of a context with timer queries.
+     */
+    public GpuTimer(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * Starts timing the GL commands of a frame. Skips the frame if all
+     * queries are still in flight.
+     */
+    public void begin() {
+        if (!mCreated) {
+            mGL.glGenQueries(QUERIES, mQueries, 0);
+            mCreated = true;
+        }
+        if (mPending == QUERIES) {
+            return;
+        }
+        mGL.glBeginQuery(GL_TIME_ELAPSED_EXT, mQueries[(mFirst + mPending) % QUERIES]);
+        mRunning = true;
+    }
+
+    /**
+     * Stops timing the frame started by {@link #begin()}.
+     */
+    public void end() {
+        if (!mRunning) {
+            return;
+        }
+        mGL.glEndQuery(GL_TIME_ELAPSED_EXT);
+        mRunning = false;
+        mPending++;
+    }
+
+    /**
+     * Reads back the oldest finished frames.
+     *
+     * @return - GPU time of the newest finished frame in nanoseconds, or -1
+     * if no frame finished or the timings were disturbed, for example by a
+     * change of the GPU clock.
+     */
+    public long poll() {
+        long result = -1;
+        while (mPending > 0) {
+            int query = mQueries[mFirst];
+            mGL.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, mValue, 0);
+            if (mValue[0] == 0) {
+                break;
+            }
+            mGL.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, mValue, 0);
+            result = mValue[0] & 0xFFFFFFFFL;
+            mFirst = (mFirst + 1) % QUERIES;
+            mPending--;
+        }
+
+        // a disjoint operation makes every result in flight meaningless
+        mGL.glGetIntegerv(GL_GPU_DISJOINT_EXT, mValue, 0);
+        return mValue[0] != 0 ? -1 : result;
+    }
+
+    /**
+     * Forgets the queries, for example because the EGL context was lost.
+     */
+    public void invalidate() {
+        mCreated = false;
+        mRunning = false;
+        mPending = 0;
+        mFirst = 0;
+    }
+
+    /**
+     * Deletes the queries. The timer can be used again afterwards.
+     */
+    public void release() {
+        if (mCreated) {
+            if (mRunning) {
+                mGL.glEndQuery(GL_TIME_ELAPSED_EXT);
+            }
+            mGL.glDeleteQueries(QUERIES, mQueries, 0);
+        }
+        invalidate();
+    }
+}
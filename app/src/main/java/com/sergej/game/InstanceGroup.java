@@ -0,0 +1,74 @@
+package com.sergej.game;
+
+/**
+ * Many placements of one mesh drawn from a single scene node by an
+ * {@link InstancedRenderer}, so they cost one draw call, or one per uniform
+ * batch on OpenGL ES 2.0, instead of one each.
+ *
+ * <p>The group is culled as a whole by the bounds of all its instances; use
+ * it for placements that are close together, such as the segments of a
+ * pipe. The model matrices are relative to the node the group is drawn
+ * from. Drawing must happen on the GL thread.</p>
+ */
+public class InstanceGroup implements Bounded {
+
+    private final InstancedRenderer mRenderer;
+    private final float[] mInstances;
+    private final int mCount;
+    private final Aabb mBounds = new Aabb();
+
+    /**
+     * @param renderer - Renderer of the mesh the instances place.
+     * @param instances - Packed instances, {@link InstancedRenderer#FLOATS_PER_INSTANCE}
+     * floats each. Kept, must not be modified.
+     * @param count - Number of instances.
+     * @param meshBounds - Bounds of the mesh in object coordinates.
+     */
+    public InstanceGroup(InstancedRenderer renderer, float[] instances, int count, Aabb meshBounds) {
+        mRenderer = renderer;
+        mInstances = instances;
+        mCount = count;
+
+        float[] model = new float[16];
+        Aabb placed = new Aabb();
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(instances, i * InstancedRenderer.FLOATS_PER_INSTANCE, model, 0, 16);
+            mBounds.union(placed.setTransformed(meshBounds, model));
+        }
+    }
+
+    /**
+     * @return - Number of instances.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return - Draw calls issued by the last {@link #draw}.
+     */
+    public int getDrawCalls() {
+        return mRenderer.getDrawCalls();
+    }
+
+    @Override
+    public void getBounds(Aabb out) {
+        out.set(mBounds);
+    }
+
+    /**
+     * @param mvpMatrix - Model View Projection matrix of the node; every
+     * instance adds its own model matrix.
+     */
+    @Override
+    public void draw(float[] mvpMatrix) {
+        mRenderer.draw(mvpMatrix, mInstances, mCount);
+    }
+
+    /**
+     * Deletes the buffers of the renderer and gives its program back.
+     */
+    public void release() {
+        mRenderer.release();
+    }
+}
@@ -0,0 +1,283 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws many copies of one mesh that differ only by model matrix and color,
+ * such as the segments of a pipe.
+ *
+ * <p>Instances are passed as one packed float array, {@link #FLOATS_PER_INSTANCE}
+ * floats each: the column-major model matrix followed by the RGBA color.
+ * On OpenGL ES 3.0 all instances are drawn with a single
+ * glDrawElementsInstanced. On OpenGL ES 2.0 the mesh is replicated in the
+ * vertex buffer and every copy reads its transform from uniform arrays, so
+ * one glDrawElements draws as many instances as the uniform storage holds.
+ * {@link InstanceGroup} draws the instances from a scene node.</p>
+ */
+public class InstancedRenderer {
+
+    // model matrix followed by the color
+    public static final int FLOATS_PER_INSTANCE = 16 + 4;
+
+    // attribute locations fixed by the layout qualifiers of Shaders.INSTANCED_VERTEX
+    private static final int POSITION_LOCATION = 0;
+    private static final int MODEL_LOCATION = 1;
+    private static final int COLOR_LOCATION = 5;
+
+    // uniform vectors used per instance (mat4 + vec4) and by uVPMatrix
+    private static final int VECTORS_PER_INSTANCE = 5;
+    private static final int RESERVED_VECTORS = 4;
+
+    // upper bound of the uniform arrays, keeps shader compile times sane
+    private static final int MAX_BATCH = 64;
+
+    private static final int BYTES_PER_FLOAT = 4;
+
+    private final GL mGL;
+    private final ShaderProgramCache mPrograms;
+    private final boolean mHardware;
+    private final String mVertexShaderCode;
+    private final String mFragmentShaderCode;
+
+    private final GpuBuffer mVertices;
+    private final GpuBuffer mIndices;
+    private final int mIndexCount;
+
+    // OpenGL ES 2.0 path
+    private final int mBatchSize;
+    private final float[] mModels;
+    private final float[] mColors;
+
+    // OpenGL ES 3.0 path
+    private GpuBuffer mInstanceBuffer;
+    private FloatBuffer mInstanceData;
+
+    private ShaderProgram mProgram;
+    private int mVPMatrixHandle;
+    private int mModelHandle;
+    private int mColorHandle;
+    private int mPositionHandle;
+    private int mInstanceHandle;
+
+    private int mDrawCalls;
+
+    /**
+     * @param programs - Cache the instancing program is taken from.
+     * @param buffers - Manager the mesh and instance buffers are created by.
+     * @param capabilities - Capabilities of the current context.
+     * @param mesh - The geometry every instance draws.
+     */
+    public InstancedRenderer(ShaderProgramCache programs, GpuBufferManager buffers,
+            GLCapabilities capabilities, Mesh mesh) {
+        mGL = programs.getGL();
+        mPrograms = programs;
+        mHardware = capabilities.hasInstancing();
+        mIndexCount = mesh.getIndexCount();
+
+        if (mHardware) {
+            mBatchSize = Integer.MAX_VALUE;
+            mModels = null;
+            mColors = null;
+            mVertexShaderCode = Shaders.INSTANCED_VERTEX;
+            mFragmentShaderCode = Shaders.INSTANCED_FRAGMENT;
+
+            mVertices = buffers.createStaticVertices(mesh.getVertices(),
+                    mesh.getVertexCount() * Mesh.COORDS_PER_VERTEX);
+            mIndices = buffers.createStaticIndices(mesh.getIndices(), mIndexCount);
+            mInstanceBuffer = buffers.createDynamic(GLES20.GL_ARRAY_BUFFER, GLES20.GL_STREAM_DRAW);
+        } else {
+            int batch = (capabilities.getMaxVertexUniformVectors() - RESERVED_VECTORS) / VECTORS_PER_INSTANCE;
+            batch = Math.min(batch, MAX_BATCH);
+            // the replicated copies must still be addressable with 16 bit indices
+            batch = Math.min(batch, StaticBatchBuilder.MAX_VERTICES / Math.max(1, mesh.getVertexCount()));
+            mBatchSize = Math.max(1, batch);
+
+            mModels = new float[16 * mBatchSize];
+            mColors = new float[4 * mBatchSize];
+            mVertexShaderCode = Shaders.pseudoInstancedVertex(mBatchSize);
+            mFragmentShaderCode = Shaders.PSEUDO_INSTANCED_FRAGMENT;
+
+            mVertices = buffers.createStaticVertices(replicateVertices(mesh, mBatchSize),
+                    mesh.getVertexCount() * 4 * mBatchSize);
+            mIndices = buffers.createStaticIndices(replicateIndices(mesh, mBatchSize), mIndexCount * mBatchSize);
+        }
+
+        acquire();
+    }
+
+    /**
+     * @return - Number of draw calls issued by the last {@link #draw}.
+     */
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    /**
+     * @return - Instances drawn by one call on the OpenGL ES 2.0 path.
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * Draws the given instances.
+     *
+     * @param vpMatrix - The View Projection matrix.
+     * @param instances - Packed instance data, {@link #FLOATS_PER_INSTANCE}
+     * floats per instance.
+     * @param count - Number of instances to draw.
+     */
+    public void draw(float[] vpMatrix, float[] instances, int count) {
+        mDrawCalls = 0;
+        if (count == 0) {
+            return;
+        }
+
+        if (!mProgram.isValid()) {
+            // the EGL context was lost, link the program again in the new one
+            acquire();
+        }
+
+        mGL.glUseProgram(mProgram.getId());
+        mGL.glUniformMatrix4fv(mVPMatrixHandle, 1, false, vpMatrix, 0);
+
+        if (mHardware) {
+            drawInstanced(instances, count);
+        } else {
+            drawPseudoInstanced(instances, count);
+        }
+    }
+
+    /**
+     * Deletes the buffers and gives the program back.
+     */
+    public void release() {
+        mVertices.release();
+        mIndices.release();
+        if (mInstanceBuffer != null) {
+            mInstanceBuffer.release();
+        }
+        mProgram.release();
+    }
+
+    private void drawInstanced(float[] instances, int count) {
+        int floats = count * FLOATS_PER_INSTANCE;
+        if (mInstanceData == null || mInstanceData.capacity() < floats) {
+            // grow geometrically so a slowly growing scene does not allocate every frame
+            int capacity = Math.max(floats, mInstanceData == null ? 0 : 2 * mInstanceData.capacity());
+            mInstanceData = ByteBuffer.allocateDirect(capacity * BYTES_PER_FLOAT)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        mInstanceData.clear();
+        mInstanceData.put(instances, 0, floats).flip();
+
+        mInstanceBuffer.update(mInstanceData);
+        mInstanceBuffer.bind();
+
+        int stride = FLOATS_PER_INSTANCE * BYTES_PER_FLOAT;
+        for (int column = 0; column < 4; column++) {
+            int location = MODEL_LOCATION + column;
+            mGL.glEnableVertexAttribArray(location);
+            mGL.glVertexAttribPointer(location, 4, GLES20.GL_FLOAT, false, stride, column * 4 * BYTES_PER_FLOAT);
+            mGL.glVertexAttribDivisor(location, 1);
+        }
+        mGL.glEnableVertexAttribArray(COLOR_LOCATION);
+        mGL.glVertexAttribPointer(COLOR_LOCATION, 4, GLES20.GL_FLOAT, false, stride, 16 * BYTES_PER_FLOAT);
+        mGL.glVertexAttribDivisor(COLOR_LOCATION, 1);
+
+        mVertices.bind();
+        mGL.glEnableVertexAttribArray(POSITION_LOCATION);
+        mGL.glVertexAttribPointer(POSITION_LOCATION, Mesh.COORDS_PER_VERTEX, GLES20.GL_FLOAT, false,
+                Mesh.COORDS_PER_VERTEX * BYTES_PER_FLOAT, 0);
+
+        mIndices.bind();
+        mGL.glDrawElementsInstanced(GLES20.GL_TRIANGLES, mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0, count);
+        mDrawCalls = 1;
+
+        // divisors are vertex array state, reset them for the other programs
+        for (int location = MODEL_LOCATION; location <= COLOR_LOCATION; location++) {
+            mGL.glVertexAttribDivisor(location, 0);
+            mGL.glDisableVertexAttribArray(location);
+        }
+        mGL.glDisableVertexAttribArray(POSITION_LOCATION);
+    }
+
+    private void drawPseudoInstanced(float[] instances, int count) {
+        // x, y, z and the instance index
+        int stride = 4 * BYTES_PER_FLOAT;
+
+        mVertices.bind();
+        mGL.glEnableVertexAttribArray(mPositionHandle);
+        mGL.glVertexAttribPointer(mPositionHandle, Mesh.COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, stride, 0);
+        mGL.glEnableVertexAttribArray(mInstanceHandle);
+        mGL.glVertexAttribPointer(mInstanceHandle, 1, GLES20.GL_FLOAT, false, stride,
+                Mesh.COORDS_PER_VERTEX * BYTES_PER_FLOAT);
+
+        mIndices.bind();
+
+        for (int first = 0; first < count; first += mBatchSize) {
+            int batch = Math.min(mBatchSize, count - first);
+
+            // split the packed instances into the two uniform arrays
+            for (int i = 0; i < batch; i++) {
+                int src = (first + i) * FLOATS_PER_INSTANCE;
+                System.arraycopy(instances, src, mModels, i * 16, 16);
+                System.arraycopy(instances, src + 16, mColors, i * 4, 4);
+            }
+
+            mGL.glUniformMatrix4fv(mModelHandle, batch, false, mModels, 0);
+            mGL.glUniform4fv(mColorHandle, batch, mColors, 0);
+            mGL.glDrawElements(GLES20.GL_TRIANGLES, batch * mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+            mDrawCalls++;
+        }
+
+        mGL.glDisableVertexAttribArray(mPositionHandle);
+        mGL.glDisableVertexAttribArray(mInstanceHandle);
+    }
+
+    private void acquire() {
+        mProgram = mPrograms.acquire(mVertexShaderCode, mFragmentShaderCode);
+        mVPMatrixHandle = mProgram.getUniformLocation("uVPMatrix");
+
+        if (!mHardware) {
+            mModelHandle = mProgram.getUniformLocation("uModel");
+            mColorHandle = mProgram.getUniformLocation("uColor");
+            mPositionHandle = mProgram.getAttribLocation("vPosition");
+            mInstanceHandle = mProgram.getAttribLocation("aInstance");
+        }
+    }
+
+    private static float[] replicateVertices(Mesh mesh, int copies) {
+        int count = mesh.getVertexCount();
+        float[] src = mesh.getVertices();
+        float[] vertices = new float[count * 4 * copies];
+
+        for (int copy = 0, dst = 0; copy < copies; copy++) {
+            for (int i = 0; i < count; i++, dst += 4) {
+                vertices[dst]     = src[i * 3];
+                vertices[dst + 1] = src[i * 3 + 1];
+                vertices[dst + 2] = src[i * 3 + 2];
+                vertices[dst + 3] = copy;
+            }
+        }
+        return vertices;
+    }
+
+    private static short[] replicateIndices(Mesh mesh, int copies) {
+        int count = mesh.getIndexCount();
+        short[] src = mesh.getIndices();
+        short[] indices = new short[count * copies];
+
+        for (int copy = 0; copy < copies; copy++) {
+            int base = copy * mesh.getVertexCount();
+            for (int i = 0; i < count; i++) {
+                indices[copy * count + i] = (short) (src[i] + base);
+            }
+        }
+        return indices;
+    }
+}
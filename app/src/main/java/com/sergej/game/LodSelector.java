@@ -0,0 +1,118 @@
+package com.sergej.game;
+
+/**
+ * Picks the tessellation level of curved geometry from its size on screen.
+ *
+ * <p>Level 0 is the coarsest. Each level has a number of slices per full
+ * turn, and level i + 1 is used once the projected radius of the object
+ * reaches thresholds[i] pixels. To keep objects near a threshold from popping
+ * between two levels every frame, a level is only entered above
+ * threshold * (1 + hysteresis) and only left below threshold * (1 - hysteresis).</p>
+ */
+public class LodSelector {
+
+    private static final LodSelector sDefault = new LodSelector(
+            new int[] { 8, 16, 32, 64 }, new float[] { 40f, 120f, 320f }, 0.15f);
+
+    private final int[] mSlicesPerTurn;
+    private final float[] mThresholds;
+    private final float mHysteresis;
+
+    /**
+     * @param slicesPerTurn - Slices of a full turn for every level, coarsest first.
+     * @param thresholds - Projected radius in pixels where each finer level
+     * starts, ascending, one less than there are levels.
+     * @param hysteresis - Fraction of a threshold the radius must pass it by
+     * before the level changes.
+     */
+    public LodSelector(int[] slicesPerTurn, float[] thresholds, float hysteresis) {
+        if (slicesPerTurn.length == 0 || thresholds.length != slicesPerTurn.length - 1) {
+            throw new IllegalArgumentException("Need one threshold less than the "
+                    + slicesPerTurn.length + " levels, got " + thresholds.length);
+        }
+        mSlicesPerTurn = slicesPerTurn.clone();
+        mThresholds = thresholds.clone();
+        mHysteresis = hysteresis;
+    }
+
+    /**
+     * @return - Four levels from 8 to 64 slices per turn.
+     */
+    public static LodSelector getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * @param slicesPerTurn - Slices of a full turn.
+     * @return - A selector with a single level, for fixed tessellation.
+     */
+    public static LodSelector fixed(int slicesPerTurn) {
+        return new LodSelector(new int[] { slicesPerTurn }, new float[0], 0f);
+    }
+
+    public int getLevelCount() {
+        return mSlicesPerTurn.length;
+    }
+
+    /**
+     * @return - Slices of a full turn at the given level.
+     */
+    public int getSlicesPerTurn(int level) {
+        return mSlicesPerTurn[level];
+    }
+
+    /**
+     * @return - Segments of an arc between two angles at the given level, at least one.
+     */
+    public int getSegments(int level, float angleFrom, float angleTo) {
+        double turns = Math.abs(angleTo - angleFrom) / (2 * Math.PI);
+        // round away float noise before taking the ceiling
+        return Math.max(1, (int) Math.ceil(turns * mSlicesPerTurn[level] - 1e-4));
+    }
+
+    /**
+     * @param current - Level the object was drawn with in the previous frame.
+     * @param projectedRadius - Radius of the object on screen in pixels.
+     * @return - Level to draw the object with in this frame.
+     */
+    public int select(int current, float projectedRadius) {
+        int level = Math.min(Math.max(current, 0), mSlicesPerTurn.length - 1);
+
+        while (level < mThresholds.length && projectedRadius >= mThresholds[level] * (1 + mHysteresis)) {
+            level++;
+        }
+        while (level > 0 && projectedRadius < mThresholds[level - 1] * (1 - mHysteresis)) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * Projects a bounding sphere around the object origin to the screen.
+     *
+     * @param modelView - View matrix times model matrix of the object.
+     * @param projection - Perspective projection matrix, as set by frustumM
+     * or perspectiveM.
+     * @param viewportHeight - Viewport height in pixels.
+     * @param radius - Bounding radius in object coordinates.
+     * @return - Radius in pixels, or positive infinity if the center is at
+     * or behind the eye.
+     */
+    public static float projectedRadius(float[] modelView, float[] projection, float viewportHeight, float radius) {
+        // the eye looks down -z, so the depth is the negated z of the center
+        float depth = -modelView[14];
+        if (depth <= 1e-6f) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        // largest axis scale of the model view matrix
+        float scale = (float) Math.sqrt(Math.max(columnLengthSquared(modelView, 0),
+                Math.max(columnLengthSquared(modelView, 4), columnLengthSquared(modelView, 8))));
+
+        return radius * scale * projection[5] * 0.5f * viewportHeight / depth;
+    }
+
+    private static float columnLengthSquared(float[] m, int offset) {
+        return m[offset] * m[offset] + m[offset + 1] * m[offset + 1] + m[offset + 2] * m[offset + 2];
+    }
+}
@@ -18,9 +18,15 @@ package com.sergej.game;
 import android.app.Activity;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
 
 public class MainActivity extends Activity {
 
+    // ten seconds at 60 fps
+    private static final int PROFILER_FRAMES = 600;
+
     private GLSurfaceView mGLView;
 
     @Override
@@ -29,8 +35,22 @@ public class MainActivity extends Activity {
 
         // Create a GLSurfaceView instance and set it
         // as the ContentView for this Activity
-        mGLView = new MyGLSurfaceView(this);
-        setContentView(mGLView);
+        MyGLSurfaceView view = new MyGLSurfaceView(this);
+        mGLView = view;
+        if (!BuildConfig.DEBUG) {
+            setContentView(mGLView);
+            return;
+        }
+
+        // Debug builds show the frame timings on top of the scene
+        FrameProfiler profiler = new FrameProfiler(PROFILER_FRAMES);
+        view.getRenderer().setProfiler(profiler);
+
+        FrameLayout layout = new FrameLayout(this);
+        layout.addView(mGLView);
+        layout.addView(new ProfilerOverlay(this, profiler), new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.START));
+        setContentView(layout);
     }
 
     @Override
@@ -51,4 +71,13 @@ public class MainActivity extends Activity {
         // this is a good place to re-allocate them.
         mGLView.onResume();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The simulation thread and the mesh workers outlive the view,
+        // stop them so they do not keep the renderer and its scene alive
+        // each time the Activity is recreated.
+        ((MyGLSurfaceView) mGLView).getRenderer().release();
+    }
 }
@@ -0,0 +1,172 @@
+package com.sergej.game;
+
+/**
+ * Pure Java 4x4 matrix helpers using the same column-major layout as
+ * {@link android.opengl.Matrix}, for code that must also run in JVM tests.
+ * None of them allocate, so they are safe to call in the frame loop.
+ */
+public final class Matrix4 {
+
+    private Matrix4() {
+    }
+
+    /**
+     * Transforms a point by an affine matrix, ignoring the projective row.
+     *
+     * @param m - Column-major 4x4 matrix.
+     * @param src - Array holding the x, y, z of the point.
+     * @param srcOffset - Index of x in src.
+     * @param dst - Array receiving the transformed x, y, z. May be src.
+     * @param dstOffset - Index of x in dst.
+     */
+    public static void transformPoint(float[] m, float[] src, int srcOffset, float[] dst, int dstOffset) {
+        float x = src[srcOffset];
+        float y = src[srcOffset + 1];
+        float z = src[srcOffset + 2];
+
+        dst[dstOffset]     = m[0] * x + m[4] * y + m[8]  * z + m[12];
+        dst[dstOffset + 1] = m[1] * x + m[5] * y + m[9]  * z + m[13];
+        dst[dstOffset + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+    }
+
+    /**
+     * Sets m to the identity matrix.
+     */
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = 0;
+        }
+        m[0] = m[5] = m[10] = m[15] = 1;
+    }
+
+    /**
+     * Multiplies two matrices, result = lhs * rhs.
+     *
+     * @param result - Receives the product. Must be neither lhs nor rhs.
+     * @param lhs - Left hand side matrix.
+     * @param rhs - Right hand side matrix.
+     */
+    public static void multiply(float[] result, float[] lhs, float[] rhs) {
+        for (int column = 0; column < 4; column++) {
+            float r0 = rhs[column * 4];
+            float r1 = rhs[column * 4 + 1];
+            float r2 = rhs[column * 4 + 2];
+            float r3 = rhs[column * 4 + 3];
+
+            for (int row = 0; row < 4; row++) {
+                result[column * 4 + row] = lhs[row] * r0 + lhs[4 + row] * r1
+                        + lhs[8 + row] * r2 + lhs[12 + row] * r3;
+            }
+        }
+    }
+
+    /**
+     * Sets m to a rotation around an axis, like {@link android.opengl.Matrix#setRotateM}.
+     *
+     * @param m - Receives the rotation.
+     * @param degrees - Angle of the rotation in degrees.
+     * @param x - x of the axis.
+     * @param y - y of the axis.
+     * @param z - z of the axis.
+     */
+    public static void setRotate(float[] m, float degrees, float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+
+        double radians = Math.toRadians(degrees);
+        float s = (float) Math.sin(radians);
+        float c = (float) Math.cos(radians);
+        float nc = 1 - c;
+
+        m[0] = x * x * nc + c;
+        m[1] = y * x * nc + z * s;
+        m[2] = x * z * nc - y * s;
+        m[3] = 0;
+        m[4] = x * y * nc - z * s;
+        m[5] = y * y * nc + c;
+        m[6] = y * z * nc + x * s;
+        m[7] = 0;
+        m[8] = x * z * nc + y * s;
+        m[9] = y * z * nc - x * s;
+        m[10] = z * z * nc + c;
+        m[11] = 0;
+        m[12] = m[13] = m[14] = 0;
+        m[15] = 1;
+    }
+
+    /**
+     * Sets m to a view matrix, like {@link android.opengl.Matrix#setLookAtM}.
+     *
+     * @param m - Receives the view matrix.
+     */
+    public static void setLookAt(float[] m, float eyeX, float eyeY, float eyeZ,
+            float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        // forward
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        float rlf = 1 / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // side = forward x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        float rls = 1 / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+
+        // recomputed up = side x forward
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+
+        m[0] = sx;
+        m[1] = ux;
+        m[2] = -fx;
+        m[3] = 0;
+        m[4] = sy;
+        m[5] = uy;
+        m[6] = -fy;
+        m[7] = 0;
+        m[8] = sz;
+        m[9] = uz;
+        m[10] = -fz;
+        m[11] = 0;
+        m[12] = -(sx * eyeX + sy * eyeY + sz * eyeZ);
+        m[13] = -(ux * eyeX + uy * eyeY + uz * eyeZ);
+        m[14] = fx * eyeX + fy * eyeY + fz * eyeZ;
+        m[15] = 1;
+    }
+
+    /**
+     * Sets m to a perspective projection, like {@link android.opengl.Matrix#frustumM}.
+     *
+     * @param m - Receives the projection.
+     */
+    public static void frustum(float[] m, float left, float right, float bottom, float top, float near, float far) {
+        float width = 1 / (right - left);
+        float height = 1 / (top - bottom);
+        float depth = 1 / (near - far);
+
+        m[0] = 2 * near * width;
+        m[1] = m[2] = m[3] = 0;
+        m[4] = 0;
+        m[5] = 2 * near * height;
+        m[6] = m[7] = 0;
+        m[8] = (right + left) * width;
+        m[9] = (top + bottom) * height;
+        m[10] = (far + near) * depth;
+        m[11] = -1;
+        m[12] = m[13] = 0;
+        m[14] = 2 * far * near * depth;
+        m[15] = 0;
+    }
+}
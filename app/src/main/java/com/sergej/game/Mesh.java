@@ -0,0 +1,93 @@
+package com.sergej.game;
+
+/**
+ * CPU-side triangle geometry: tightly packed x, y, z positions, optionally
+ * unit normals in the same layout, and the indices of the triangles drawn
+ * from them. The arrays are shared, not copied, and must not be modified
+ * once the mesh is handed out.
+ */
+public class Mesh {
+
+    // number of coordinates per vertex in the vertex array
+    public static final int COORDS_PER_VERTEX = 3;
+
+    private final float[] mVertices;
+    private final float[] mNormals;
+    private final short[] mIndices;
+    private final int mVertexCount;
+    private final int mIndexCount;
+
+    // computed on first use, the arrays never change
+    private Aabb mBounds;
+
+    public Mesh(float[] vertices, short[] indices) {
+        this(vertices, null, indices);
+    }
+
+    /**
+     * @param vertices - Positions.
+     * @param normals - Normals of the vertices, or null.
+     * @param indices - Triangle list indices.
+     */
+    public Mesh(float[] vertices, float[] normals, short[] indices) {
+        this(vertices, normals, vertices.length / COORDS_PER_VERTEX, indices, indices.length);
+    }
+
+    /**
+     * Wraps arrays that may be larger than the geometry they hold, such as
+     * preallocated scratch arrays.
+     *
+     * @param vertices - Positions, at least vertexCount * 3 floats.
+     * @param vertexCount - Number of vertices used.
+     * @param indices - Triangle list indices, at least indexCount shorts.
+     * @param indexCount - Number of indices used.
+     */
+    public Mesh(float[] vertices, int vertexCount, short[] indices, int indexCount) {
+        this(vertices, null, vertexCount, indices, indexCount);
+    }
+
+    private Mesh(float[] vertices, float[] normals, int vertexCount, short[] indices, int indexCount) {
+        mVertices = vertices;
+        mNormals = normals;
+        mVertexCount = vertexCount;
+        mIndices = indices;
+        mIndexCount = indexCount;
+    }
+
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    /**
+     * @return - Unit normals, three floats per vertex, or null.
+     */
+    public float[] getNormals() {
+        return mNormals;
+    }
+
+    public short[] getIndices() {
+        return mIndices;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    public int getIndexCount() {
+        return mIndexCount;
+    }
+
+    /**
+     * @return - Bounds of the vertices in object coordinates. Must not be modified.
+     */
+    public Aabb getBounds() {
+        if (mBounds == null) {
+            Aabb bounds = new Aabb();
+            for (int i = 0; i < mVertexCount * COORDS_PER_VERTEX; i += COORDS_PER_VERTEX) {
+                bounds.include(mVertices[i], mVertices[i + 1], mVertices[i + 2]);
+            }
+            mBounds = bounds;
+        }
+        return mBounds;
+    }
+}
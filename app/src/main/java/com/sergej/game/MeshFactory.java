@@ -0,0 +1,461 @@
+package com.sergej.game;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates the curved geometry of the scene: tube walls, annuli (flat
+ * rings), discs and partial arcs of each.
+ *
+ * <p>The static fill methods write into arrays provided by the caller, so
+ * they can be used with preallocated or pooled storage. The instance methods
+ * size the arrays exactly and memoize the result by its parameters in a
+ * bounded LRU cache, so identical segments share one {@link Mesh}. Those
+ * meshes are reordered by {@link MeshOptimizer} before they are cached, so
+ * their vertices are not in the order the fill methods describe.</p>
+ *
+ * <p>An arc covering a full turn is closed: its last slice reuses the
+ * vertices of the first. A partial arc has one more column of vertices than
+ * it has segments. All triangles are counter-clockwise when seen from the
+ * side they face. The points of each column are stepped around the circle
+ * by a {@link UnitCircle}, not computed with Math.cos and Math.sin per
+ * vertex.</p>
+ */
+public class MeshFactory {
+
+    private static final float FULL_TURN = 2 * (float) Math.PI;
+
+    // tolerance for float angles meant to describe a full turn
+    private static final float EPSILON = 1e-5f;
+
+    private static final int TUBE = 0;
+    private static final int ANNULUS = 1;
+    private static final int DISC = 2;
+
+    private static final MeshFactory sShared = new MeshFactory(256);
+
+    private final Map<Key, Mesh> mCache;
+
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param capacity - Most meshes kept in the cache.
+     */
+    public MeshFactory(final int capacity) {
+        // access-ordered, so the eldest entry is the least recently used one
+        mCache = new LinkedHashMap<Key, Mesh>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Mesh> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return - The factory shared by all shapes.
+     */
+    public static MeshFactory shared() {
+        return sShared;
+    }
+
+    /**
+     * A tube wall around the z axis.
+     *
+     * @param radius - Radius of the wall.
+     * @param bottom - z of the lower edge.
+     * @param top - z of the upper edge.
+     * @param angleFrom - Start angle in radians.
+     * @param angleTo - End angle in radians.
+     * @param segments - Number of slices between the two angles.
+     * @param outward - true if the wall faces away from the axis.
+     * @return - The shared mesh.
+     */
+    public synchronized Mesh tube(float radius, float bottom, float top,
+            float angleFrom, float angleTo, int segments, boolean outward) {
+        Key key = new Key(TUBE, segments, outward, radius, bottom, top, angleFrom, angleTo);
+        Mesh mesh = lookup(key);
+        if (mesh == null) {
+            boolean closed = isClosed(angleFrom, angleTo);
+            float[] vertices = new float[stripVertexCount(segments, closed) * Mesh.COORDS_PER_VERTEX];
+            float[] normals = new float[vertices.length];
+            short[] indices = new short[stripIndexCount(segments)];
+            fillTube(vertices, normals, 0, indices, 0, radius, bottom, top, angleFrom, angleTo, segments, outward);
+            mesh = store(key, MeshOptimizer.optimize(new Mesh(vertices, normals, indices)));
+        }
+        return mesh;
+    }
+
+    /**
+     * A flat ring in a plane of constant z.
+     *
+     * @param innerRadius - Radius of the hole.
+     * @param outerRadius - Radius of the outer edge.
+     * @param z - Height of the plane.
+     * @param angleFrom - Start angle in radians.
+     * @param angleTo - End angle in radians.
+     * @param segments - Number of slices between the two angles.
+     * @param up - true if the ring faces +z.
+     * @return - The shared mesh.
+     */
+    public synchronized Mesh annulus(float innerRadius, float outerRadius, float z,
+            float angleFrom, float angleTo, int segments, boolean up) {
+        Key key = new Key(ANNULUS, segments, up, innerRadius, outerRadius, z, angleFrom, angleTo);
+        Mesh mesh = lookup(key);
+        if (mesh == null) {
+            boolean closed = isClosed(angleFrom, angleTo);
+            float[] vertices = new float[stripVertexCount(segments, closed) * Mesh.COORDS_PER_VERTEX];
+            float[] normals = new float[vertices.length];
+            short[] indices = new short[stripIndexCount(segments)];
+            fillAnnulus(vertices, normals, 0, indices, 0, innerRadius, outerRadius, z, angleFrom, angleTo, segments, up);
+            mesh = store(key, MeshOptimizer.optimize(new Mesh(vertices, normals, indices)));
+        }
+        return mesh;
+    }
+
+    /**
+     * A filled circle or circular sector in a plane of constant z.
+     *
+     * @param radius - Radius of the disc.
+     * @param z - Height of the plane.
+     * @param angleFrom - Start angle in radians.
+     * @param angleTo - End angle in radians.
+     * @param segments - Number of slices between the two angles.
+     * @param up - true if the disc faces +z.
+     * @return - The shared mesh.
+     */
+    public synchronized Mesh disc(float radius, float z, float angleFrom, float angleTo, int segments, boolean up) {
+        Key key = new Key(DISC, segments, up, radius, z, angleFrom, angleTo);
+        Mesh mesh = lookup(key);
+        if (mesh == null) {
+            boolean closed = isClosed(angleFrom, angleTo);
+            float[] vertices = new float[fanVertexCount(segments, closed) * Mesh.COORDS_PER_VERTEX];
+            float[] normals = new float[vertices.length];
+            short[] indices = new short[fanIndexCount(segments)];
+            fillDisc(vertices, normals, 0, indices, 0, radius, z, angleFrom, angleTo, segments, up);
+            mesh = store(key, MeshOptimizer.optimize(new Mesh(vertices, normals, indices)));
+        }
+        return mesh;
+    }
+
+    /**
+     * @return - Number of meshes currently cached.
+     */
+    public synchronized int size() {
+        return mCache.size();
+    }
+
+    /**
+     * @return - Number of requests served from the cache.
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return - Number of requests that generated a new mesh.
+     */
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return - true if the angles describe a full turn.
+     */
+    public static boolean isClosed(float angleFrom, float angleTo) {
+        return Math.abs(angleTo - angleFrom) >= FULL_TURN - EPSILON;
+    }
+
+    /**
+     * Grows a box to contain a circular arc, extruded between two heights.
+     * Exact for any tessellation of the arc, since the vertices lie on it.
+     *
+     * @param out - Box to grow.
+     * @param radius - Radius of the arc.
+     * @param angleFrom - Start angle in radians.
+     * @param angleTo - End angle in radians.
+     * @param zMin - Lower height.
+     * @param zMax - Upper height.
+     */
+    public static void includeArc(Aabb out, float radius, float angleFrom, float angleTo, float zMin, float zMax) {
+        float from = Math.min(angleFrom, angleTo), to = Math.max(angleFrom, angleTo);
+        if (to - from >= FULL_TURN - EPSILON) {
+            out.include(-radius, -radius, zMin).include(radius, radius, zMax);
+            return;
+        }
+
+        includeArcPoint(out, radius, from, zMin, zMax);
+        includeArcPoint(out, radius, to, zMin, zMax);
+
+        // the extremes along x and y lie at multiples of a quarter turn
+        double quarter = Math.PI / 2;
+        for (double a = Math.ceil(from / quarter) * quarter; a <= to; a += quarter) {
+            includeArcPoint(out, radius, a, zMin, zMax);
+        }
+    }
+
+    private static void includeArcPoint(Aabb out, float radius, double angle, float zMin, float zMax) {
+        float x = radius * (float) Math.cos(angle);
+        float y = radius * (float) Math.sin(angle);
+        out.include(x, y, zMin).include(x, y, zMax);
+    }
+
+    /**
+     * @return - Vertices of a tube or annulus: two per column.
+     */
+    public static int stripVertexCount(int segments, boolean closed) {
+        return 2 * (closed ? segments : segments + 1);
+    }
+
+    /**
+     * @return - Indices of a tube or annulus: two triangles per segment.
+     */
+    public static int stripIndexCount(int segments) {
+        return 6 * segments;
+    }
+
+    /**
+     * @return - Vertices of a disc: the center and one per rim column.
+     */
+    public static int fanVertexCount(int segments, boolean closed) {
+        return 1 + (closed ? segments : segments + 1);
+    }
+
+    /**
+     * @return - Indices of a disc: one triangle per segment.
+     */
+    public static int fanIndexCount(int segments) {
+        return 3 * segments;
+    }
+
+    /**
+     * Writes a tube wall. Vertex 2 * i is the top and 2 * i + 1 the bottom
+     * of column i.
+     *
+     * @return - Number of vertices written.
+     */
+    public static int fillTube(float[] vertices, int vertexOffset, short[] indices, int indexOffset,
+            float radius, float bottom, float top, float angleFrom, float angleTo, int segments, boolean outward) {
+        return fillTube(vertices, null, vertexOffset, indices, indexOffset,
+                radius, bottom, top, angleFrom, angleTo, segments, outward);
+    }
+
+    /**
+     * Writes a tube wall with its normals, which point away from the axis
+     * if the wall faces outward and towards it otherwise.
+     *
+     * @param normals - Receives the normals at the same offsets as the
+     * vertices, or null.
+     * @return - Number of vertices written.
+     */
+    public static int fillTube(float[] vertices, float[] normals, int vertexOffset, short[] indices, int indexOffset,
+            float radius, float bottom, float top, float angleFrom, float angleTo, int segments, boolean outward) {
+        boolean closed = isClosed(angleFrom, angleTo);
+        int columns = closed ? segments : segments + 1;
+        float step = (angleTo - angleFrom) / segments;
+
+        float sign = outward ? 1f : -1f;
+        UnitCircle circle = new UnitCircle(angleFrom, step);
+
+        for (int i = 0; i < columns; i++, circle.next()) {
+            float cos = circle.cos();
+            float sin = circle.sin();
+            float x = radius * cos;
+            float y = radius * sin;
+
+            int offset = vertexOffset + 2 * Mesh.COORDS_PER_VERTEX * i;
+            vertices[offset]     = vertices[offset + 3] = x;
+            vertices[offset + 1] = vertices[offset + 4] = y;
+            vertices[offset + 2] = top;
+            vertices[offset + 5] = bottom;
+
+            if (normals != null) {
+                normals[offset]     = normals[offset + 3] = sign * cos;
+                normals[offset + 1] = normals[offset + 4] = sign * sin;
+                normals[offset + 2] = normals[offset + 5] = 0f;
+            }
+        }
+
+        fillStripIndices(indices, indexOffset, segments, closed, !outward);
+        return 2 * columns;
+    }
+
+    /**
+     * Writes a flat ring. Vertex 2 * i is on the outer and 2 * i + 1 on the
+     * inner edge of column i.
+     *
+     * @return - Number of vertices written.
+     */
+    public static int fillAnnulus(float[] vertices, int vertexOffset, short[] indices, int indexOffset,
+            float innerRadius, float outerRadius, float z, float angleFrom, float angleTo, int segments, boolean up) {
+        return fillAnnulus(vertices, null, vertexOffset, indices, indexOffset,
+                innerRadius, outerRadius, z, angleFrom, angleTo, segments, up);
+    }
+
+    /**
+     * Writes a flat ring with its normals, +z or -z.
+     *
+     * @param normals - Receives the normals at the same offsets as the
+     * vertices, or null.
+     * @return - Number of vertices written.
+     */
+    public static int fillAnnulus(float[] vertices, float[] normals, int vertexOffset, short[] indices,
+            int indexOffset, float innerRadius, float outerRadius, float z, float angleFrom, float angleTo,
+            int segments, boolean up) {
+        boolean closed = isClosed(angleFrom, angleTo);
+        int columns = closed ? segments : segments + 1;
+        float step = (angleTo - angleFrom) / segments;
+
+        UnitCircle circle = new UnitCircle(angleFrom, step);
+        for (int i = 0; i < columns; i++, circle.next()) {
+            float cos = circle.cos();
+            float sin = circle.sin();
+
+            int offset = vertexOffset + 2 * Mesh.COORDS_PER_VERTEX * i;
+            vertices[offset]     = outerRadius * cos;
+            vertices[offset + 1] = outerRadius * sin;
+            vertices[offset + 3] = innerRadius * cos;
+            vertices[offset + 4] = innerRadius * sin;
+            vertices[offset + 2] = vertices[offset + 5] = z;
+        }
+
+        if (normals != null) {
+            fillFlatNormals(normals, vertexOffset, 2 * columns, up);
+        }
+        fillStripIndices(indices, indexOffset, segments, closed, up);
+        return 2 * columns;
+    }
+
+    /**
+     * Writes a disc. Vertex 0 is the center, vertex 1 + i the rim of
+     * column i.
+     *
+     * @return - Number of vertices written.
+     */
+    public static int fillDisc(float[] vertices, int vertexOffset, short[] indices, int indexOffset,
+            float radius, float z, float angleFrom, float angleTo, int segments, boolean up) {
+        return fillDisc(vertices, null, vertexOffset, indices, indexOffset, radius, z, angleFrom, angleTo, segments, up);
+    }
+
+    /**
+     * Writes a disc with its normals, +z or -z.
+     *
+     * @param normals - Receives the normals at the same offsets as the
+     * vertices, or null.
+     * @return - Number of vertices written.
+     */
+    public static int fillDisc(float[] vertices, float[] normals, int vertexOffset, short[] indices, int indexOffset,
+            float radius, float z, float angleFrom, float angleTo, int segments, boolean up) {
+        boolean closed = isClosed(angleFrom, angleTo);
+        int columns = closed ? segments : segments + 1;
+        float step = (angleTo - angleFrom) / segments;
+
+        vertices[vertexOffset] = 0;
+        vertices[vertexOffset + 1] = 0;
+        vertices[vertexOffset + 2] = z;
+
+        UnitCircle circle = new UnitCircle(angleFrom, step);
+        for (int i = 0; i < columns; i++, circle.next()) {
+            int offset = vertexOffset + Mesh.COORDS_PER_VERTEX * (i + 1);
+            vertices[offset]     = radius * circle.cos();
+            vertices[offset + 1] = radius * circle.sin();
+            vertices[offset + 2] = z;
+        }
+
+        for (int i = 0; i < segments; i++) {
+            int offset = indexOffset + 3 * i;
+            short current = (short) (1 + i);
+            short next = (short) (1 + (closed ? (i + 1) % segments : i + 1));
+            indices[offset] = 0;
+            indices[offset + 1] = up ? current : next;
+            indices[offset + 2] = up ? next : current;
+        }
+
+        if (normals != null) {
+            fillFlatNormals(normals, vertexOffset, 1 + columns, up);
+        }
+        return 1 + columns;
+    }
+
+    private static void fillFlatNormals(float[] normals, int offset, int count, boolean up) {
+        for (int i = offset; i < offset + count * Mesh.COORDS_PER_VERTEX; i += Mesh.COORDS_PER_VERTEX) {
+            normals[i] = 0f;
+            normals[i + 1] = 0f;
+            normals[i + 2] = up ? 1f : -1f;
+        }
+    }
+
+    /**
+     * Two triangles per segment between the column pairs (a, b) written by
+     * the tube and annulus fills, where a = 2 * i and b = 2 * i + 1. The
+     * diagonal of each quad depends on the winding so that the list reads
+     * as one triangle strip, a0 b0 a1 b1 ... or b0 a0 b1 a1 ...
+     */
+    private static void fillStripIndices(short[] indices, int offset, int segments, boolean closed, boolean reverse) {
+        int columns = closed ? segments : segments + 1;
+
+        for (int i = 0; i < segments; i++) {
+            short a0 = (short) (2 * i), b0 = (short) (2 * i + 1);
+            int next = (i + 1) % columns;
+            short a1 = (short) (2 * next), b1 = (short) (2 * next + 1);
+
+            int o = offset + 6 * i;
+            if (!reverse) {
+                indices[o]     = a0; indices[o + 1] = b0; indices[o + 2] = a1;
+                indices[o + 3] = a1; indices[o + 4] = b0; indices[o + 5] = b1;
+            } else {
+                indices[o]     = a0; indices[o + 1] = b1; indices[o + 2] = b0;
+                indices[o + 3] = a0; indices[o + 4] = a1; indices[o + 5] = b1;
+            }
+        }
+    }
+
+    private Mesh lookup(Key key) {
+        Mesh mesh = mCache.get(key);
+        if (mesh != null) {
+            mHits++;
+        }
+        return mesh;
+    }
+
+    private Mesh store(Key key, Mesh mesh) {
+        mMisses++;
+        mCache.put(key, mesh);
+        return mesh;
+    }
+
+    /**
+     * Parameter tuple a mesh was generated from.
+     */
+    private static final class Key {
+        private final int mKind;
+        private final int mSegments;
+        private final boolean mFlag;
+        private final float[] mParams;
+        private final int mHash;
+
+        Key(int kind, int segments, boolean flag, float... params) {
+            mKind = kind;
+            mSegments = segments;
+            mFlag = flag;
+            mParams = params;
+            mHash = 31 * (31 * (31 * kind + segments) + (flag ? 1 : 0)) + Arrays.hashCode(params);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mKind == other.mKind && mSegments == other.mSegments && mFlag == other.mFlag
+                    && Arrays.equals(mParams, other.mParams);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.sergej.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file of meshes and the instances of a scene drawn from them, read
+ * by mapping the file into memory. The vertices and indices of a mesh are
+ * handed to {@link GpuBufferManager} as slices of the mapping, so loading
+ * copies nothing on the Java heap and the data is paged in as it is
+ * uploaded.
+ *
+ * <p>Layout, little-endian:</p>
+ * <pre>
+ * header     magic "MSH1", version, mesh count, instance count   4 ints
+ * meshes     per mesh: 4 attribute encodings as bytes, vertex
+ *            count, index count, vertex offset, index offset,
+ *            bounds min x y z and max x y z, padding              48 bytes
+ * instances  per instance: mesh, RGBA color, column-major model
+ *            matrix                                               84 bytes
+ * blobs      interleaved vertices in the mesh's {@link VertexFormat} and
+ *            16-bit indices, each starting on a 16 byte boundary
+ * </pre>
+ *
+ * <p>Files are written with a {@link Writer}. Meshes in an OpenGL ES 3.0
+ * only format cannot be drawn on 2.0 devices, so files meant for every
+ * device use {@link VertexFormat#POSITION_NORMAL_BYTE}. Files in the APK's
+ * assets can only be mapped when they are stored uncompressed.</p>
+ */
+public final class MeshFile {
+
+    // "MSH1" read as a little-endian int
+    static final int MAGIC = 0x3148534D;
+
+    /**
+     * Version written by {@link Writer}, files of other versions are rejected.
+     */
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+    static final int MESH_SIZE = 48;
+    static final int INSTANCE_SIZE = 84;
+    static final int ALIGNMENT = 16;
+
+    /**
+     * Placements of one mesh from which {@link #addTo(SceneNode,
+     * FlatColorProgram, GpuBufferManager, GLCapabilities)} draws them
+     * instanced; below it the replicated vertices of OpenGL ES 2.0 cost more
+     * than the draw calls they save.
+     */
+    public static final int MIN_INSTANCED = 16;
+
+    private final Entry[] mMeshes;
+    private final Instance[] mInstances;
+
+    private MeshFile(Entry[] meshes, Instance[] instances) {
+        mMeshes = meshes;
+        mInstances = instances;
+    }
+
+    /**
+     * Maps a whole file.
+     *
+     * @param file - File written by a {@link Writer}.
+     * @return - The meshes and instances of the file.
+     * @throws IOException - If the file cannot be read or is no valid mesh file.
+     */
+    public static MeshFile load(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            return load(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Maps part of a file, such as an uncompressed asset opened with
+     * AssetManager.openFd. The mapping stays valid after the channel is
+     * closed.
+     *
+     * @param channel - Channel of the file.
+     * @param offset - Start of the mesh file within the file.
+     * @param length - Length of the mesh file in bytes.
+     * @return - The meshes and instances of the file.
+     * @throws IOException - If the file cannot be read or is no valid mesh file.
+     */
+    public static MeshFile load(FileChannel channel, long offset, long length) throws IOException {
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * @param data - Direct buffer holding a mesh file from its position to
+     * its limit. Its slices are kept and must not be modified.
+     * @return - The meshes and instances of the file.
+     * @throws IOException - If the data is no valid mesh file.
+     */
+    public static MeshFile read(ByteBuffer data) throws IOException {
+        checkByteOrder();
+        ByteBuffer file = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (file.getInt() != MAGIC) {
+                throw new IOException("not a mesh file");
+            }
+            int version = file.getInt();
+            if (version != VERSION) {
+                throw new IOException("mesh file version " + version + ", expected " + VERSION);
+            }
+            int meshCount = file.getInt();
+            int instanceCount = file.getInt();
+            if (meshCount < 0 || instanceCount < 0
+                    || HEADER_SIZE + (long) meshCount * MESH_SIZE + (long) instanceCount * INSTANCE_SIZE > file.limit()) {
+                throw new IOException("mesh file truncated");
+            }
+
+            Entry[] meshes = new Entry[meshCount];
+            for (int i = 0; i < meshCount; i++) {
+                meshes[i] = readEntry(file);
+            }
+
+            Instance[] instances = new Instance[instanceCount];
+            for (int i = 0; i < instanceCount; i++) {
+                int mesh = file.getInt();
+                if (mesh < 0 || mesh >= meshCount) {
+                    throw new IOException("instance " + i + " refers to missing mesh " + mesh);
+                }
+                float[] color = new float[4];
+                float[] model = new float[16];
+                file.asFloatBuffer().get(color).get(model);
+                file.position(file.position() + 80);
+                instances[i] = new Instance(mesh, color, model);
+            }
+            return new MeshFile(meshes, instances);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("mesh file truncated", e);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException("invalid vertex format in mesh file", e);
+        }
+    }
+
+    /**
+     * @return - Number of meshes in the file.
+     */
+    public int getMeshCount() {
+        return mMeshes.length;
+    }
+
+    /**
+     * @param index - From 0 to {@link #getMeshCount()} - 1.
+     */
+    public Entry getMesh(int index) {
+        return mMeshes[index];
+    }
+
+    /**
+     * @return - Number of instances in the file.
+     */
+    public int getInstanceCount() {
+        return mInstances.length;
+    }
+
+    /**
+     * @param index - From 0 to {@link #getInstanceCount()} - 1.
+     */
+    public Instance getInstance(int index) {
+        return mInstances[index];
+    }
+
+    /**
+     * Adds a node for every instance to a scene graph. Instances of the same
+     * mesh share its buffers.
+     *
+     * @param parent - Node the instances are added to.
+     * @param program - Program the instances are drawn with.
+     * @param buffers - Manager the buffers of the meshes are created by.
+     */
+    public void addTo(SceneNode parent, FlatColorProgram program, GpuBufferManager buffers) {
+        OpenGLPipeElement[] elements = new OpenGLPipeElement[mMeshes.length];
+        for (Instance instance : mInstances) {
+            OpenGLPipeElement element = elements[instance.mesh];
+            if (element == null) {
+                element = elements[instance.mesh] = new OpenGLPipeElement(program, buffers)
+                        .initializeVertexBuffer(mMeshes[instance.mesh]);
+            }
+            SceneNode node = new SceneNode(element.share(instance.color));
+            node.setLocalTransform(instance.modelMatrix);
+            parent.addChild(node);
+        }
+    }
+
+    /**
+     * Adds the instances to a scene graph like {@link #addTo(SceneNode,
+     * FlatColorProgram, GpuBufferManager)}, except that the instances of a
+     * mesh placed at least {@link #MIN_INSTANCED} times are drawn together
+     * from one node, through an {@link InstanceGroup}. Must be called on
+     * the GL thread.
+     *
+     * @param parent - Node the instances are added to.
+     * @param program - Program the single instances are drawn with.
+     * @param buffers - Manager the buffers of the meshes are created by.
+     * @param capabilities - Capabilities of the current context, which
+     * decide how instances are drawn.
+     */
+    public void addTo(SceneNode parent, FlatColorProgram program, GpuBufferManager buffers,
+            GLCapabilities capabilities) {
+        int[] counts = new int[mMeshes.length];
+        for (Instance instance : mInstances) {
+            counts[instance.mesh]++;
+        }
+
+        OpenGLPipeElement[] elements = new OpenGLPipeElement[mMeshes.length];
+        float[][] packed = new float[mMeshes.length][];
+        int[] packedCounts = new int[mMeshes.length];
+        for (Instance instance : mInstances) {
+            int mesh = instance.mesh;
+            if (counts[mesh] < MIN_INSTANCED) {
+                if (elements[mesh] == null) {
+                    elements[mesh] = new OpenGLPipeElement(program, buffers).initializeVertexBuffer(mMeshes[mesh]);
+                }
+                SceneNode node = new SceneNode(elements[mesh].share(instance.color));
+                node.setLocalTransform(instance.modelMatrix);
+                parent.addChild(node);
+                continue;
+            }
+
+            if (packed[mesh] == null) {
+                packed[mesh] = new float[counts[mesh] * InstancedRenderer.FLOATS_PER_INSTANCE];
+            }
+            int offset = packedCounts[mesh]++ * InstancedRenderer.FLOATS_PER_INSTANCE;
+            System.arraycopy(instance.modelMatrix, 0, packed[mesh], offset, 16);
+            System.arraycopy(instance.color, 0, packed[mesh], offset + 16, 4);
+        }
+
+        for (int mesh = 0; mesh < mMeshes.length; mesh++) {
+            if (packed[mesh] != null) {
+                InstancedRenderer renderer = new InstancedRenderer(program.getPrograms(), buffers, capabilities,
+                        mMeshes[mesh].toMesh());
+                parent.addChild(new SceneNode(new InstanceGroup(renderer, packed[mesh], counts[mesh],
+                        mMeshes[mesh].getBounds())));
+            }
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer file) throws IOException {
+        int[] encodings = new int[VertexFormat.ATTRIBUTES];
+        for (int a = 0; a < VertexFormat.ATTRIBUTES; a++) {
+            encodings[a] = file.get();
+        }
+        VertexFormat format = VertexFormat.fromEncodings(encodings);
+        int vertexCount = file.getInt();
+        int indexCount = file.getInt();
+        int vertexOffset = file.getInt();
+        int indexOffset = file.getInt();
+        Aabb bounds = new Aabb().set(file.getFloat(), file.getFloat(), file.getFloat(),
+                file.getFloat(), file.getFloat(), file.getFloat());
+        file.position(file.position() + 4);
+
+        if (vertexCount < 0 || indexCount < 0 || indexCount % 3 != 0) {
+            throw new IOException("invalid mesh sizes in mesh file");
+        }
+        return new Entry(format, vertexCount, indexCount,
+                slice(file, vertexOffset, (long) vertexCount * format.getStride()),
+                slice(file, indexOffset, indexCount * 2L), bounds);
+    }
+
+    private static ByteBuffer slice(ByteBuffer file, int offset, long length) throws IOException {
+        if (offset < 0 || offset % ALIGNMENT != 0 || offset + length > file.limit()) {
+            throw new IOException("mesh data outside of the file or misaligned");
+        }
+        ByteBuffer slice = file.duplicate();
+        slice.position(offset).limit(offset + (int) length);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static void checkByteOrder() throws IOException {
+        // the blobs go to GL as they are, in the byte order of the device
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("mesh files need a little-endian device");
+        }
+    }
+
+    /**
+     * A mesh of a file: its vertices and indices, ready for upload.
+     */
+    public static final class Entry {
+        private final VertexFormat mFormat;
+        private final int mVertexCount;
+        private final int mIndexCount;
+        private final ByteBuffer mVertices;
+        private final ByteBuffer mIndices;
+        private final Aabb mBounds;
+
+        Entry(VertexFormat format, int vertexCount, int indexCount, ByteBuffer vertices, ByteBuffer indices,
+                Aabb bounds) {
+            mFormat = format;
+            mVertexCount = vertexCount;
+            mIndexCount = indexCount;
+            mVertices = vertices;
+            mIndices = indices;
+            mBounds = bounds;
+        }
+
+        public VertexFormat getFormat() {
+            return mFormat;
+        }
+
+        public int getVertexCount() {
+            return mVertexCount;
+        }
+
+        public int getIndexCount() {
+            return mIndexCount;
+        }
+
+        /**
+         * @return - A new view of the interleaved vertices within the mapping.
+         */
+        public ByteBuffer getVertices() {
+            return mVertices.duplicate().order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * @return - A new view of the 16-bit triangle list indices within
+         * the mapping.
+         */
+        public ByteBuffer getIndices() {
+            return mIndices.duplicate().order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * @return - Bounds of the vertices in object coordinates. Must not be modified.
+         */
+        public Aabb getBounds() {
+            return mBounds;
+        }
+
+        /**
+         * Copies the positions and indices onto the heap, for code that
+         * needs a {@link Mesh} such as {@link InstancedRenderer}.
+         *
+         * @return - The geometry, without normals.
+         */
+        public Mesh toMesh() {
+            ByteBuffer vertices = getVertices();
+            int stride = mFormat.getStride();
+            int offset = mFormat.getOffset(VertexFormat.POSITION);
+            boolean half = mFormat.getEncoding(VertexFormat.POSITION) == VertexFormat.HALF_FLOAT;
+
+            float[] positions = new float[mVertexCount * Mesh.COORDS_PER_VERTEX];
+            for (int i = 0; i < positions.length; i++) {
+                int at = (i / Mesh.COORDS_PER_VERTEX) * stride + offset;
+                int component = i % Mesh.COORDS_PER_VERTEX;
+                positions[i] = half ? VertexWriter.fromHalf(vertices.getShort(at + 2 * component))
+                        : vertices.getFloat(at + 4 * component);
+            }
+
+            short[] indices = new short[mIndexCount];
+            getIndices().asShortBuffer().get(indices);
+            return new Mesh(positions, indices);
+        }
+    }
+
+    /**
+     * A placement of a mesh in the scene.
+     */
+    public static final class Instance {
+        public final int mesh;
+        public final float[] color;
+        public final float[] modelMatrix;
+
+        Instance(int mesh, float[] color, float[] modelMatrix) {
+            this.mesh = mesh;
+            this.color = color;
+            this.modelMatrix = modelMatrix;
+        }
+    }
+
+    /**
+     * Collects meshes and instances and writes them as a mesh file.
+     */
+    public static class Writer {
+        private final List<Mesh> mMeshes = new ArrayList<>();
+        private final List<VertexFormat> mFormats = new ArrayList<>();
+        private final List<Instance> mInstances = new ArrayList<>();
+
+        /**
+         * @param mesh - Geometry to add, usually from {@link MeshFactory}.
+         * @param format - Layout the vertices are written in. Needs normals
+         * only if the format has them.
+         * @return - Index of the mesh for {@link #addInstance}.
+         */
+        public int addMesh(Mesh mesh, VertexFormat format) {
+            if (format.has(VertexFormat.NORMAL) && mesh.getNormals() == null) {
+                throw new IllegalArgumentException("the mesh has no normals");
+            }
+            mMeshes.add(mesh);
+            mFormats.add(format);
+            return mMeshes.size() - 1;
+        }
+
+        /**
+         * @param mesh - Index returned by {@link #addMesh}.
+         * @param color - RGBA color the instance is drawn with.
+         * @param modelMatrix - Placement of the instance.
+         * @return - This writer.
+         */
+        public Writer addInstance(int mesh, float[] color, float[] modelMatrix) {
+            if (mesh < 0 || mesh >= mMeshes.size()) {
+                throw new IllegalArgumentException("no mesh " + mesh);
+            }
+            mInstances.add(new Instance(mesh, color.clone(), modelMatrix.clone()));
+            return this;
+        }
+
+        /**
+         * @param file - File to create or replace.
+         * @throws IOException - If the file cannot be written.
+         */
+        public void write(File file) throws IOException {
+            ByteBuffer data = toByteBuffer();
+            try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                FileChannel channel = output.getChannel();
+                channel.truncate(0);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        }
+
+        /**
+         * @return - The whole file, from position 0 to its end.
+         * @throws IOException - On big-endian devices.
+         */
+        public ByteBuffer toByteBuffer() throws IOException {
+            checkByteOrder();
+            int tables = HEADER_SIZE + mMeshes.size() * MESH_SIZE + mInstances.size() * INSTANCE_SIZE;
+
+            // place the blobs after the tables
+            int[] vertexOffsets = new int[mMeshes.size()];
+            int[] indexOffsets = new int[mMeshes.size()];
+            int end = tables;
+            for (int i = 0; i < mMeshes.size(); i++) {
+                Mesh mesh = mMeshes.get(i);
+                vertexOffsets[i] = end = align(end);
+                end += mesh.getVertexCount() * mFormats.get(i).getStride();
+                indexOffsets[i] = end = align(end);
+                end += mesh.getIndexCount() * 2;
+            }
+
+            ByteBuffer file = ByteBuffer.allocateDirect(end).order(ByteOrder.LITTLE_ENDIAN);
+            file.putInt(MAGIC).putInt(VERSION).putInt(mMeshes.size()).putInt(mInstances.size());
+
+            for (int i = 0; i < mMeshes.size(); i++) {
+                Mesh mesh = mMeshes.get(i);
+                VertexFormat format = mFormats.get(i);
+                for (int a = 0; a < VertexFormat.ATTRIBUTES; a++) {
+                    file.put((byte) format.getEncoding(a));
+                }
+                Aabb bounds = mesh.getBounds();
+                file.putInt(mesh.getVertexCount()).putInt(mesh.getIndexCount())
+                        .putInt(vertexOffsets[i]).putInt(indexOffsets[i])
+                        .putFloat(bounds.minX).putFloat(bounds.minY).putFloat(bounds.minZ)
+                        .putFloat(bounds.maxX).putFloat(bounds.maxY).putFloat(bounds.maxZ)
+                        .putInt(0);
+            }
+
+            for (Instance instance : mInstances) {
+                file.putInt(instance.mesh);
+                for (float c : instance.color) {
+                    file.putFloat(c);
+                }
+                for (float m : instance.modelMatrix) {
+                    file.putFloat(m);
+                }
+            }
+
+            for (int i = 0; i < mMeshes.size(); i++) {
+                Mesh mesh = mMeshes.get(i);
+                file.position(vertexOffsets[i]);
+                file.put(VertexWriter.write(mFormats.get(i), mesh));
+                file.position(indexOffsets[i]);
+                file.asShortBuffer().put(mesh.getIndices(), 0, mesh.getIndexCount());
+            }
+
+            file.position(0);
+            return file;
+        }
+
+        private static int align(int offset) {
+            return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        }
+    }
+}
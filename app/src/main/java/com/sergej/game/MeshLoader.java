@@ -0,0 +1,310 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds meshes on a small pool of worker threads and uploads them on the GL
+ * thread a few at a time, so a large scene streams in over several frames
+ * instead of stalling one.
+ *
+ * <p>A worker runs the {@link Source} of a {@link Request}, usually a
+ * {@link MeshFactory} call, and writes the vertices in the mesh format of the
+ * {@link GpuBufferManager} and the indices into direct buffers. The request
+ * is then staged. Every frame the GL thread calls {@link #upload} with a
+ * budget of bytes and time, which turns staged requests into uploaded
+ * buffers until the budget is spent. A request is ready once its buffers
+ * are uploaded; shapes keep drawing what they had until then.</p>
+ */
+public class MeshLoader {
+
+    /**
+     * Bytes uploaded per frame by default, a few large meshes.
+     */
+    public static final int DEFAULT_UPLOAD_BYTES = 256 * 1024;
+
+    /**
+     * Time spent uploading per frame by default, in nanoseconds.
+     */
+    public static final long DEFAULT_UPLOAD_NANOS = 2000000;
+
+    // idle time after which a worker thread stops until there is work again
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 10;
+
+    private final GpuBufferManager mBuffers;
+    private final ExecutorService mWorkers;
+    private final ConcurrentLinkedQueue<Request> mStaged = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPending = new AtomicInteger();
+    private volatile Runnable mStagedListener;
+
+    private long mUploadedBytes;
+    private int mUploadedMeshes;
+
+    /**
+     * Builds meshes on the calling thread, in {@link #load}, for tests and
+     * tools that need them staged right away.
+     *
+     * @param buffers - Manager the buffers are created by.
+     */
+    public MeshLoader(GpuBufferManager buffers) {
+        this(buffers, 0);
+    }
+
+    /**
+     * @param buffers - Manager the buffers are created by.
+     * @param threads - Number of worker threads, 0 to build on the calling
+     * thread.
+     */
+    public MeshLoader(GpuBufferManager buffers, int threads) {
+        mBuffers = buffers;
+        if (threads == 0) {
+            mWorkers = null;
+            return;
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, "MeshLoader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    // frames come first
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        // meshes are loaded in bursts, idle workers need not wait for shutdown
+        workers.allowCoreThreadTimeOut(true);
+        mWorkers = workers;
+    }
+
+    /**
+     * @return - Worker threads to use on this device: one core is left to
+     * the GL and one to the simulation thread where there are enough.
+     */
+    public static int defaultThreads() {
+        return Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 2));
+    }
+
+    /**
+     * @param listener - Called on the worker thread whenever a request was
+     * staged, usually to request a frame that uploads it; null for none.
+     */
+    public void setOnStagedListener(Runnable listener) {
+        mStagedListener = listener;
+    }
+
+    /**
+     * Builds a mesh in the background. May be called from any thread.
+     *
+     * @param source - Builds the mesh, on a worker thread.
+     * @return - The request, ready once its buffers are uploaded.
+     */
+    public Request load(Source source) {
+        final Request request = new Request(source);
+        mPending.incrementAndGet();
+        if (mWorkers == null) {
+            build(request);
+        } else {
+            mWorkers.execute(() -> build(request));
+        }
+        return request;
+    }
+
+    /**
+     * Uploads staged requests until one of the budgets is spent, but at
+     * least one, so every frame makes progress. Must be called on the GL
+     * thread; does not allocate when nothing is staged.
+     *
+     * @param maxBytes - Bytes to upload at most, unless one request is larger.
+     * @param maxNanos - Time to spend at most, unless one request takes longer.
+     * @return - Number of requests that became ready.
+     */
+    public int upload(long maxBytes, long maxNanos) {
+        if (mStaged.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long bytes = 0;
+        int uploaded = 0;
+
+        Request request;
+        while ((request = mStaged.peek()) != null) {
+            int size = request.getSize();
+            if (uploaded > 0 && (bytes + size > maxBytes || System.nanoTime() - start >= maxNanos)) {
+                break;
+            }
+            mStaged.poll();
+            try {
+                request.upload(mBuffers);
+            } finally {
+                // a failed request is done as well, it is not retried
+                mPending.decrementAndGet();
+            }
+            bytes += size;
+            uploaded++;
+        }
+
+        mUploadedBytes += bytes;
+        mUploadedMeshes += uploaded;
+        return uploaded;
+    }
+
+    /**
+     * @return - Number of requests not ready yet, being built or staged.
+     */
+    public int getPendingCount() {
+        return mPending.get();
+    }
+
+    /**
+     * @return - Number of requests waiting for {@link #upload}.
+     */
+    public int getStagedCount() {
+        return mStaged.size();
+    }
+
+    /**
+     * @return - Bytes uploaded by {@link #upload} so far.
+     */
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    /**
+     * @return - Number of requests uploaded so far.
+     */
+    public int getUploadedMeshes() {
+        return mUploadedMeshes;
+    }
+
+    /**
+     * Stops the worker threads. Requests being built are finished, queued
+     * ones are dropped.
+     */
+    public void shutdown() {
+        if (mWorkers != null) {
+            mWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the worker threads to stop after {@link #shutdown}.
+     *
+     * @param timeoutMillis - Longest time to wait.
+     * @return - true if all workers stopped, always when there are none.
+     * @throws InterruptedException - If the calling thread was interrupted.
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return mWorkers == null || mWorkers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void build(Request request) {
+        try {
+            Mesh mesh = request.mSource.build();
+            VertexFormat format = mBuffers.getMeshFormat(mesh);
+
+            ShortBuffer indices = ByteBuffer.allocateDirect(mesh.getIndexCount() * 2)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            indices.put(mesh.getIndices(), 0, mesh.getIndexCount()).position(0);
+
+            request.stage(mesh, format, VertexWriter.write(format, mesh), indices);
+        } catch (RuntimeException e) {
+            // rethrown on the GL thread, where the mesh would have been uploaded
+            request.fail(e);
+        }
+        mStaged.offer(request);
+
+        Runnable listener = mStagedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Builds a mesh on a worker thread.
+     */
+    public interface Source {
+        Mesh build();
+    }
+
+    /**
+     * A mesh on its way to the GPU. Its getters may be called from any
+     * thread once {@link #isReady()} returned true.
+     */
+    public static final class Request {
+        private final Source mSource;
+
+        // written by the worker, read by the GL thread after staging
+        private Mesh mMesh;
+        private VertexFormat mFormat;
+        private ByteBuffer mVertexData;
+        private Buffer mIndexData;
+        private RuntimeException mError;
+
+        // written by the GL thread, published by mReady
+        private GpuBuffer mVertices;
+        private GpuBuffer mIndices;
+        private volatile boolean mReady;
+
+        Request(Source source) {
+            mSource = source;
+        }
+
+        /**
+         * @return - Whether the buffers are uploaded.
+         */
+        public boolean isReady() {
+            return mReady;
+        }
+
+        /**
+         * @return - The built mesh, with its positions for bounds and picking.
+         */
+        public Mesh getMesh() {
+            return mMesh;
+        }
+
+        public GpuBuffer getVertexBuffer() {
+            return mVertices;
+        }
+
+        public GpuBuffer getIndexBuffer() {
+            return mIndices;
+        }
+
+        void stage(Mesh mesh, VertexFormat format, ByteBuffer vertices, Buffer indices) {
+            mMesh = mesh;
+            mFormat = format;
+            mVertexData = vertices;
+            mIndexData = indices;
+        }
+
+        void fail(RuntimeException error) {
+            mError = error;
+        }
+
+        int getSize() {
+            return mError != null ? 0 : mVertexData.remaining() + mMesh.getIndexCount() * 2;
+        }
+
+        void upload(GpuBufferManager buffers) {
+            if (mError != null) {
+                throw new IllegalStateException("building a mesh failed", mError);
+            }
+            mVertices = buffers.createStaticVertices(mVertexData, mFormat);
+            mIndices = buffers.createStatic(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexData);
+            // binding uploads them now, within the budget, not on the first draw
+            mVertices.bind();
+            mIndices.bind();
+            mReady = true;
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package com.sergej.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reorders the triangles and vertices of meshes for the GPU, once when
+ * they are generated.
+ *
+ * <p>{@link #optimize} runs Tipsify (Sander, Nehab and Barczak, "Fast
+ * Triangle Reordering for Vertex Locality and Reduced Overdraw", 2007): it
+ * fans around vertices that are still in the post-transform vertex cache,
+ * so most vertices are shaded once. Where it has to jump to an unrelated
+ * part of the mesh the cache is lost anyway, and the runs of triangles in
+ * between are sorted so that the ones facing away from the center of the
+ * mesh come first and hide what lies behind them. Finally the vertices are
+ * renumbered in the order they are first used, so the vertex fetch reads
+ * memory sequentially. Winding is kept.</p>
+ *
+ * <p>{@link #toStrip} turns a triangle list into one triangle strip, joined
+ * by the primitive restart index or by degenerate triangles.</p>
+ */
+public final class MeshOptimizer {
+
+    /**
+     * Entries of the simulated post-transform vertex cache. Caches of
+     * current GPUs hold at least this many vertices.
+     */
+    public static final int CACHE_SIZE = 16;
+
+    /**
+     * Index ending a strip when GL_PRIMITIVE_RESTART_FIXED_INDEX is
+     * enabled, OpenGL ES 3.0 only.
+     */
+    public static final short PRIMITIVE_RESTART_INDEX = (short) 0xFFFF;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * @param mesh - Triangle list to optimize.
+     * @return - A mesh with the same triangles, reordered for the vertex
+     * cache and overdraw, and its vertices in the order of first use.
+     */
+    public static Mesh optimize(Mesh mesh) {
+        short[] indices = Arrays.copyOf(mesh.getIndices(), mesh.getIndexCount());
+        int[] clusters = optimizeVertexCache(indices, indices.length, mesh.getVertexCount(), CACHE_SIZE);
+        optimizeOverdraw(indices, clusters, mesh.getVertices());
+        return optimizeVertexFetch(mesh.getVertices(), mesh.getNormals(), mesh.getVertexCount(), indices);
+    }
+
+    /**
+     * Average cache miss ratio: vertices shaded per triangle with a FIFO
+     * post-transform cache. 3 means no reuse at all, about 0.5 is the best
+     * a large regular grid allows.
+     *
+     * @param indices - Triangle list.
+     * @param indexCount - Number of indices used.
+     * @param cacheSize - Entries of the cache.
+     * @return - Cache misses divided by the number of triangles.
+     */
+    public static float acmr(short[] indices, int indexCount, int cacheSize) {
+        if (indexCount == 0) {
+            return 0;
+        }
+        int[] cache = new int[cacheSize];
+        Arrays.fill(cache, -1);
+        int next = 0, misses = 0;
+
+        for (int i = 0; i < indexCount; i++) {
+            int vertex = indices[i] & 0xFFFF;
+            boolean hit = false;
+            for (int entry : cache) {
+                if (entry == vertex) {
+                    hit = true;
+                    break;
+                }
+            }
+            if (!hit) {
+                misses++;
+                cache[next] = vertex;
+                next = (next + 1) % cacheSize;
+            }
+        }
+        return misses / (indexCount / 3f);
+    }
+
+    /**
+     * Reorders the triangles of a list with Tipsify.
+     *
+     * @param indices - Triangle list, reordered in place.
+     * @param indexCount - Number of indices used.
+     * @param vertexCount - Number of vertices the indices refer to.
+     * @param cacheSize - Entries of the cache to optimize for.
+     * @return - Index of the first triangle of each run between jumps, in
+     * ascending order, starting with 0.
+     */
+    public static int[] optimizeVertexCache(short[] indices, int indexCount, int vertexCount, int cacheSize) {
+        int triangleCount = indexCount / 3;
+
+        // triangles around every vertex, as offsets into one array
+        int[] live = new int[vertexCount];
+        for (int i = 0; i < indexCount; i++) {
+            live[indices[i] & 0xFFFF]++;
+        }
+        int[] start = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            start[v + 1] = start[v] + live[v];
+        }
+        int[] adjacency = new int[indexCount];
+        int[] fill = Arrays.copyOf(start, vertexCount);
+        for (int i = 0; i < indexCount; i++) {
+            adjacency[fill[indices[i] & 0xFFFF]++] = i / 3;
+        }
+
+        short[] source = Arrays.copyOf(indices, indexCount);
+        boolean[] emitted = new boolean[triangleCount];
+        int[] cacheTime = new int[vertexCount];
+        int[] deadEnds = new int[indexCount];
+        int deadEndCount = 0;
+        int[] candidates = new int[indexCount];
+        int time = cacheSize + 1, cursor = 0, out = 0;
+
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = 1;
+
+        int fan = nextLive(live, cursor, vertexCount);
+        while (fan >= 0) {
+            int candidateCount = 0;
+            for (int a = start[fan]; a < start[fan + 1]; a++) {
+                int t = adjacency[a];
+                if (emitted[t]) {
+                    continue;
+                }
+                for (int c = 0; c < 3; c++) {
+                    int v = source[3 * t + c] & 0xFFFF;
+                    indices[out++] = (short) v;
+                    deadEnds[deadEndCount++] = v;
+                    candidates[candidateCount++] = v;
+                    live[v]--;
+                    if (time - cacheTime[v] > cacheSize) {
+                        cacheTime[v] = time++;
+                    }
+                }
+                emitted[t] = true;
+            }
+
+            // the candidate staying in the cache longest while its fan is
+            // emitted, otherwise the one entering the cache last
+            int best = -1, bestPriority = -1;
+            for (int i = 0; i < candidateCount; i++) {
+                int v = candidates[i];
+                if (live[v] > 0) {
+                    int priority = 0;
+                    if (time - cacheTime[v] + 2 * live[v] <= cacheSize) {
+                        priority = time - cacheTime[v];
+                    }
+                    if (priority > bestPriority) {
+                        bestPriority = priority;
+                        best = v;
+                    }
+                }
+            }
+
+            if (best < 0) {
+                // dead end: back to a recent vertex with triangles left, else
+                // on to the next such vertex in the input; the cache is lost
+                while (deadEndCount > 0 && best < 0) {
+                    int v = deadEnds[--deadEndCount];
+                    if (live[v] > 0) {
+                        best = v;
+                    }
+                }
+                if (best < 0) {
+                    cursor = nextLive(live, cursor, vertexCount);
+                    best = cursor;
+                }
+                if (best >= 0 && out / 3 > clusters[clusterCount - 1]) {
+                    clusters[clusterCount++] = out / 3;
+                }
+            }
+            fan = best;
+        }
+
+        return Arrays.copyOf(clusters, clusterCount);
+    }
+
+    /**
+     * Sorts runs of triangles so that the ones facing away from the center
+     * of the mesh are drawn first. Within a run the order is kept.
+     *
+     * @param indices - Triangle list of exactly its triangles, reordered in place.
+     * @param clusters - First triangle of each run, from {@link #optimizeVertexCache}.
+     * @param vertices - Positions the indices refer to.
+     */
+    public static void optimizeOverdraw(short[] indices, int[] clusters, float[] vertices) {
+        int triangleCount = indices.length / 3;
+        if (clusters.length < 2) {
+            return;
+        }
+
+        // area weighted centroid of the whole mesh
+        float[] sum = new float[4];
+        float[] cluster = new float[7 * clusters.length];
+        for (int c = 0; c < clusters.length; c++) {
+            int end = c + 1 < clusters.length ? clusters[c + 1] : triangleCount;
+            for (int t = clusters[c]; t < end; t++) {
+                accumulate(indices, t, vertices, cluster, 7 * c);
+            }
+            sum[0] += cluster[7 * c];
+            sum[1] += cluster[7 * c + 1];
+            sum[2] += cluster[7 * c + 2];
+            sum[3] += cluster[7 * c + 6];
+        }
+        if (sum[3] == 0) {
+            return;
+        }
+
+        // how far each run faces away from the center
+        final float[] key = new float[clusters.length];
+        Integer[] order = new Integer[clusters.length];
+        for (int c = 0; c < clusters.length; c++) {
+            float area = cluster[7 * c + 6];
+            order[c] = c;
+            if (area == 0) {
+                continue;
+            }
+            float dx = cluster[7 * c] / area - sum[0] / sum[3];
+            float dy = cluster[7 * c + 1] / area - sum[1] / sum[3];
+            float dz = cluster[7 * c + 2] / area - sum[2] / sum[3];
+            key[c] = dx * cluster[7 * c + 3] + dy * cluster[7 * c + 4] + dz * cluster[7 * c + 5];
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(key[b], key[a]));
+
+        short[] source = indices.clone();
+        int out = 0;
+        for (int c : order) {
+            int end = c + 1 < clusters.length ? clusters[c + 1] : triangleCount;
+            int length = 3 * (end - clusters[c]);
+            System.arraycopy(source, 3 * clusters[c], indices, out, length);
+            out += length;
+        }
+    }
+
+    /**
+     * Renumbers the vertices in the order the indices first use them.
+     * Vertices no triangle uses are kept at the end.
+     *
+     * @param vertices - Positions.
+     * @param normals - Normals, or null.
+     * @param vertexCount - Number of vertices used.
+     * @param indices - Triangle list of exactly its triangles, rewritten
+     * to the new numbers.
+     * @return - A mesh of the renumbered vertices and the indices.
+     */
+    public static Mesh optimizeVertexFetch(float[] vertices, float[] normals, int vertexCount, short[] indices) {
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i] & 0xFFFF;
+            if (remap[v] < 0) {
+                remap[v] = next++;
+            }
+            indices[i] = (short) remap[v];
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] < 0) {
+                remap[v] = next++;
+            }
+        }
+
+        int n = Mesh.COORDS_PER_VERTEX;
+        float[] newVertices = new float[vertexCount * n];
+        float[] newNormals = normals == null ? null : new float[vertexCount * n];
+        for (int v = 0; v < vertexCount; v++) {
+            System.arraycopy(vertices, v * n, newVertices, remap[v] * n, n);
+            if (normals != null) {
+                System.arraycopy(normals, v * n, newNormals, remap[v] * n, n);
+            }
+        }
+        return new Mesh(newVertices, newNormals, indices);
+    }
+
+    /**
+     * Converts a triangle list into a single triangle strip with the same
+     * triangles and winding, growing each strip greedily across shared
+     * edges in the order of the list.
+     *
+     * @param indices - Triangle list.
+     * @param indexCount - Number of indices used.
+     * @param primitiveRestart - true to join the strips with
+     * {@link #PRIMITIVE_RESTART_INDEX}, false to join them with degenerate
+     * triangles, which OpenGL ES 2.0 can draw.
+     * @return - Indices of the strip, for GL_TRIANGLE_STRIP.
+     */
+    public static short[] toStrip(short[] indices, int indexCount, boolean primitiveRestart) {
+        int triangleCount = indexCount / 3;
+
+        // triangle of every directed edge, the first one on non-manifold edges
+        Map<Integer, Integer> edges = new HashMap<>();
+        for (int t = 0; t < triangleCount; t++) {
+            for (int c = 0; c < 3; c++) {
+                Integer key = edge(indices[3 * t + c], indices[3 * t + (c + 1) % 3]);
+                if (!edges.containsKey(key)) {
+                    edges.put(key, t);
+                }
+            }
+        }
+
+        boolean[] used = new boolean[triangleCount];
+        List<short[]> strips = new ArrayList<>();
+        short[] strip = new short[indexCount + 2];
+        int[] grown = new int[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            if (used[t]) {
+                continue;
+            }
+
+            // start with the rotation of the triangle that grows the longest strip
+            int rotation = 0, longest = 0;
+            for (int r = 0; r < 3; r++) {
+                int length = grow(indices, edges, used, t, r, strip, grown);
+                for (int i = 0; i < length - 2; i++) {
+                    used[grown[i]] = false;
+                }
+                if (length > longest) {
+                    longest = length;
+                    rotation = r;
+                }
+            }
+            int length = grow(indices, edges, used, t, rotation, strip, grown);
+            strips.add(Arrays.copyOf(strip, length));
+        }
+
+        int total = 0;
+        for (short[] s : strips) {
+            total += s.length + (primitiveRestart ? 1 : 3);
+        }
+        short[] result = new short[total];
+        int out = 0;
+        for (int i = 0; i < strips.size(); i++) {
+            short[] s = strips.get(i);
+            if (i > 0) {
+                if (primitiveRestart) {
+                    result[out++] = PRIMITIVE_RESTART_INDEX;
+                } else {
+                    // repeat the last and the next vertex, and once more if
+                    // needed so the next strip starts on an even triangle
+                    short last = result[out - 1];
+                    if (out % 2 == 1) {
+                        result[out++] = last;
+                    }
+                    result[out++] = last;
+                    result[out++] = s[0];
+                }
+            }
+            System.arraycopy(s, 0, result, out, s.length);
+            out += s.length;
+        }
+        return Arrays.copyOf(result, out);
+    }
+
+    /**
+     * Grows a strip from triangle t, starting at its corner rotation, and
+     * marks its triangles used.
+     *
+     * @param grown - Receives the triangles of the strip.
+     * @return - Length of the strip.
+     */
+    private static int grow(short[] indices, Map<Integer, Integer> edges, boolean[] used, int t, int rotation,
+            short[] strip, int[] grown) {
+        int length = 0;
+        for (int c = 0; c < 3; c++) {
+            strip[length++] = indices[3 * t + (rotation + c) % 3];
+        }
+        used[t] = true;
+        grown[0] = t;
+
+        // triangle k of a strip is (k, k + 1, k + 2) if k is even and
+        // (k + 1, k, k + 2) if it is odd, so it holds the edge
+        // (k, k + 1) in that direction or reversed
+        while (true) {
+            int k = length - 2;
+            short a = strip[k], b = strip[k + 1];
+            int next = k % 2 == 0 ? unused(edges, used, a, b) : unused(edges, used, b, a);
+            if (next < 0) {
+                return length;
+            }
+            used[next] = true;
+            grown[k] = next;
+            strip[length++] = third(indices, next, a, b);
+        }
+    }
+
+    private static Integer edge(short from, short to) {
+        return (from & 0xFFFF) << 16 | (to & 0xFFFF);
+    }
+
+    private static int unused(Map<Integer, Integer> edges, boolean[] used, short from, short to) {
+        Integer t = edges.get(edge(from, to));
+        return t != null && !used[t] ? t : -1;
+    }
+
+    private static short third(short[] indices, int t, short a, short b) {
+        for (int c = 0; c < 3; c++) {
+            short v = indices[3 * t + c];
+            if (v != a && v != b) {
+                return v;
+            }
+        }
+        return indices[3 * t];
+    }
+
+    private static int nextLive(int[] live, int from, int vertexCount) {
+        for (int v = from; v < vertexCount; v++) {
+            if (live[v] > 0) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds area weighted centroid, normal and area of triangle t to out at
+     * offset: x, y, z, nx, ny, nz, area.
+     */
+    private static void accumulate(short[] indices, int t, float[] vertices, float[] out, int offset) {
+        int a = (indices[3 * t] & 0xFFFF) * 3;
+        int b = (indices[3 * t + 1] & 0xFFFF) * 3;
+        int c = (indices[3 * t + 2] & 0xFFFF) * 3;
+
+        float ux = vertices[b] - vertices[a], uy = vertices[b + 1] - vertices[a + 1], uz = vertices[b + 2] - vertices[a + 2];
+        float wx = vertices[c] - vertices[a], wy = vertices[c + 1] - vertices[a + 1], wz = vertices[c + 2] - vertices[a + 2];
+        float nx = uy * wz - uz * wy;
+        float ny = uz * wx - ux * wz;
+        float nz = ux * wy - uy * wx;
+        float area = (float) Math.sqrt(nx * nx + ny * ny + nz * nz) / 2;
+
+        out[offset]     += area * (vertices[a] + vertices[b] + vertices[c]) / 3;
+        out[offset + 1] += area * (vertices[a + 1] + vertices[b + 1] + vertices[c + 1]) / 3;
+        out[offset + 2] += area * (vertices[a + 2] + vertices[b + 2] + vertices[c + 2]) / 3;
+        out[offset + 3] += nx;
+        out[offset + 4] += ny;
+        out[offset + 5] += nz;
+        out[offset + 6] += area;
+    }
+}
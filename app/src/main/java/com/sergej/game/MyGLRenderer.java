@@ -20,9 +20,12 @@ import javax.microedition.khronos.opengles.GL10;
 
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
+import android.os.Build;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 /**
  * Provides drawing instructions for a GLSurfaceView object. This class
@@ -36,71 +39,544 @@ import android.util.Log;
 public class MyGLRenderer implements GLSurfaceView.Renderer {
 
     private static final String TAG = "MyGLRenderer";
+
+    private static final float TOUCH_SCALE_FACTOR = 180.0f / 320;
+    private static final int TOUCH_SAMPLES = 1024;
+
+    // the camera stays between the near and far planes around the pipe
+    private static final float MIN_CAMERA_DISTANCE = 2f;
+    private static final float MAX_CAMERA_DISTANCE = 6f;
+
+    // a released spin slows down by this factor per second, and stops below
+    // the minimum speed in degrees per second
+    private static final float FLING_FRICTION = 3f;
+    private static final float MIN_FLING_VELOCITY = 5f;
+    // longer steps, for example the first one after idling, count as this long
+    private static final float MAX_STEP_SECONDS = 0.1f;
+
+    // no angle requested by setAngle
+    private static final int NO_ANGLE = Float.floatToRawIntBits(Float.NaN);
+
     //private Triangle mTriangle;
-    private Cylinder mSquare;
 
-    // mMVPMatrix is an abbreviation for "Model View Projection Matrix"
-    private final float[] mMVPMatrix = new float[16];
+    // everything drawn, with matrices cached between frames; owned by the
+    // simulation thread, which records it into frame packets
+    private final Scene mScene = new Scene();
+    private SceneNode mPipe;
+    private final SceneNode mStaticNode = mScene.getRoot().addChild(new SceneNode());
+    private float mPipeAngle = Float.NaN;
+    private long mSequence;
+
+    // the projection is only recomputed when the surface changes
     private final float[] mProjectionMatrix = new float[16];
-    private final float[] mViewMatrix = new float[16];
-    private final float[] mRotationMatrix = new float[16];
+    private float mViewportHeight = 1;
+
+    // touch samples from the UI thread, coalesced into gestures once per step
+    private final TouchRing mTouches = new TouchRing(TOUCH_SAMPLES);
+    private final TouchGestures mGestures = new TouchGestures();
+    private float mCameraDistance = 3f;
+    private float mCameraY, mCameraZ;
+
+    // changes to the scene from other threads, applied before the next step
+    private final ConcurrentLinkedQueue<Runnable> mSceneEvents = new ConcurrentLinkedQueue<>();
+
+    // recorded frames on their way to the GL thread, which only replays them
+    private final FrameExchange mFrames = new FrameExchange(64);
+    private final RenderQueue mQueue = new RenderQueue(64);
+    private final boolean mThreaded;
+    private SimulationThread mSimulation;
+    private volatile Runnable mFrameListener;
+
+    // every GL call goes through the tracker, which drops redundant state changes
+    private final GLStateTracker mGL;
+    private final int mApiLevel;
+    private GLCapabilities mCapabilities;
+
+    // programs shared by all shapes, relinked once per EGL context
+    private final ShaderProgramCache mPrograms;
+
+    // vertex and index buffers of all shapes, uploaded again after a context loss
+    private final GpuBufferManager mBuffers;
+
+    // both of the above, restored in one pass after a context loss
+    private final GpuResources mResources;
+
+    // builds meshes on worker threads, the GL thread uploads a few per frame;
+    // null if shapes build their meshes when first drawn
+    private final MeshLoader mLoader;
+
+    // meshes that never move, merged into one draw call per color; baked on
+    // the GL thread, old batches are released once no packet draws them
+    private final StaticBatchBuilder mStaticScene = new StaticBatchBuilder();
+    private boolean mStaticSceneChanged;
+    private final ConcurrentLinkedQueue<RetiredBatch> mRetiredBatches = new ConcurrentLinkedQueue<>();
+
+    private boolean mSceneCreated;
+
+    // frame timings, GPU time only where timer queries are supported
+    private volatile FrameProfiler mProfiler;
+    private GpuTimer mGpuTimer;
+    private long mProfiledSequence = -1;
+
+    // bits of the angle set by setAngle until the next step applies it, so
+    // that only the simulation thread writes mAngle
+    private final AtomicInteger mRequestedAngle = new AtomicInteger(NO_ANGLE);
+
+    // written by the simulation thread, read by any
+    private volatile float mAngle;
+
+    // written by the UI thread, read by the simulation thread
+    private volatile float mAutoRotation;
+    private volatile long mFrameTimeNanos;
+    private volatile FrameScheduler mScheduler;
+
+    // simulation thread only
+    private long mLastStepNanos = -1;
+    private float mSpinVelocity;
 
-    private float mAngle;
+    public MyGLRenderer() {
+        this(createGL(), Build.VERSION.SDK_INT, true);
+    }
+
+    /**
+     * @return - The GL of the device. Debug builds check every call for
+     * errors and trace them if the log tag DebugGL is set to VERBOSE, release
+     * builds call GLES directly.
+     */
+    static GL createGL() {
+        GL gl = new AndroidGL();
+        if (!BuildConfig.GL_DEBUG) {
+            return gl;
+        }
+        DebugGL debug = new DebugGL(gl);
+        if (Log.isLoggable("DebugGL", Log.VERBOSE)) {
+            debug.setTracer(call -> Log.v("DebugGL", call));
+        }
+        return debug;
+    }
+
+    /**
+     * Runs the simulation on the GL thread, right before every frame, and
+     * builds meshes when they are first drawn.
+     *
+     * @param gl - GL every call of the renderer and its shapes goes through.
+     * @param apiLevel - Android API level of the device.
+     */
+    MyGLRenderer(GL gl, int apiLevel) {
+        this(gl, apiLevel, false);
+    }
+
+    /**
+     * @param gl - GL every call of the renderer and its shapes goes through.
+     * @param apiLevel - Android API level of the device.
+     * @param threaded - Whether the scene is updated and recorded on a
+     * simulation thread of its own, and meshes are built on worker threads.
+     */
+    MyGLRenderer(GL gl, int apiLevel, boolean threaded) {
+        mGL = new GLStateTracker(gl);
+        mApiLevel = apiLevel;
+        mThreaded = threaded;
+        mPrograms = new ShaderProgramCache(mGL);
+        mBuffers = new GpuBufferManager(mGL);
+        mResources = new GpuResources(mPrograms, mBuffers);
+        if (threaded) {
+            mLoader = new MeshLoader(mBuffers, MeshLoader.defaultThreads());
+            // staged meshes are uploaded by the next frame
+            mLoader.setOnStagedListener(this::requestFrame);
+        } else {
+            mLoader = null;
+        }
+    }
 
     @Override
     public void onSurfaceCreated(GL10 unused, EGLConfig config) {
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        // a new EGL context was created, every program and buffer of the old
+        // one is gone; they are created again from the data they kept
+        mGL.invalidate();
+        mResources.onContextCreated();
+        mCapabilities = GLCapabilities.query(mGL, mApiLevel);
+        // meshes are uploaded in the most compact vertex format the context can draw
+        mBuffers.setMeshFormat(VertexFormat.forMeshes(mCapabilities));
+        // queries of the old context are gone with it
+        if (!mCapabilities.hasTimerQuery()) {
+            mGpuTimer = null;
+        } else if (mGpuTimer == null) {
+            mGpuTimer = new GpuTimer(mGL);
+        } else {
+            mGpuTimer.invalidate();
+        }
+
+		mGL.glEnable(GLES20.GL_DEPTH_TEST);
 
         // Set the background frame color
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        mGL.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 
+        // shapes survive a context loss, their programs and buffers
+        // were linked and uploaded again above
         //mTriangle = new Triangle();
-        mSquare   = new Cylinder(0.9f, 0.7f, 1f, 0, (float) Math.PI);// , (float) (2*Math.PI));
+        if (!mSceneCreated) {
+            // shapes link their program when created, so that happens here
+            final Cylinder pipe = new Cylinder(mPrograms, mBuffers, mLoader, LodSelector.getDefault(),
+                    0.9f, 0.7f, 1f, 0, (float) Math.PI);// , (float) (2*Math.PI));
+            queueSceneEvent(() -> {
+                mPipe = mScene.getRoot().addChild(new SceneNode(pipe));
+
+                // Set the camera position (View matrix)
+                updateCamera();
+            });
+            mSceneCreated = true;
+        }
+
+        if (mThreaded && mSimulation == null) {
+            mSimulation = new SimulationThread(this::simulate);
+            mSimulation.start();
+        }
     }
 
     @Override public void onDrawFrame(GL10 unused) {
-        float[] scratch = new float[16];
+        mGL.resetCounters();
 
-        // Draw background color
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        // Rebake the static meshes if any were added
+        if (mStaticSceneChanged) {
+            final StaticBatch batch = mStaticScene.build(mPrograms, mBuffers);
+            queueSceneEvent(() -> {
+                StaticBatch old = (StaticBatch) mStaticNode.getRenderable();
+                mStaticNode.setRenderable(batch);
+                if (old != null) {
+                    // packets recorded from now on no longer draw it
+                    mRetiredBatches.offer(new RetiredBatch(old, mSequence));
+                }
+            });
+            mStaticSceneChanged = false;
+        }
 
-        // Set the camera position (View matrix)
-        Matrix.setLookAtM(mViewMatrix, 0, -3f, 0f, 0f, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
+        FrameProfiler profiler = mProfiler;
+        if (profiler != null) {
+            profiler.beginFrame();
+        }
 
-        // Calculate the projection and view transformation
-        Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
+        if (!mThreaded) {
+            simulate();
+        }
 
-        // Draw square
-        // mSquare.draw(mMVPMatrix);
+        // Stream in meshes built in the background, within a budget per frame
+        if (mLoader != null && mLoader.upload(MeshLoader.DEFAULT_UPLOAD_BYTES, MeshLoader.DEFAULT_UPLOAD_NANOS) > 0) {
+            // record a frame that draws them
+            requestFrame();
+        }
 
-        // Create a rotation for the triangle
+        // Draw background color
+        mGL.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
-        // Use the following code to generate constant rotation.
-        // Leave this code out when using TouchEvents.
-        // long time = SystemClock.uptimeMillis() % 4000L;
-        // float angle = 0.090f * ((int) time);
-		Matrix.setRotateM(mRotationMatrix, 0, mAngle, 0.0f, 1.0f, 0.0f);
+        // Replay the newest recorded frame, or the last one again
+        FramePacket packet = mFrames.acquire();
+        if (packet == null) {
+            return;
+        }
 
-        // Combine the rotation matrix with the projection and camera view
-        // Note that the mMVPMatrix factor *must be first* in order
-        // for the matrix multiplication product to be correct.
-        Matrix.multiplyMM(scratch, 0, mMVPMatrix, 0, mRotationMatrix, 0);
+        if (profiler == null) {
+            packet.replay(mQueue);
+            mQueue.flush();
+        } else {
+            drawProfiled(profiler, packet);
+        }
 
-        // Draw triangle
-        mSquare.draw(scratch);
+        RetiredBatch retired;
+        while ((retired = mRetiredBatches.peek()) != null && retired.sequence <= packet.getSequence()) {
+            mRetiredBatches.poll();
+            retired.batch.release();
+        }
     }
 
     @Override
     public void onSurfaceChanged(GL10 unused, int width, int height) {
         // Adjust the viewport based on geometry changes,
         // such as screen rotation
-        GLES20.glViewport(0, 0, width, height);
+        mGL.glViewport(0, 0, width, height);
 
-        float ratio = (float) width / height;
+        final float ratio = (float) width / height;
+        final int viewportHeight = height;
 
         // this projection matrix is applied to object coordinates
-        // in the onDrawFrame() method
-        Matrix.frustumM(mProjectionMatrix, 0, -ratio, ratio, -1, 1, 1, 4);
+        // by the simulation, when it records the next frame
+        final int viewportWidth = width;
+        queueSceneEvent(() -> {
+            Matrix4.frustum(mProjectionMatrix, -ratio, ratio, -1, 1, 1, 8);
+            mScene.setProjection(mProjectionMatrix, viewportHeight);
+            mViewportHeight = viewportHeight;
+            mGestures.setViewSize(viewportWidth, viewportHeight);
+        });
+    }
+
+    /**
+     * Replays a packet like {@link #onDrawFrame} does, recording the time
+     * and counters of every phase.
+     */
+    private void drawProfiled(FrameProfiler profiler, FramePacket packet) {
+        if (mGpuTimer != null) {
+            mGpuTimer.begin();
+        }
+
+        long start = System.nanoTime();
+        packet.replay(mQueue);
+        mQueue.sort();
+        long sorted = System.nanoTime();
+        mQueue.flush();
+        long submitted = System.nanoTime();
+
+        if (mGpuTimer != null) {
+            mGpuTimer.end();
+            // the GPU time of an earlier frame, results arrive late
+            profiler.set(FrameProfiler.GPU, mGpuTimer.poll());
+        }
+
+        // the simulation work is only counted for the frame that shows it first
+        if (packet.getSequence() != mProfiledSequence) {
+            profiler.set(FrameProfiler.UPDATE, packet.getUpdateNanos());
+            profiler.set(FrameProfiler.CULL, packet.getCullNanos());
+            mProfiledSequence = packet.getSequence();
+        }
+        profiler.set(FrameProfiler.SORT, sorted - start);
+        profiler.set(FrameProfiler.SUBMIT, submitted - sorted);
+        profiler.set(FrameProfiler.DRAW_CALLS, mQueue.getLastDrawCalls());
+        profiler.set(FrameProfiler.TRIANGLES, mQueue.getLastTriangles());
+        profiler.set(FrameProfiler.STATE_CHANGES, mGL.getIssued());
+        profiler.set(FrameProfiler.STATE_SKIPPED, mGL.getSkipped());
+        profiler.endFrame();
+    }
+
+    /**
+     * @param profiler - Records the timings of every frame, null to stop.
+     * May be called from any thread.
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        mProfiler = profiler;
+    }
+
+    /**
+     * @return - The profiler recording the frames, or null.
+     */
+    public FrameProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    /**
+     * One simulation step: applies input and queued changes to the scene,
+     * recomputes what moved and records the frame for the GL thread. Runs on
+     * the simulation thread, or right before each frame on the GL thread if
+     * the renderer is not threaded.
+     */
+    void simulate() {
+        long start = System.nanoTime();
+
+        Runnable event;
+        while ((event = mSceneEvents.poll()) != null) {
+            event.run();
+        }
+        // not a scene event, setting the angle every frame must not allocate
+        int requested = mRequestedAngle.getAndSet(NO_ANGLE);
+        if (requested != NO_ANGLE) {
+            mAngle = Float.intBitsToFloat(requested);
+        }
+
+        // time of the vsync the frame is for, if a scheduler started it
+        long now = mFrameTimeNanos != 0 ? mFrameTimeNanos : System.nanoTime();
+        float dt = mLastStepNanos < 0 ? 0 : Math.min(Math.max(now - mLastStepNanos, 0) / 1e9f, MAX_STEP_SECONDS);
+        mLastStepNanos = now;
+
+        if (mGestures.update(mTouches)) {
+            applyGestures();
+        }
+        boolean animating = updateSpin(dt);
+
+        // Create a rotation for the pipe, only when the angle changed
+        float angle = mAngle;
+        if (mPipe != null && angle != mPipeAngle) {
+            Matrix4.setRotate(mPipe.getLocalTransform(), angle, 0.0f, 1.0f, 0.0f);
+            mPipe.invalidate();
+            mPipeAngle = angle;
+        }
+
+        // Recompute the matrices of what moved, then record everything visible
+        mScene.update();
+        long updated = System.nanoTime();
+
+        FramePacket packet = mFrames.getBack();
+        packet.reset(mSequence++);
+        mScene.cull();
+        mScene.drawVisible(packet);
+        packet.setTimes(updated - start, System.nanoTime() - updated);
+        mFrames.publish();
+
+        FrameScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            // render continuously only while something moves by itself
+            scheduler.setAnimating(animating);
+        }
+
+        Runnable listener = mFrameListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * One finger spins the pipe, two fingers pan and pinch zoom the camera.
+     */
+    private void applyGestures() {
+        float scale = mGestures.getScale();
+        float panX = mGestures.getPanX();
+        float panY = mGestures.getPanY();
+        if (scale == 1 && panX == 0 && panY == 0) {
+            return;
+        }
+
+        mCameraDistance = Math.min(Math.max(mCameraDistance / scale, MIN_CAMERA_DISTANCE), MAX_CAMERA_DISTANCE);
+
+        // the frustum is 2 units high at distance 1, so a pixel spans this
+        // much at the pipe; the view looks along +x, so right is +z
+        float unitsPerPixel = 2 * mCameraDistance / mViewportHeight;
+        mCameraZ -= panX * unitsPerPixel;
+        mCameraY += panY * unitsPerPixel;
+        updateCamera();
+    }
+
+    /**
+     * Turns the pipe by the one finger spin of this step, keeps a released
+     * spin going and slows it down, and applies the automatic rotation.
+     *
+     * @param dt - Seconds since the last step.
+     * @return - Whether the pipe keeps turning without input.
+     */
+    private boolean updateSpin(float dt) {
+        float spin = mGestures.getSpin() * TOUCH_SCALE_FACTOR;
+        float angle = mAngle + spin + mAutoRotation * dt;
+
+        int pointers = mGestures.getPointerCount();
+        if (pointers == 1) {
+            // follow the finger, a finger held still brings this to zero
+            if (dt > 0) {
+                mSpinVelocity += (spin / dt - mSpinVelocity) / 2;
+            }
+        } else if (pointers == 0 && mSpinVelocity != 0) {
+            angle += mSpinVelocity * dt;
+            mSpinVelocity *= (float) Math.exp(-FLING_FRICTION * dt);
+            if (Math.abs(mSpinVelocity) < MIN_FLING_VELOCITY) {
+                mSpinVelocity = 0;
+            }
+        } else {
+            mSpinVelocity = 0;
+        }
+
+        if (angle != mAngle) {
+            mAngle = angle;
+        }
+        return mAutoRotation != 0 || (pointers == 0 && mSpinVelocity != 0);
+    }
+
+    private void updateCamera() {
+        mScene.setLookAt(-mCameraDistance, mCameraY, mCameraZ, 0f, mCameraY, mCameraZ, 0f, 1.0f, 0.0f);
+    }
+
+    /**
+     * @return - Ring the view records its touch samples into. Only one
+     * thread may add samples.
+     */
+    public TouchRing getTouchRing() {
+        return mTouches;
+    }
+
+    /**
+     * Runs a change to the scene before the next simulation step, and
+     * requests that step. May be called from any thread.
+     *
+     * @param event - Change to apply on the simulation thread.
+     */
+    public void queueSceneEvent(Runnable event) {
+        mSceneEvents.offer(event);
+        requestFrame();
+    }
+
+    /**
+     * Asks the simulation for a new frame. May be called from any thread.
+     */
+    public void requestFrame() {
+        FrameScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            // the frame starts at the next vsync the scheduler allows
+            scheduler.requestFrame();
+        } else {
+            startFrame(0);
+        }
+    }
+
+    /**
+     * Starts recording a frame right away. Called by the frame scheduling,
+     * or directly when there is none.
+     *
+     * @param frameTimeNanos - Time of the vsync the frame is for, 0 to take
+     * the current time when the step runs.
+     */
+    public void startFrame(long frameTimeNanos) {
+        mFrameTimeNanos = frameTimeNanos;
+        SimulationThread simulation = mSimulation;
+        if (simulation != null) {
+            simulation.requestStep();
+        }
+    }
+
+    /**
+     * @param scheduler - Decides when frames are started, and learns from
+     * the simulation whether the scene animates; null to start every
+     * requested frame right away.
+     */
+    public void setFrameScheduler(FrameScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @param degreesPerSecond - Speed the pipe turns at by itself, 0 to stop.
+     */
+    public void setAutoRotation(float degreesPerSecond) {
+        mAutoRotation = degreesPerSecond;
+        requestFrame();
+    }
+
+    /**
+     * @return - Programs and buffers of all shapes, for example to report
+     * how long restoring them took after a context loss.
+     */
+    public GpuResources getResources() {
+        return mResources;
+    }
+
+    /**
+     * @param listener - Called on the simulation thread whenever a new frame
+     * was recorded, usually to request rendering it.
+     */
+    public void setOnFrameReadyListener(Runnable listener) {
+        mFrameListener = listener;
+    }
+
+    /**
+     * @return - Builds the meshes of the shapes on worker threads; null
+     * unless the renderer is threaded.
+     */
+    MeshLoader getLoader() {
+        return mLoader;
+    }
+
+    /**
+     * Stops the simulation thread and the mesh workers, if any.
+     */
+    public void release() {
+        if (mLoader != null) {
+            mLoader.shutdown();
+        }
+        if (mSimulation != null) {
+            mSimulation.quit();
+            mSimulation = null;
+        }
     }
 
     /**
@@ -109,19 +585,20 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
      * <p><strong>Note:</strong> When developing shaders, use the checkGlError()
      * method to debug shader coding errors.</p>
      *
+     * @param gl - GL the shader is created with.
      * @param type - Vertex or fragment shader type.
      * @param shaderCode - String containing the shader code.
      * @return - Returns an id for the shader.
      */
-    public static int loadShader(int type, String shaderCode){
+    public static int loadShader(GL gl, int type, String shaderCode){
 
         // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
         // or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shader = GLES20.glCreateShader(type);
+        int shader = gl.glCreateShader(type);
 
         // add the source code to the shader and compile it
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
+        gl.glShaderSource(shader, shaderCode);
+        gl.glCompileShader(shader);
 
         return shader;
     }
@@ -131,21 +608,65 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     * just after making it:
     *
     * <pre>
-    * mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-    * MyGLRenderer.checkGlError("glGetUniformLocation");</pre>
+    * gl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+    * MyGLRenderer.checkGlError(gl, "glUniformMatrix4fv");</pre>
     *
-    * If the operation is not successful, the check throws an error.
+    * If the operation is not successful, the check throws an error. Release
+    * builds skip the check, as glGetError stalls the pipeline on many drivers;
+    * in debug builds {@link DebugGL} checks every call anyway.
     *
+    * @param gl - GL the call was made on.
     * @param glOperation - Name of the OpenGL call to check.
     */
-    public static void checkGlError(String glOperation) {
+    public static void checkGlError(GL gl, String glOperation) {
+        if (!BuildConfig.GL_DEBUG) {
+            return;
+        }
         int error;
-        while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+        while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
             Log.e(TAG, glOperation + ": glError " + error);
             throw new RuntimeException(glOperation + ": glError " + error);
         }
     }
 
+    /**
+     * Adds a mesh that never moves to the static batch. The batch is baked
+     * again on the next frame. Must be called on the GL thread, for example
+     * through {@link GLSurfaceView#queueEvent}, followed by a frame request.
+     *
+     * @param mesh - Geometry in object coordinates.
+     * @param modelMatrix - Transform from object to world coordinates.
+     * @param color - RGBA color of the mesh.
+     */
+    public void addStaticMesh(Mesh mesh, float[] modelMatrix, float[] color) {
+        mStaticScene.add(mesh, modelMatrix, color);
+        mStaticSceneChanged = true;
+    }
+
+    /**
+     * @return - The scene graph. Nodes may only be added or changed on the
+     * simulation thread, through {@link #queueSceneEvent}.
+     */
+    public Scene getScene() {
+        return mScene;
+    }
+
+    /**
+     * @return - The GL state tracker, whose counters cover the last frame.
+     */
+    public GLStateTracker getStateTracker() {
+        return mGL;
+    }
+
+    /**
+     * @return - What the current EGL context supports, for example to pick
+     * the {@link InstancedRenderer} path. Only valid on the GL thread after
+     * onSurfaceCreated().
+     */
+    public GLCapabilities getCapabilities() {
+        return mCapabilities;
+    }
+
     /**
      * Returns the rotation angle of the triangle shape (mTriangle).
      *
@@ -156,9 +677,21 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     }
 
     /**
-     * Sets the rotation angle of the triangle shape (mTriangle).
+     * Sets the rotation angle of the triangle shape (mTriangle), from the
+     * next simulation step on. May be called from any thread.
      */
     public void setAngle(float angle) {
-        mAngle = angle;
+        mRequestedAngle.set(Float.floatToRawIntBits(angle));
+        requestFrame();
+    }
+
+    private static final class RetiredBatch {
+        final StaticBatch batch;
+        final long sequence;
+
+        RetiredBatch(StaticBatch batch, long sequence) {
+            this.batch = batch;
+            this.sequence = sequence;
+        }
     }
 }
@@ -20,6 +20,11 @@ import android.opengl.GLSurfaceView;
 import android.view.MotionEvent;
 import android.util.*;
 
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
 /**
  * A view container where OpenGL ES graphics can be drawn on screen.
  * This view can also be used to capture touch events, such as a user
@@ -27,54 +32,140 @@ import android.util.*;
  */
 public class MyGLSurfaceView extends GLSurfaceView {
 
+    private static final String TAG = "MyGLSurfaceView";
+    private static final float MAX_FPS = 60f;
+
     private final MyGLRenderer mRenderer;
+    private final FrameScheduler mScheduler;
+    private final VsyncDriver mVsync;
 
     public MyGLSurfaceView(Context context) {
         super(context);
 
-        // Create an OpenGL ES 2.0 context.
+        // Create an OpenGL ES 2.0 compatible context, preferring
+        // OpenGL ES 3.0 where available for hardware instancing.
         setEGLContextClientVersion(2);
+        setEGLContextFactory(new ContextFactory());
+        // Keep programs and buffers while paused; devices that cannot keep
+        // the context lose it anyway, the renderer restores it in one pass
+        setPreserveEGLContextOnPause(true);
 
         // Set the Renderer for drawing on the GLSurfaceView
         mRenderer = new MyGLRenderer();
         setRenderer(mRenderer);
+        mRenderer.getResources().setRestoreListener((programs, buffers, nanos) ->
+                Log.i(TAG, "EGL context lost, restored " + programs + " programs and "
+                        + buffers + " buffers in " + nanos / 1000 + " us"));
 
-        // Render the view only when there is a change in the drawing data
+        // Render the view only when there is a change in the drawing data,
+        // that is whenever the simulation thread recorded a new frame
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
-    }
+        mRenderer.setOnFrameReadyListener(this::requestRender);
 
-    private final float TOUCH_SCALE_FACTOR = 180.0f / 320;
-    private float mPreviousX;
-    private float mPreviousY;
+        // Frames start on vsync: every one while something animates, up to
+        // MAX_FPS, otherwise only when requested, and none while idle
+        mScheduler = new FrameScheduler(MAX_FPS);
+        mVsync = new VsyncDriver(mScheduler, mRenderer::startFrame);
+        mRenderer.setFrameScheduler(mScheduler);
+    }
 
     @Override
     public boolean onTouchEvent(MotionEvent e) {
         // MotionEvent reports input details from the touch screen
-        // and other input controls. In this case, you are only
-        // interested in events where the touch position changed.
+        // and other input controls. The samples are handed to the
+        // simulation thread through a ring, which coalesces them
+        // once per frame.
+        TouchRing touches = mRenderer.getTouchRing();
 
-        float x = e.getX();
-        float y = e.getY();
+        switch (e.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                addPointer(touches, TouchRing.DOWN, e, e.getActionIndex());
+                break;
 
-        switch (e.getAction()) {
             case MotionEvent.ACTION_MOVE:
-                float dx = x - mPreviousX;
-                float dy = y - mPreviousY;
-
-                // reverse direction of rotation above the mid-line
-                if (y > getHeight() / 2)
-                    dx = dx * -1 ;
+                // samples batched since the last event, oldest first
+                for (int h = 0; h < e.getHistorySize(); h++) {
+                    for (int p = 0; p < e.getPointerCount(); p++) {
+                        touches.add(TouchRing.MOVE, e.getPointerId(p), e.getHistoricalX(p, h), e.getHistoricalY(p, h));
+                    }
+                    touches.add(TouchRing.SYNC, -1, 0, 0);
+                }
+                for (int p = 0; p < e.getPointerCount(); p++) {
+                    touches.add(TouchRing.MOVE, e.getPointerId(p), e.getX(p), e.getY(p));
+                }
+                touches.add(TouchRing.SYNC, -1, 0, 0);
+                break;
 
-                // reverse direction of rotation to left of the mid-line
-                if (x < getWidth() / 2)
-                    dy = dy * -1 ;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                addPointer(touches, TouchRing.UP, e, e.getActionIndex());
+                break;
 
-                mRenderer.setAngle(mRenderer.getAngle() + ((dx + dy) * TOUCH_SCALE_FACTOR));  // = 180.0f / 320
-                requestRender();
+            case MotionEvent.ACTION_CANCEL:
+                touches.add(TouchRing.CANCEL, -1, 0, 0);
+                break;
 		    }
 
-        mPreviousX = x;
-        mPreviousY = y;
+        touches.publish();
+        // the frame starts on the next vsync, the renderer asks for it to be
+        // rendered once it is recorded
+        mRenderer.requestFrame();
         return true;
         }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mVsync.pause();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        mVsync.resume();
+    }
+
+    /**
+     * @return - The renderer, for example to attach a profiler.
+     */
+    public MyGLRenderer getRenderer() {
+        return mRenderer;
+    }
+
+    /**
+     * @return - The frame scheduler, for example to change the frame rate cap.
+     */
+    public FrameScheduler getFrameScheduler() {
+        return mScheduler;
+    }
+
+    private static void addPointer(TouchRing touches, int kind, MotionEvent e, int index) {
+        touches.add(kind, e.getPointerId(index), e.getX(index), e.getY(index));
+        touches.add(TouchRing.SYNC, -1, 0, 0);
+    }
+
+    /**
+     * Creates an OpenGL ES 3.0 context where the driver offers one and an
+     * OpenGL ES 2.0 context everywhere else.
+     */
+    private static class ContextFactory implements GLSurfaceView.EGLContextFactory {
+        private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+        @Override
+        public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config) {
+            for (int version = 3; version >= 2; version--) {
+                int[] attributes = { EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE };
+                EGLContext context = egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attributes);
+                if (context != null && context != EGL10.EGL_NO_CONTEXT)
+                    return context;
+            }
+            return EGL10.EGL_NO_CONTEXT;
+        }
+
+        @Override
+        public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            egl.eglDestroyContext(display, context);
+        }
+    }
     }
@@ -17,60 +17,31 @@ package com.sergej.game;
 
 import android.opengl.GLES20;
 
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
-
 /**
  * A three-dimensional basis for cylinder elements for use as a drawn cylinder elements
  * 		as objects in OpenGL ES 2.0.
  */
-public class OpenGLPipeElement {
-	private final String vertexShaderCode =
-			// This matrix member variable provides a hook to manipulate
-			// the coordinates of the objects that use this vertex shader
-			"uniform mat4 uMVPMatrix;" +
-					"attribute vec4 vPosition;" +
-					"void main() {" +
-					// The matrix must be included as a modifier of gl_Position.
-					// Note that the uMVPMatrix factor *must be first* in order
-					// for the matrix multiplication product to be correct.
-					"  gl_Position = uMVPMatrix * vPosition;" +
-					"}";
-
-	private final String fragmentShaderCode =
-			"precision mediump float;" +
-					"uniform vec4 vColor;" +
-					"void main() {" +
-					"  gl_FragColor = vColor;" +
-					"}";
-
-	private final int _shaderProgram;
-
-	protected FloatBuffer _vertexBuffer;
-
-	static private final int _COORDS_PER_VERTEX = 3;
-
-	public OpenGLPipeElement() {
-		// create empty OpenGL Program
-		_shaderProgram = GLES20.glCreateProgram();
-
-		// prepare shaders and OpenGL program
-		int vertex_shader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-		GLES20.glAttachShader(_shaderProgram, vertex_shader); // add the vertex shader to program
-
-		int fragment_shader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-		GLES20.glAttachShader(_shaderProgram, fragment_shader); // add the fragment shader to program
-
-		// create OpenGL shader program executables
-		GLES20.glLinkProgram(_shaderProgram);
+public class OpenGLPipeElement implements Bounded, Submittable {
+	private final FlatColorProgram _shaderProgram;
+
+	protected GpuBuffer _vertexBuffer;
+
+	private final GpuBufferManager _buffers;
+
+	public OpenGLPipeElement(ShaderProgramCache programs, GpuBufferManager buffers) {
+		// take the shared OpenGL program, it is linked only once per context
+		this(new FlatColorProgram(programs), buffers);
 		}
 
-	private float [] color = { 1.0f, 0f, 0f, 1.0f };
+	/**
+	 * @param program - Program binding shared with other elements.
+	 */
+	public OpenGLPipeElement(FlatColorProgram program, GpuBufferManager buffers) {
+		_shaderProgram = program;
+		_buffers = buffers;
+		}
 
-	private int _slices;
+	private float [] color = { 1.0f, 0f, 0f, 1.0f };
 
 	/**
      * Encapsulates the OpenGL ES instructions for drawing this shape.
@@ -79,75 +50,126 @@ public class OpenGLPipeElement {
      * this shape.
      */
     public void draw(float [] mvpMatrix) {
+		GL gl = _shaderProgram.getGL();
+
         // Add program to OpenGL environment
-        GLES20.glUseProgram(_shaderProgram);
- 		
-		// get handle to vertex shader's vPosition member
-		int position_handle = GLES20.glGetAttribLocation(_shaderProgram, "vPosition");
-       
-		// Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(position_handle);
-        
-		// Prepare the triangle coordinate data
-		// 4 bytes per vertex
-		int _vertexStride = _COORDS_PER_VERTEX * 4;
-		GLES20.glVertexAttribPointer(position_handle, _COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, _vertexStride, _vertexBuffer);
-        
-		// get handle to fragment shader's vColor member
-		int _colorHandle = GLES20.glGetUniformLocation(_shaderProgram, "vColor");
-        
-		// Set color for drawing the triangle
-        GLES20.glUniform4fv(_colorHandle, 1, color, 0);
-
-        // get handle to shape's transformation matrix
-		int mvp_matrix_handle = GLES20.glGetUniformLocation(_shaderProgram, "uMVPMatrix");
-        MyGLRenderer.checkGlError("glGetUniformLocation");
+        _shaderProgram.use();
+
+		// Enable the vertex shader's vPosition member and prepare the tube coordinate data
+        _shaderProgram.enablePosition(_vertexBuffer);
+
+		// Set color for drawing the tube
+        _shaderProgram.setColor(color);
 
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mvp_matrix_handle, 1, false, mvpMatrix, 0);
-        MyGLRenderer.checkGlError("glUniformMatrix4fv");
+        _shaderProgram.setMVPMatrix(mvpMatrix);
 
-        // Draw the square
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, _drawListBuffer.capacity() / 2, GLES20.GL_UNSIGNED_SHORT, _drawListBuffer);
+        // Draw the tube
+        _drawListBuffer.bind();
+        gl.glDrawElements(GLES20.GL_TRIANGLES, _indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(position_handle);
+        _shaderProgram.disablePosition();
     	}
 
-	//private float _start_angle = 0, _end_angle = (float) (2 * Math.PI);
+	@Override public void submit(DrawList queue, float [] mvpMatrix) {
+		queue.add(_shaderProgram, _vertexBuffer, _drawListBuffer, _indexCount, color, mvpMatrix);
+		}
 
-    //protected final float _DEGREES_PER_SLICE = 2 * (float) Math.PI / MAX_SLICES;
+	private GpuBuffer _drawListBuffer;
 
-	protected final short [] _drawOrderPattern = {
-			0,  1,  3,  0,  3,  2 //,
-			//2,  3,  5,  2,  5,  4 //, !!! +2 for each element from previous row
-			//4,  5,  7,  4,  7,  6, 6,  7,  9,  6,  9,  8,  // !!! + 4 for each element
-			//8,  9, 11,  8, 11, 10, 10, 11, 13, 10, 13, 12, //	from previous row
-			//12, 13, 15, 12, 15, 14,	14, 15,  1, 14,  1,  0
-	}; // { 0, 1, 2, 0, 2, 3 }; // order to draw vertices
+	private Mesh _mesh;
+	private int _indexCount;
+	private Aabb _bounds;
 
-	private short [] increaseDrawOrderPattern(int ratio) {
-		short [] result = Arrays.copyOf(_drawOrderPattern, _drawOrderPattern.length);
-		for (int i  = 0; i < _drawOrderPattern.length; i++)
-             result[i] = (short) ((2 * ratio + result[i]) % (2 * _slices));
-		return result;
+	/**
+	 * Uploads the geometry of this element, usually a mesh of {@link MeshFactory}.
+	 *
+	 * @param mesh - Positions and triangle indices of the element.
+	 * @return - This element.
+	 */
+	public OpenGLPipeElement initializeVertexBuffer(Mesh mesh) {
+		// placement of the calculated coordinates in the buffer, which is used later in the shaders to draw a figure
+		_vertexBuffer = _buffers.createStaticVertices(mesh);
+		_drawListBuffer = _buffers.createStaticIndices(mesh.getIndices(), mesh.getIndexCount());
+		_mesh = mesh;
+		_indexCount = mesh.getIndexCount();
+		_bounds = mesh.getBounds();
+
+		return this;
 		}
 
-	private ShortBuffer _drawListBuffer;
-	
-	public OpenGLPipeElement initializeVertexBuffer(float [] coords) {
-		// placement of the calculated coordinates in the buffer, which is used later in the shaders to draw a figure
-		_vertexBuffer = ByteBuffer.allocateDirect(2 * _slices * _COORDS_PER_VERTEX * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
-		_vertexBuffer.put(coords).position(0);
+	/**
+	 * Uploads a mesh of a {@link MeshFile} straight from the mapped file.
+	 *
+	 * @param entry - Vertices, indices and bounds of the element.
+	 * @return - This element.
+	 */
+	public OpenGLPipeElement initializeVertexBuffer(MeshFile.Entry entry) {
+		_vertexBuffer = _buffers.createStaticVertices(entry.getVertices(), entry.getFormat());
+		_drawListBuffer = _buffers.createStatic(GLES20.GL_ELEMENT_ARRAY_BUFFER, entry.getIndices());
+		_mesh = null;
+		_indexCount = entry.getIndexCount();
+		_bounds = entry.getBounds();
 
-		short [] draw_order = new  short [coords.length / _COORDS_PER_VERTEX];
+		return this;
+		}
 
-		for (int i = 0; i < _slices; i++)
-			System.arraycopy(increaseDrawOrderPattern(i), 0, draw_order, _drawOrderPattern.length * i, _drawOrderPattern.length);
+	/**
+	 * Takes the buffers a {@link MeshLoader} uploaded.
+	 *
+	 * @param request - A ready request.
+	 * @return - This element.
+	 */
+	public OpenGLPipeElement initializeVertexBuffer(MeshLoader.Request request) {
+		_vertexBuffer = request.getVertexBuffer();
+		_drawListBuffer = request.getIndexBuffer();
+		_mesh = request.getMesh();
+		_indexCount = _mesh.getIndexCount();
+		_bounds = _mesh.getBounds();
 
-		_drawListBuffer = ByteBuffer.allocateDirect(draw_order.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
-		_drawListBuffer.put(draw_order).position(0);
+		return this;
+		}
 
+	/**
+	 * @param rgba - The color to draw the new element with.
+	 * @return - A new element drawing the buffers of this one.
+	 */
+	public OpenGLPipeElement share(float [] rgba) {
+		OpenGLPipeElement element = new OpenGLPipeElement(_shaderProgram, _buffers);
+		element._vertexBuffer = _vertexBuffer;
+		element._drawListBuffer = _drawListBuffer;
+		element._mesh = _mesh;
+		element._indexCount = _indexCount;
+		element._bounds = _bounds;
+		return element.setColor(rgba);
+		}
+
+	/**
+	 * @param rgba - The color to draw this element with.
+	 * @return - This element.
+	 */
+	public OpenGLPipeElement setColor(float [] rgba) {
+		color = rgba;
 		return this;
 		}
+
+	/**
+	 * @return - The geometry passed to {@link #initializeVertexBuffer(Mesh)},
+	 * null if the element was loaded from a {@link MeshFile}.
+	 */
+	public Mesh getMesh() {
+		return _mesh;
+		}
+
+	@Override public void getBounds(Aabb out) {
+		out.set(_bounds);
+		}
+
+	/**
+	 * @return - The RGBA color this element is drawn with.
+	 */
+	public float [] getColor() {
+		return color;
+		}
     }
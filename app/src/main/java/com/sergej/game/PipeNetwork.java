@@ -0,0 +1,772 @@
+package com.sergej.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A network of solid pipes: nodes in space joined by straight edges, each
+ * edge with a radius of its own, turned into triangle meshes with normals.
+ *
+ * <p>Every edge is a tube. What a node becomes depends on the edges that
+ * meet there. An open end is closed by a disc. Two edges are joined by a
+ * bend, a torus section whose radius runs from one pipe to the other, and
+ * both edges are shortened to make room for it; collinear edges run
+ * straight through instead, with a ring closing the step where their radii
+ * differ. Three or more edges run into a fitting, a short thicker cylinder
+ * with closed ends. All cross-sections have the same slices and are lined
+ * up with each other, so the pieces meet without cracks.</p>
+ *
+ * <p>The geometry is kept as one piece per edge and per node, each reordered
+ * by {@link MeshOptimizer} when it is generated, and the pieces are merged
+ * into chunks of a bounded number of vertices, each of them one
+ * draw call. An edit only marks the pieces it changes; {@link #rebuild()}
+ * generates those again and merges only the chunks they are in, so editing
+ * a large network costs about as much as editing a small one. A
+ * {@link PipeNetworkBatch} draws the chunks.</p>
+ *
+ * <p>Edits and rebuilds must all happen on one thread.</p>
+ */
+public class PipeNetwork {
+
+    /**
+     * Vertices per chunk by default, small enough that merging a chunk
+     * again after an edit stays well below a millisecond.
+     */
+    public static final int DEFAULT_CHUNK_VERTICES = 16 * 1024;
+
+    /**
+     * Most vertices per chunk, the same limit as
+     * {@link StaticBatchBuilder#MAX_VERTICES}; repeated here so the network
+     * does not depend on the GL classes.
+     */
+    public static final int MAX_CHUNK_VERTICES = 0xFFFF;
+
+    /**
+     * Most slices around a pipe.
+     */
+    public static final int MAX_SLICES = 128;
+
+    // radius of the center line of a bend, in radii of the thicker pipe
+    private static final float BEND_RADIUS = 2f;
+    // half size of a fitting, in radii of the thickest pipe
+    private static final float FITTING_SIZE = 1.25f;
+    // edges closer to a straight line than this, in radians, run straight through
+    private static final float STRAIGHT = 1e-3f;
+    private static final float EPSILON = 1e-6f;
+    private static final float FULL_TURN = 2 * (float) Math.PI;
+
+    private final int mSlices;
+    private final int mChunkVertices;
+
+    private final List<Node> mNodes = new ArrayList<>();
+    private final List<Edge> mEdges = new ArrayList<>();
+    private int mEdgeCount;
+
+    private final Set<Piece> mDirty = new LinkedHashSet<>();
+    private final List<Chunk> mChunks = new ArrayList<>();
+
+    /**
+     * @param slices - Slices around every pipe.
+     */
+    public PipeNetwork(int slices) {
+        this(slices, DEFAULT_CHUNK_VERTICES);
+    }
+
+    /**
+     * @param slices - Slices around every pipe, 3 to {@link #MAX_SLICES}.
+     * @param chunkVertices - Most vertices merged into one chunk, at most
+     * {@link #MAX_CHUNK_VERTICES} so 16 bit indices suffice.
+     */
+    public PipeNetwork(int slices, int chunkVertices) {
+        if (slices < 3 || slices > MAX_SLICES) {
+            throw new IllegalArgumentException("slices must be between 3 and " + MAX_SLICES + ": " + slices);
+        }
+        if (chunkVertices < maxPieceVertices(slices) || chunkVertices > MAX_CHUNK_VERTICES) {
+            throw new IllegalArgumentException("chunks of " + chunkVertices + " vertices do not fit "
+                    + slices + " slices into 16 bit indices");
+        }
+        mSlices = slices;
+        mChunkVertices = chunkVertices;
+    }
+
+    /**
+     * @param slices - Slices around every pipe.
+     * @return - Most vertices a single piece has: a half turn bend, or a
+     * fitting with few slices.
+     */
+    public static int maxPieceVertices(int slices) {
+        return Math.max(((slices + 1) / 2 + 1) * slices, 4 * slices + 2);
+    }
+
+    /**
+     * @return - The id of the new node.
+     */
+    public int addNode(float x, float y, float z) {
+        mNodes.add(new Node(x, y, z));
+        return mNodes.size() - 1;
+    }
+
+    /**
+     * Moves a node. The edges at the node change with it, and so do the
+     * pieces at their other ends, as the edges change direction.
+     */
+    public void moveNode(int id, float x, float y, float z) {
+        Node node = mNodes.get(id);
+        node.mX = x;
+        node.mY = y;
+        node.mZ = z;
+
+        touch(node);
+        for (int i = 0; i < node.mEdges.size(); i++) {
+            touch(node.mEdges.get(i).other(node));
+        }
+    }
+
+    /**
+     * @param from - Id of the node at one end.
+     * @param to - Id of the node at the other end.
+     * @param radius - Radius of the pipe.
+     * @return - The id of the new edge.
+     */
+    public int addEdge(int from, int to, float radius) {
+        Node a = mNodes.get(from), b = mNodes.get(to);
+        if (a == b) {
+            throw new IllegalArgumentException("an edge needs two different nodes: " + from);
+        }
+        checkRadius(radius);
+
+        Edge edge = new Edge(a, b, radius);
+        a.mEdges.add(edge);
+        b.mEdges.add(edge);
+        mEdges.add(edge);
+        mEdgeCount++;
+
+        touch(a);
+        touch(b);
+        return mEdges.size() - 1;
+    }
+
+    /**
+     * Changes the radius of a pipe, and with it the joints at both ends.
+     */
+    public void setRadius(int id, float radius) {
+        checkRadius(radius);
+        Edge edge = getEdge(id);
+        edge.mRadius = radius;
+
+        touch(edge.mFrom);
+        touch(edge.mTo);
+    }
+
+    /**
+     * Removes an edge; its id is not reused.
+     */
+    public void removeEdge(int id) {
+        Edge edge = getEdge(id);
+        mEdges.set(id, null);
+        mEdgeCount--;
+        edge.mFrom.mEdges.remove(edge);
+        edge.mTo.mEdges.remove(edge);
+
+        mDirty.remove(edge.mPiece);
+        place(edge.mPiece, null);
+        touch(edge.mFrom);
+        touch(edge.mTo);
+    }
+
+    public int getNodeCount() {
+        return mNodes.size();
+    }
+
+    /**
+     * @return - Number of edges not removed.
+     */
+    public int getEdgeCount() {
+        return mEdgeCount;
+    }
+
+    /**
+     * @return - Number of pieces {@link #rebuild()} will generate again.
+     */
+    public int getDirtyCount() {
+        return mDirty.size();
+    }
+
+    /**
+     * Generates the pieces changed since the last rebuild and merges the
+     * chunks they are in again.
+     *
+     * @return - Number of pieces generated.
+     */
+    public int rebuild() {
+        int rebuilt = mDirty.size();
+        for (Piece piece : mDirty) {
+            Mesh mesh = piece.mEdge != null ? buildEdge(piece.mEdge) : buildNode(piece.mNode);
+            place(piece, mesh != null ? MeshOptimizer.optimize(mesh) : null);
+        }
+        mDirty.clear();
+
+        for (int i = 0; i < mChunks.size(); i++) {
+            Chunk chunk = mChunks.get(i);
+            if (chunk.mDirty) {
+                chunk.merge();
+            }
+        }
+        return rebuilt;
+    }
+
+    public int getChunkCount() {
+        return mChunks.size();
+    }
+
+    /**
+     * @param index - Chunk, 0 to {@link #getChunkCount()} - 1.
+     * @return - Merged geometry of the chunk as of the last rebuild, null
+     * if it is empty.
+     */
+    public Mesh getChunkMesh(int index) {
+        return mChunks.get(index).mMesh;
+    }
+
+    /**
+     * @param index - Chunk, 0 to {@link #getChunkCount()} - 1.
+     * @return - Number that changes whenever the chunk is merged again, so
+     * its buffers know when to upload.
+     */
+    public int getChunkVersion(int index) {
+        return mChunks.get(index).mVersion;
+    }
+
+    /**
+     * @param out - Receives the bounds of all chunks as of the last rebuild.
+     */
+    public void getBounds(Aabb out) {
+        out.setEmpty();
+        for (int i = 0; i < mChunks.size(); i++) {
+            Mesh mesh = mChunks.get(i).mMesh;
+            if (mesh != null) {
+                out.union(mesh.getBounds());
+            }
+        }
+    }
+
+    private Edge getEdge(int id) {
+        Edge edge = mEdges.get(id);
+        if (edge == null) {
+            throw new IllegalArgumentException("edge " + id + " was removed");
+        }
+        return edge;
+    }
+
+    private static void checkRadius(float radius) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("a pipe needs a positive radius: " + radius);
+        }
+    }
+
+    /**
+     * Marks a node and its edges, whose ends depend on the node, for rebuilding.
+     */
+    private void touch(Node node) {
+        mDirty.add(node.mPiece);
+        for (int i = 0; i < node.mEdges.size(); i++) {
+            mDirty.add(node.mEdges.get(i).mPiece);
+        }
+    }
+
+    /**
+     * Gives a piece new geometry, keeping it in its chunk if it still fits.
+     */
+    private void place(Piece piece, Mesh mesh) {
+        int vertices = mesh != null ? mesh.getVertexCount() : 0;
+        Chunk chunk = piece.mChunk;
+        if (chunk != null) {
+            chunk.mDirty = true;
+            if (mesh != null && chunk.mVertexCount - piece.getVertexCount() + vertices <= mChunkVertices) {
+                chunk.mVertexCount += vertices - piece.getVertexCount();
+                piece.mMesh = mesh;
+                return;
+            }
+            chunk.mPieces.remove(piece);
+            chunk.mVertexCount -= piece.getVertexCount();
+            piece.mChunk = null;
+        }
+
+        piece.mMesh = mesh;
+        if (mesh == null) {
+            return;
+        }
+
+        // the first chunk with room, which fills the gaps of moved pieces
+        for (int i = 0; i < mChunks.size() && piece.mChunk == null; i++) {
+            if (mChunks.get(i).mVertexCount + vertices <= mChunkVertices) {
+                piece.mChunk = mChunks.get(i);
+            }
+        }
+        if (piece.mChunk == null) {
+            piece.mChunk = new Chunk();
+            mChunks.add(piece.mChunk);
+        }
+        piece.mChunk.mPieces.add(piece);
+        piece.mChunk.mVertexCount += vertices;
+        piece.mChunk.mDirty = true;
+    }
+
+    /**
+     * A tube along the edge, shortened at both ends by the bends there.
+     */
+    private Mesh buildEdge(Edge edge) {
+        float[] w = direction(edge.mFrom, edge.mTo);
+        float length = normalize(w);
+        if (length < EPSILON) {
+            return null;
+        }
+        float bottom = setback(edge.mFrom), top = length - setback(edge.mTo);
+        if (top - bottom < EPSILON) {
+            return null;
+        }
+
+        int count = MeshFactory.stripVertexCount(mSlices, true);
+        float[] vertices = new float[count * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[MeshFactory.stripIndexCount(mSlices)];
+        MeshFactory.fillTube(vertices, normals, 0, indices, 0, edge.mRadius, bottom, top, 0, FULL_TURN, mSlices, true);
+        transform(vertices, normals, count, edge.mFrom.position(), w);
+        return new Mesh(vertices, normals, indices);
+    }
+
+    private Mesh buildNode(Node node) {
+        List<Edge> edges = liveEdges(node);
+        switch (edges.size()) {
+            case 0:
+                return null;
+            case 1:
+                return cap(node, edges.get(0));
+            case 2:
+                return join(node, edges.get(0), edges.get(1));
+            default:
+                return fitting(node, edges);
+        }
+    }
+
+    /**
+     * @return - The edges at the node that have a length, and so a direction.
+     */
+    private static List<Edge> liveEdges(Node node) {
+        List<Edge> edges = new ArrayList<>(node.mEdges.size());
+        for (int i = 0; i < node.mEdges.size(); i++) {
+            Edge edge = node.mEdges.get(i);
+            if (length(direction(edge.mFrom, edge.mTo)) >= EPSILON) {
+                edges.add(edge);
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return - How far the edges at the node are shortened for a bend, 0
+     * unless two edges meet at an angle with room for a bend.
+     */
+    private float setback(Node node) {
+        List<Edge> edges = liveEdges(node);
+        if (edges.size() != 2) {
+            return 0f;
+        }
+        Edge first = edges.get(0), second = edges.get(1);
+        float[] a = direction(node, first.other(node)), b = direction(node, second.other(node));
+        float lengthA = normalize(a), lengthB = normalize(b);
+
+        float turn = turn(a, b);
+        if (turn < STRAIGHT || turn > Math.PI - STRAIGHT) {
+            return 0f;
+        }
+        float radius = Math.max(first.mRadius, second.mRadius);
+        float tan = (float) Math.tan(turn / 2);
+        // short edges get a tighter bend, half of them is left for the other end
+        float setback = Math.min(BEND_RADIUS * radius * tan, 0.5f * Math.min(lengthA, lengthB));
+        // a bend tighter than its pipes would turn inside out, a fitting joins them
+        return setback / tan < radius ? 0f : setback;
+    }
+
+    /**
+     * @return - Angle in radians the pipe turns by from -a to b.
+     */
+    private static float turn(float[] a, float[] b) {
+        return (float) (Math.PI - Math.acos(Math.max(-1f, Math.min(1f, dot(a, b)))));
+    }
+
+    /**
+     * A disc closing the edge at the node.
+     */
+    private Mesh cap(Node node, Edge edge) {
+        float[] d = direction(edge.other(node), node);
+        normalize(d);
+
+        int count = MeshFactory.fanVertexCount(mSlices, true);
+        float[] vertices = new float[count * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[MeshFactory.fanIndexCount(mSlices)];
+        MeshFactory.fillDisc(vertices, normals, 0, indices, 0, edge.mRadius, 0f, 0, FULL_TURN, mSlices, true);
+        transform(vertices, normals, count, node.position(), d);
+        return new Mesh(vertices, normals, indices);
+    }
+
+    /**
+     * Joins two edges: a bend, a ring where collinear pipes change radius,
+     * two caps where the edges fold back onto each other, or a fitting where
+     * there is no room for a bend.
+     */
+    private Mesh join(Node node, Edge first, Edge second) {
+        float[] a = direction(node, first.other(node)), b = direction(node, second.other(node));
+        normalize(a);
+        normalize(b);
+
+        float turn = turn(a, b);
+        if (turn > Math.PI - STRAIGHT) {
+            return concat(Arrays.asList(cap(node, first), cap(node, second)));
+        }
+        if (turn >= STRAIGHT) {
+            return setback(node) > 0 ? bend(node, first, second, a, b, turn)
+                    : fitting(node, Arrays.asList(first, second));
+        }
+        if (first.mRadius == second.mRadius) {
+            return null;
+        }
+
+        // the end of the thicker pipe, facing along the thinner one
+        boolean firstThinner = first.mRadius < second.mRadius;
+        float[] d = firstThinner ? a : b;
+        int count = MeshFactory.stripVertexCount(mSlices, true);
+        float[] vertices = new float[count * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[MeshFactory.stripIndexCount(mSlices)];
+        MeshFactory.fillAnnulus(vertices, normals, 0, indices, 0, Math.min(first.mRadius, second.mRadius),
+                Math.max(first.mRadius, second.mRadius), 0f, 0, FULL_TURN, mSlices, true);
+        transform(vertices, normals, count, node.position(), d);
+        return new Mesh(vertices, normals, indices);
+    }
+
+    /**
+     * A torus section from the end of the first edge to the start of the
+     * second. Its cross-section twists by less than a slice along the way,
+     * so both of its ends line up with the vertices of the tubes.
+     *
+     * @param a - Unit direction from the node along the first edge.
+     * @param b - Unit direction from the node along the second edge.
+     * @param turn - Angle the pipe turns by.
+     */
+    private Mesh bend(Node node, Edge first, Edge second, float[] a, float[] b, float turn) {
+        float setback = setback(node);
+        float radius = setback / (float) Math.tan(turn / 2);
+
+        // the center line turns around the axis from the tangent -a to b
+        float[] tangent = { -a[0], -a[1], -a[2] };
+        float[] axis = cross(tangent, b);
+        normalize(axis);
+        float[] outward = cross(tangent, axis);
+        float[] position = node.position();
+        float[] center = new float[3];
+        for (int i = 0; i < 3; i++) {
+            center[i] = position[i] + a[i] * setback - outward[i] * radius;
+        }
+
+        // the cross-section starts as the one of the first edge; carried
+        // around the bend it ends up twisted against the one of the second
+        float[] start = perpendicular(a);
+        float[] end = rotate(start, axis, turn);
+        float twist = (float) Math.atan2(dot(cross(end, perpendicular(b)), b), dot(end, perpendicular(b)));
+        float slice = FULL_TURN / mSlices;
+        twist -= Math.round(twist / slice) * slice;
+
+        int steps = Math.max(1, (int) Math.ceil(mSlices * turn / FULL_TURN));
+        int count = (steps + 1) * mSlices;
+        float[] vertices = new float[count * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+
+        float[] t = new float[3], radial = new float[3], u = new float[3], v = new float[3];
+        UnitCircle along = new UnitCircle(0, turn / steps);
+        for (int ring = 0; ring <= steps; ring++, along.next()) {
+            float fraction = (float) ring / steps;
+            float pipeRadius = first.mRadius + (second.mRadius - first.mRadius) * fraction;
+            rotate(tangent, axis, along.cos(), along.sin(), t);
+            rotate(outward, axis, along.cos(), along.sin(), radial);
+            // carried around the axis, then twisted around the tangent
+            rotate(start, axis, along.cos(), along.sin(), u);
+            u = rotate(u, t, twist * fraction);
+            cross(t, u, v);
+
+            UnitCircle around = new UnitCircle(0, slice);
+            for (int k = 0; k < mSlices; k++, around.next()) {
+                int offset = (ring * mSlices + k) * Mesh.COORDS_PER_VERTEX;
+                for (int i = 0; i < 3; i++) {
+                    float normal = u[i] * around.cos() + v[i] * around.sin();
+                    normals[offset + i] = normal;
+                    vertices[offset + i] = center[i] + radial[i] * radius + normal * pipeRadius;
+                }
+            }
+        }
+
+        short[] indices = new short[6 * steps * mSlices];
+        for (int ring = 0, o = 0; ring < steps; ring++) {
+            for (int k = 0; k < mSlices; k++, o += 6) {
+                short a0 = (short) (ring * mSlices + k), a1 = (short) (ring * mSlices + (k + 1) % mSlices);
+                short b0 = (short) (a0 + mSlices), b1 = (short) (a1 + mSlices);
+                indices[o]     = a0; indices[o + 1] = a1; indices[o + 2] = b0;
+                indices[o + 3] = a1; indices[o + 4] = b1; indices[o + 5] = b0;
+            }
+        }
+        return new Mesh(vertices, normals, indices);
+    }
+
+    /**
+     * A closed cylinder around the node, along one of the two edges closest
+     * to a straight run, large enough to hide the ends of all edges.
+     */
+    private Mesh fitting(Node node, List<Edge> edges) {
+        float[][] directions = new float[edges.size()][];
+        float radius = 0f;
+        for (int i = 0; i < edges.size(); i++) {
+            directions[i] = direction(node, edges.get(i).other(node));
+            normalize(directions[i]);
+            radius = Math.max(radius, edges.get(i).mRadius);
+        }
+        float[] run = directions[0];
+        float straightest = Float.MAX_VALUE;
+        for (int i = 0; i < directions.length; i++) {
+            for (int j = i + 1; j < directions.length; j++) {
+                float dot = dot(directions[i], directions[j]);
+                if (dot < straightest) {
+                    straightest = dot;
+                    run = directions[i];
+                }
+            }
+        }
+
+        float size = FITTING_SIZE * radius;
+        int tube = MeshFactory.stripVertexCount(mSlices, true), disc = MeshFactory.fanVertexCount(mSlices, true);
+        float[] vertices = new float[(tube + 2 * disc) * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[MeshFactory.stripIndexCount(mSlices) + 2 * MeshFactory.fanIndexCount(mSlices)];
+
+        int vertex = 0, index = 0;
+        MeshFactory.fillTube(vertices, normals, 0, indices, 0, size, -size, size, 0, FULL_TURN, mSlices, true);
+        vertex += tube;
+        index += MeshFactory.stripIndexCount(mSlices);
+        for (int end = 0; end < 2; end++) {
+            MeshFactory.fillDisc(vertices, normals, vertex * Mesh.COORDS_PER_VERTEX, indices, index,
+                    size, end == 0 ? size : -size, 0, FULL_TURN, mSlices, end == 0);
+            // the fill methods index from the start of what they write
+            for (int i = index; i < index + MeshFactory.fanIndexCount(mSlices); i++) {
+                indices[i] += vertex;
+            }
+            vertex += disc;
+            index += MeshFactory.fanIndexCount(mSlices);
+        }
+        transform(vertices, normals, vertex, node.position(), run);
+        return new Mesh(vertices, normals, indices);
+    }
+
+    /**
+     * Moves pieces generated around the z axis to a node: z becomes the
+     * direction w, x its {@link #perpendicular} and y the third axis.
+     */
+    private static void transform(float[] vertices, float[] normals, int count, float[] origin, float[] w) {
+        float[] u = perpendicular(w);
+        float[] v = cross(w, u);
+        for (int i = 0; i < count * Mesh.COORDS_PER_VERTEX; i += Mesh.COORDS_PER_VERTEX) {
+            float x = vertices[i], y = vertices[i + 1], z = vertices[i + 2];
+            float nx = normals[i], ny = normals[i + 1], nz = normals[i + 2];
+            for (int j = 0; j < 3; j++) {
+                vertices[i + j] = origin[j] + u[j] * x + v[j] * y + w[j] * z;
+                normals[i + j] = u[j] * nx + v[j] * ny + w[j] * nz;
+            }
+        }
+    }
+
+    /**
+     * @param w - Unit direction.
+     * @return - A unit vector perpendicular to it, the same one for w and
+     * -w. The cross-sections of all pieces start there, so the ends of an
+     * edge line up with the pieces at its nodes.
+     */
+    private static float[] perpendicular(float[] w) {
+        // the sign of the largest component decides, it cannot flip by rounding
+        int largest = 0, smallest = 0;
+        for (int i = 1; i < 3; i++) {
+            if (Math.abs(w[i]) > Math.abs(w[largest])) {
+                largest = i;
+            }
+            if (Math.abs(w[i]) < Math.abs(w[smallest])) {
+                smallest = i;
+            }
+        }
+        float sign = w[largest] < 0 ? -1f : 1f;
+        float[] canonical = { sign * w[0], sign * w[1], sign * w[2] };
+        float[] reference = new float[3];
+        reference[smallest] = 1f;
+
+        float[] u = cross(canonical, reference);
+        normalize(u);
+        return u;
+    }
+
+    /**
+     * @return - The meshes one after the other in a single mesh.
+     */
+    private static Mesh concat(List<Mesh> meshes) {
+        int vertexCount = 0, indexCount = 0;
+        for (int i = 0; i < meshes.size(); i++) {
+            vertexCount += meshes.get(i).getVertexCount();
+            indexCount += meshes.get(i).getIndexCount();
+        }
+        float[] vertices = new float[vertexCount * Mesh.COORDS_PER_VERTEX];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[indexCount];
+
+        int vertex = 0, index = 0;
+        for (int i = 0; i < meshes.size(); i++) {
+            Mesh mesh = meshes.get(i);
+            int floats = mesh.getVertexCount() * Mesh.COORDS_PER_VERTEX;
+            System.arraycopy(mesh.getVertices(), 0, vertices, vertex * Mesh.COORDS_PER_VERTEX, floats);
+            System.arraycopy(mesh.getNormals(), 0, normals, vertex * Mesh.COORDS_PER_VERTEX, floats);
+
+            // rebase the indices onto the position of the mesh
+            short[] src = mesh.getIndices();
+            for (int j = 0; j < mesh.getIndexCount(); j++) {
+                indices[index + j] = (short) (src[j] + vertex);
+            }
+            vertex += mesh.getVertexCount();
+            index += mesh.getIndexCount();
+        }
+        return new Mesh(vertices, normals, indices);
+    }
+
+    private static float[] direction(Node from, Node to) {
+        return new float[] { to.mX - from.mX, to.mY - from.mY, to.mZ - from.mZ };
+    }
+
+    private static float length(float[] v) {
+        return (float) Math.sqrt(dot(v, v));
+    }
+
+    /**
+     * Scales a vector to unit length, unless it is 0.
+     *
+     * @return - Its length before.
+     */
+    private static float normalize(float[] v) {
+        float length = length(v);
+        if (length > 0) {
+            v[0] /= length;
+            v[1] /= length;
+            v[2] /= length;
+        }
+        return length;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static float[] cross(float[] a, float[] b) {
+        return cross(a, b, new float[3]);
+    }
+
+    private static float[] cross(float[] a, float[] b, float[] out) {
+        float x = a[1] * b[2] - a[2] * b[1];
+        float y = a[2] * b[0] - a[0] * b[2];
+        float z = a[0] * b[1] - a[1] * b[0];
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+        return out;
+    }
+
+    private static float[] rotate(float[] v, float[] axis, float radians) {
+        return rotate(v, axis, (float) Math.cos(radians), (float) Math.sin(radians), new float[3]);
+    }
+
+    /**
+     * Rotates v around a unit axis by the angle of the given cosine and sine.
+     */
+    private static float[] rotate(float[] v, float[] axis, float cos, float sin, float[] out) {
+        float[] side = cross(axis, v);
+        float along = dot(axis, v) * (1 - cos);
+        for (int i = 0; i < 3; i++) {
+            out[i] = v[i] * cos + side[i] * sin + axis[i] * along;
+        }
+        return out;
+    }
+
+    private static final class Node {
+        float mX, mY, mZ;
+        final List<Edge> mEdges = new ArrayList<>(2);
+        final Piece mPiece = new Piece(this, null);
+
+        Node(float x, float y, float z) {
+            mX = x;
+            mY = y;
+            mZ = z;
+        }
+
+        float[] position() {
+            return new float[] { mX, mY, mZ };
+        }
+    }
+
+    private static final class Edge {
+        final Node mFrom, mTo;
+        float mRadius;
+        final Piece mPiece = new Piece(null, this);
+
+        Edge(Node from, Node to, float radius) {
+            mFrom = from;
+            mTo = to;
+            mRadius = radius;
+        }
+
+        Node other(Node node) {
+            return node == mFrom ? mTo : mFrom;
+        }
+    }
+
+    /**
+     * The geometry of one node or edge, and the chunk it is merged into.
+     */
+    private static final class Piece {
+        final Node mNode;
+        final Edge mEdge;
+        Mesh mMesh;
+        Chunk mChunk;
+
+        Piece(Node node, Edge edge) {
+            mNode = node;
+            mEdge = edge;
+        }
+
+        int getVertexCount() {
+            return mMesh != null ? mMesh.getVertexCount() : 0;
+        }
+    }
+
+    private static final class Chunk {
+        final List<Piece> mPieces = new ArrayList<>();
+        int mVertexCount;
+        boolean mDirty;
+        Mesh mMesh;
+        int mVersion;
+
+        void merge() {
+            List<Mesh> meshes = new ArrayList<>(mPieces.size());
+            for (int i = 0; i < mPieces.size(); i++) {
+                meshes.add(mPieces.get(i).mMesh);
+            }
+            mMesh = meshes.isEmpty() ? null : concat(meshes);
+            mVersion++;
+            mDirty = false;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws a {@link PipeNetwork} in one color, one draw call per chunk.
+ *
+ * <p>{@link #update()} rebuilds the network and uploads only the chunks that
+ * were merged again, so an edit re-uploads a chunk or two however large the
+ * network is. The network is in world coordinates, so the batch is drawn
+ * with the View Projection matrix, and its positions are uploaded as 32-bit
+ * floats whatever the mesh format is: 16-bit floats lose whole units a few
+ * thousand units from the origin. Updating and releasing must happen on
+ * the GL thread while no recorded frame still draws the batch.</p>
+ */
+public class PipeNetworkBatch implements Bounded, Submittable {
+
+    private final PipeNetwork mNetwork;
+    private final FlatColorProgram mProgram;
+    private final GpuBufferManager mBuffers;
+    private final float[] mColor;
+    private final List<ChunkBuffers> mChunks = new ArrayList<>();
+    private final Aabb mBounds = new Aabb();
+
+    /**
+     * @param programs - Cache the flat color program is taken from.
+     * @param buffers - Manager the buffers of the chunks are created by.
+     * @param network - Network to draw.
+     * @param color - RGBA color of all pipes.
+     */
+    public PipeNetworkBatch(ShaderProgramCache programs, GpuBufferManager buffers, PipeNetwork network,
+            float[] color) {
+        mProgram = new FlatColorProgram(programs);
+        mBuffers = buffers;
+        mNetwork = network;
+        mColor = color;
+    }
+
+    /**
+     * Rebuilds the network and replaces the buffers of every chunk merged
+     * since the last update.
+     *
+     * @return - Number of chunks whose buffers were replaced.
+     */
+    public int update() {
+        mNetwork.rebuild();
+
+        int replaced = 0;
+        for (int i = 0; i < mNetwork.getChunkCount(); i++) {
+            if (i == mChunks.size()) {
+                mChunks.add(new ChunkBuffers());
+            }
+            ChunkBuffers chunk = mChunks.get(i);
+            int version = mNetwork.getChunkVersion(i);
+            if (chunk.mVersion == version) {
+                continue;
+            }
+
+            chunk.release();
+            Mesh mesh = mNetwork.getChunkMesh(i);
+            if (mesh != null) {
+                chunk.mVertices = mBuffers.createStaticVertices(
+                        VertexWriter.write(VertexFormat.POSITION_FLOAT, mesh), VertexFormat.POSITION_FLOAT);
+                chunk.mIndices = mBuffers.createStaticIndices(mesh.getIndices(), mesh.getIndexCount());
+                chunk.mIndexCount = mesh.getIndexCount();
+            }
+            chunk.mVersion = version;
+            replaced++;
+        }
+
+        mNetwork.getBounds(mBounds);
+        return replaced;
+    }
+
+    /**
+     * @return - Number of draw calls issued by {@link #draw}.
+     */
+    public int getDrawCalls() {
+        int calls = 0;
+        for (int i = 0; i < mChunks.size(); i++) {
+            if (mChunks.get(i).mIndexCount > 0) {
+                calls++;
+            }
+        }
+        return calls;
+    }
+
+    @Override
+    public void getBounds(Aabb out) {
+        out.set(mBounds);
+    }
+
+    @Override
+    public void submit(DrawList queue, float[] mvpMatrix) {
+        for (int i = 0; i < mChunks.size(); i++) {
+            ChunkBuffers chunk = mChunks.get(i);
+            if (chunk.mIndexCount > 0) {
+                queue.add(mProgram, chunk.mVertices, chunk.mIndices, chunk.mIndexCount, mColor, mvpMatrix);
+            }
+        }
+    }
+
+    /**
+     * Draws the whole network.
+     *
+     * @param mvpMatrix - View Projection matrix; the network is in world
+     * coordinates.
+     */
+    @Override
+    public void draw(float[] mvpMatrix) {
+        GL gl = mProgram.getGL();
+
+        mProgram.use();
+        mProgram.setMVPMatrix(mvpMatrix);
+        mProgram.setColor(mColor);
+
+        for (int i = 0; i < mChunks.size(); i++) {
+            ChunkBuffers chunk = mChunks.get(i);
+            if (chunk.mIndexCount == 0) {
+                continue;
+            }
+            mProgram.enablePosition(chunk.mVertices);
+            chunk.mIndices.bind();
+            gl.glDrawElements(GLES20.GL_TRIANGLES, chunk.mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+
+        mProgram.disablePosition();
+    }
+
+    /**
+     * Deletes the buffers and gives the program back.
+     */
+    public void release() {
+        for (int i = 0; i < mChunks.size(); i++) {
+            mChunks.get(i).release();
+        }
+        mChunks.clear();
+        mProgram.release();
+    }
+
+    private static final class ChunkBuffers {
+        GpuBuffer mVertices;
+        GpuBuffer mIndices;
+        int mIndexCount;
+        int mVersion = -1;
+
+        void release() {
+            if (mVertices != null) {
+                mVertices.release();
+                mIndices.release();
+                mVertices = null;
+                mIndices = null;
+            }
+            mIndexCount = 0;
+        }
+    }
+}
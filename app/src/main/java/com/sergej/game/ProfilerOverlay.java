@@ -0,0 +1,90 @@
+package com.sergej.game;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the percentiles of a {@link FrameProfiler} on top of the GL view and
+ * refreshes them twice a second. Tapping the overlay writes the recorded
+ * frames to frames.csv in the files directory of the app, on a background
+ * thread so the UI thread does no disk I/O.
+ */
+public class ProfilerOverlay extends TextView implements View.OnClickListener {
+
+    private static final String TAG = "ProfilerOverlay";
+    private static final long REFRESH_MILLIS = 500;
+
+    private final FrameProfiler mProfiler;
+    // writes one file at a time, so taps in quick succession do not interleave
+    private ExecutorService mWriter;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            setText(mProfiler.formatSummary());
+            postDelayed(this, REFRESH_MILLIS);
+        }
+    };
+
+    public ProfilerOverlay(Context context, FrameProfiler profiler) {
+        super(context);
+        mProfiler = profiler;
+
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(10);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(0x80000000);
+        setOnClickListener(this);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        post(mRefresh);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mRefresh);
+        if (mWriter != null) {
+            // a write already asked for still finishes
+            mWriter.shutdown();
+            mWriter = null;
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onClick(View view) {
+        final File file = new File(getContext().getFilesDir(), "frames.csv");
+        if (mWriter == null) {
+            mWriter = Executors.newSingleThreadExecutor();
+        }
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(file);
+            }
+        });
+    }
+
+    private void write(File file) {
+        try (Writer out = new FileWriter(file)) {
+            mProfiler.writeCsv(out);
+            Log.i(TAG, "Wrote " + mProfiler.getFrameCount() + " frames to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file, e);
+        }
+    }
+}
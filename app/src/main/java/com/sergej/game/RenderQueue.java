@@ -0,0 +1,281 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+/**
+ * Collects the draw calls of a frame and issues them sorted by a 64 bit key,
+ * so draws sharing a program, vertex buffer and color follow each other and
+ * a {@link GLStateTracker} can drop the state changes between them.
+ *
+ * <p>Opaque draws are keyed by program, vertex buffer, color and then depth,
+ * front to back, so the depth test rejects hidden fragments early.
+ * Translucent draws come after all opaque ones, back to front, as blending
+ * requires.</p>
+ *
+ * <p>Items are pooled, so a frame allocates nothing once the queue has seen
+ * its largest frame. Must only be used on the GL thread.</p>
+ */
+public class RenderQueue implements DrawList {
+
+    public static final int PASS_OPAQUE = 0;
+    public static final int PASS_TRANSLUCENT = 1;
+
+    // key layout, the sign bit is left clear so keys sort as signed longs
+    private static final int PASS_SHIFT = 61;
+    private static final int PROGRAM_BITS = 10;
+    private static final int BUFFER_BITS = 16;
+    private static final int COLOR_BITS = 12;
+    private static final int DEPTH_BITS = 23;
+
+    private Item[] mItems;
+    private long[] mKeys;
+    private int[] mOrder;
+    private int mCount;
+
+    private boolean mSorted;
+    private int mLastDrawCalls;
+    private int mLastTriangles;
+
+    /**
+     * @param capacity - Draw calls per frame to preallocate for; the queue
+     * grows if a frame needs more.
+     */
+    public RenderQueue(int capacity) {
+        mItems = new Item[0];
+        grow(Math.max(1, capacity));
+    }
+
+    /**
+     * Queues a triangle list. The color and matrix are referenced, not copied.
+     */
+    @Override
+    public void add(FlatColorProgram program, GpuBuffer vertices, GpuBuffer indices, int count,
+            float[] color, float[] mvpMatrix) {
+        if (mCount == mItems.length) {
+            grow(2 * mItems.length);
+        }
+
+        Item item = mItems[mCount];
+        item.program = program;
+        item.vertices = vertices;
+        item.indices = indices;
+        item.count = count;
+        item.color = color;
+        item.mvp = mvpMatrix;
+
+        // the clip w of the object origin is its distance in front of the eye
+        mKeys[mCount] = makeKey(color[3] < 1f ? PASS_TRANSLUCENT : PASS_OPAQUE,
+                program.getProgramId(), vertices.getSortId(), color, mvpMatrix[15]);
+        mOrder[mCount] = mCount;
+        mCount++;
+        mSorted = false;
+    }
+
+    /**
+     * Draws the renderable right away, before anything queued.
+     */
+    @Override
+    public void addRenderable(Renderable renderable, float[] mvpMatrix) {
+        renderable.draw(mvpMatrix);
+    }
+
+    /**
+     * @return - Number of queued draw calls.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return - Draw calls issued by the last {@link #flush()}.
+     */
+    public int getLastDrawCalls() {
+        return mLastDrawCalls;
+    }
+
+    /**
+     * @return - Triangles drawn by the last {@link #flush()}.
+     */
+    public int getLastTriangles() {
+        return mLastTriangles;
+    }
+
+    /**
+     * Sorts the queued draw calls by their keys. Done by {@link #flush()} if
+     * not called before.
+     */
+    public void sort() {
+        if (!mSorted) {
+            sort(0, mCount - 1);
+            mSorted = true;
+        }
+    }
+
+    /**
+     * Sorts and issues every queued draw call and empties the queue.
+     */
+    public void flush() {
+        sort();
+
+        FlatColorProgram program = null;
+        int triangles = 0;
+        for (int i = 0; i < mCount; i++) {
+            Item item = mItems[mOrder[i]];
+            program = item.program;
+            GL gl = program.getGL();
+
+            // redundant state is dropped by the state tracker
+            program.use();
+            program.enablePosition(item.vertices);
+            program.setColor(item.color);
+            program.setMVPMatrix(item.mvp);
+
+            triangles += item.count / 3;
+            if (item.indices != null) {
+                item.indices.bind();
+                gl.glDrawElements(GLES20.GL_TRIANGLES, item.count, GLES20.GL_UNSIGNED_SHORT, 0);
+            } else {
+                gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, item.count);
+            }
+        }
+
+        if (program != null) {
+            // disabled once for the whole queue instead of after every draw
+            program.disablePosition();
+            MyGLRenderer.checkGlError(program.getGL(), "RenderQueue.flush");
+        }
+
+        mLastDrawCalls = mCount;
+        mLastTriangles = triangles;
+        clear();
+    }
+
+    /**
+     * Drops every queued draw call without issuing it.
+     */
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mItems[i].clear();
+        }
+        mCount = 0;
+        mSorted = false;
+    }
+
+    /**
+     * Packs the sort key of a draw call.
+     *
+     * @param pass - {@link #PASS_OPAQUE} or {@link #PASS_TRANSLUCENT}.
+     * @param program - GL name of the program.
+     * @param buffer - Sort id of the vertex buffer.
+     * @param color - RGBA color.
+     * @param depth - Distance in front of the eye.
+     * @return - Key ordering the draw calls of a pass.
+     */
+    static long makeKey(int pass, int program, int buffer, float[] color, float depth) {
+        // positive floats order like their bits, keep the top ones
+        long depthBits = Float.floatToIntBits(Math.max(depth, 0f)) >>> (31 - DEPTH_BITS);
+
+        long state = ((long) (program & ((1 << PROGRAM_BITS) - 1)) << (BUFFER_BITS + COLOR_BITS))
+                | ((long) (buffer & ((1 << BUFFER_BITS) - 1)) << COLOR_BITS)
+                | quantize(color);
+        long key = (long) pass << PASS_SHIFT;
+
+        if (pass == PASS_OPAQUE) {
+            return key | (state << DEPTH_BITS) | depthBits;
+        }
+        // back to front first, the state only breaks ties
+        long farFirst = ((1L << DEPTH_BITS) - 1) - depthBits;
+        return key | (farFirst << (PROGRAM_BITS + BUFFER_BITS + COLOR_BITS)) | state;
+    }
+
+    private static long quantize(float[] color) {
+        long r = (long) (Math.min(Math.max(color[0], 0f), 1f) * 15f + 0.5f);
+        long g = (long) (Math.min(Math.max(color[1], 0f), 1f) * 15f + 0.5f);
+        long b = (long) (Math.min(Math.max(color[2], 0f), 1f) * 15f + 0.5f);
+        return (r << 8) | (g << 4) | b;
+    }
+
+    private void grow(int capacity) {
+        Item[] items = new Item[capacity];
+        System.arraycopy(mItems, 0, items, 0, mItems.length);
+        for (int i = mItems.length; i < capacity; i++) {
+            items[i] = new Item();
+        }
+        mItems = items;
+
+        long[] keys = new long[capacity];
+        int[] order = new int[capacity];
+        if (mKeys != null) {
+            System.arraycopy(mKeys, 0, keys, 0, mCount);
+            System.arraycopy(mOrder, 0, order, 0, mCount);
+        }
+        mKeys = keys;
+        mOrder = order;
+    }
+
+    /**
+     * Sorts keys and order together. Quicksort falling back to insertion
+     * sort for short ranges; unlike Arrays.sort it never allocates.
+     */
+    private void sort(int left, int right) {
+        while (right - left > 16) {
+            long pivot = mKeys[(left + right) >>> 1];
+            int i = left, j = right;
+            while (i <= j) {
+                while (mKeys[i] < pivot) i++;
+                while (mKeys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - left < right - i) {
+                sort(left, j);
+                left = i;
+            } else {
+                sort(i, right);
+                right = j;
+            }
+        }
+
+        for (int i = left + 1; i <= right; i++) {
+            long key = mKeys[i];
+            int order = mOrder[i];
+            int j = i - 1;
+            while (j >= left && mKeys[j] > key) {
+                mKeys[j + 1] = mKeys[j];
+                mOrder[j + 1] = mOrder[j];
+                j--;
+            }
+            mKeys[j + 1] = key;
+            mOrder[j + 1] = order;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long key = mKeys[a];
+        mKeys[a] = mKeys[b];
+        mKeys[b] = key;
+
+        int order = mOrder[a];
+        mOrder[a] = mOrder[b];
+        mOrder[b] = order;
+    }
+
+    private static final class Item {
+        FlatColorProgram program;
+        GpuBuffer vertices;
+        GpuBuffer indices;
+        int count;
+        float[] color;
+        float[] mvp;
+
+        void clear() {
+            program = null;
+            vertices = null;
+            indices = null;
+            color = null;
+            mvp = null;
+        }
+    }
+}
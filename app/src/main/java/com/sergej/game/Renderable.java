@@ -0,0 +1,12 @@
+package com.sergej.game;
+
+/**
+ * Anything a {@link SceneNode} can draw.
+ */
+public interface Renderable {
+
+    /**
+     * @param mvpMatrix - The Model View Projection matrix in which to draw.
+     */
+    void draw(float[] mvpMatrix);
+}
@@ -0,0 +1,203 @@
+package com.sergej.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The camera and the root of the scene graph. Every frame the renderer
+ * calls {@link #update()}, which only recomputes the matrices of subtrees
+ * that moved, or of every drawn node if the camera changed, and then
+ * {@link #draw()}.
+ *
+ * <p>Nodes with {@link Bounded} renderables are kept in a
+ * {@link BoundingVolumeHierarchy}, rebuilt when nodes are added or removed
+ * and refit when they move. Only the ones intersecting the view frustum are
+ * drawn. Other renderables are always drawn.</p>
+ *
+ * <p>{@link Submittable} renderables are drawn through a {@link RenderQueue},
+ * sorted by GL state, after the others.</p>
+ *
+ * <p>Must only be used on a single thread: the GL thread when drawn
+ * directly, the simulation thread when recorded into {@link FramePacket}s.</p>
+ */
+public class Scene {
+
+    private final SceneNode mRoot = new SceneNode();
+
+    private final float[] mView = new float[16];
+    private final float[] mProjection = new float[16];
+    private final float[] mViewProjection = new float[16];
+    private float mViewportHeight = 1;
+    private boolean mCameraChanged = true;
+
+    private final Frustum mFrustum = new Frustum();
+    private final BoundingVolumeHierarchy<SceneNode> mHierarchy = new BoundingVolumeHierarchy<>();
+    private final List<SceneNode> mBounded = new ArrayList<>();
+    private final List<SceneNode> mUnbounded = new ArrayList<>();
+    private final List<SceneNode> mVisible = new ArrayList<>();
+    private final RenderQueue mQueue = new RenderQueue(64);
+
+    private int mLastMultiplies;
+    private int mLastTests;
+
+    public Scene() {
+        Matrix4.setIdentity(mView);
+        Matrix4.setIdentity(mProjection);
+    }
+
+    public SceneNode getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * Places the camera, see {@link Matrix4#setLookAt}.
+     */
+    public void setLookAt(float eyeX, float eyeY, float eyeZ,
+            float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        Matrix4.setLookAt(mView, eyeX, eyeY, eyeZ, centerX, centerY, centerZ, upX, upY, upZ);
+        mCameraChanged = true;
+    }
+
+    /**
+     * @param view - New view matrix, copied.
+     */
+    public void setView(float[] view) {
+        System.arraycopy(view, 0, mView, 0, 16);
+        mCameraChanged = true;
+    }
+
+    /**
+     * @param projection - New projection matrix, copied.
+     * @param viewportHeight - Viewport height in pixels.
+     */
+    public void setProjection(float[] projection, float viewportHeight) {
+        System.arraycopy(projection, 0, mProjection, 0, 16);
+        mViewportHeight = viewportHeight;
+        mCameraChanged = true;
+    }
+
+    public float[] getView() {
+        return mView;
+    }
+
+    public float[] getProjection() {
+        return mProjection;
+    }
+
+    /**
+     * @return - Projection times view, as of the last update.
+     */
+    public float[] getViewProjection() {
+        return mViewProjection;
+    }
+
+    public float getViewportHeight() {
+        return mViewportHeight;
+    }
+
+    /**
+     * Recomputes the matrices that are out of date.
+     */
+    public void update() {
+        boolean cameraChanged = mCameraChanged;
+        mLastMultiplies = 0;
+        if (cameraChanged) {
+            Matrix4.multiply(mViewProjection, mProjection, mView);
+            mFrustum.set(mViewProjection);
+            mLastMultiplies++;
+            mCameraChanged = false;
+        }
+
+        boolean structureChanged = mRoot.takeStructureChanged();
+        mLastMultiplies += mRoot.update(this, false, cameraChanged, !structureChanged);
+
+        if (structureChanged) {
+            mBounded.clear();
+            mUnbounded.clear();
+            mRoot.collect(mBounded, mUnbounded);
+            mHierarchy.build(mBounded);
+        }
+    }
+
+    /**
+     * Draws every node with a renderable that may be visible.
+     */
+    public void draw() {
+        draw(mQueue);
+        mQueue.flush();
+    }
+
+    /**
+     * Hands the draw calls of every node that may be visible to a draw list,
+     * for example a {@link FramePacket} replayed later on the GL thread.
+     *
+     * @param list - Draw list of the current frame.
+     */
+    public void draw(DrawList list) {
+        cull();
+        drawVisible(list);
+    }
+
+    /**
+     * Finds the bounded nodes intersecting the view frustum, the first half
+     * of {@link #draw(DrawList)}.
+     */
+    public void cull() {
+        mLastTests = mHierarchy.cull(mFrustum, mVisible);
+    }
+
+    /**
+     * Hands the draw calls of the unbounded nodes and of the nodes found by
+     * the last {@link #cull()} to a draw list, the second half of
+     * {@link #draw(DrawList)}.
+     *
+     * @param list - Draw list of the current frame.
+     */
+    public void drawVisible(DrawList list) {
+        for (int i = 0; i < mUnbounded.size(); i++) {
+            mUnbounded.get(i).draw(list);
+        }
+        for (int i = 0; i < mVisible.size(); i++) {
+            mVisible.get(i).draw(list);
+        }
+    }
+
+    /**
+     * @return - The queue the submitted draw calls are sorted in.
+     */
+    public RenderQueue getRenderQueue() {
+        return mQueue;
+    }
+
+    BoundingVolumeHierarchy<SceneNode> getHierarchy() {
+        return mHierarchy;
+    }
+
+    /**
+     * @return - Nodes drawn by the last {@link #draw()}.
+     */
+    public int getLastDrawn() {
+        return mUnbounded.size() + mVisible.size();
+    }
+
+    /**
+     * @return - Bounded nodes skipped by the last {@link #draw()}.
+     */
+    public int getLastCulled() {
+        return mHierarchy.size() - mVisible.size();
+    }
+
+    /**
+     * @return - Boxes tested against the frustum by the last {@link #draw()}.
+     */
+    public int getLastFrustumTests() {
+        return mLastTests;
+    }
+
+    /**
+     * @return - Matrix multiplications done by the last {@link #update()}.
+     */
+    public int getLastUpdateMultiplies() {
+        return mLastMultiplies;
+    }
+}
@@ -0,0 +1,263 @@
+package com.sergej.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the scene graph: a local transform relative to its parent,
+ * children, and optionally something to draw.
+ *
+ * <p>The world and MVP matrices are cached. A node only recomputes them
+ * when its own transform, one of its ancestors' or the camera changed since
+ * the last {@link Scene#update()}, so a still scene costs no matrix math.
+ * Nodes with a {@link Bounded} renderable also keep their world bounds, which
+ * the scene culls against the view frustum.</p>
+ *
+ * <p>Must only be used on a single thread: the GL thread when drawn
+ * directly, the simulation thread when recorded into {@link FramePacket}s.</p>
+ */
+public class SceneNode implements BoundingVolumeHierarchy.Item {
+
+    private final float[] mLocal = new float[16];
+    private final float[] mWorld = new float[16];
+    private final float[] mMVP = new float[16];
+
+    // only kept for tessellated renderables, which need it to pick their level
+    private float[] mModelView;
+
+    private final List<SceneNode> mChildren = new ArrayList<>();
+    private SceneNode mParent;
+    private Renderable mRenderable;
+
+    // bounds of a Bounded renderable, null otherwise
+    private Aabb mLocalBounds;
+    private final Aabb mWorldBounds = new Aabb();
+    private int mBvhLeaf = -1;
+
+    private boolean mDirty = true;
+
+    // set on the root when nodes are added or removed anywhere below it
+    private boolean mStructureChanged;
+
+    public SceneNode() {
+        this(null);
+    }
+
+    /**
+     * @param renderable - What to draw at this node, or null for a pure transform.
+     */
+    public SceneNode(Renderable renderable) {
+        Matrix4.setIdentity(mLocal);
+        setRenderable(renderable);
+    }
+
+    public Renderable getRenderable() {
+        return mRenderable;
+    }
+
+    public void setRenderable(Renderable renderable) {
+        mRenderable = renderable;
+        mModelView = renderable instanceof Tessellated ? new float[16] : null;
+
+        mLocalBounds = null;
+        if (renderable instanceof Bounded) {
+            mLocalBounds = new Aabb();
+            ((Bounded) renderable).getBounds(mLocalBounds);
+        }
+
+        mDirty = true;
+        onStructureChanged();
+    }
+
+    /**
+     * @param child - A node without a parent.
+     * @return - The child.
+     */
+    public SceneNode addChild(SceneNode child) {
+        if (child.mParent != null) {
+            throw new IllegalStateException("Node already has a parent");
+        }
+        child.mParent = this;
+        child.mDirty = true;
+        mChildren.add(child);
+        onStructureChanged();
+        return child;
+    }
+
+    public void removeChild(SceneNode child) {
+        if (mChildren.remove(child)) {
+            child.mParent = null;
+            child.mDirty = true;
+            onStructureChanged();
+        }
+    }
+
+    public SceneNode getParent() {
+        return mParent;
+    }
+
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    public SceneNode getChild(int index) {
+        return mChildren.get(index);
+    }
+
+    /**
+     * @param m - New transform relative to the parent, copied.
+     */
+    public void setLocalTransform(float[] m) {
+        System.arraycopy(m, 0, mLocal, 0, 16);
+        mDirty = true;
+    }
+
+    /**
+     * @return - The transform relative to the parent. It may be modified in
+     * place, followed by a call to {@link #invalidate()}.
+     */
+    public float[] getLocalTransform() {
+        return mLocal;
+    }
+
+    /**
+     * Marks the local transform as changed.
+     */
+    public void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * @return - The transform from object to world coordinates as of the last update.
+     */
+    public float[] getWorldTransform() {
+        return mWorld;
+    }
+
+    /**
+     * @return - The MVP matrix as of the last update. Only kept up to date
+     * for nodes with a renderable.
+     */
+    public float[] getMVPMatrix() {
+        return mMVP;
+    }
+
+    /**
+     * @return - Bounds in world coordinates as of the last update. Empty
+     * unless the renderable is {@link Bounded}.
+     */
+    @Override
+    public Aabb getWorldBounds() {
+        return mWorldBounds;
+    }
+
+    /**
+     * @return - true if the scene can cull this node.
+     */
+    public boolean isBounded() {
+        return mLocalBounds != null;
+    }
+
+    @Override
+    public int getBvhLeaf() {
+        return mBvhLeaf;
+    }
+
+    @Override
+    public void setBvhLeaf(int leaf) {
+        mBvhLeaf = leaf;
+    }
+
+    /**
+     * @return - true if nodes were added or removed below this root since
+     * the flag was last cleared.
+     */
+    boolean takeStructureChanged() {
+        boolean changed = mStructureChanged;
+        mStructureChanged = false;
+        return changed;
+    }
+
+    private void onStructureChanged() {
+        SceneNode root = this;
+        while (root.mParent != null) {
+            root = root.mParent;
+        }
+        root.mStructureChanged = true;
+    }
+
+    /**
+     * Brings the cached matrices of this subtree up to date.
+     *
+     * @param scene - The camera matrices.
+     * @param parentChanged - true if the world transform of the parent changed.
+     * @param cameraChanged - true if the view or projection changed.
+     * @param refit - true if moved nodes should refit the hierarchy of the
+     * scene, false if it is about to be rebuilt anyway.
+     * @return - Number of matrix multiplications done.
+     */
+    int update(Scene scene, boolean parentChanged, boolean cameraChanged, boolean refit) {
+        int multiplies = 0;
+
+        boolean changed = mDirty || parentChanged;
+        if (changed) {
+            if (mParent == null) {
+                System.arraycopy(mLocal, 0, mWorld, 0, 16);
+            } else {
+                Matrix4.multiply(mWorld, mParent.mWorld, mLocal);
+                multiplies++;
+            }
+            mDirty = false;
+
+            if (mLocalBounds != null) {
+                mWorldBounds.setTransformed(mLocalBounds, mWorld);
+                if (refit) {
+                    scene.getHierarchy().refit(this);
+                }
+            }
+        }
+
+        if (mRenderable != null && (changed || cameraChanged)) {
+            Matrix4.multiply(mMVP, scene.getViewProjection(), mWorld);
+            multiplies++;
+
+            if (mModelView != null) {
+                Matrix4.multiply(mModelView, scene.getView(), mWorld);
+                multiplies++;
+                ((Tessellated) mRenderable).updateLevel(mModelView, scene.getProjection(), scene.getViewportHeight());
+            }
+        }
+
+        // indexed, an iterator would allocate every frame
+        for (int i = 0; i < mChildren.size(); i++) {
+            multiplies += mChildren.get(i).update(scene, changed, cameraChanged, refit);
+        }
+        return multiplies;
+    }
+
+    /**
+     * Adds this subtree's nodes with a renderable to one of two lists.
+     */
+    void collect(List<SceneNode> bounded, List<SceneNode> unbounded) {
+        if (mRenderable != null) {
+            (mLocalBounds != null ? bounded : unbounded).add(this);
+        }
+        for (int i = 0; i < mChildren.size(); i++) {
+            mChildren.get(i).collect(bounded, unbounded);
+        }
+    }
+
+    /**
+     * Draws the renderable of this node only, not its children.
+     *
+     * @param list - Takes the draw calls of {@link Submittable} renderables,
+     * and the others as a whole.
+     */
+    void draw(DrawList list) {
+        if (mRenderable instanceof Submittable) {
+            ((Submittable) mRenderable).submit(list, mMVP);
+        } else {
+            list.addRenderable(mRenderable, mMVP);
+        }
+    }
+}
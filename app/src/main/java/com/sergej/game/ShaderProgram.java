@@ -0,0 +1,116 @@
+package com.sergej.game;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A reference-counted handle to a linked OpenGL program owned by a
+ * {@link ShaderProgramCache}. Every {@link ShaderProgramCache#acquire} must be
+ * balanced by a {@link #release()} once the caller no longer draws with it.
+ *
+ * <p>Attribute and uniform locations never change after a program is linked,
+ * so each name is queried from the driver only the first time it is asked for
+ * and then served from a table shared by every user of the program.</p>
+ */
+public class ShaderProgram {
+
+    private final ShaderProgramCache mCache;
+    private final ShaderProgramCache.Key mKey;
+    private final int mProgramId;
+    private final int mGeneration;
+    private int mReferences;
+
+    private final Map<String, Integer> mAttribLocations = new HashMap<>();
+    private final Map<String, Integer> mUniformLocations = new HashMap<>();
+
+    ShaderProgram(ShaderProgramCache cache, ShaderProgramCache.Key key, int programId, int generation) {
+        mCache = cache;
+        mKey = key;
+        mProgramId = programId;
+        mGeneration = generation;
+    }
+
+    /**
+     * @return - The OpenGL program name to pass to glUseProgram().
+     */
+    public int getId() {
+        return mProgramId;
+    }
+
+    /**
+     * @param name - Name of an attribute declared in the vertex shader.
+     * @return - The attribute location, or -1 if the program has no such
+     * active attribute.
+     */
+    public int getAttribLocation(String name) {
+        Integer location = mAttribLocations.get(name);
+        if (location == null) {
+            location = mCache.getGL().glGetAttribLocation(mProgramId, name);
+            mAttribLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * @param name - Name of a uniform declared in either shader.
+     * @return - The uniform location, or -1 if the program has no such
+     * active uniform.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = mUniformLocations.get(name);
+        if (location == null) {
+            location = mCache.getGL().glGetUniformLocation(mProgramId, name);
+            mUniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * @return - false once the EGL context this program was linked in has
+     * been lost, or the last reference has been released.
+     */
+    public boolean isValid() {
+        return mReferences > 0 && mCache.isCurrent(mGeneration);
+    }
+
+    /**
+     * Drops one reference. The program is deleted when the last reference
+     * goes away.
+     */
+    public void release() {
+        mCache.release(this);
+    }
+
+    /**
+     * Resolves the locations another program of the same sources was asked
+     * for, usually the one lost with the previous EGL context.
+     */
+    void resolveLocations(ShaderProgram other) {
+        for (String name : other.mAttribLocations.keySet()) {
+            getAttribLocation(name);
+        }
+        for (String name : other.mUniformLocations.keySet()) {
+            getUniformLocation(name);
+        }
+    }
+
+    ShaderProgramCache.Key getKey() {
+        return mKey;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    void retain() {
+        mReferences++;
+    }
+
+    int dropReference() {
+        return --mReferences;
+    }
+
+    int getReferences() {
+        return mReferences;
+    }
+}
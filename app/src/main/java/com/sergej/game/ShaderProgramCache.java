@@ -0,0 +1,212 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles and links every unique vertex/fragment shader pair once per EGL
+ * context and shares the resulting program between all shapes that ask for it.
+ *
+ * <p>Programs are looked up by a hash of both sources and handed out as
+ * reference-counted {@link ShaderProgram} handles. When the EGL context is
+ * lost all GL objects die with it, so {@link #invalidate()} must be called
+ * from {@link MyGLRenderer#onSurfaceCreated} before any shape is rebuilt.</p>
+ *
+ * <p>Like every other GL helper in this package it must only be used on the
+ * GL thread.</p>
+ */
+public class ShaderProgramCache {
+
+    private static final String TAG = "ShaderProgramCache";
+
+    private final GL mGL;
+    private final Map<Key, ShaderProgram> mPrograms = new HashMap<>();
+    // programs in use when the context was lost, linked again by restore()
+    private final List<ShaderProgram> mLost = new ArrayList<>();
+    private final int[] mStatus = new int[1];
+
+    private int mGeneration;
+
+    public ShaderProgramCache(GL gl) {
+        mGL = gl;
+    }
+
+    /**
+     * @return - The GL the cached programs are linked with.
+     */
+    public GL getGL() {
+        return mGL;
+    }
+
+    /**
+     * Returns the program built from the given sources, compiling and linking
+     * it only if no live program for this pair exists yet.
+     *
+     * @param vertexShaderCode - Source of the vertex shader.
+     * @param fragmentShaderCode - Source of the fragment shader.
+     * @return - A handle that must be released when no longer used.
+     */
+    public ShaderProgram acquire(String vertexShaderCode, String fragmentShaderCode) {
+        Key key = new Key(vertexShaderCode, fragmentShaderCode);
+
+        ShaderProgram program = mPrograms.get(key);
+        if (program == null) {
+            program = new ShaderProgram(this, key, link(vertexShaderCode, fragmentShaderCode), mGeneration);
+            mPrograms.put(key, program);
+        }
+
+        program.retain();
+        return program;
+    }
+
+    /**
+     * Forgets every program of the previous EGL context. The GL names are not
+     * deleted because they died together with the context; handles still held
+     * by old shapes simply report {@link ShaderProgram#isValid()} as false.
+     * The programs still in use are remembered for {@link #restore()}.
+     */
+    public void invalidate() {
+        for (ShaderProgram program : mPrograms.values()) {
+            if (program.getReferences() > 0) {
+                mLost.add(program);
+            }
+        }
+        mPrograms.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Links every program that was in use when the context was lost again
+     * and resolves the locations its users asked for, so the shapes find
+     * them ready when they {@link #acquire} them after noticing the loss.
+     *
+     * @return - Number of programs linked.
+     */
+    public int restore() {
+        int restored = 0;
+        for (int i = 0; i < mLost.size(); i++) {
+            ShaderProgram lost = mLost.get(i);
+            Key key = lost.getKey();
+            if (mPrograms.containsKey(key)) {
+                // lost twice before a restore, or acquired again already
+                continue;
+            }
+            ShaderProgram program = new ShaderProgram(this, key,
+                    link(key.getVertexShaderCode(), key.getFragmentShaderCode()), mGeneration);
+            program.resolveLocations(lost);
+            mPrograms.put(key, program);
+            restored++;
+        }
+        mLost.clear();
+        return restored;
+    }
+
+    /**
+     * @return - Number of distinct programs linked in the current context.
+     */
+    public int size() {
+        return mPrograms.size();
+    }
+
+    void release(ShaderProgram program) {
+        if (program.getReferences() <= 0) {
+            throw new IllegalStateException("ShaderProgram released more times than acquired");
+        }
+        if (program.dropReference() > 0 || !isCurrent(program.getGeneration())) {
+            return;
+        }
+
+        mPrograms.remove(program.getKey());
+        mGL.glDeleteProgram(program.getId());
+    }
+
+    boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    private int link(String vertexShaderCode, String fragmentShaderCode) {
+        int vertexShader = compile(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = compile(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        int program = mGL.glCreateProgram();            // create empty OpenGL Program
+        mGL.glAttachShader(program, vertexShader);      // add the vertex shader to program
+        mGL.glAttachShader(program, fragmentShader);    // add the fragment shader to program
+        mGL.glLinkProgram(program);                     // create OpenGL program executables
+
+        // the program keeps the compiled code, the shader objects are no longer needed
+        mGL.glDeleteShader(vertexShader);
+        mGL.glDeleteShader(fragmentShader);
+
+        mGL.glGetProgramiv(program, GLES20.GL_LINK_STATUS, mStatus, 0);
+        if (mStatus[0] == 0) {
+            String log = mGL.glGetProgramInfoLog(program);
+            mGL.glDeleteProgram(program);
+            Log.e(TAG, "glLinkProgram: " + log);
+            throw new RuntimeException("glLinkProgram: " + log);
+        }
+
+        return program;
+    }
+
+    private int compile(int type, String shaderCode) {
+        int shader = MyGLRenderer.loadShader(mGL, type, shaderCode);
+
+        mGL.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, mStatus, 0);
+        if (mStatus[0] == 0) {
+            String log = mGL.glGetShaderInfoLog(shader);
+            mGL.glDeleteShader(shader);
+            Log.e(TAG, "glCompileShader: " + log);
+            throw new RuntimeException("glCompileShader: " + log);
+        }
+
+        return shader;
+    }
+
+    /**
+     * Cache key: the hash of both sources, with the sources themselves kept
+     * to resolve collisions.
+     */
+    static final class Key {
+        private final String mVertexShaderCode;
+        private final String mFragmentShaderCode;
+        private final int mHash;
+
+        Key(String vertexShaderCode, String fragmentShaderCode) {
+            mVertexShaderCode = vertexShaderCode;
+            mFragmentShaderCode = fragmentShaderCode;
+            mHash = 31 * vertexShaderCode.hashCode() + fragmentShaderCode.hashCode();
+        }
+
+        String getVertexShaderCode() {
+            return mVertexShaderCode;
+        }
+
+        String getFragmentShaderCode() {
+            return mFragmentShaderCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mHash == other.mHash
+                    && mVertexShaderCode.equals(other.mVertexShaderCode)
+                    && mFragmentShaderCode.equals(other.mFragmentShaderCode);
+        }
+    }
+}
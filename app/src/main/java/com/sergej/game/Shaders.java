@@ -0,0 +1,98 @@
+package com.sergej.game;
+
+/**
+ * GLSL sources shared by the shapes. Keeping a single copy of every source
+ * lets {@link ShaderProgramCache} hand the same linked program to all shapes
+ * that draw with it.
+ */
+public final class Shaders {
+
+    /**
+     * Vertex shader that transforms each position by a single MVP matrix.
+     */
+    public static final String FLAT_COLOR_VERTEX =
+            // This matrix member variable provides a hook to manipulate
+            // the coordinates of the objects that use this vertex shader
+            "uniform mat4 uMVPMatrix;" +
+            "attribute vec4 vPosition;" +
+            "void main() {" +
+            // The matrix must be included as a modifier of gl_Position.
+            // Note that the uMVPMatrix factor *must be first* in order
+            // for the matrix multiplication product to be correct.
+            "  gl_Position = uMVPMatrix * vPosition;" +
+            "}";
+
+    /**
+     * Fragment shader that fills every fragment with the uniform color.
+     */
+    public static final String FLAT_COLOR_FRAGMENT =
+            "precision mediump float;" +
+            "uniform vec4 vColor;" +
+            "void main() {" +
+            "  gl_FragColor = vColor;" +
+            "}";
+
+    /**
+     * OpenGL ES 3.0 vertex shader for hardware instancing: the model matrix
+     * and color come from per-instance attributes.
+     */
+    public static final String INSTANCED_VERTEX =
+            "#version 300 es\n" +
+            "uniform mat4 uVPMatrix;" +
+            "layout(location = 0) in vec4 vPosition;" +
+            // a mat4 attribute takes the four locations 1 to 4
+            "layout(location = 1) in mat4 aModel;" +
+            "layout(location = 5) in vec4 aColor;" +
+            "out vec4 fColor;" +
+            "void main() {" +
+            "  fColor = aColor;" +
+            "  gl_Position = uVPMatrix * aModel * vPosition;" +
+            "}";
+
+    /**
+     * OpenGL ES 3.0 fragment shader matching {@link #INSTANCED_VERTEX}.
+     */
+    public static final String INSTANCED_FRAGMENT =
+            "#version 300 es\n" +
+            "precision mediump float;" +
+            "in vec4 fColor;" +
+            "out vec4 fragColor;" +
+            "void main() {" +
+            "  fragColor = fColor;" +
+            "}";
+
+    /**
+     * OpenGL ES 2.0 fragment shader matching {@link #pseudoInstancedVertex}.
+     */
+    public static final String PSEUDO_INSTANCED_FRAGMENT =
+            "precision mediump float;" +
+            "varying vec4 fColor;" +
+            "void main() {" +
+            "  gl_FragColor = fColor;" +
+            "}";
+
+    /**
+     * OpenGL ES 2.0 vertex shader for pseudo-instancing: the mesh is
+     * replicated in the vertex buffer, every copy tagged with its index into
+     * uniform arrays of model matrices and colors.
+     *
+     * @param maxInstances - Length of the uniform arrays.
+     * @return - The shader source.
+     */
+    public static String pseudoInstancedVertex(int maxInstances) {
+        return "uniform mat4 uVPMatrix;" +
+                "uniform mat4 uModel[" + maxInstances + "];" +
+                "uniform vec4 uColor[" + maxInstances + "];" +
+                "attribute vec4 vPosition;" +
+                "attribute float aInstance;" +
+                "varying vec4 fColor;" +
+                "void main() {" +
+                "  int i = int(aInstance);" +
+                "  fColor = uColor[i];" +
+                "  gl_Position = uVPMatrix * uModel[i] * vPosition;" +
+                "}";
+    }
+
+    private Shaders() {
+    }
+}
@@ -0,0 +1,60 @@
+package com.sergej.game;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulation step, which updates the scene and records a
+ * {@link FramePacket}, every time a frame is requested, so that the GL
+ * thread only replays recorded frames and both work in parallel. Requests
+ * arriving while a step runs are merged into one more step.
+ */
+public class SimulationThread extends Thread {
+
+    private final Runnable mStep;
+    private final AtomicBoolean mRequested = new AtomicBoolean();
+    private volatile boolean mRunning = true;
+
+    /**
+     * @param step - Simulation step, run on this thread only.
+     */
+    public SimulationThread(Runnable step) {
+        super("Simulation");
+        mStep = step;
+        setDaemon(true);
+    }
+
+    /**
+     * Asks for one more step. May be called from any thread.
+     */
+    public void requestStep() {
+        if (!mRequested.getAndSet(true)) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Stops the thread after the current step and waits for it.
+     */
+    public void quit() {
+        mRunning = false;
+        LockSupport.unpark(this);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (mRunning) {
+            if (mRequested.getAndSet(false)) {
+                mStep.run();
+            } else {
+                // spurious wake-ups just check again
+                LockSupport.park(this);
+            }
+        }
+    }
+}
@@ -25,33 +25,11 @@ import android.opengl.GLES20;
 /**
  * A two-dimensional square for use as a drawn object in OpenGL ES 2.0.
  */
-public class Square {
-
-    private final String vertexShaderCode =
-            // This matrix member variable provides a hook to manipulate
-            // the coordinates of the objects that use this vertex shader
-            "uniform mat4 uMVPMatrix;" +
-            "attribute vec4 vPosition;" +
-            "void main() {" +
-            // The matrix must be included as a modifier of gl_Position.
-            // Note that the uMVPMatrix factor *must be first* in order
-            // for the matrix multiplication product to be correct.
-            "  gl_Position = uMVPMatrix * vPosition;" +
-            "}";
-
-    private final String fragmentShaderCode =
-            "precision mediump float;" +
-            "uniform vec4 vColor;" +
-            "void main() {" +
-            "  gl_FragColor = vColor;" +
-            "}";
-
-    private final FloatBuffer vertexBuffer;
-    private final ShortBuffer drawListBuffer;
-    private final int mProgram;
-    private int mPositionHandle;
-    private int mColorHandle;
-    private int mMVPMatrixHandle;
+public class Square implements Bounded, Submittable {
+
+    private final GpuBuffer vertexBuffer;
+    private final GpuBuffer drawListBuffer;
+    private final FlatColorProgram mProgram;
 
     // number of coordinates per vertex in this array
     static final int COORDS_PER_VERTEX = 3;
@@ -63,44 +41,64 @@ public class Square {
 
     private final short drawOrder[] = { 0, 1, 2, 0, 2, 3 }; // order to draw vertices
 
-    private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
     float color[] = { 0.2f, 0.709803922f, 0.898039216f, 1.0f };
 
     /**
      * Sets up the drawing object data for use in an OpenGL ES context.
+     *
+     * @param programs - Cache the shared flat color program is taken from.
+     * @param buffers - Manager the vertex and index buffers are created by.
      */
-    public Square() {
+    public Square(ShaderProgramCache programs, GpuBufferManager buffers) {
         // initialize vertex byte buffer for shape coordinates
         ByteBuffer bb = ByteBuffer.allocateDirect(
         // (# of coordinate values * 4 bytes per float)
                 squareCoords.length * 4);
         bb.order(ByteOrder.nativeOrder());
-        vertexBuffer = bb.asFloatBuffer();
-        vertexBuffer.put(squareCoords);
-        vertexBuffer.position(0);
+        FloatBuffer vb = bb.asFloatBuffer();
+        vb.put(squareCoords);
+        vb.position(0);
+        // copy the coordinates to a vertex buffer object once
+        vertexBuffer = buffers.createStatic(GLES20.GL_ARRAY_BUFFER, vb);
 
         // initialize byte buffer for the draw list
         ByteBuffer dlb = ByteBuffer.allocateDirect(
                 // (# of coordinate values * 2 bytes per short)
                 drawOrder.length * 2);
         dlb.order(ByteOrder.nativeOrder());
-        drawListBuffer = dlb.asShortBuffer();
-        drawListBuffer.put(drawOrder);
-        drawListBuffer.position(0);
-
-        // prepare shaders and OpenGL program
-        int vertexShader = MyGLRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        int fragmentShader = MyGLRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
-
-        mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-        GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-        GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
+        ShortBuffer dl = dlb.asShortBuffer();
+        dl.put(drawOrder);
+        dl.position(0);
+        // copy the draw list to an index buffer object once
+        drawListBuffer = buffers.createStatic(GLES20.GL_ELEMENT_ARRAY_BUFFER, dl);
+
+        // take the shared OpenGL program, it is linked only once per context
+        mProgram = new FlatColorProgram(programs);
+    }
+
+    /**
+     * @return - The geometry of this shape in object coordinates.
+     */
+    public Mesh getMesh() {
+        return new Mesh(squareCoords, drawOrder);
+    }
+
+    @Override
+    public void getBounds(Aabb out) {
+        out.set(getMesh().getBounds());
+    }
+
+    /**
+     * @return - The RGBA color this shape is drawn with.
+     */
+    public float[] getColor() {
+        return color;
+    }
+
+    @Override
+    public void submit(DrawList queue, float[] mvpMatrix) {
+        queue.add(mProgram, vertexBuffer, drawListBuffer, drawOrder.length, color, mvpMatrix);
     }
 
     /**
@@ -110,42 +108,29 @@ public class Square {
      * this shape.
      */
     public void draw(float[] mvpMatrix) {
-        // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
+        GL gl = mProgram.getGL();
 
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                mPositionHandle, COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                vertexStride, vertexBuffer);
-
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        // Add program to OpenGL environment
+        mProgram.use();
 
-        // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
+        // Enable the vertex shader's vPosition member and
+        // prepare the square coordinate data
+        mProgram.enablePosition(vertexBuffer);
 
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-        MyGLRenderer.checkGlError("glGetUniformLocation");
+        // Set color for drawing the square
+        mProgram.setColor(color);
 
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        MyGLRenderer.checkGlError("glUniformMatrix4fv");
+        mProgram.setMVPMatrix(mvpMatrix);
 
         // Draw the square
-        GLES20.glDrawElements(
+        drawListBuffer.bind();
+        gl.glDrawElements(
                 GLES20.GL_TRIANGLES, drawOrder.length,
-                GLES20.GL_UNSIGNED_SHORT, drawListBuffer);
+                GLES20.GL_UNSIGNED_SHORT, 0);
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        mProgram.disablePosition();
     }
 
 }
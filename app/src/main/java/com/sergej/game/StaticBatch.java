@@ -0,0 +1,105 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.util.List;
+
+/**
+ * Static geometry baked by a {@link StaticBatchBuilder}. The program is
+ * bound once for the whole batch and every chunk is a single draw call.
+ */
+public class StaticBatch implements Bounded, Submittable {
+
+    private final FlatColorProgram mProgram;
+    private final float[][] mColors;
+    private final GpuBuffer[] mVertexBuffers;
+    private final GpuBuffer[] mIndexBuffers;
+    private final int[] mIndexCounts;
+
+    // world coordinates, the model transforms are baked in
+    private final Aabb mBounds = new Aabb();
+
+    StaticBatch(ShaderProgramCache programs, GpuBufferManager buffers, List<StaticBatchBuilder.Chunk> chunks) {
+        mProgram = new FlatColorProgram(programs);
+
+        int count = chunks.size();
+        mColors = new float[count][];
+        mVertexBuffers = new GpuBuffer[count];
+        mIndexBuffers = new GpuBuffer[count];
+        mIndexCounts = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            StaticBatchBuilder.Chunk chunk = chunks.get(i);
+            Mesh mesh = chunk.mesh;
+
+            mColors[i] = chunk.color;
+            mVertexBuffers[i] = buffers.createStaticVertices(mesh.getVertices(),
+                    mesh.getVertexCount() * Mesh.COORDS_PER_VERTEX);
+            mIndexBuffers[i] = buffers.createStaticIndices(mesh.getIndices(), mesh.getIndexCount());
+            mIndexCounts[i] = mesh.getIndexCount();
+            mBounds.union(mesh.getBounds());
+        }
+    }
+
+    /**
+     * @return - Number of draw calls issued by {@link #draw}.
+     */
+    public int getDrawCalls() {
+        return mIndexCounts.length;
+    }
+
+    @Override
+    public void getBounds(Aabb out) {
+        out.set(mBounds);
+    }
+
+    @Override
+    public void submit(DrawList queue, float[] mvpMatrix) {
+        for (int i = 0; i < mIndexCounts.length; i++) {
+            queue.add(mProgram, mVertexBuffers[i], mIndexBuffers[i], mIndexCounts[i], mColors[i], mvpMatrix);
+        }
+    }
+
+    /**
+     * Draws the whole batch.
+     *
+     * @param mvpMatrix - View Projection matrix; the model transforms are
+     * already baked into the vertices.
+     */
+    public void draw(float[] mvpMatrix) {
+        if (mIndexCounts.length == 0) {
+            return;
+        }
+
+        GL gl = mProgram.getGL();
+
+        mProgram.use();
+        mProgram.setMVPMatrix(mvpMatrix);
+
+        float[] color = null;
+        for (int i = 0; i < mIndexCounts.length; i++) {
+            // chunks are ordered by color, only set it when it changes
+            if (mColors[i] != color) {
+                color = mColors[i];
+                mProgram.setColor(color);
+            }
+
+            mProgram.enablePosition(mVertexBuffers[i]);
+            mIndexBuffers[i].bind();
+            gl.glDrawElements(GLES20.GL_TRIANGLES, mIndexCounts[i], GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+
+        mProgram.disablePosition();
+    }
+
+    /**
+     * Deletes the buffers and gives the program back.
+     */
+    public void release() {
+        for (int i = 0; i < mIndexCounts.length; i++) {
+            mVertexBuffers[i].release();
+            mIndexBuffers[i].release();
+        }
+        mProgram.release();
+    }
+}
@@ -0,0 +1,174 @@
+package com.sergej.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges meshes that never move relative to each other into as few draw
+ * calls as possible.
+ *
+ * <p>Meshes are grouped by color, since all shapes share the flat color
+ * program, and every group is baked into one vertex array with the model
+ * matrix of each mesh already applied. Indices stay 16 bit, so a group that
+ * grows past {@link #MAX_VERTICES} vertices is split into several chunks,
+ * each drawn with a single glDrawElements.</p>
+ */
+public class StaticBatchBuilder {
+
+    /**
+     * Most vertices a single chunk can hold with GL_UNSIGNED_SHORT indices.
+     * Index 0xFFFF is left unused as it is the primitive restart index.
+     */
+    public static final int MAX_VERTICES = 0xFFFF;
+
+    private final Map<ColorKey, List<Entry>> mGroups = new LinkedHashMap<>();
+
+    /**
+     * Adds a mesh to the batch.
+     *
+     * @param mesh - Geometry to add. It is copied when the batch is built.
+     * @param modelMatrix - Transform baked into the copied vertices.
+     * @param color - RGBA color the mesh is drawn with.
+     */
+    public void add(Mesh mesh, float[] modelMatrix, float[] color) {
+        if (mesh.getVertexCount() > MAX_VERTICES) {
+            throw new IllegalArgumentException("Mesh with " + mesh.getVertexCount()
+                    + " vertices does not fit into a 16 bit index buffer");
+        }
+
+        ColorKey key = new ColorKey(color);
+        List<Entry> entries = mGroups.get(key);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            mGroups.put(key, entries);
+        }
+        entries.add(new Entry(mesh, modelMatrix.clone()));
+    }
+
+    /**
+     * @return - true if nothing was added yet.
+     */
+    public boolean isEmpty() {
+        return mGroups.isEmpty();
+    }
+
+    /**
+     * Forgets all added meshes.
+     */
+    public void clear() {
+        mGroups.clear();
+    }
+
+    /**
+     * Bakes the added meshes into chunks, ordered by color.
+     *
+     * @return - CPU-side chunks, ready to be uploaded.
+     */
+    public List<Chunk> buildChunks() {
+        List<Chunk> chunks = new ArrayList<>();
+
+        for (Map.Entry<ColorKey, List<Entry>> group : mGroups.entrySet()) {
+            float[] color = group.getKey().mColor;
+            List<Entry> entries = group.getValue();
+
+            int first = 0;
+            while (first < entries.size()) {
+                // take as many meshes as fit into one chunk
+                int vertices = 0, indices = 0, last = first;
+                while (last < entries.size()
+                        && vertices + entries.get(last).mMesh.getVertexCount() <= MAX_VERTICES) {
+                    vertices += entries.get(last).mMesh.getVertexCount();
+                    indices += entries.get(last).mMesh.getIndexCount();
+                    last++;
+                }
+
+                chunks.add(bake(color, entries.subList(first, last), vertices, indices));
+                first = last;
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Bakes the added meshes and uploads them as static buffers.
+     *
+     * @param programs - Cache the flat color program is taken from.
+     * @param buffers - Manager the vertex and index buffers are created by.
+     * @return - A batch drawing every color with one call per chunk.
+     */
+    public StaticBatch build(ShaderProgramCache programs, GpuBufferManager buffers) {
+        return new StaticBatch(programs, buffers, buildChunks());
+    }
+
+    private static Chunk bake(float[] color, List<Entry> entries, int vertexCount, int indexCount) {
+        float[] vertices = new float[vertexCount * Mesh.COORDS_PER_VERTEX];
+        short[] indices = new short[indexCount];
+
+        int vertex = 0, index = 0;
+        for (Entry entry : entries) {
+            Mesh mesh = entry.mMesh;
+
+            float[] src = mesh.getVertices();
+            for (int i = 0; i < mesh.getVertexCount(); i++) {
+                Matrix4.transformPoint(entry.mModelMatrix, src, i * Mesh.COORDS_PER_VERTEX,
+                        vertices, (vertex + i) * Mesh.COORDS_PER_VERTEX);
+            }
+
+            // rebase the indices onto the position of the mesh in the chunk
+            short[] srcIndices = mesh.getIndices();
+            for (int i = 0; i < mesh.getIndexCount(); i++) {
+                indices[index + i] = (short) (srcIndices[i] + vertex);
+            }
+
+            vertex += mesh.getVertexCount();
+            index += mesh.getIndexCount();
+        }
+
+        return new Chunk(color, new Mesh(vertices, indices));
+    }
+
+    /**
+     * Geometry of one draw call: a color and the pre-transformed mesh.
+     */
+    public static final class Chunk {
+        public final float[] color;
+        public final Mesh mesh;
+
+        Chunk(float[] color, Mesh mesh) {
+            this.color = color;
+            this.mesh = mesh;
+        }
+    }
+
+    private static final class Entry {
+        final Mesh mMesh;
+        final float[] mModelMatrix;
+
+        Entry(Mesh mesh, float[] modelMatrix) {
+            mMesh = mesh;
+            mModelMatrix = modelMatrix;
+        }
+    }
+
+    private static final class ColorKey {
+        final float[] mColor;
+
+        ColorKey(float[] color) {
+            mColor = color.clone();
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(mColor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ColorKey && Arrays.equals(mColor, ((ColorKey) o).mColor);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.sergej.game;
+
+/**
+ * A {@link Renderable} that can hand its draw calls to a {@link DrawList}
+ * instead of issuing them right away, so they can be sorted by GL state or
+ * recorded for the GL thread.
+ */
+public interface Submittable extends Renderable {
+
+    /**
+     * @param queue - Draw list of the current frame.
+     * @param mvpMatrix - The Model View Projection matrix. A
+     * {@link RenderQueue} references it, so it must not change until the
+     * queue is flushed.
+     */
+    void submit(DrawList queue, float[] mvpMatrix);
+}
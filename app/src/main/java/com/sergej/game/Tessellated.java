@@ -0,0 +1,16 @@
+package com.sergej.game;
+
+/**
+ * A {@link Renderable} whose tessellation depends on its size on screen.
+ * The scene graph calls {@link #updateLevel} whenever the model view matrix
+ * of its node changes.
+ */
+public interface Tessellated extends Renderable {
+
+    /**
+     * @param modelViewMatrix - View matrix times model matrix.
+     * @param projectionMatrix - Perspective projection matrix.
+     * @param viewportHeight - Viewport height in pixels.
+     */
+    void updateLevel(float[] modelViewMatrix, float[] projectionMatrix, float viewportHeight);
+}
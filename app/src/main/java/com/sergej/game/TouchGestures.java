@@ -0,0 +1,201 @@
+package com.sergej.game;
+
+/**
+ * Coalesces the samples of a {@link TouchRing} into the gestures of one
+ * frame: a one finger drag, and a two finger pan and pinch. Pointer
+ * positions are compared at every {@link TouchRing#SYNC}, so historical
+ * samples add up to the same motion the view saw.
+ *
+ * <p>Must only be used on the consumer thread of the ring. Allocates
+ * nothing.</p>
+ */
+public class TouchGestures implements TouchRing.Receiver {
+
+    private static final int MAX_POINTERS = 10;
+
+    private final int[] mIds = new int[MAX_POINTERS];
+    private final float[] mX = new float[MAX_POINTERS];
+    private final float[] mY = new float[MAX_POINTERS];
+    private int mCount;
+
+    private float mWidth = 1;
+    private float mHeight = 1;
+
+    // pointers at the last sync; invalid after a pointer went down or up
+    private boolean mHasBaseline;
+    private float mLastX, mLastY, mLastSpan;
+
+    // what the drained samples add up to
+    private float mDragX, mDragY, mSpin;
+    private float mPanX, mPanY;
+    private float mScale = 1;
+
+    /**
+     * @param width - View width in pixels.
+     * @param height - View height in pixels.
+     */
+    public void setViewSize(float width, float height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Drains the ring and adds up the gestures of the samples.
+     *
+     * @param ring - Touch samples of the view.
+     * @return - true if any sample was drained.
+     */
+    public boolean update(TouchRing ring) {
+        mDragX = mDragY = mSpin = 0;
+        mPanX = mPanY = 0;
+        mScale = 1;
+        return ring.drain(this) > 0;
+    }
+
+    @Override
+    public void onSample(int kind, int pointerId, float x, float y) {
+        switch (kind) {
+            case TouchRing.DOWN:
+                if (find(pointerId) < 0 && mCount < MAX_POINTERS) {
+                    mIds[mCount] = pointerId;
+                    mX[mCount] = x;
+                    mY[mCount] = y;
+                    mCount++;
+                }
+                mHasBaseline = false;
+                break;
+            case TouchRing.MOVE:
+                int i = find(pointerId);
+                if (i >= 0) {
+                    mX[i] = x;
+                    mY[i] = y;
+                }
+                break;
+            case TouchRing.UP:
+                remove(pointerId);
+                mHasBaseline = false;
+                break;
+            case TouchRing.CANCEL:
+                mCount = 0;
+                mHasBaseline = false;
+                break;
+            case TouchRing.SYNC:
+                sync();
+                break;
+        }
+    }
+
+    /**
+     * @return - One finger motion along x in pixels.
+     */
+    public float getDragX() {
+        return mDragX;
+    }
+
+    /**
+     * @return - One finger motion along y in pixels.
+     */
+    public float getDragY() {
+        return mDragY;
+    }
+
+    /**
+     * @return - One finger motion around the center of the view in pixels,
+     * counter-clockwise: horizontal motion counts reversed below the middle
+     * and vertical motion reversed left of it.
+     */
+    public float getSpin() {
+        return mSpin;
+    }
+
+    /**
+     * @return - Two finger motion of the center between them along x in pixels.
+     */
+    public float getPanX() {
+        return mPanX;
+    }
+
+    /**
+     * @return - Two finger motion of the center between them along y in pixels.
+     */
+    public float getPanY() {
+        return mPanY;
+    }
+
+    /**
+     * @return - Factor the distance between two fingers changed by, 1 if
+     * there was no pinch.
+     */
+    public float getScale() {
+        return mScale;
+    }
+
+    /**
+     * @return - Number of pointers currently down.
+     */
+    public int getPointerCount() {
+        return mCount;
+    }
+
+    private void sync() {
+        if (mCount == 0) {
+            return;
+        }
+
+        float x, y, span;
+        if (mCount == 1) {
+            x = mX[0];
+            y = mY[0];
+            span = 0;
+        } else {
+            // gestures follow the first two fingers
+            x = (mX[0] + mX[1]) / 2;
+            y = (mY[0] + mY[1]) / 2;
+            float sx = mX[1] - mX[0], sy = mY[1] - mY[0];
+            span = (float) Math.sqrt(sx * sx + sy * sy);
+        }
+
+        if (mHasBaseline) {
+            float dx = x - mLastX;
+            float dy = y - mLastY;
+            if (mCount == 1) {
+                mDragX += dx;
+                mDragY += dy;
+                mSpin += (y > mHeight / 2 ? -dx : dx) + (x < mWidth / 2 ? -dy : dy);
+            } else {
+                mPanX += dx;
+                mPanY += dy;
+                if (mLastSpan > 0 && span > 0) {
+                    mScale *= span / mLastSpan;
+                }
+            }
+        }
+
+        mLastX = x;
+        mLastY = y;
+        mLastSpan = span;
+        mHasBaseline = true;
+    }
+
+    private int find(int pointerId) {
+        for (int i = 0; i < mCount; i++) {
+            if (mIds[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(int pointerId) {
+        int i = find(pointerId);
+        if (i < 0) {
+            return;
+        }
+        // keep the order, the first two pointers drive two finger gestures
+        for (mCount--; i < mCount; i++) {
+            mIds[i] = mIds[i + 1];
+            mX[i] = mX[i + 1];
+            mY[i] = mY[i + 1];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.sergej.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single producer, single consumer ring of touch samples. The
+ * UI thread adds the samples of every MotionEvent, historical ones
+ * included, and the simulation thread drains them once per step, so neither
+ * locks nor allocates.
+ *
+ * <p>A sample is a pointer going down, moving or going up. A
+ * {@link #SYNC} sample closes the samples taken at the same time, so the
+ * consumer sees every pointer at a consistent moment. Samples only become
+ * visible to the consumer when {@link #publish()} is called. When the ring
+ * is full, the unpublished samples are dropped and counted, and the
+ * consumer gets a {@link #CANCEL} instead, so it starts over from the
+ * positions that follow.</p>
+ */
+public class TouchRing {
+
+    public static final int DOWN = 0;
+    public static final int MOVE = 1;
+    public static final int UP = 2;
+    public static final int SYNC = 3;
+    public static final int CANCEL = 4;
+
+    private final int mMask;
+    private final int[] mKinds;
+    private final int[] mPointers;
+    private final float[] mX;
+    private final float[] mY;
+
+    // next sample to read, written by the consumer only
+    private final AtomicLong mHead = new AtomicLong();
+    // end of the published samples, written by the producer only
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    // producer side, not yet published
+    private long mPending;
+    private boolean mOverflow;
+
+    /**
+     * @param capacity - Number of samples, rounded up to a power of two.
+     */
+    public TouchRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mMask = size - 1;
+        mKinds = new int[size];
+        mPointers = new int[size];
+        mX = new float[size];
+        mY = new float[size];
+    }
+
+    /**
+     * Producer side: adds a sample, visible after the next {@link #publish()}.
+     *
+     * @param kind - {@link #DOWN}, {@link #MOVE}, {@link #UP}, {@link #SYNC}
+     * or {@link #CANCEL}.
+     * @param pointerId - Id of the pointer, stable while it is down.
+     * @param x - Position in view pixels.
+     * @param y - Position in view pixels.
+     * @return - false if the ring was full and the sample dropped.
+     */
+    public boolean add(int kind, int pointerId, float x, float y) {
+        if (mOverflow) {
+            mDropped.incrementAndGet();
+            return false;
+        }
+        if (!put(kind, pointerId, x, y)) {
+            // drop the whole unpublished event, half of it is meaningless
+            long published = mTail.get();
+            mDropped.addAndGet(mPending - published + 1);
+            mPending = published;
+            mOverflow = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return - Number of samples that can still be added.
+     */
+    public int available() {
+        return (int) (mMask + 1 - (mPending - mHead.get()));
+    }
+
+    /**
+     * Producer side: makes the added samples visible to the consumer.
+     */
+    public void publish() {
+        if (mOverflow && put(CANCEL, -1, 0, 0)) {
+            // make the consumer forget the gesture rather than see half of it
+            mOverflow = false;
+        }
+        // ordered write: the samples are visible before the new tail
+        mTail.lazySet(mPending);
+    }
+
+    private boolean put(int kind, int pointerId, float x, float y) {
+        if (mPending - mHead.get() > mMask) {
+            return false;
+        }
+
+        int i = (int) mPending & mMask;
+        mKinds[i] = kind;
+        mPointers[i] = pointerId;
+        mX[i] = x;
+        mY[i] = y;
+        mPending++;
+        return true;
+    }
+
+    /**
+     * Consumer side: passes every published sample to a receiver, oldest first.
+     *
+     * @param receiver - Gets the samples.
+     * @return - Number of samples drained.
+     */
+    public int drain(Receiver receiver) {
+        long head = mHead.get();
+        long tail = mTail.get();
+        for (long s = head; s < tail; s++) {
+            int i = (int) s & mMask;
+            receiver.onSample(mKinds[i], mPointers[i], mX[i], mY[i]);
+        }
+        mHead.lazySet(tail);
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return - Number of samples dropped because the ring was full.
+     */
+    public long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * @return - Number of samples the ring holds.
+     */
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Consumer of the samples of a {@link TouchRing}.
+     */
+    public interface Receiver {
+        void onSample(int kind, int pointerId, float x, float y);
+    }
+}
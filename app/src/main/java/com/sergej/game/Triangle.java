@@ -24,32 +24,10 @@ import android.opengl.GLES20;
 /**
  * A two-dimensional triangle for use as a drawn object in OpenGL ES 2.0.
  */
-public class Triangle {
-
-    private final String vertexShaderCode =
-            // This matrix member variable provides a hook to manipulate
-            // the coordinates of the objects that use this vertex shader
-            "uniform mat4 uMVPMatrix;" +
-            "attribute vec4 vPosition;" +
-            "void main() {" +
-            // the matrix must be included as a modifier of gl_Position
-            // Note that the uMVPMatrix factor *must be first* in order
-            // for the matrix multiplication product to be correct.
-            "  gl_Position = uMVPMatrix * vPosition;" +
-            "}";
-
-    private final String fragmentShaderCode =
-            "precision mediump float;" +
-            "uniform vec4 vColor;" +
-            "void main() {" +
-            "  gl_FragColor = vColor;" +
-            "}";
-
-    private final FloatBuffer vertexBuffer;
-    private final int mProgram;
-    private int mPositionHandle;
-    private int mColorHandle;
-    private int mMVPMatrixHandle;
+public class Triangle implements Bounded, Submittable {
+
+    private final GpuBuffer vertexBuffer;
+    private final FlatColorProgram mProgram;
 
     // number of coordinates per vertex in this array
     static final int COORDS_PER_VERTEX = 3;
@@ -60,14 +38,16 @@ public class Triangle {
             0.5f, -0.311004243f, 0.0f    // bottom right
     };
     private final int vertexCount = triangleCoords.length / COORDS_PER_VERTEX;
-    private final int vertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
 
     float color[] = { 0.63671875f, 0.76953125f, 0.22265625f, 0.0f };
 
     /**
      * Sets up the drawing object data for use in an OpenGL ES context.
+     *
+     * @param programs - Cache the shared flat color program is taken from.
+     * @param buffers - Manager the vertex buffer is created by.
      */
-    public Triangle() {
+    public Triangle(ShaderProgramCache programs, GpuBufferManager buffers) {
         // initialize vertex byte buffer for shape coordinates
         ByteBuffer bb = ByteBuffer.allocateDirect(
                 // (number of coordinate values * 4 bytes per float)
@@ -76,23 +56,40 @@ public class Triangle {
         bb.order(ByteOrder.nativeOrder());
 
         // create a floating point buffer from the ByteBuffer
-        vertexBuffer = bb.asFloatBuffer();
+        FloatBuffer vb = bb.asFloatBuffer();
         // add the coordinates to the FloatBuffer
-        vertexBuffer.put(triangleCoords);
+        vb.put(triangleCoords);
         // set the buffer to read the first coordinate
-        vertexBuffer.position(0);
+        vb.position(0);
+        // copy the coordinates to a vertex buffer object once
+        vertexBuffer = buffers.createStatic(GLES20.GL_ARRAY_BUFFER, vb);
 
-        // prepare shaders and OpenGL program
-        int vertexShader = MyGLRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = MyGLRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        // take the shared OpenGL program, it is linked only once per context
+        mProgram = new FlatColorProgram(programs);
+    }
 
-        mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-        GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-        GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
+    /**
+     * @return - The geometry of this shape in object coordinates.
+     */
+    public Mesh getMesh() {
+        return new Mesh(triangleCoords, new short[] { 0, 1, 2 });
+    }
 
+    @Override
+    public void getBounds(Aabb out) {
+        out.set(getMesh().getBounds());
+    }
+
+    /**
+     * @return - The RGBA color this shape is drawn with.
+     */
+    public float[] getColor() {
+        return color;
+    }
+
+    @Override
+    public void submit(DrawList queue, float[] mvpMatrix) {
+        queue.add(mProgram, vertexBuffer, null, vertexCount, color, mvpMatrix);
     }
 
     /**
@@ -102,40 +99,26 @@ public class Triangle {
      * this shape.
      */
     public void draw(float[] mvpMatrix) {
-        // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
+        GL gl = mProgram.getGL();
 
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                mPositionHandle, COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                vertexStride, vertexBuffer);
+        // Add program to OpenGL environment
+        mProgram.use();
 
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        // Enable the vertex shader's vPosition member and
+        // prepare the triangle coordinate data
+        mProgram.enablePosition(vertexBuffer);
 
         // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-        MyGLRenderer.checkGlError("glGetUniformLocation");
+        mProgram.setColor(color);
 
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        MyGLRenderer.checkGlError("glUniformMatrix4fv");
+        mProgram.setMVPMatrix(mvpMatrix);
 
         // Draw the triangle
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+        gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
 
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        mProgram.disablePosition();
     }
 
 }
@@ -0,0 +1,71 @@
+package com.sergej.game;
+
+/**
+ * Walks around the unit circle in equal angular steps for the curved
+ * generators of {@link MeshFactory}.
+ *
+ * <p>Each point is the previous one rotated by the step, which costs four
+ * multiplications instead of a call to Math.cos and Math.sin. The rotation
+ * runs in double precision and every {@link #RESYNC} steps the point is
+ * computed exactly again, so the drift stays far below float precision
+ * however many segments a mesh has.</p>
+ */
+final class UnitCircle {
+
+    /**
+     * Steps after which the point is computed exactly again.
+     */
+    static final int RESYNC = 64;
+
+    private final double mFrom;
+    private final double mStep;
+    private final double mStepCos;
+    private final double mStepSin;
+
+    private double mCos;
+    private double mSin;
+    private int mIndex;
+
+    /**
+     * @param from - Angle of the first point in radians.
+     * @param step - Angle between two points in radians.
+     */
+    UnitCircle(double from, double step) {
+        mFrom = from;
+        mStep = step;
+        mStepCos = Math.cos(step);
+        mStepSin = Math.sin(step);
+        mCos = Math.cos(from);
+        mSin = Math.sin(from);
+    }
+
+    /**
+     * @return - Cosine of the current angle.
+     */
+    float cos() {
+        return (float) mCos;
+    }
+
+    /**
+     * @return - Sine of the current angle.
+     */
+    float sin() {
+        return (float) mSin;
+    }
+
+    /**
+     * Moves to the next point.
+     */
+    void next() {
+        mIndex++;
+        if (mIndex % RESYNC == 0) {
+            double theta = mFrom + mIndex * mStep;
+            mCos = Math.cos(theta);
+            mSin = Math.sin(theta);
+            return;
+        }
+        double cos = mCos * mStepCos - mSin * mStepSin;
+        mSin = mSin * mStepCos + mCos * mStepSin;
+        mCos = cos;
+    }
+}
@@ -0,0 +1,291 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * Layout of interleaved vertices: which attributes a vertex has, how each is
+ * encoded and where it lies within the vertex.
+ *
+ * <p>Positions are 32-bit or 16-bit floats, normals 32-bit floats, packed
+ * 2_10_10_10 integers or normalized bytes, colors normalized bytes or 32-bit
+ * floats and texture coordinates 32-bit or 16-bit floats or normalized
+ * shorts. Every attribute starts on a 4 byte boundary, as some GPUs fetch
+ * misaligned attributes slowly. 16-bit floats and packed normals need
+ * OpenGL ES 3.0, see {@link #forMeshes}.</p>
+ *
+ * <p>Vertices in a format are written with a {@link VertexWriter}.</p>
+ */
+public final class VertexFormat {
+
+    // attributes
+    public static final int POSITION = 0;
+    public static final int NORMAL = 1;
+    public static final int COLOR = 2;
+    public static final int UV = 3;
+    static final int ATTRIBUTES = 4;
+
+    // encodings
+    public static final int NONE = 0;
+    public static final int FLOAT = 1;
+    public static final int HALF_FLOAT = 2;
+    public static final int PACKED_2_10_10_10 = 3;
+    public static final int NORMALIZED_BYTE = 4;
+    public static final int NORMALIZED_UNSIGNED_BYTE = 5;
+    public static final int NORMALIZED_UNSIGNED_SHORT = 6;
+
+    // OpenGL ES 3.0 vertex types
+    static final int GL_HALF_FLOAT = 0x140B;
+    static final int GL_INT_2_10_10_10_REV = 0x8D9F;
+
+    /**
+     * Positions only, as three 32-bit floats: 12 bytes.
+     */
+    public static final VertexFormat POSITION_FLOAT = new Builder().position(FLOAT).build();
+
+    /**
+     * Positions as 32-bit floats and normals as normalized bytes: 16 bytes,
+     * for OpenGL ES 2.0.
+     */
+    public static final VertexFormat POSITION_NORMAL_BYTE = new Builder()
+            .position(FLOAT).normal(NORMALIZED_BYTE).build();
+
+    /**
+     * Positions as 16-bit floats and normals packed into 32 bits: 12 bytes,
+     * half of the 24 bytes of 32-bit floats. Needs OpenGL ES 3.0.
+     */
+    public static final VertexFormat POSITION_NORMAL_COMPACT = new Builder()
+            .position(HALF_FLOAT).normal(PACKED_2_10_10_10).build();
+
+    private final int[] mEncodings;
+    private final int[] mOffsets;
+    private final int mStride;
+
+    private VertexFormat(int[] encodings) {
+        mEncodings = encodings;
+        mOffsets = new int[ATTRIBUTES];
+
+        int offset = 0;
+        for (int attribute = 0; attribute < ATTRIBUTES; attribute++) {
+            mOffsets[attribute] = offset;
+            offset += getSize(attribute);
+        }
+        mStride = offset;
+    }
+
+    /**
+     * @param capabilities - What the context supports.
+     * @return - The format meshes are uploaded in: positions and normals in
+     * 12 bytes where the context can draw the compact format, otherwise
+     * float positions only. No shader reads normals yet, and on OpenGL ES
+     * 2.0 they would grow every vertex from 12 to 16 bytes.
+     */
+    public static VertexFormat forMeshes(GLCapabilities capabilities) {
+        return capabilities.hasPackedVertexFormats() ? POSITION_NORMAL_COMPACT : POSITION_FLOAT;
+    }
+
+    /**
+     * @param encodings - Encoding of each attribute, NONE for missing ones,
+     * as returned by {@link #getEncoding}.
+     * @return - The format.
+     * @throws IllegalArgumentException - If an encoding is not allowed for
+     * its attribute.
+     * @throws IllegalStateException - If there is no position.
+     */
+    static VertexFormat fromEncodings(int[] encodings) {
+        Builder builder = new Builder();
+        if (encodings[POSITION] != NONE) {
+            builder.position(encodings[POSITION]);
+        }
+        if (encodings[NORMAL] != NONE) {
+            builder.normal(encodings[NORMAL]);
+        }
+        if (encodings[COLOR] != NONE) {
+            builder.color(encodings[COLOR]);
+        }
+        if (encodings[UV] != NONE) {
+            builder.uv(encodings[UV]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return - Bytes from one vertex to the next.
+     */
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @return - Whether vertices have the attribute.
+     */
+    public boolean has(int attribute) {
+        return mEncodings[attribute] != NONE;
+    }
+
+    /**
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @return - How the attribute is encoded, NONE if vertices lack it.
+     */
+    public int getEncoding(int attribute) {
+        return mEncodings[attribute];
+    }
+
+    /**
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @return - Offset of the attribute from the start of a vertex in bytes.
+     */
+    public int getOffset(int attribute) {
+        return mOffsets[attribute];
+    }
+
+    /**
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @return - Bytes the attribute takes in a vertex, 0 if vertices lack it.
+     */
+    public int getSize(int attribute) {
+        return getComponents(attribute) * componentBytes(mEncodings[attribute]);
+    }
+
+    /**
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @return - Number of components GL reads for the attribute. Half float
+     * positions carry w = 1 so they stay 4 byte aligned.
+     */
+    public int getComponents(int attribute) {
+        int encoding = mEncodings[attribute];
+        switch (encoding) {
+            case NONE:
+                return 0;
+            case PACKED_2_10_10_10:
+                return 4;
+            default:
+                break;
+        }
+        switch (attribute) {
+            case POSITION:
+                return encoding == HALF_FLOAT ? 4 : 3;
+            case NORMAL:
+                return encoding == NORMALIZED_BYTE ? 4 : 3;
+            case COLOR:
+                return 4;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Enables a vertex attribute array and points it at this attribute of
+     * the vertex buffer bound to GL_ARRAY_BUFFER.
+     *
+     * @param gl - GL to call.
+     * @param attribute - POSITION, NORMAL, COLOR or UV.
+     * @param location - Location of the shader attribute.
+     */
+    public void enable(GL gl, int attribute, int location) {
+        int encoding = mEncodings[attribute];
+        gl.glEnableVertexAttribArray(location);
+        gl.glVertexAttribPointer(location, getComponents(attribute), glType(encoding),
+                encoding != FLOAT && encoding != HALF_FLOAT, mStride, mOffsets[attribute]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof VertexFormat && Arrays.equals(mEncodings, ((VertexFormat) o).mEncodings);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mEncodings);
+    }
+
+    private static int componentBytes(int encoding) {
+        switch (encoding) {
+            case NONE:
+                return 0;
+            case FLOAT:
+                return 4;
+            case HALF_FLOAT:
+            case NORMALIZED_UNSIGNED_SHORT:
+                return 2;
+            default:
+                // bytes, and the four components packed into one 32-bit word
+                return 1;
+        }
+    }
+
+    private static int glType(int encoding) {
+        switch (encoding) {
+            case FLOAT:
+                return GLES20.GL_FLOAT;
+            case HALF_FLOAT:
+                return GL_HALF_FLOAT;
+            case PACKED_2_10_10_10:
+                return GL_INT_2_10_10_10_REV;
+            case NORMALIZED_BYTE:
+                return GLES20.GL_BYTE;
+            case NORMALIZED_UNSIGNED_BYTE:
+                return GLES20.GL_UNSIGNED_BYTE;
+            default:
+                return GLES20.GL_UNSIGNED_SHORT;
+        }
+    }
+
+    /**
+     * Collects the encodings of the attributes. Attributes are laid out in
+     * the order position, normal, color, UV.
+     */
+    public static class Builder {
+        private final int[] mEncodings = new int[ATTRIBUTES];
+
+        /**
+         * @param encoding - FLOAT or HALF_FLOAT.
+         */
+        public Builder position(int encoding) {
+            return set(POSITION, encoding, FLOAT, HALF_FLOAT);
+        }
+
+        /**
+         * @param encoding - FLOAT, PACKED_2_10_10_10 or NORMALIZED_BYTE.
+         */
+        public Builder normal(int encoding) {
+            return set(NORMAL, encoding, FLOAT, PACKED_2_10_10_10, NORMALIZED_BYTE);
+        }
+
+        /**
+         * @param encoding - FLOAT or NORMALIZED_UNSIGNED_BYTE.
+         */
+        public Builder color(int encoding) {
+            return set(COLOR, encoding, FLOAT, NORMALIZED_UNSIGNED_BYTE);
+        }
+
+        /**
+         * @param encoding - FLOAT, HALF_FLOAT or NORMALIZED_UNSIGNED_SHORT.
+         */
+        public Builder uv(int encoding) {
+            return set(UV, encoding, FLOAT, HALF_FLOAT, NORMALIZED_UNSIGNED_SHORT);
+        }
+
+        /**
+         * @return - The format. Every format has a position.
+         */
+        public VertexFormat build() {
+            if (mEncodings[POSITION] == NONE) {
+                throw new IllegalStateException("vertex formats need a position");
+            }
+            return new VertexFormat(mEncodings.clone());
+        }
+
+        private Builder set(int attribute, int encoding, int... allowed) {
+            for (int a : allowed) {
+                if (a == encoding) {
+                    mEncodings[attribute] = encoding;
+                    return this;
+                }
+            }
+            throw new IllegalArgumentException("encoding " + encoding + " not allowed for attribute " + attribute);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.sergej.game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes interleaved vertices in a {@link VertexFormat} into a direct
+ * buffer, ready for upload. Attributes are set for the current vertex, and
+ * {@link #next()} moves on to the following one. Attributes the format lacks
+ * are ignored, so one writer loop can fill any format.
+ */
+public class VertexWriter {
+
+    private final VertexFormat mFormat;
+    private final ByteBuffer mData;
+    private final int mVertexCount;
+    private int mVertex;
+
+    /**
+     * @param format - Layout of the vertices.
+     * @param vertexCount - Number of vertices the buffer holds.
+     */
+    public VertexWriter(VertexFormat format, int vertexCount) {
+        mFormat = format;
+        mVertexCount = vertexCount;
+        mData = ByteBuffer.allocateDirect(vertexCount * format.getStride()).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes the positions of a mesh and, if the format has normals, its
+     * normals.
+     *
+     * <p>Generated meshes stay float arrays and are written in a format only
+     * here, once per upload. The same cached mesh is uploaded in the format
+     * of whichever context is current, also after a context loss, and is
+     * read as floats by the optimizer, by static batches and by mesh file
+     * writers. Writing a format in {@link MeshFactory} would tie its cache to
+     * one context.</p>
+     *
+     * @param format - Layout of the vertices.
+     * @param mesh - Geometry to write; needs normals if the format has them.
+     * @return - The vertices, from position 0 to their end.
+     */
+    public static ByteBuffer write(VertexFormat format, Mesh mesh) {
+        float[] positions = mesh.getVertices();
+        float[] normals = mesh.getNormals();
+        if (format.has(VertexFormat.NORMAL) && normals == null) {
+            throw new IllegalArgumentException("the mesh has no normals");
+        }
+
+        VertexWriter writer = new VertexWriter(format, mesh.getVertexCount());
+        for (int i = 0; i < mesh.getVertexCount() * Mesh.COORDS_PER_VERTEX; i += Mesh.COORDS_PER_VERTEX) {
+            writer.position(positions[i], positions[i + 1], positions[i + 2]);
+            if (normals != null) {
+                writer.normal(normals[i], normals[i + 1], normals[i + 2]);
+            }
+            writer.next();
+        }
+        return writer.getData();
+    }
+
+    /**
+     * @return - The format the vertices are written in.
+     */
+    public VertexFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return - Index of the vertex being written.
+     */
+    public int getVertex() {
+        return mVertex;
+    }
+
+    /**
+     * Sets the position of the current vertex.
+     */
+    public VertexWriter position(float x, float y, float z) {
+        int offset = offset(VertexFormat.POSITION);
+        if (offset < 0) {
+            return this;
+        }
+        if (mFormat.getEncoding(VertexFormat.POSITION) == VertexFormat.HALF_FLOAT) {
+            mData.putShort(offset, toHalf(x));
+            mData.putShort(offset + 2, toHalf(y));
+            mData.putShort(offset + 4, toHalf(z));
+            mData.putShort(offset + 6, toHalf(1f));
+        } else {
+            putFloats(offset, x, y, z);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the normal of the current vertex, which must have unit length.
+     */
+    public VertexWriter normal(float x, float y, float z) {
+        int offset = offset(VertexFormat.NORMAL);
+        if (offset < 0) {
+            return this;
+        }
+        switch (mFormat.getEncoding(VertexFormat.NORMAL)) {
+            case VertexFormat.PACKED_2_10_10_10:
+                mData.putInt(offset, packNormal(x, y, z));
+                break;
+            case VertexFormat.NORMALIZED_BYTE:
+                mData.put(offset, toSnorm8(x));
+                mData.put(offset + 1, toSnorm8(y));
+                mData.put(offset + 2, toSnorm8(z));
+                mData.put(offset + 3, (byte) 0);
+                break;
+            default:
+                putFloats(offset, x, y, z);
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the color of the current vertex, components from 0 to 1.
+     */
+    public VertexWriter color(float r, float g, float b, float a) {
+        int offset = offset(VertexFormat.COLOR);
+        if (offset < 0) {
+            return this;
+        }
+        if (mFormat.getEncoding(VertexFormat.COLOR) == VertexFormat.NORMALIZED_UNSIGNED_BYTE) {
+            mData.put(offset, toUnorm8(r));
+            mData.put(offset + 1, toUnorm8(g));
+            mData.put(offset + 2, toUnorm8(b));
+            mData.put(offset + 3, toUnorm8(a));
+        } else {
+            putFloats(offset, r, g, b);
+            mData.putFloat(offset + 12, a);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the texture coordinates of the current vertex, from 0 to 1 if
+     * they are normalized shorts.
+     */
+    public VertexWriter uv(float u, float v) {
+        int offset = offset(VertexFormat.UV);
+        if (offset < 0) {
+            return this;
+        }
+        switch (mFormat.getEncoding(VertexFormat.UV)) {
+            case VertexFormat.HALF_FLOAT:
+                mData.putShort(offset, toHalf(u));
+                mData.putShort(offset + 2, toHalf(v));
+                break;
+            case VertexFormat.NORMALIZED_UNSIGNED_SHORT:
+                mData.putShort(offset, toUnorm16(u));
+                mData.putShort(offset + 2, toUnorm16(v));
+                break;
+            default:
+                mData.putFloat(offset, u);
+                mData.putFloat(offset + 4, v);
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Moves on to the next vertex.
+     */
+    public VertexWriter next() {
+        mVertex++;
+        return this;
+    }
+
+    /**
+     * @return - The vertices, from position 0 to the end of the last one.
+     */
+    public ByteBuffer getData() {
+        ByteBuffer data = mData.duplicate().order(ByteOrder.nativeOrder());
+        data.position(0).limit(mVertexCount * mFormat.getStride());
+        return data;
+    }
+
+    /**
+     * @return - Nearest IEEE 754 half precision value, as its 16 bits.
+     * Values beyond the half range become infinite, tiny ones zero.
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = (bits >>> 23 & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if ((bits & 0x7FFFFFFF) > 0x7F800000) {
+            return (short) (sign | 0x7E00);
+        }
+        if (exponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // subnormal half: shift in the implicit bit, then round to nearest
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if ((mantissa >> (shift - 1) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = sign | exponent << 10 | mantissa >> 13;
+        // round to nearest; a carry correctly moves on to the next exponent
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    /**
+     * @return - The float a half precision value stands for.
+     */
+    public static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = half >>> 10 & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+        }
+        return Float.intBitsToFloat(sign | (exponent - 15 + 127) << 23 | mantissa << 13);
+    }
+
+    /**
+     * @return - A unit normal as GL_INT_2_10_10_10_REV: x in the lowest 10
+     * bits, then y and z as signed normalized values, w = 0.
+     */
+    public static int packNormal(float x, float y, float z) {
+        return (toSnorm10(x) & 0x3FF) | (toSnorm10(y) & 0x3FF) << 10 | (toSnorm10(z) & 0x3FF) << 20;
+    }
+
+    private int offset(int attribute) {
+        if (!mFormat.has(attribute)) {
+            return -1;
+        }
+        return mVertex * mFormat.getStride() + mFormat.getOffset(attribute);
+    }
+
+    private void putFloats(int offset, float x, float y, float z) {
+        mData.putFloat(offset, x);
+        mData.putFloat(offset + 4, y);
+        mData.putFloat(offset + 8, z);
+    }
+
+    private static int toSnorm10(float value) {
+        return Math.round(Math.min(Math.max(value, -1f), 1f) * 511f);
+    }
+
+    private static byte toSnorm8(float value) {
+        return (byte) Math.round(Math.min(Math.max(value, -1f), 1f) * 127f);
+    }
+
+    private static byte toUnorm8(float value) {
+        return (byte) Math.round(Math.min(Math.max(value, 0f), 1f) * 255f);
+    }
+
+    private static short toUnorm16(float value) {
+        return (short) Math.round(Math.min(Math.max(value, 0f), 1f) * 65535f);
+    }
+}
@@ -0,0 +1,73 @@
+package com.sergej.game;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feeds the Choreographer vsyncs of the main thread to a
+ * {@link FrameScheduler}, and starts a frame whenever it decides to. Only
+ * asks for vsyncs while the scheduler needs them.
+ */
+public class VsyncDriver implements Choreographer.FrameCallback {
+
+    private final Choreographer mChoreographer;
+    private final FrameScheduler mScheduler;
+    private final FrameCallback mFrame;
+    private final AtomicBoolean mPosted = new AtomicBoolean();
+    private volatile boolean mPaused;
+
+    /**
+     * Must be created on the main thread.
+     *
+     * @param scheduler - Decides which vsyncs get a frame.
+     * @param frame - Starts a frame, called on the main thread.
+     */
+    public VsyncDriver(FrameScheduler scheduler, FrameCallback frame) {
+        mChoreographer = Choreographer.getInstance();
+        mScheduler = scheduler;
+        mFrame = frame;
+        scheduler.setWakeUp(this::wakeUp);
+    }
+
+    /**
+     * Stops asking for vsyncs until {@link #resume()}, for example while the
+     * activity is paused.
+     */
+    public void pause() {
+        mPaused = true;
+    }
+
+    public void resume() {
+        mPaused = false;
+        wakeUp();
+    }
+
+    /**
+     * Asks for the next vsync if the scheduler needs it and none was asked
+     * for yet. May be called from any thread.
+     */
+    public void wakeUp() {
+        if (!mPaused && mScheduler.needsVsync() && mPosted.compareAndSet(false, true)) {
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mPaused && mScheduler.onVsync(frameTimeNanos)) {
+            mFrame.onFrame(frameTimeNanos);
+        }
+
+        mPosted.set(false);
+        // also catches requests that arrived while this vsync ran
+        wakeUp();
+    }
+
+    /**
+     * Starts a frame.
+     */
+    public interface FrameCallback {
+        void onFrame(long frameTimeNanos);
+    }
+}
@@ -0,0 +1,298 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.util.ArrayDeque;
+
+/**
+ * Fake {@link GL} for JVM tests. It keeps no GL state beyond handing out
+ * object names, reports every compile and link as successful and counts the
+ * calls the tests are interested in.
+ */
+class CountingGL implements GL {
+
+    int shadersCompiled;
+    int programsLinked;
+    int programsDeleted;
+    int attribLocationQueries;
+    int uniformLocationQueries;
+    int drawCalls;
+    int instancedDrawCalls;
+    int errorChecks;
+    int buffersGenerated;
+    int buffersDeleted;
+    int bufferUploads;
+    long bytesUploaded;
+    int programsUsed;
+    int bufferBinds;
+    int attribPointers;
+    int lastAttribType;
+    int lastAttribStride;
+    int uniformUploads;
+    // first element of the last matrix upload that reached GL
+    float lastMatrixElement;
+
+    String version = "OpenGL ES 2.0";
+    String extensions = "";
+    int maxVertexUniformVectors = 128;
+
+    // timer queries finish right away with this GPU time, unless pending
+    int gpuTimeNanos = 2000000;
+    boolean queriesPending;
+    boolean disjoint;
+    int queriesBegun;
+
+    // returned by the next glGetError calls, oldest first
+    final ArrayDeque<Integer> errors = new ArrayDeque<>();
+
+    private int mNextName = 1;
+
+    /**
+     * Resets the per-frame counters.
+     */
+    void resetFrameCounters() {
+        attribLocationQueries = 0;
+        uniformLocationQueries = 0;
+        drawCalls = 0;
+        instancedDrawCalls = 0;
+        errorChecks = 0;
+        bufferUploads = 0;
+        programsUsed = 0;
+        bufferBinds = 0;
+        attribPointers = 0;
+        uniformUploads = 0;
+    }
+
+    int locationQueries() {
+        return attribLocationQueries + uniformLocationQueries;
+    }
+
+    @Override
+    public void glClear(int mask) {
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+    }
+
+    @Override
+    public void glEnable(int cap) {
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return mNextName++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        shadersCompiled++;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return mNextName++;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        programsLinked++;
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        programsDeleted++;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        programsUsed++;
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        attribLocationQueries++;
+        return 0;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        uniformLocationQueries++;
+        return uniformLocationQueries;
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        attribPointers++;
+        lastAttribType = type;
+        lastAttribStride = stride;
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        uniformUploads++;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        uniformUploads++;
+        lastMatrixElement = value[offset];
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        drawCalls++;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        drawCalls++;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        drawCalls++;
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = mNextName++;
+        }
+        buffersGenerated += n;
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        bufferBinds++;
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if (data != null) {
+            bufferUploads++;
+            bytesUploaded += size;
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        bufferUploads++;
+        bytesUploaded += size;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        buffersDeleted += n;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return name == GLES20.GL_VERSION ? version : extensions;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        if (pname == GpuTimer.GL_GPU_DISJOINT_EXT) {
+            params[offset] = disjoint ? 1 : 0;
+            disjoint = false;
+            return;
+        }
+        params[offset] = pname == GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS ? maxVertexUniformVectors : 0;
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        instancedDrawCalls++;
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        for (int i = 0; i < n; i++) {
+            ids[offset + i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        queriesBegun++;
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        if (pname == GLES30.GL_QUERY_RESULT_AVAILABLE) {
+            params[offset] = queriesPending ? 0 : 1;
+        } else {
+            params[offset] = gpuTimeNanos;
+        }
+    }
+
+    @Override
+    public int glGetError() {
+        errorChecks++;
+        Integer error = errors.poll();
+        return error != null ? error : GLES20.GL_NO_ERROR;
+    }
+}
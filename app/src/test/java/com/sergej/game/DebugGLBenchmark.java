@@ -0,0 +1,79 @@
+package com.sergej.game;
+
+/**
+ * Measures what the GL debug layer costs per frame. Not a unit test: run its
+ * main method from the IDE, or with the test classpath. It drives the whole
+ * renderer through the GL fakes of the tests, so unlike the benchmarks in
+ * benchmarks/ it cannot run without the Android classes.
+ *
+ * <p>The frames of {@link MyGLRenderer} are drawn against a fake GL, once
+ * directly as in release builds and once through {@link DebugGL} as in debug
+ * builds. The fake answers glGetError at no cost, where a real driver has to
+ * finish the commands queued so far, so each configuration is also run with a
+ * glGetError that busy waits for a given time to model that sync. Run it with
+ * the wait measured on a device to see what the checks cost there.</p>
+ *
+ * <p>Unit tests build against the debug BuildConfig, so the direct runs
+ * still include the single {@link MyGLRenderer#checkGlError} per frame that
+ * release builds drop.</p>
+ */
+public class DebugGLBenchmark {
+
+    private static final int FRAMES = 2000;
+    private static final long[] SYNC_NANOS = { 0, 5000, 20000 };
+
+    public static void main(String[] args) {
+        System.out.println("glGetError ns  layer    calls/frame  checks/frame  frame ns");
+        for (long sync : SYNC_NANOS) {
+            run(sync, false);
+            run(sync, true);
+        }
+    }
+
+    private static void run(long syncNanos, boolean debug) {
+        SyncingGL gl = new SyncingGL(syncNanos);
+        MyGLRenderer renderer = new MyGLRenderer(debug ? new DebugGL(gl) : gl, 18);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+
+        // warm up the JIT and upload everything before measuring
+        for (int i = 0; i < FRAMES / 4; i++) {
+            renderer.setAngle(i);
+            renderer.onDrawFrame(null);
+        }
+
+        gl.resetFrameCounters();
+        GLStateTracker tracker = renderer.getStateTracker();
+        long calls = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            renderer.setAngle(i);
+            renderer.onDrawFrame(null);
+            calls += tracker.getIssued();
+        }
+        long frame = (System.nanoTime() - start) / FRAMES;
+
+        System.out.printf("%13d  %-7s  %11d  %12d  %8d%n", syncNanos, debug ? "debug" : "direct",
+                calls / FRAMES, gl.errorChecks / FRAMES, frame);
+    }
+
+    /**
+     * Fake GL whose glGetError takes as long as a pipeline sync.
+     */
+    private static class SyncingGL extends CountingGL {
+        private final long mSyncNanos;
+
+        SyncingGL(long syncNanos) {
+            mSyncNanos = syncNanos;
+        }
+
+        @Override
+        public int glGetError() {
+            long end = System.nanoTime() + mSyncNanos;
+            while (System.nanoTime() < end) {
+                // spin, like a driver waiting for the GPU
+            }
+            return super.glGetError();
+        }
+    }
+}
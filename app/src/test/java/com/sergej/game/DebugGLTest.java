@@ -0,0 +1,98 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DebugGLTest {
+
+    private final CountingGL mGL = new CountingGL();
+    private final DebugGL mDebug = new DebugGL(mGL);
+
+    @Test
+    public void errorThrowsAtTheFailingCall() {
+        mGL.errors.add(GLES20.GL_INVALID_OPERATION);
+        try {
+            mDebug.glUseProgram(3);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("glUseProgram: glError 0x502", e.getMessage());
+        }
+        assertEquals(1, mGL.programsUsed);
+    }
+
+    @Test
+    public void everyPendingErrorIsReported() {
+        mGL.errors.add(GLES20.GL_INVALID_ENUM);
+        mGL.errors.add(GLES20.GL_OUT_OF_MEMORY);
+        try {
+            mDebug.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("glBindBuffer: glError 0x500, 0x505", e.getMessage());
+        }
+        assertTrue(mGL.errors.isEmpty());
+    }
+
+    @Test
+    public void invalidArgumentsAreNotForwarded() {
+        try {
+            mDebug.glUniformMatrix4fv(1, 1, false, new float[12], 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("glUniformMatrix4fv"));
+        }
+        assertEquals(0, mGL.uniformUploads);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transposedMatricesAreRejected() {
+        mDebug.glUniformMatrix4fv(1, 1, true, new float[16], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void misalignedIndexOffsetIsRejected() {
+        mDebug.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferDataLargerThanTheSourceIsRejected() {
+        mDebug.glBufferData(GLES20.GL_ARRAY_BUFFER, 16, ByteBuffer.allocateDirect(8), GLES20.GL_STATIC_DRAW);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingAttributeIsRejected() {
+        mDebug.glEnableVertexAttribArray(-1);
+    }
+
+    @Test
+    public void tracerSeesEveryCall() {
+        List<String> calls = new ArrayList<>();
+        mDebug.setTracer(calls::add);
+        mDebug.glUseProgram(3);
+        mDebug.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6);
+
+        assertEquals(2, calls.size());
+        assertEquals("glUseProgram(3)", calls.get(0));
+        assertEquals("glDrawArrays(4, 0, 6)", calls.get(1));
+    }
+
+    @Test
+    public void rendererMakesOnlyValidCalls() {
+        MyGLRenderer renderer = new MyGLRenderer(mDebug, 18);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        mGL.resetFrameCounters();
+        renderer.onDrawFrame(null);
+
+        assertTrue(mGL.drawCalls > 0);
+        // one check per call that reached the driver
+        assertTrue(mGL.errorChecks > mGL.drawCalls);
+    }
+}
@@ -0,0 +1,82 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlatColorProgramTest {
+
+    private final float[] mMVPMatrix = new float[16];
+
+    private CountingGL mGL;
+    private ShaderProgramCache mPrograms;
+    private GpuBufferManager mBuffers;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mPrograms = new ShaderProgramCache(mGL);
+        mBuffers = new GpuBufferManager(mGL);
+    }
+
+    @Test
+    public void shapesShareOneLinkedProgram() {
+        new Square(mPrograms, mBuffers);
+        new Triangle(mPrograms, mBuffers);
+        new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+        new Circle(mPrograms, mBuffers, new float[] { 1f, 1f, 1f, 1f }, 1);
+
+        assertEquals(1, mPrograms.size());
+        assertEquals(1, mGL.programsLinked);
+        assertEquals(2, mGL.shadersCompiled);
+    }
+
+    @Test
+    public void locationsAreResolvedOncePerProgram() {
+        new Square(mPrograms, mBuffers);
+        new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+
+        assertEquals(1, mGL.attribLocationQueries);
+        assertEquals(2, mGL.uniformLocationQueries);
+    }
+
+    @Test
+    public void steadyStateFramesQueryNoLocations() {
+        Square square = new Square(mPrograms, mBuffers);
+        Triangle triangle = new Triangle(mPrograms, mBuffers);
+        Ring ring = new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+        Circle circle = new Circle(mPrograms, mBuffers, new float[] { 1f, 1f, 1f, 1f }, 1);
+
+        for (int frame = 0; frame < 3; frame++) {
+            mGL.resetFrameCounters();
+
+            square.draw(mMVPMatrix);
+            triangle.draw(mMVPMatrix);
+            ring.draw(mMVPMatrix);
+            circle.draw(mMVPMatrix);
+
+            assertEquals(4, mGL.drawCalls);
+            assertEquals(0, mGL.locationQueries());
+        }
+    }
+
+    @Test
+    public void invalidateRelinksInNewContext() {
+        ShaderProgram first = mPrograms.acquire(Shaders.FLAT_COLOR_VERTEX, Shaders.FLAT_COLOR_FRAGMENT);
+        mPrograms.invalidate();
+        ShaderProgram second = mPrograms.acquire(Shaders.FLAT_COLOR_VERTEX, Shaders.FLAT_COLOR_FRAGMENT);
+
+        assertFalse(first.isValid());
+        assertTrue(second.isValid());
+        assertEquals(2, mGL.programsLinked);
+
+        // releasing a handle of the lost context must not delete anything
+        first.release();
+        assertEquals(0, mGL.programsDeleted);
+
+        second.release();
+        assertEquals(1, mGL.programsDeleted);
+        assertEquals(0, mPrograms.size());
+    }
+}
@@ -0,0 +1,89 @@
+package com.sergej.game;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs simulated frames of {@link MyGLRenderer} against a fake GL and
+ * checks with the allocation counter of the JVM that none of them allocates.
+ *
+ * <p>The JIT compiler occasionally allocates on the thread it compiles or
+ * deoptimizes for, so the frames are measured in several rounds and the
+ * quietest one must be free of allocations. Garbage made by the frame loop
+ * itself shows up in every round.</p>
+ */
+public class FrameAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 200;
+    private static final int FRAMES = 1000;
+    private static final int ROUNDS = 5;
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        mThreads = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void framesDoNotAllocate() {
+        CountingGL gl = new CountingGL();
+        gl.version = "OpenGL ES 3.0";
+        gl.extensions = "GL_EXT_disjoint_timer_query";
+        MyGLRenderer renderer = new MyGLRenderer(gl, 18);
+        // profiling must not allocate either
+        renderer.setProfiler(new FrameProfiler(100));
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+
+        // two fingers stay down, pinching and panning in every frame
+        TouchRing touches = renderer.getTouchRing();
+        touches.add(TouchRing.DOWN, 0, 400, 800);
+        touches.add(TouchRing.DOWN, 1, 600, 800);
+        touches.add(TouchRing.SYNC, -1, 0, 0);
+        touches.publish();
+
+        // the first frames link programs, upload buffers and pick the tessellation
+        measure(renderer, WARM_UP_FRAMES);
+
+        long overhead = measure(null, 0);
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            allocated = Math.min(allocated, measure(renderer, FRAMES) - overhead);
+        }
+
+        assertEquals("bytes allocated by " + FRAMES + " frames", 0, allocated);
+        assertTrue(gl.drawCalls > 0);
+    }
+
+    /**
+     * @return - Bytes allocated by the current thread while drawing the
+     * frames, including the cost of measuring itself.
+     */
+    private long measure(MyGLRenderer renderer, int frames) {
+        long id = Thread.currentThread().getId();
+        long before = mThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < frames; i++) {
+            float spread = i % 2 == 0 ? 10 : -10;
+            TouchRing touches = renderer.getTouchRing();
+            touches.add(TouchRing.MOVE, 0, 400 - spread, 800 + spread);
+            touches.add(TouchRing.MOVE, 1, 600 + spread, 800 + spread);
+            touches.add(TouchRing.SYNC, -1, 0, 0);
+            touches.publish();
+
+            renderer.setAngle(i);
+            renderer.onDrawFrame(null);
+        }
+        return mThreads.getThreadAllocatedBytes(id) - before;
+    }
+}
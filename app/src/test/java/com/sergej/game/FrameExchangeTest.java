@@ -0,0 +1,170 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FrameExchangeTest {
+
+    private static final float[] COLOR = { 1f, 0f, 0f, 1f };
+
+    @Test
+    public void nothingIsAcquiredBeforeThePublish() {
+        FrameExchange frames = new FrameExchange(4);
+        assertNull(frames.acquire());
+
+        frames.getBack().reset(7);
+        assertNull(frames.acquire());
+
+        frames.publish();
+        assertEquals(7, frames.acquire().getSequence());
+    }
+
+    @Test
+    public void consumerGetsTheNewestFrame() {
+        FrameExchange frames = new FrameExchange(4);
+        for (int i = 0; i < 3; i++) {
+            frames.getBack().reset(i);
+            frames.publish();
+        }
+
+        FramePacket packet = frames.acquire();
+        assertEquals(2, packet.getSequence());
+        // nothing new, the same frame again
+        assertSame(packet, frames.acquire());
+    }
+
+    @Test
+    public void producerNeverWritesTheAcquiredPacket() {
+        FrameExchange frames = new FrameExchange(4);
+        frames.getBack().reset(0);
+        frames.publish();
+        FramePacket front = frames.acquire();
+
+        for (int i = 1; i < 10; i++) {
+            assertNotSame(front, frames.getBack());
+            frames.getBack().reset(i);
+            frames.publish();
+        }
+        assertEquals(0, front.getSequence());
+    }
+
+    @Test
+    public void packetCopiesWhatItRecords() {
+        FramePacket packet = new FramePacket(1);
+        float[] mvp = new float[16];
+        float[] color = COLOR.clone();
+
+        packet.reset(0);
+        for (int i = 0; i < 3; i++) {
+            mvp[0] = i;
+            packet.add(null, null, null, 3, color, mvp);
+        }
+        color[0] = 0f;
+
+        final float[] seen = new float[3];
+        final int[] count = new int[1];
+        packet.replay(new DrawList() {
+            @Override
+            public void add(FlatColorProgram program, GpuBuffer vertices, GpuBuffer indices, int n,
+                    float[] c, float[] m) {
+                assertEquals(1f, c[0], 0f);
+                seen[count[0]++] = m[0];
+            }
+
+            @Override
+            public void addRenderable(Renderable renderable, float[] m) {
+                fail();
+            }
+        });
+
+        assertEquals(3, packet.size());
+        assertArrayEquals(new float[] { 0f, 1f, 2f }, seen, 0f);
+    }
+
+    @Test
+    public void framesArriveInOrderAcrossThreads() throws InterruptedException {
+        final FrameExchange frames = new FrameExchange(4);
+        final int count = 100000;
+        final float[] mvp = new float[16];
+
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= count; i++) {
+                FramePacket packet = frames.getBack();
+                packet.reset(i);
+                // every matrix of a packet holds its sequence
+                mvp[0] = i;
+                for (int j = 0; j < 4; j++) {
+                    packet.add(null, null, null, 3, COLOR, mvp);
+                }
+                frames.publish();
+            }
+        });
+        producer.start();
+
+        final long[] last = { 0 };
+        DrawList check = new DrawList() {
+            @Override
+            public void add(FlatColorProgram program, GpuBuffer vertices, GpuBuffer indices, int n,
+                    float[] c, float[] m) {
+                assertEquals(last[0], (long) m[0]);
+            }
+
+            @Override
+            public void addRenderable(Renderable renderable, float[] m) {
+                fail();
+            }
+        };
+
+        while (last[0] < count) {
+            FramePacket packet = frames.acquire();
+            if (packet == null) {
+                continue;
+            }
+            assertTrue(packet.getSequence() >= last[0]);
+            last[0] = packet.getSequence();
+            packet.replay(check);
+        }
+        producer.join();
+    }
+
+    @Test
+    public void threadedRendererRecordsFramesOffTheGlThread() throws InterruptedException {
+        CountingGL gl = new CountingGL();
+        MyGLRenderer renderer = new MyGLRenderer(gl, 18, true);
+        final Semaphore ready = new Semaphore(0);
+        renderer.setOnFrameReadyListener(ready::release);
+
+        try {
+            renderer.onSurfaceCreated(null, null);
+            renderer.onSurfaceChanged(null, 1080, 1920);
+            renderer.setAngle(30f);
+
+            // earlier frames may have been recorded before the projection was set
+            while (gl.drawCalls == 0) {
+                assertTrue(ready.tryAcquire(5, TimeUnit.SECONDS));
+                renderer.onDrawFrame(null);
+            }
+        } finally {
+            renderer.release();
+        }
+    }
+
+    @Test
+    public void releaseStopsTheThreads() throws InterruptedException {
+        MyGLRenderer renderer = new MyGLRenderer(new CountingGL(), 18, true);
+        renderer.onSurfaceCreated(null, null);
+        // a worker thread is running once it built a mesh
+        MeshLoader loader = renderer.getLoader();
+        final Semaphore staged = new Semaphore(0);
+        loader.setOnStagedListener(staged::release);
+        loader.load(() -> new MeshFactory(1).disc(1f, 0f, 0, 2 * (float) Math.PI, 16, true));
+        assertTrue(staged.tryAcquire(5, TimeUnit.SECONDS));
+
+        renderer.release();
+        assertTrue(loader.awaitTermination(5000));
+    }
+}
@@ -0,0 +1,154 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class FrameProfilerTest {
+
+    @Test
+    public void percentilesUseNearestRank() {
+        FrameProfiler profiler = new FrameProfiler(100);
+        for (int i = 1; i <= 100; i++) {
+            record(profiler, FrameProfiler.DRAW_CALLS, 101 - i);
+        }
+
+        assertEquals(50, profiler.getPercentile(FrameProfiler.DRAW_CALLS, 50));
+        assertEquals(95, profiler.getPercentile(FrameProfiler.DRAW_CALLS, 95));
+        assertEquals(99, profiler.getPercentile(FrameProfiler.DRAW_CALLS, 99));
+        assertEquals(100, profiler.getPercentile(FrameProfiler.DRAW_CALLS, 100));
+    }
+
+    @Test
+    public void windowKeepsTheLatestFrames() {
+        FrameProfiler profiler = new FrameProfiler(10);
+        for (int i = 0; i < 25; i++) {
+            record(profiler, FrameProfiler.TRIANGLES, i);
+        }
+
+        assertEquals(10, profiler.getFrameCount());
+        assertEquals(25, profiler.getTotalFrames());
+        assertEquals(15, profiler.getPercentile(FrameProfiler.TRIANGLES, 0));
+        assertEquals(24, profiler.getPercentile(FrameProfiler.TRIANGLES, 100));
+    }
+
+    @Test
+    public void unknownValuesAreIgnored() {
+        FrameProfiler profiler = new FrameProfiler(10);
+        record(profiler, FrameProfiler.GPU, -1);
+        assertEquals(-1, profiler.getPercentile(FrameProfiler.GPU, 50));
+        assertFalse(profiler.formatSummary().contains("gpu"));
+
+        record(profiler, FrameProfiler.GPU, 3000000);
+        assertEquals(3000000, profiler.getPercentile(FrameProfiler.GPU, 50));
+        assertTrue(profiler.formatSummary().contains("gpu ms"));
+        // the frame time is measured when not set
+        assertTrue(profiler.getPercentile(FrameProfiler.FRAME, 50) >= 0);
+    }
+
+    @Test
+    public void csvHasOneLinePerFrame() throws IOException {
+        FrameProfiler profiler = new FrameProfiler(10);
+        record(profiler, FrameProfiler.DRAW_CALLS, 7);
+        record(profiler, FrameProfiler.DRAW_CALLS, 8);
+
+        StringWriter out = new StringWriter();
+        profiler.writeCsv(out);
+        String[] lines = out.toString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("time_ns,update_ns,"));
+        assertEquals(FrameProfiler.METRICS + 1, lines[1].split(",", -1).length);
+        assertTrue(lines[1].startsWith("0,,,,,"));
+        assertEquals("8", lines[2].split(",", -1)[1 + FrameProfiler.DRAW_CALLS]);
+    }
+
+    @Test
+    public void gpuTimerReadsFinishedQueriesOnly() {
+        CountingGL gl = new CountingGL();
+        GpuTimer timer = new GpuTimer(gl);
+
+        gl.queriesPending = true;
+        timer.begin();
+        timer.end();
+        assertEquals(-1, timer.poll());
+
+        gl.queriesPending = false;
+        assertEquals(gl.gpuTimeNanos, timer.poll());
+        // nothing left in flight
+        assertEquals(-1, timer.poll());
+    }
+
+    @Test
+    public void gpuTimerSkipsFramesWhileAllQueriesAreInFlight() {
+        CountingGL gl = new CountingGL();
+        GpuTimer timer = new GpuTimer(gl);
+
+        gl.queriesPending = true;
+        for (int i = 0; i < 10; i++) {
+            timer.begin();
+            timer.end();
+            timer.poll();
+        }
+        assertEquals(4, gl.queriesBegun);
+    }
+
+    @Test
+    public void disjointTimingsAreDropped() {
+        CountingGL gl = new CountingGL();
+        GpuTimer timer = new GpuTimer(gl);
+        timer.begin();
+        timer.end();
+
+        gl.disjoint = true;
+        assertEquals(-1, timer.poll());
+    }
+
+    @Test
+    public void rendererRecordsEveryPhase() {
+        CountingGL gl = new CountingGL();
+        gl.version = "OpenGL ES 3.0";
+        gl.extensions = "GL_EXT_disjoint_timer_query";
+        MyGLRenderer renderer = new MyGLRenderer(gl, 18);
+        FrameProfiler profiler = new FrameProfiler(60);
+        renderer.setProfiler(profiler);
+
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        for (int i = 0; i < 10; i++) {
+            renderer.onDrawFrame(null);
+        }
+
+        assertEquals(10, profiler.getFrameCount());
+        for (int metric = 0; metric < FrameProfiler.METRICS; metric++) {
+            assertTrue("metric " + metric, profiler.getPercentile(metric, 50) >= 0);
+        }
+        assertTrue(profiler.getPercentile(FrameProfiler.DRAW_CALLS, 50) > 0);
+        assertTrue(profiler.getPercentile(FrameProfiler.TRIANGLES, 50) > 0);
+        assertEquals(gl.gpuTimeNanos, profiler.getPercentile(FrameProfiler.GPU, 50));
+    }
+
+    @Test
+    public void rendererWithoutTimerQueriesLeavesGpuTimeUnknown() {
+        CountingGL gl = new CountingGL();
+        MyGLRenderer renderer = new MyGLRenderer(gl, 18);
+        FrameProfiler profiler = new FrameProfiler(60);
+        renderer.setProfiler(profiler);
+
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1080, 1920);
+        renderer.onDrawFrame(null);
+
+        assertEquals(-1, profiler.getPercentile(FrameProfiler.GPU, 50));
+        assertEquals(0, gl.queriesBegun);
+    }
+
+    private static void record(FrameProfiler profiler, int metric, long value) {
+        profiler.beginFrame();
+        profiler.set(metric, value);
+        profiler.endFrame();
+    }
+}
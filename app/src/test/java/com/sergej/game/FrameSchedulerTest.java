@@ -0,0 +1,168 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+
+    private static final long HZ_60 = 1000000000L / 60;
+    private static final long HZ_120 = 1000000000L / 120;
+
+    private FrameScheduler mScheduler;
+    private int mWakeUps;
+
+    // the fake clock: time of the next vsync
+    private long mNow = 1000000000L;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FrameScheduler(60);
+        mScheduler.setWakeUp(() -> mWakeUps++);
+    }
+
+    @Test
+    public void idleSchedulerNeedsNoVsync() {
+        assertFalse(mScheduler.needsVsync());
+        assertEquals(0, run(HZ_60, 10));
+        assertEquals(0, mWakeUps);
+    }
+
+    @Test
+    public void requestRendersOneFrameAndGoesIdle() {
+        mScheduler.requestFrame();
+        assertEquals(1, mWakeUps);
+        assertTrue(mScheduler.needsVsync());
+
+        assertEquals(1, run(HZ_60, 10));
+        assertFalse(mScheduler.needsVsync());
+    }
+
+    @Test
+    public void requestsBetweenVsyncsAreMerged() {
+        mScheduler.requestFrame();
+        mScheduler.requestFrame();
+        mScheduler.requestFrame();
+
+        assertEquals(1, run(HZ_60, 3));
+    }
+
+    @Test
+    public void animationRendersEveryVsyncUpToTheCap() {
+        mScheduler.setAnimating(true);
+        assertTrue(mScheduler.isContinuous());
+        assertEquals(60, run(HZ_60, 60));
+
+        mScheduler.setAnimating(false);
+        assertEquals(0, run(HZ_60, 60));
+        assertFalse(mScheduler.needsVsync());
+    }
+
+    @Test
+    public void capSkipsVsyncsEvenly() {
+        mScheduler.setMaxFps(30);
+        mScheduler.setAnimating(true);
+
+        assertEquals(30, run(HZ_60, 60));
+        assertEquals(30, mScheduler.getSkipped());
+    }
+
+    @Test
+    public void capHoldsOnFasterDisplaysWithJitter() {
+        mScheduler.setAnimating(true);
+
+        int frames = 0;
+        for (int i = 0; i < 240; i++) {
+            // up to a millisecond early or late
+            long jitter = (i * 7919 % 2001 - 1000) * 1000L;
+            frames += mScheduler.onVsync(mNow + jitter) ? 1 : 0;
+            mNow += HZ_120;
+        }
+        assertEquals(120, frames);
+        assertEquals(HZ_120, mScheduler.getVsyncPeriod(), HZ_120 / 10);
+    }
+
+    @Test
+    public void firstFrameAfterIdlingIsNotDelayed() {
+        mScheduler.setMaxFps(10);
+        mScheduler.requestFrame();
+        assertEquals(1, run(HZ_60, 1));
+
+        // long after the last frame, the next request renders right away
+        mNow += 1000000000L;
+        mScheduler.requestFrame();
+        assertTrue(mScheduler.onVsync(mNow));
+    }
+
+    @Test
+    public void animationStartWakesOnce() {
+        mScheduler.setAnimating(true);
+        mScheduler.setAnimating(true);
+        assertEquals(1, mWakeUps);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroFpsIsRejected() {
+        mScheduler.setMaxFps(0);
+    }
+
+    @Test
+    public void releasedSpinKeepsRenderingUntilItStops() {
+        MyGLRenderer renderer = new MyGLRenderer(new CountingGL(), 18);
+        renderer.setFrameScheduler(mScheduler);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 1000, 1000);
+
+        // a finger flicks to the right above the middle
+        TouchRing touches = renderer.getTouchRing();
+        touches.add(TouchRing.DOWN, 0, 100, 100);
+        touches.add(TouchRing.SYNC, -1, 0, 0);
+        touches.publish();
+        frame(renderer);
+        for (int i = 1; i <= 5; i++) {
+            touches.add(TouchRing.MOVE, 0, 100 + 20 * i, 100);
+            touches.add(TouchRing.SYNC, -1, 0, 0);
+            touches.publish();
+            frame(renderer);
+        }
+        touches.add(TouchRing.UP, 0, 200, 100);
+        touches.add(TouchRing.SYNC, -1, 0, 0);
+        touches.publish();
+        frame(renderer);
+        assertTrue(mScheduler.isContinuous());
+
+        float released = renderer.getAngle();
+        frame(renderer);
+        assertTrue(renderer.getAngle() > released);
+
+        // friction brings it to rest and the scheduler back to idle
+        for (int i = 0; i < 600 && mScheduler.isContinuous(); i++) {
+            frame(renderer);
+        }
+        assertFalse(mScheduler.isContinuous());
+        float rest = renderer.getAngle();
+        frame(renderer);
+        assertEquals(rest, renderer.getAngle(), 0f);
+    }
+
+    private void frame(MyGLRenderer renderer) {
+        renderer.startFrame(mNow);
+        renderer.onDrawFrame(null);
+        mNow += HZ_60;
+    }
+
+    /**
+     * @return - Frames rendered in the given number of vsyncs.
+     */
+    private int run(long period, int vsyncs) {
+        int frames = 0;
+        for (int i = 0; i < vsyncs; i++) {
+            if (mScheduler.needsVsync() && mScheduler.onVsync(mNow)) {
+                frames++;
+            }
+            mNow += period;
+        }
+        return frames;
+    }
+}
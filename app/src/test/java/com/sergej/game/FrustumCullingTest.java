@@ -0,0 +1,188 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FrustumCullingTest {
+
+    private final float[] mViewProjection = new float[16];
+    private final Frustum mFrustum = new Frustum();
+
+    /**
+     * A unit cube around its origin that counts its draws.
+     */
+    static class Box implements Bounded {
+        int draws;
+
+        @Override
+        public void getBounds(Aabb out) {
+            out.set(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f);
+        }
+
+        @Override
+        public void draw(float[] mvpMatrix) {
+            draws++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // camera at the origin looking down -z, 90 degree field of view
+        float[] projection = new float[16];
+        Matrix4.frustum(projection, -1f, 1f, -1f, 1f, 1f, 100f);
+        float[] view = new float[16];
+        Matrix4.setLookAt(view, 0f, 0f, 0f, 0f, 0f, -1f, 0f, 1f, 0f);
+        Matrix4.multiply(mViewProjection, projection, view);
+        mFrustum.set(mViewProjection);
+    }
+
+    @Test
+    public void boxesAreClassifiedAgainstPlanes() {
+        assertEquals(Frustum.INSIDE, mFrustum.classify(new Aabb().set(-1f, -1f, -11f, 1f, 1f, -9f)));
+        assertEquals(Frustum.OUTSIDE, mFrustum.classify(new Aabb().set(-1f, -1f, 9f, 1f, 1f, 11f)));
+        assertEquals(Frustum.OUTSIDE, mFrustum.classify(new Aabb().set(20f, -1f, -11f, 22f, 1f, -9f)));
+        assertEquals(Frustum.INTERSECTING, mFrustum.classify(new Aabb().set(9f, -1f, -11f, 11f, 1f, -9f)));
+        assertEquals(Frustum.INTERSECTING, mFrustum.classify(new Aabb().set(-1f, -1f, -101f, 1f, 1f, -99f)));
+
+        assertTrue(mFrustum.intersectsSphere(0f, 0f, -50f, 1f));
+        assertFalse(mFrustum.intersectsSphere(0f, 0f, 5f, 1f));
+    }
+
+    @Test
+    public void transformedBoxesStayTight() {
+        float[] m = new float[16];
+        Matrix4.setRotate(m, 90f, 0f, 0f, 1f);
+        m[12] = 10f;
+
+        Aabb box = new Aabb().setTransformed(new Aabb().set(0f, 0f, 0f, 2f, 1f, 1f), m);
+
+        assertEquals(9f, box.minX, 1e-5f);
+        assertEquals(10f, box.maxX, 1e-5f);
+        assertEquals(0f, box.minY, 1e-5f);
+        assertEquals(2f, box.maxY, 1e-5f);
+    }
+
+    @Test
+    public void arcBoundsCoverQuarterTurns() {
+        Aabb box = new Aabb();
+        MeshFactory.includeArc(box, 1f, 0.1f, 1.7f, -1f, 1f);
+
+        // the arc passes pi / 2, where it reaches y = 1
+        assertEquals(1f, box.maxY, 1e-5f);
+        assertEquals((float) Math.cos(1.7), box.minX, 1e-5f);
+        assertEquals((float) Math.cos(0.1), box.maxX, 1e-5f);
+    }
+
+    @Test
+    public void hierarchyMatchesBruteForce() {
+        Random random = new Random(42);
+        List<SceneNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            nodes.add(place(new SceneNode(new Box()), random));
+        }
+
+        BoundingVolumeHierarchy<SceneNode> hierarchy = new BoundingVolumeHierarchy<>();
+        hierarchy.build(nodes);
+        assertEquals(999, hierarchy.getBoxCount());
+        assertTrue(hierarchy.getDepth() <= 10);
+
+        assertEquals(expectedVisible(nodes), visible(hierarchy));
+
+        // move a few and refit instead of rebuilding
+        for (int i = 0; i < 50; i++) {
+            SceneNode node = nodes.get(random.nextInt(nodes.size()));
+            place(node, random);
+            hierarchy.refit(node);
+        }
+        assertEquals(expectedVisible(nodes), visible(hierarchy));
+    }
+
+    @Test
+    public void sceneOnlyDrawsVisibleNodes() {
+        Scene scene = new Scene();
+        scene.setLookAt(0f, 0f, 0f, 0f, 0f, -1f, 0f, 1f, 0f);
+        float[] projection = new float[16];
+        Matrix4.frustum(projection, -1f, 1f, -1f, 1f, 1f, 100f);
+        scene.setProjection(projection, 100f);
+
+        Box front = new Box();
+        Box behind = new Box();
+        SceneNode frontNode = scene.getRoot().addChild(new SceneNode(front));
+        frontNode.getLocalTransform()[14] = -10f;
+        scene.getRoot().addChild(new SceneNode(behind)).getLocalTransform()[14] = 10f;
+
+        scene.update();
+        scene.draw();
+        assertEquals(1, front.draws);
+        assertEquals(0, behind.draws);
+        assertEquals(1, scene.getLastCulled());
+
+        // moving the front box behind the camera refits and culls it
+        frontNode.getLocalTransform()[14] = 20f;
+        frontNode.invalidate();
+        scene.update();
+        scene.draw();
+        assertEquals(1, front.draws);
+        assertEquals(2, scene.getLastCulled());
+    }
+
+    @Test
+    public void offscreenSubtreesAreRejectedAtOnce() {
+        List<SceneNode> nodes = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 1024; i++) {
+            SceneNode node = new SceneNode(new Box());
+            // a cluster far to the side of the view
+            node.getLocalTransform()[12] = 1000f + random.nextFloat() * 100f;
+            node.getLocalTransform()[14] = -50f;
+            nodes.add(update(node));
+        }
+
+        BoundingVolumeHierarchy<SceneNode> hierarchy = new BoundingVolumeHierarchy<>();
+        hierarchy.build(nodes);
+
+        List<SceneNode> visible = new ArrayList<>();
+        assertEquals(1, hierarchy.cull(mFrustum, visible));
+        assertTrue(visible.isEmpty());
+    }
+
+    private SceneNode place(SceneNode node, Random random) {
+        float[] local = node.getLocalTransform();
+        local[12] = random.nextFloat() * 200f - 100f;
+        local[13] = random.nextFloat() * 200f - 100f;
+        local[14] = random.nextFloat() * 200f - 100f;
+        node.invalidate();
+        return update(node);
+    }
+
+    private static SceneNode update(SceneNode node) {
+        // a detached node is its own root, updating it computes its world bounds
+        node.update(new Scene(), false, false, false);
+        return node;
+    }
+
+    private Set<SceneNode> expectedVisible(List<SceneNode> nodes) {
+        Set<SceneNode> expected = new HashSet<>();
+        for (SceneNode node : nodes) {
+            if (mFrustum.classify(node.getWorldBounds()) != Frustum.OUTSIDE) {
+                expected.add(node);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        return expected;
+    }
+
+    private Set<SceneNode> visible(BoundingVolumeHierarchy<SceneNode> hierarchy) {
+        List<SceneNode> visible = new ArrayList<>();
+        hierarchy.cull(mFrustum, visible);
+        return new HashSet<>(visible);
+    }
+}
@@ -0,0 +1,131 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GLStateTrackerTest {
+
+    private CountingGL mGL;
+    private GLStateTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mTracker = new GLStateTracker(mGL);
+    }
+
+    @Test
+    public void repeatedStateIsSkipped() {
+        for (int i = 0; i < 3; i++) {
+            mTracker.glUseProgram(1);
+            mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+            mTracker.glEnableVertexAttribArray(0);
+            mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+        }
+
+        assertEquals(1, mGL.programsUsed);
+        assertEquals(1, mGL.bufferBinds);
+        assertEquals(1, mGL.attribPointers);
+        assertEquals(4, mTracker.getIssued());
+        assertEquals(8, mTracker.getSkipped());
+    }
+
+    @Test
+    public void bufferTargetsAreTrackedSeparately() {
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+        mTracker.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 2);
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+
+        assertEquals(2, mGL.bufferBinds);
+    }
+
+    @Test
+    public void attribPointerFollowsBoundBuffer() {
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+        mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 3);
+        mTracker.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+
+        assertEquals(2, mGL.attribPointers);
+    }
+
+    @Test
+    public void uniformsAreComparedByValue() {
+        float[] color = { 1f, 0f, 0f, 1f };
+        mTracker.glUseProgram(1);
+        mTracker.glUniform4fv(5, 1, color, 0);
+        mTracker.glUniform4fv(5, 1, new float[] { 1f, 0f, 0f, 1f }, 0);
+        assertEquals(1, mGL.uniformUploads);
+
+        // the array is changed in place, as matrices are every frame
+        color[1] = 1f;
+        mTracker.glUniform4fv(5, 1, color, 0);
+        assertEquals(2, mGL.uniformUploads);
+
+        // uniforms belong to a program
+        mTracker.glUseProgram(2);
+        mTracker.glUniform4fv(5, 1, color, 0);
+        assertEquals(3, mGL.uniformUploads);
+    }
+
+    @Test
+    public void arrayUploadUpdatesEveryElement() {
+        float[] matrices = new float[2 * 16];
+        matrices[16] = 2f;
+        float[] single = new float[16];
+        single[0] = 1f;
+        mTracker.glUseProgram(1);
+        mTracker.glUniformMatrix4fv(3, 1, false, single, 0);
+        mTracker.glUniformMatrix4fv(3, 2, false, matrices, 0);
+
+        // the array replaced the value at location 3 and set location 4
+        mTracker.glUniformMatrix4fv(3, 1, false, single, 0);
+        mTracker.glUniformMatrix4fv(4, 1, false, matrices, 16);
+        assertEquals(3, mGL.uniformUploads);
+        assertEquals(1f, mGL.lastMatrixElement, 0f);
+
+        float[] colors = { 1f, 0f, 0f, 1f, 0f, 1f, 0f, 1f };
+        mTracker.glUniform4fv(5, 2, colors, 0);
+        mTracker.glUniform4fv(6, 1, colors, 4);
+        mTracker.glUniform4fv(6, 1, colors, 0);
+        assertEquals(5, mGL.uniformUploads);
+    }
+
+    @Test
+    public void linkingForgetsUniforms() {
+        float[] matrix = new float[16];
+        mTracker.glUseProgram(1);
+        mTracker.glUniformMatrix4fv(3, 1, false, matrix, 0);
+        mTracker.glLinkProgram(1);
+        mTracker.glUniformMatrix4fv(3, 1, false, matrix, 0);
+
+        assertEquals(2, mGL.uniformUploads);
+    }
+
+    @Test
+    public void deletingBoundBufferUnbindsIt() {
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+        mTracker.glDeleteBuffers(1, new int[] { 2 }, 0);
+        // the name may be generated again for a new buffer
+        mTracker.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 2);
+
+        assertEquals(2, mGL.bufferBinds);
+    }
+
+    @Test
+    public void invalidateIssuesEverythingAgain() {
+        mTracker.glUseProgram(1);
+        mTracker.glEnableVertexAttribArray(0);
+        mTracker.invalidate();
+        mTracker.glUseProgram(1);
+        mTracker.glEnableVertexAttribArray(0);
+
+        assertEquals(2, mGL.programsUsed);
+        assertEquals(4, mTracker.getIssued());
+        assertEquals(0, mTracker.getSkipped());
+    }
+}
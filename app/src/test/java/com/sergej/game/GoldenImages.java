@@ -0,0 +1,94 @@
+package com.sergej.game;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares rendered images with the golden images under
+ * src/test/resources/golden.
+ *
+ * <p>Run the tests with -Dgolden.update=true to write the current images as
+ * the new golden ones, after checking them. When an image does not match,
+ * it is written to build/golden next to an image of the differing pixels.</p>
+ */
+final class GoldenImages {
+
+    // channel difference still counted as equal, and share of pixels that
+    // may differ beyond it: edges move by a pixel between JVMs whose sin and
+    // cos round differently
+    private static final int CHANNEL_TOLERANCE = 2;
+    private static final double PIXEL_TOLERANCE = 0.002;
+
+    private GoldenImages() {
+    }
+
+    /**
+     * @param name - Name of the golden image, without extension.
+     * @param actual - The rendered image.
+     */
+    static void assertMatches(String name, BufferedImage actual) throws IOException {
+        if (Boolean.getBoolean("golden.update")) {
+            File file = new File(moduleDir(), "src/test/resources/golden/" + name + ".png");
+            file.getParentFile().mkdirs();
+            ImageIO.write(actual, "png", file);
+            return;
+        }
+
+        BufferedImage golden;
+        try (InputStream in = GoldenImages.class.getResourceAsStream("/golden/" + name + ".png")) {
+            golden = in != null ? ImageIO.read(in) : null;
+        }
+        if (golden == null) {
+            File written = write(name + ".actual", actual);
+            fail("No golden image " + name + ", the rendered one is " + written
+                    + "; run with -Dgolden.update=true to accept it");
+        }
+        assertEquals(name + " width", golden.getWidth(), actual.getWidth());
+        assertEquals(name + " height", golden.getHeight(), actual.getHeight());
+
+        BufferedImage diff = new BufferedImage(actual.getWidth(), actual.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        int differing = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                int a = actual.getRGB(x, y), g = golden.getRGB(x, y);
+                boolean equal = true;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    equal &= Math.abs((a >>> shift & 0xFF) - (g >>> shift & 0xFF)) <= CHANNEL_TOLERANCE;
+                }
+                if (!equal) {
+                    differing++;
+                }
+                diff.setRGB(x, y, equal ? 0xFF000000 : 0xFFFF00FF);
+            }
+        }
+
+        int allowed = (int) (PIXEL_TOLERANCE * actual.getWidth() * actual.getHeight());
+        if (differing > allowed) {
+            File written = write(name + ".actual", actual);
+            write(name + ".diff", diff);
+            fail(differing + " pixels differ from the golden image " + name + ", at most " + allowed
+                    + " may; see " + written);
+        }
+    }
+
+    private static File write(String name, BufferedImage image) throws IOException {
+        File file = new File(moduleDir(), "build/golden/" + name + ".png");
+        file.getParentFile().mkdirs();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    /**
+     * @return - The app module, the working directory of Gradle test runs.
+     */
+    private static File moduleDir() {
+        File app = new File("app");
+        return new File("src/test").isDirectory() || !app.isDirectory() ? new File(".") : app;
+    }
+}
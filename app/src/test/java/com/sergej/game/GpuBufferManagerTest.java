@@ -0,0 +1,95 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class GpuBufferManagerTest {
+
+    private final float[] mMVPMatrix = new float[16];
+
+    private CountingGL mGL;
+    private ShaderProgramCache mPrograms;
+    private GpuBufferManager mBuffers;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mPrograms = new ShaderProgramCache(mGL);
+        mBuffers = new GpuBufferManager(mGL);
+    }
+
+    @Test
+    public void staticGeometryIsUploadedOnce() {
+        Ring ring = new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+
+        ring.draw(mMVPMatrix);
+        assertEquals(2, mGL.bufferUploads);
+        // 16 vertices of 3 floats plus 48 short indices
+        assertEquals(16 * 12 + 48 * 2, mBuffers.getUploadedBytes());
+
+        for (int frame = 0; frame < 3; frame++) {
+            mGL.resetFrameCounters();
+            ring.draw(mMVPMatrix);
+            assertEquals(0, mGL.bufferUploads);
+        }
+    }
+
+    @Test
+    public void contextLossUploadsAgainOnNextDraw() {
+        Square square = new Square(mPrograms, mBuffers);
+        square.draw(mMVPMatrix);
+
+        mPrograms.invalidate();
+        mBuffers.invalidate();
+        mGL.resetFrameCounters();
+
+        square.draw(mMVPMatrix);
+        assertEquals(2, mGL.bufferUploads);
+        assertEquals(4, mGL.buffersGenerated);
+        assertEquals(2, mGL.programsLinked);
+    }
+
+    @Test
+    public void dynamicBufferReusesItsStorage() {
+        GpuBuffer buffer = mBuffers.createDynamic(GLES20.GL_ARRAY_BUFFER, GLES20.GL_STREAM_DRAW);
+
+        buffer.update(floats(12));
+        buffer.bind();
+        assertEquals(1, mGL.buffersGenerated);
+        assertEquals(48, buffer.getSize());
+
+        buffer.update(floats(6));
+        buffer.update(floats(12));
+        assertEquals(1, mGL.buffersGenerated);
+        assertEquals(3, mGL.bufferUploads);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void staticBufferRejectsUpdates() {
+        mBuffers.createStatic(GLES20.GL_ARRAY_BUFFER, floats(3)).update(floats(3));
+    }
+
+    @Test
+    public void releaseDeletesLiveBuffer() {
+        GpuBuffer buffer = mBuffers.createStatic(GLES20.GL_ARRAY_BUFFER, floats(3));
+        buffer.bind();
+        buffer.release();
+
+        assertEquals(1, mGL.buffersDeleted);
+        assertEquals(0, mBuffers.size());
+    }
+
+    private static FloatBuffer floats(int count) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(new float[count]).position(0);
+        return buffer;
+    }
+}
@@ -0,0 +1,103 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GpuResourcesTest {
+
+    private final float[] mMVPMatrix = new float[16];
+
+    private CountingGL mGL;
+    private ShaderProgramCache mPrograms;
+    private GpuBufferManager mBuffers;
+    private GpuResources mResources;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mPrograms = new ShaderProgramCache(mGL);
+        mBuffers = new GpuBufferManager(mGL);
+        mResources = new GpuResources(mPrograms, mBuffers);
+        mResources.onContextCreated();
+    }
+
+    @Test
+    public void firstContextRestoresNothing() {
+        assertEquals(1, mResources.getContextCount());
+        assertEquals(0, mGL.programsLinked);
+        assertEquals(0, mGL.bufferUploads);
+        assertEquals(0, mResources.getRestoreNanos());
+    }
+
+    @Test
+    public void lostContextIsRestoredInOnePass() {
+        Square square = new Square(mPrograms, mBuffers);
+        Ring ring = new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+        square.draw(mMVPMatrix);
+        ring.draw(mMVPMatrix);
+
+        final int[] reported = new int[2];
+        mResources.setRestoreListener((programs, buffers, nanos) -> {
+            reported[0] = programs;
+            reported[1] = buffers;
+        });
+        mGL.resetFrameCounters();
+        int linked = mGL.programsLinked;
+        mResources.onContextCreated();
+
+        // the shared program and both buffers of each shape, nothing else
+        assertEquals(linked + 1, mGL.programsLinked);
+        assertEquals(4, mGL.bufferUploads);
+        assertEquals(1, mResources.getRestoredPrograms());
+        assertEquals(4, mResources.getRestoredBuffers());
+        assertArrayEquals(new int[] { 1, 4 }, reported);
+        assertTrue(mResources.getRestoreNanos() > 0);
+
+        // drawing finds everything in place
+        mGL.resetFrameCounters();
+        linked = mGL.programsLinked;
+        square.draw(mMVPMatrix);
+        ring.draw(mMVPMatrix);
+        assertEquals(linked, mGL.programsLinked);
+        assertEquals(0, mGL.bufferUploads);
+        assertEquals(0, mGL.attribLocationQueries + mGL.uniformLocationQueries);
+        assertEquals(1, mPrograms.size());
+    }
+
+    @Test
+    public void releasedResourcesAreNotRestored() {
+        FlatColorProgram program = new FlatColorProgram(mPrograms);
+        GpuBuffer buffer = mBuffers.createStaticIndices(new short[] { 0, 1, 2 }, 3);
+        buffer.bind();
+        program.release();
+        buffer.release();
+
+        mGL.resetFrameCounters();
+        int linked = mGL.programsLinked;
+        mResources.onContextCreated();
+        assertEquals(linked, mGL.programsLinked);
+        assertEquals(0, mGL.bufferUploads);
+    }
+
+    @Test
+    public void rendererRestoresBeforeTheNextFrame() {
+        MyGLRenderer renderer = new MyGLRenderer(mGL, 18);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 480, 800);
+        renderer.onDrawFrame(null);
+        int buffers = renderer.getResources().getBuffers().size();
+
+        // paused without keeping the context
+        renderer.onSurfaceCreated(null, null);
+        assertEquals(2, renderer.getResources().getContextCount());
+        assertEquals(buffers, renderer.getResources().getRestoredBuffers());
+
+        mGL.resetFrameCounters();
+        int linked = mGL.programsLinked;
+        renderer.onDrawFrame(null);
+        assertEquals(linked, mGL.programsLinked);
+        assertEquals(0, mGL.bufferUploads);
+    }
+}
@@ -0,0 +1,148 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws frames with {@link SoftwareGL} and compares them with golden images,
+ * so changes to the geometry, the transforms or the draw submission that
+ * alter the picture show up without a device.
+ */
+public class HeadlessRenderingTest {
+
+    private static final int SIZE = 256;
+
+    @Test
+    public void pipeMatchesGolden() throws IOException {
+        SoftwareGL gl = new SoftwareGL(SIZE, SIZE);
+        MyGLRenderer renderer = createRenderer(gl, SIZE);
+        renderer.setAngle(30);
+        renderer.onDrawFrame(null);
+
+        GoldenImages.assertMatches("pipe", gl.toImage());
+    }
+
+    @Test
+    public void compactVerticesDrawTheSamePipe() throws IOException {
+        // half float positions are off by at most a few thousandths of a
+        // unit, well within a pixel, so the golden of float positions holds
+        SoftwareGL gl = new SoftwareGL(SIZE, SIZE);
+        gl.version = "OpenGL ES 3.0 software";
+        MyGLRenderer renderer = createRenderer(gl, SIZE);
+        renderer.setAngle(30);
+        renderer.onDrawFrame(null);
+
+        GoldenImages.assertMatches("pipe", gl.toImage());
+    }
+
+    @Test
+    public void staticBatchMatchesGolden() throws IOException {
+        SoftwareGL gl = new SoftwareGL(SIZE, SIZE);
+        MyGLRenderer renderer = createRenderer(gl, SIZE);
+
+        // a floor under the pipe, drawn from the static batch
+        float[] model = new float[16];
+        Matrix4.setIdentity(model);
+        Mesh floor = new MeshFactory(4).annulus(0.3f, 1.5f, -1.2f, 0, 2 * (float) Math.PI, 32, true);
+        renderer.addStaticMesh(floor, model, new float[] { 0.9f, 0.6f, 0.1f, 1f });
+        renderer.setAngle(120);
+        renderer.onDrawFrame(null);
+        renderer.onDrawFrame(null);
+
+        GoldenImages.assertMatches("static_batch", gl.toImage());
+    }
+
+    @Test
+    public void frameLoopDrawsTheSameEveryFrame() {
+        SoftwareGL gl = new SoftwareGL(64, 64);
+        MyGLRenderer renderer = createRenderer(gl, 64);
+        renderer.onDrawFrame(null);
+
+        gl.resetFrameCounters();
+        renderer.onDrawFrame(null);
+        int drawCalls = gl.drawCalls;
+        long triangles = gl.triangles;
+        assertTrue(drawCalls > 0);
+
+        for (int i = 0; i < 100; i++) {
+            gl.resetFrameCounters();
+            renderer.setAngle(i * 3.6f);
+            renderer.onDrawFrame(null);
+            assertEquals(drawCalls, gl.drawCalls);
+            assertEquals(triangles, gl.triangles);
+        }
+    }
+
+    @Test
+    public void nearerSquareWinsInEitherOrder() {
+        assertEquals(0xFF00FF00, drawOverlappingSquares(false));
+        assertEquals(0xFF00FF00, drawOverlappingSquares(true));
+    }
+
+    @Test
+    public void geometryBehindTheCameraIsClipped() {
+        SoftwareGL gl = new SoftwareGL(SIZE, SIZE);
+        Square square = new Square(new ShaderProgramCache(gl), new GpuBufferManager(gl));
+        gl.glClearColor(0f, 0f, 0f, 1f);
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        // a floor below the camera reaching behind it, through the near plane
+        float[] projection = new float[16], model = new float[16], mvp = new float[16];
+        Matrix4.frustum(projection, -1f, 1f, -1f, 1f, 1f, 10f);
+        Matrix4.setRotate(model, -90f, 1f, 0f, 0f);
+        for (int i = 0; i < 12; i++) {
+            model[i] *= 8f;
+        }
+        model[13] = -0.5f;
+        Matrix4.multiply(mvp, projection, model);
+        square.draw(mvp);
+
+        // the floor in front of the camera is drawn, nothing wraps around
+        // into the upper half
+        assertNotEquals(0xFF000000, gl.getPixel(SIZE / 2, SIZE / 3));
+        assertEquals(0xFF000000, gl.getPixel(SIZE / 2, SIZE - 4));
+    }
+
+    /**
+     * @return - Color at the center after drawing a red square at z 0.5 and
+     * a green one at z -0.5, nearer to the camera.
+     */
+    private static int drawOverlappingSquares(boolean nearFirst) {
+        SoftwareGL gl = new SoftwareGL(32, 32);
+        ShaderProgramCache programs = new ShaderProgramCache(gl);
+        GpuBufferManager buffers = new GpuBufferManager(gl);
+        Square far = new Square(programs, buffers);
+        Square near = new Square(programs, buffers);
+        System.arraycopy(new float[] { 1f, 0f, 0f, 1f }, 0, far.getColor(), 0, 4);
+        System.arraycopy(new float[] { 0f, 1f, 0f, 1f }, 0, near.getColor(), 0, 4);
+
+        float[] farMatrix = new float[16], nearMatrix = new float[16];
+        Matrix4.setIdentity(farMatrix);
+        Matrix4.setIdentity(nearMatrix);
+        farMatrix[14] = 0.5f;
+        nearMatrix[14] = -0.5f;
+
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        if (nearFirst) {
+            near.draw(nearMatrix);
+            far.draw(farMatrix);
+        } else {
+            far.draw(farMatrix);
+            near.draw(nearMatrix);
+        }
+        return gl.getPixel(16, 16);
+    }
+
+    private static MyGLRenderer createRenderer(SoftwareGL gl, int size) {
+        MyGLRenderer renderer = new MyGLRenderer(gl, 18);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, size, size);
+        return renderer;
+    }
+}
@@ -0,0 +1,99 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InstancedRendererTest {
+
+    private final float[] mVPMatrix = new float[16];
+
+    private final Mesh mQuad = new Mesh(new float[] {
+            0f, 0f, 0f,
+            1f, 0f, 0f,
+            1f, 1f, 0f,
+            0f, 1f, 0f }, new short[] { 0, 1, 2, 0, 2, 3 });
+
+    private CountingGL mGL;
+    private ShaderProgramCache mPrograms;
+    private GpuBufferManager mBuffers;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mPrograms = new ShaderProgramCache(mGL);
+        mBuffers = new GpuBufferManager(mGL);
+    }
+
+    @Test
+    public void capabilitiesParseVersion() {
+        mGL.version = "OpenGL ES 3.2 V@415.0";
+        mGL.extensions = "GL_OES_element_index_uint GL_EXT_disjoint_timer_query";
+
+        GLCapabilities capabilities = GLCapabilities.query(mGL, 29);
+
+        assertEquals(3, capabilities.getMajorVersion());
+        assertTrue(capabilities.hasInstancing());
+        assertTrue(capabilities.hasExtension("GL_EXT_disjoint_timer_query"));
+        assertFalse(GLCapabilities.query(mGL, 16).hasInstancing());
+    }
+
+    @Test
+    public void hardwareInstancingIsOneDrawCall() {
+        mGL.version = "OpenGL ES 3.0";
+        InstancedRenderer renderer = new InstancedRenderer(mPrograms, mBuffers,
+                GLCapabilities.query(mGL, 29), mQuad);
+
+        renderer.draw(mVPMatrix, new float[1000 * InstancedRenderer.FLOATS_PER_INSTANCE], 1000);
+
+        assertEquals(1, renderer.getDrawCalls());
+        assertEquals(1, mGL.instancedDrawCalls);
+        assertEquals(0, mGL.drawCalls);
+    }
+
+    @Test
+    public void pseudoInstancingFillsUniformArrays() {
+        InstancedRenderer renderer = new InstancedRenderer(mPrograms, mBuffers,
+                GLCapabilities.query(mGL, 29), mQuad);
+
+        // (128 - 4) / 5 instances fit into the minimum uniform storage
+        assertEquals(24, renderer.getBatchSize());
+
+        renderer.draw(mVPMatrix, new float[1000 * InstancedRenderer.FLOATS_PER_INSTANCE], 1000);
+
+        assertEquals(42, renderer.getDrawCalls());
+        assertEquals(42, mGL.drawCalls);
+        assertEquals(0, mGL.instancedDrawCalls);
+    }
+
+    @Test
+    public void pseudoInstancingDrawsTheLastBatchEveryFrame() {
+        // the state tracker must not take the short last batch for the first one
+        ShaderProgramCache programs = new ShaderProgramCache(new GLStateTracker(mGL));
+        InstancedRenderer renderer = new InstancedRenderer(programs, mBuffers,
+                GLCapabilities.query(mGL, 29), mQuad);
+        int count = renderer.getBatchSize() + 1;
+        float[] instances = new float[count * InstancedRenderer.FLOATS_PER_INSTANCE];
+        for (int i = 0; i < count; i++) {
+            instances[i * InstancedRenderer.FLOATS_PER_INSTANCE] = i + 1;
+        }
+
+        for (int frame = 0; frame < 2; frame++) {
+            renderer.draw(mVPMatrix, instances, count);
+            assertEquals(2, renderer.getDrawCalls());
+            assertEquals(count, mGL.lastMatrixElement, 0f);
+        }
+    }
+
+    @Test
+    public void pseudoInstancingBatchIsLimitedByIndexRange() {
+        mGL.maxVertexUniformVectors = 1024;
+        Mesh big = new Mesh(new float[10000 * 3], new short[] { 0, 1, 2 });
+
+        InstancedRenderer renderer = new InstancedRenderer(mPrograms, mBuffers,
+                GLCapabilities.query(mGL, 29), big);
+
+        assertEquals(6, renderer.getBatchSize());
+    }
+}
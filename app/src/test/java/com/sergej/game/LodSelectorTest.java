@@ -0,0 +1,68 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LodSelectorTest {
+
+    private final LodSelector mLod = new LodSelector(
+            new int[] { 8, 16, 32 }, new float[] { 100f, 200f }, 0.1f);
+
+    @Test
+    public void levelGrowsWithProjectedRadius() {
+        assertEquals(0, mLod.select(0, 50f));
+        assertEquals(1, mLod.select(0, 150f));
+        assertEquals(2, mLod.select(0, 1000f));
+        assertEquals(0, mLod.select(2, 10f));
+    }
+
+    @Test
+    public void hysteresisKeepsLevelNearThreshold() {
+        // just above the threshold is not enough to refine
+        assertEquals(0, mLod.select(0, 105f));
+        assertEquals(1, mLod.select(0, 111f));
+
+        // and just below it is not enough to coarsen again
+        assertEquals(1, mLod.select(1, 95f));
+        assertEquals(0, mLod.select(1, 89f));
+    }
+
+    @Test
+    public void segmentsFollowAngleRange() {
+        assertEquals(8, mLod.getSegments(0, 0, 2 * (float) Math.PI));
+        assertEquals(4, mLod.getSegments(0, 0, (float) Math.PI));
+        assertEquals(16, mLod.getSegments(2, (float) Math.PI, 0));
+        assertEquals(1, mLod.getSegments(0, 0, 0.01f));
+    }
+
+    @Test
+    public void projectedRadiusShrinksWithDistance() {
+        // 90 degree vertical field of view, so projection[5] is 1
+        float[] projection = new float[16];
+        projection[5] = 1f;
+
+        float[] modelView = {
+                1f, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0f, 0f, -2f, 1f };
+
+        assertEquals(100f, LodSelector.projectedRadius(modelView, projection, 400f, 1f), 1e-4f);
+
+        modelView[14] = -4f;
+        assertEquals(50f, LodSelector.projectedRadius(modelView, projection, 400f, 1f), 1e-4f);
+
+        // scaling the object scales its bounds
+        modelView[0] = 3f;
+        assertEquals(150f, LodSelector.projectedRadius(modelView, projection, 400f, 1f), 1e-4f);
+
+        modelView[14] = 1f;
+        assertEquals(Float.POSITIVE_INFINITY, LodSelector.projectedRadius(modelView, projection, 400f, 1f), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdsMustMatchLevels() {
+        new LodSelector(new int[] { 8, 16 }, new float[0], 0f);
+    }
+}
@@ -0,0 +1,62 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Matrix4Test {
+
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void rotationTurnsAroundAxis() {
+        float[] m = new float[16];
+        Matrix4.setRotate(m, 90f, 0f, 2f, 0f);
+
+        // around y, x goes to -z
+        float[] p = { 1f, 0f, 0f };
+        Matrix4.transformPoint(m, p, 0, p, 0);
+        assertArrayEquals(new float[] { 0f, 0f, -1f }, p, EPSILON);
+    }
+
+    @Test
+    public void multiplyAppliesRightHandSideFirst() {
+        float[] rotate = new float[16];
+        Matrix4.setRotate(rotate, 90f, 0f, 0f, 1f);
+        float[] translate = new float[16];
+        Matrix4.setIdentity(translate);
+        translate[12] = 5f;
+
+        float[] m = new float[16];
+        Matrix4.multiply(m, translate, rotate);
+
+        float[] p = { 1f, 0f, 0f };
+        Matrix4.transformPoint(m, p, 0, p, 0);
+        assertArrayEquals(new float[] { 5f, 1f, 0f }, p, EPSILON);
+    }
+
+    @Test
+    public void lookAtMovesCenterInFrontOfEye() {
+        float[] view = new float[16];
+        Matrix4.setLookAt(view, -3f, 0f, 0f, 0f, 0f, 0f, 0f, 1f, 0f);
+
+        float[] p = { 0f, 0f, 0f };
+        Matrix4.transformPoint(view, p, 0, p, 0);
+        assertArrayEquals(new float[] { 0f, 0f, -3f }, p, EPSILON);
+
+        float[] up = { -3f, 1f, 0f };
+        Matrix4.transformPoint(view, up, 0, up, 0);
+        assertArrayEquals(new float[] { 0f, 1f, 0f }, up, EPSILON);
+    }
+
+    @Test
+    public void frustumMapsNearAndFarPlanes() {
+        float[] m = new float[16];
+        Matrix4.frustum(m, -1f, 1f, -1f, 1f, 1f, 4f);
+
+        // clip z / clip w is -1 on the near and 1 on the far plane
+        assertEquals(-1f, (m[10] * -1f + m[14]) / 1f, EPSILON);
+        assertEquals(1f, (m[10] * -4f + m[14]) / 4f, EPSILON);
+        assertEquals(1f, m[5], EPSILON);
+    }
+}
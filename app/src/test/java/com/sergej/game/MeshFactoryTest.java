@@ -0,0 +1,177 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MeshFactoryTest {
+
+    private static final float TURN = 2 * (float) Math.PI;
+
+    @Test
+    public void closedTubeSharesFirstColumn() {
+        Mesh mesh = new MeshFactory(8).tube(1f, -1f, 1f, 0, TURN, 8, true);
+
+        assertEquals(16, mesh.getVertexCount());
+        assertEquals(48, mesh.getIndexCount());
+        assertIndicesInRange(mesh);
+    }
+
+    @Test
+    public void partialArcHasExtraColumn() {
+        MeshFactory factory = new MeshFactory(8);
+        Mesh tube = factory.tube(1f, -1f, 1f, 0, (float) Math.PI, 4, true);
+        Mesh annulus = factory.annulus(0.5f, 1f, 0f, 0, (float) Math.PI, 4, true);
+        Mesh disc = factory.disc(1f, 0f, 0, (float) Math.PI, 4, true);
+
+        assertEquals(10, tube.getVertexCount());
+        assertEquals(24, tube.getIndexCount());
+        assertEquals(10, annulus.getVertexCount());
+        assertEquals(6, disc.getVertexCount());
+        assertEquals(12, disc.getIndexCount());
+        assertIndicesInRange(tube);
+        assertIndicesInRange(annulus);
+        assertIndicesInRange(disc);
+
+        // the last column lies on the end angle
+        float[] v = tube.getVertices();
+        assertEquals(-1f, v[(tube.getVertexCount() - 1) * 3], 1e-6f);
+        assertEquals(0f, v[(tube.getVertexCount() - 1) * 3 + 1], 1e-6f);
+    }
+
+    @Test
+    public void tubeWindingFollowsOrientation() {
+        MeshFactory factory = new MeshFactory(8);
+
+        assertWinding(factory.tube(1f, -1f, 1f, 0, TURN, 8, true), true, 1f);
+        assertWinding(factory.tube(1f, -1f, 1f, 0, TURN, 8, false), true, -1f);
+        assertWinding(factory.tube(1f, -1f, 1f, 0.3f, 2f, 3, true), true, 1f);
+    }
+
+    @Test
+    public void flatWindingFollowsOrientation() {
+        MeshFactory factory = new MeshFactory(8);
+
+        assertWinding(factory.annulus(0.5f, 1f, 0f, 0, TURN, 8, true), false, 1f);
+        assertWinding(factory.annulus(0.5f, 1f, 0f, 0, TURN, 8, false), false, -1f);
+        assertWinding(factory.disc(1f, 0f, 0, TURN, 8, true), false, 1f);
+        assertWinding(factory.disc(1f, 0f, 0, (float) Math.PI, 5, false), false, -1f);
+    }
+
+    @Test
+    public void normalsAgreeWithWinding() {
+        MeshFactory factory = new MeshFactory(8);
+
+        assertNormals(factory.tube(1f, -1f, 1f, 0, TURN, 8, true));
+        assertNormals(factory.tube(1f, -1f, 1f, 0.3f, 2f, 3, false));
+        assertNormals(factory.annulus(0.5f, 1f, 0f, 0, TURN, 8, true));
+        assertNormals(factory.annulus(0.5f, 1f, 0f, 0, TURN, 8, false));
+        assertNormals(factory.disc(1f, 0f, 0, (float) Math.PI, 5, false));
+    }
+
+    @Test
+    public void fillWritesAtOffsets() {
+        float[] vertices = new float[3 + MeshFactory.fanVertexCount(4, true) * 3];
+        short[] indices = new short[2 + MeshFactory.fanIndexCount(4)];
+
+        int written = MeshFactory.fillDisc(vertices, 3, indices, 2, 2f, 5f, 0, TURN, 4, true);
+
+        assertEquals(5, written);
+        assertEquals(0f, vertices[0], 0f);
+        assertEquals(5f, vertices[5], 0f);
+        assertEquals(2f, vertices[6], 1e-6f);
+        assertArrayEquals(new short[] { 0, 0, 0, 1, 2 }, Arrays.copyOf(indices, 5));
+    }
+
+    @Test
+    public void equalParametersShareOneMesh() {
+        MeshFactory factory = new MeshFactory(8);
+        Mesh first = factory.tube(1f, -1f, 1f, 0, TURN, 8, true);
+
+        assertSame(first, factory.tube(1f, -1f, 1f, 0, TURN, 8, true));
+        assertNotSame(first, factory.tube(1f, -1f, 1f, 0, TURN, 8, false));
+        assertNotSame(first, factory.tube(1f, -1f, 1f, 0, TURN, 9, true));
+        assertEquals(1, factory.getHits());
+        assertEquals(3, factory.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedMeshIsEvicted() {
+        MeshFactory factory = new MeshFactory(2);
+        Mesh a = factory.disc(1f, 0f, 0, TURN, 8, true);
+        Mesh b = factory.disc(2f, 0f, 0, TURN, 8, true);
+
+        // touching a makes b the eldest entry
+        factory.disc(1f, 0f, 0, TURN, 8, true);
+        factory.disc(3f, 0f, 0, TURN, 8, true);
+
+        assertEquals(2, factory.size());
+        assertSame(a, factory.disc(1f, 0f, 0, TURN, 8, true));
+        assertNotSame(b, factory.disc(2f, 0f, 0, TURN, 8, true));
+    }
+
+    private static void assertIndicesInRange(Mesh mesh) {
+        for (short index : mesh.getIndices()) {
+            assertTrue(index >= 0 && index < mesh.getVertexCount());
+        }
+    }
+
+    /**
+     * Checks every triangle faces along sign * the expected direction: away
+     * from the axis for tubes, along +z for flat meshes.
+     */
+    private static void assertWinding(Mesh mesh, boolean radial, float sign) {
+        float[] v = mesh.getVertices();
+        short[] idx = mesh.getIndices();
+
+        for (int t = 0; t < mesh.getIndexCount(); t += 3) {
+            int a = idx[t] * 3, b = idx[t + 1] * 3, c = idx[t + 2] * 3;
+
+            float ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+            float wx = v[c] - v[a], wy = v[c + 1] - v[a + 1], wz = v[c + 2] - v[a + 2];
+            float nx = uy * wz - uz * wy;
+            float ny = uz * wx - ux * wz;
+            float nz = ux * wy - uy * wx;
+
+            float dot;
+            if (radial) {
+                float cx = (v[a] + v[b] + v[c]) / 3, cy = (v[a + 1] + v[b + 1] + v[c + 1]) / 3;
+                dot = nx * cx + ny * cy;
+            } else {
+                dot = nz;
+            }
+            assertTrue("triangle " + t / 3 + " faces the wrong way", sign * dot > 0);
+        }
+    }
+
+    /**
+     * Checks that every normal has unit length and that the vertex normals
+     * of each triangle point to its front side.
+     */
+    private static void assertNormals(Mesh mesh) {
+        float[] v = mesh.getVertices();
+        float[] n = mesh.getNormals();
+        short[] idx = mesh.getIndices();
+        assertNotNull(n);
+
+        for (int i = 0; i < mesh.getVertexCount() * 3; i += 3) {
+            assertEquals(1f, n[i] * n[i] + n[i + 1] * n[i + 1] + n[i + 2] * n[i + 2], 1e-5f);
+        }
+        for (int t = 0; t < mesh.getIndexCount(); t += 3) {
+            int a = idx[t] * 3, b = idx[t + 1] * 3, c = idx[t + 2] * 3;
+
+            float ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+            float wx = v[c] - v[a], wy = v[c + 1] - v[a + 1], wz = v[c + 2] - v[a + 2];
+            float nx = uy * wz - uz * wy;
+            float ny = uz * wx - ux * wz;
+            float nz = ux * wy - uy * wx;
+
+            for (int corner : new int[] { a, b, c }) {
+                float dot = nx * n[corner] + ny * n[corner + 1] + nz * n[corner + 2];
+                assertTrue("normal of triangle " + t / 3 + " points to its back", dot > 0);
+            }
+        }
+    }
+}
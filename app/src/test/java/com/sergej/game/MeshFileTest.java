@@ -0,0 +1,242 @@
+package com.sergej.game;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class MeshFileTest {
+
+    private static final float TURN = 2 * (float) Math.PI;
+    private static final float[] RED = { 1f, 0f, 0f, 1f };
+    private static final float[] BLUE = { 0f, 0f, 1f, 1f };
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MeshFactory mFactory = new MeshFactory(8);
+
+    @Test
+    public void roundTripKeepsMeshesAndInstances() throws IOException {
+        Mesh tube = mFactory.tube(1f, -1f, 1f, 0, TURN, 12, true);
+        Mesh disc = mFactory.disc(0.5f, 1f, 0, (float) Math.PI, 5, true);
+        float[] model = new float[16];
+        Matrix4.setIdentity(model);
+        model[12] = 3f;
+
+        MeshFile.Writer writer = new MeshFile.Writer();
+        int first = writer.addMesh(tube, VertexFormat.POSITION_NORMAL_BYTE);
+        int second = writer.addMesh(disc, VertexFormat.POSITION_NORMAL_COMPACT);
+        writer.addInstance(first, RED, model).addInstance(second, BLUE, model).addInstance(first, BLUE, model);
+        File file = mFolder.newFile("scene.mesh");
+        writer.write(file);
+
+        MeshFile loaded = MeshFile.load(file);
+        assertEquals(2, loaded.getMeshCount());
+        assertEquals(3, loaded.getInstanceCount());
+
+        MeshFile.Entry entry = loaded.getMesh(first);
+        assertEquals(VertexFormat.POSITION_NORMAL_BYTE, entry.getFormat());
+        assertEquals(tube.getVertexCount(), entry.getVertexCount());
+        assertEquals(tube.getIndexCount(), entry.getIndexCount());
+        assertEquals(VertexWriter.write(VertexFormat.POSITION_NORMAL_BYTE, tube), entry.getVertices());
+        assertTrue(tube.getBounds().equalsBounds(entry.getBounds()));
+
+        ByteBuffer indices = entry.getIndices();
+        assertEquals(tube.getIndexCount() * 2, indices.remaining());
+        for (int i = 0; i < tube.getIndexCount(); i++) {
+            assertEquals(tube.getIndices()[i], indices.getShort(2 * i));
+        }
+
+        entry = loaded.getMesh(second);
+        assertEquals(VertexFormat.POSITION_NORMAL_COMPACT, entry.getFormat());
+        assertEquals(VertexWriter.write(VertexFormat.POSITION_NORMAL_COMPACT, disc), entry.getVertices());
+
+        MeshFile.Instance instance = loaded.getInstance(1);
+        assertEquals(second, instance.mesh);
+        assertArrayEquals(BLUE, instance.color, 0f);
+        assertArrayEquals(model, instance.modelMatrix, 0f);
+    }
+
+    @Test
+    public void blobsAreAlignedSlicesOfTheMapping() throws IOException {
+        MeshFile.Writer writer = new MeshFile.Writer();
+        writer.addMesh(mFactory.disc(1f, 0f, 0, TURN, 3, true), VertexFormat.POSITION_NORMAL_BYTE);
+        writer.addMesh(mFactory.annulus(0.5f, 1f, 0f, 0, TURN, 7, true), VertexFormat.POSITION_FLOAT);
+        File file = mFolder.newFile("aligned.mesh");
+        writer.write(file);
+
+        MeshFile loaded = MeshFile.load(file);
+        for (int i = 0; i < loaded.getMeshCount(); i++) {
+            // direct views of the file, nothing copied to the heap
+            assertTrue(loaded.getMesh(i).getVertices().isDirect());
+            assertTrue(loaded.getMesh(i).getIndices().isDirect());
+            assertEquals(ByteOrder.nativeOrder(), loaded.getMesh(i).getVertices().order());
+        }
+
+        ByteBuffer data = writer.toByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < loaded.getMeshCount(); i++) {
+            int table = MeshFile.HEADER_SIZE + i * MeshFile.MESH_SIZE;
+            assertEquals(0, data.getInt(table + 12) % MeshFile.ALIGNMENT);
+            assertEquals(0, data.getInt(table + 16) % MeshFile.ALIGNMENT);
+        }
+    }
+
+    @Test
+    public void loadedElementDrawsLikeGenerated() throws IOException {
+        Mesh tube = mFactory.tube(0.8f, -0.5f, 0.5f, 0.3f, 4f, 16, true);
+        MeshFile.Writer writer = new MeshFile.Writer();
+        writer.addMesh(tube, VertexFormat.POSITION_NORMAL_BYTE);
+        File file = mFolder.newFile("tube.mesh");
+        writer.write(file);
+
+        float[] mvp = new float[16];
+        Matrix4.setRotate(mvp, 60f, 1f, 0f, 0f);
+
+        SoftwareGL generated = new SoftwareGL(64, 64);
+        new OpenGLPipeElement(new ShaderProgramCache(generated), new GpuBufferManager(generated))
+                .initializeVertexBuffer(tube).draw(mvp);
+
+        SoftwareGL loaded = new SoftwareGL(64, 64);
+        GpuBufferManager buffers = new GpuBufferManager(loaded);
+        OpenGLPipeElement element = new OpenGLPipeElement(new ShaderProgramCache(loaded), buffers)
+                .initializeVertexBuffer(MeshFile.load(file).getMesh(0));
+        element.draw(mvp);
+
+        assertArrayEquals(generated.toImage().getRGB(0, 0, 64, 64, null, 0, 64),
+                loaded.toImage().getRGB(0, 0, 64, 64, null, 0, 64));
+        assertNull(element.getMesh());
+        Aabb bounds = new Aabb();
+        element.getBounds(bounds);
+        assertTrue(tube.getBounds().equalsBounds(bounds));
+    }
+
+    @Test
+    public void instancesBecomeSceneNodesSharingBuffers() throws IOException {
+        float[] model = new float[16];
+        Matrix4.setIdentity(model);
+        MeshFile.Writer writer = new MeshFile.Writer();
+        int mesh = writer.addMesh(mFactory.disc(1f, 0f, 0, TURN, 6, true), VertexFormat.POSITION_NORMAL_BYTE);
+        writer.addInstance(mesh, RED, model).addInstance(mesh, BLUE, model);
+
+        CountingGL gl = new CountingGL();
+        GpuBufferManager buffers = new GpuBufferManager(gl);
+        SceneNode root = new SceneNode();
+        MeshFile.read(writer.toByteBuffer()).addTo(root, new FlatColorProgram(new ShaderProgramCache(gl)), buffers);
+
+        assertEquals(2, root.getChildCount());
+        OpenGLPipeElement red = (OpenGLPipeElement) root.getChild(0).getRenderable();
+        OpenGLPipeElement blue = (OpenGLPipeElement) root.getChild(1).getRenderable();
+        assertArrayEquals(RED, red.getColor(), 0f);
+        assertArrayEquals(BLUE, blue.getColor(), 0f);
+
+        red.draw(model);
+        blue.draw(model);
+        assertEquals(2, gl.bufferUploads);
+    }
+
+    @Test
+    public void repeatedMeshIsDrawnInstanced() {
+        MeshFile.Writer writer = new MeshFile.Writer();
+        int segment = writer.addMesh(mFactory.tube(0.2f, 0f, 1f, 0, TURN, 8, true), VertexFormat.POSITION_NORMAL_BYTE);
+        int cap = writer.addMesh(mFactory.disc(0.2f, 0f, 0, TURN, 8, true), VertexFormat.POSITION_NORMAL_BYTE);
+        for (int i = 0; i < 1000; i++) {
+            float[] model = new float[16];
+            Matrix4.setIdentity(model);
+            model[13] = i;
+            writer.addInstance(segment, i % 2 == 0 ? RED : BLUE, model);
+        }
+        float[] identity = new float[16];
+        Matrix4.setIdentity(identity);
+        writer.addInstance(cap, RED, identity);
+        MeshFile file = read(writer);
+
+        for (String version : new String[] { "OpenGL ES 3.0", "OpenGL ES 2.0" }) {
+            CountingGL gl = new CountingGL();
+            gl.version = version;
+            SceneNode root = new SceneNode();
+            file.addTo(root, new FlatColorProgram(new ShaderProgramCache(gl)), new GpuBufferManager(gl),
+                    GLCapabilities.query(gl, 29));
+
+            // the single cap as before, all segments from one node
+            assertEquals(2, root.getChildCount());
+            assertTrue(root.getChild(0).getRenderable() instanceof OpenGLPipeElement);
+            InstanceGroup group = (InstanceGroup) root.getChild(1).getRenderable();
+            assertEquals(1000, group.getCount());
+            Aabb bounds = new Aabb();
+            group.getBounds(bounds);
+            assertEquals(-0.2f, bounds.minY, 1e-3f);
+            assertEquals(999.2f, bounds.maxY, 1e-3f);
+
+            group.draw(identity);
+            // 24 instances fit the minimum uniform storage of OpenGL ES 2.0
+            assertEquals(version.endsWith("3.0") ? 1 : 42, group.getDrawCalls());
+        }
+    }
+
+    @Test
+    public void entryPositionsAreDecoded() {
+        Mesh disc = mFactory.disc(1f, 0.5f, 0, TURN, 8, true);
+        MeshFile.Writer writer = new MeshFile.Writer();
+        writer.addMesh(disc, VertexFormat.POSITION_FLOAT);
+        writer.addMesh(disc, VertexFormat.POSITION_NORMAL_COMPACT);
+        MeshFile file = read(writer);
+
+        for (int i = 0; i < 2; i++) {
+            Mesh mesh = file.getMesh(i).toMesh();
+            assertArrayEquals(disc.getVertices(), mesh.getVertices(), i == 0 ? 0f : 1e-3f);
+            assertArrayEquals(disc.getIndices(), mesh.getIndices());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        ByteBuffer data = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(0, 0x12345678);
+        assertInvalid(data);
+
+        data.putInt(0, MeshFile.MAGIC).putInt(4, MeshFile.VERSION + 1);
+        assertInvalid(data);
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        MeshFile.Writer writer = new MeshFile.Writer();
+        writer.addMesh(mFactory.disc(1f, 0f, 0, TURN, 8, true), VertexFormat.POSITION_FLOAT);
+        ByteBuffer data = writer.toByteBuffer();
+
+        for (int length : new int[] { 8, MeshFile.HEADER_SIZE + 10, data.limit() - 2 }) {
+            ByteBuffer truncated = data.duplicate();
+            truncated.limit(length);
+            assertInvalid(truncated);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalsNeedMeshNormals() {
+        new MeshFile.Writer().addMesh(new Mesh(new float[3], new short[3]), VertexFormat.POSITION_NORMAL_BYTE);
+    }
+
+    private static MeshFile read(MeshFile.Writer writer) {
+        try {
+            return MeshFile.read(writer.toByteBuffer());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void assertInvalid(ByteBuffer data) {
+        try {
+            MeshFile.read(data);
+            fail("read an invalid mesh file");
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+}
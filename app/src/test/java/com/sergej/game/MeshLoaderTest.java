@@ -0,0 +1,178 @@
+package com.sergej.game;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MeshLoaderTest {
+
+    private static final float TURN = 2 * (float) Math.PI;
+
+    private CountingGL mGL;
+    private GpuBufferManager mBuffers;
+    private MeshLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mBuffers = new GpuBufferManager(mGL);
+        mLoader = new MeshLoader(mBuffers);
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.shutdown();
+    }
+
+    @Test
+    public void requestIsReadyOnceUploaded() {
+        Mesh disc = new MeshFactory(4).disc(1f, 0f, 0, TURN, 8, true);
+        MeshLoader.Request request = mLoader.load(() -> disc);
+
+        assertFalse(request.isReady());
+        assertEquals(0, mGL.bufferUploads);
+        assertEquals(1, mLoader.getStagedCount());
+
+        assertEquals(1, mLoader.upload(MeshLoader.DEFAULT_UPLOAD_BYTES, MeshLoader.DEFAULT_UPLOAD_NANOS));
+        assertTrue(request.isReady());
+        assertSame(disc, request.getMesh());
+        assertEquals(2, mGL.bufferUploads);
+        assertEquals(0, mLoader.getPendingCount());
+
+        // 9 vertices of 12 bytes plus 24 short indices
+        assertEquals(9 * 12 + 24 * 2, mLoader.getUploadedBytes());
+        assertEquals(VertexFormat.POSITION_FLOAT, request.getVertexBuffer().getFormat());
+
+        // uploaded within the budget, drawing uploads nothing more
+        mGL.resetFrameCounters();
+        request.getVertexBuffer().bind();
+        request.getIndexBuffer().bind();
+        assertEquals(0, mGL.bufferUploads);
+    }
+
+    @Test
+    public void uploadsStayWithinTheByteBudget() {
+        MeshFactory factory = new MeshFactory(8);
+        for (int i = 0; i < 5; i++) {
+            final float radius = i + 1;
+            mLoader.load(() -> factory.tube(radius, -1f, 1f, 0, TURN, 16, true));
+        }
+        // 32 vertices of 12 bytes plus 96 short indices
+        int size = 32 * 12 + 96 * 2;
+
+        assertEquals(2, mLoader.upload(2 * size + size / 2, Long.MAX_VALUE));
+        assertEquals(2, mLoader.upload(2 * size, Long.MAX_VALUE));
+        // a budget smaller than one mesh still makes progress
+        assertEquals(1, mLoader.upload(1, Long.MAX_VALUE));
+        assertEquals(0, mLoader.upload(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(5, mLoader.getUploadedMeshes());
+        assertEquals(5L * size, mLoader.getUploadedBytes());
+    }
+
+    @Test
+    public void exhaustedTimeBudgetUploadsOnePerFrame() {
+        for (int i = 0; i < 3; i++) {
+            mLoader.load(() -> new MeshFactory(1).disc(1f, 0f, 0, TURN, 8, true));
+        }
+
+        assertEquals(1, mLoader.upload(Long.MAX_VALUE, 0));
+        assertEquals(1, mLoader.upload(Long.MAX_VALUE, 0));
+        assertEquals(1, mLoader.upload(Long.MAX_VALUE, 0));
+        assertEquals(0, mLoader.getPendingCount());
+    }
+
+    @Test
+    public void workersBuildOffTheCallingThread() throws InterruptedException {
+        MeshLoader loader = new MeshLoader(mBuffers, 2);
+        final CountDownLatch staged = new CountDownLatch(4);
+        loader.setOnStagedListener(staged::countDown);
+        final Thread caller = Thread.currentThread();
+        final boolean[] offCaller = new boolean[4];
+
+        try {
+            MeshLoader.Request[] requests = new MeshLoader.Request[4];
+            for (int i = 0; i < requests.length; i++) {
+                final int index = i;
+                requests[i] = loader.load(() -> {
+                    offCaller[index] = Thread.currentThread() != caller;
+                    return new MeshFactory(1).annulus(0.5f, 1f, index, 0, TURN, 32, true);
+                });
+            }
+            assertTrue(staged.await(5, TimeUnit.SECONDS));
+
+            while (loader.getPendingCount() > 0) {
+                loader.upload(MeshLoader.DEFAULT_UPLOAD_BYTES, MeshLoader.DEFAULT_UPLOAD_NANOS);
+            }
+            for (int i = 0; i < requests.length; i++) {
+                assertTrue(requests[i].isReady());
+                assertTrue(offCaller[i]);
+            }
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedBuildThrowsOnUpload() {
+        mLoader.load(() -> {
+            throw new IllegalArgumentException("no mesh");
+        });
+        mLoader.upload(MeshLoader.DEFAULT_UPLOAD_BYTES, MeshLoader.DEFAULT_UPLOAD_NANOS);
+    }
+
+    @Test
+    public void failedBuildIsNoLongerPending() {
+        mLoader.load(() -> {
+            throw new IllegalArgumentException("no mesh");
+        });
+        try {
+            mLoader.upload(MeshLoader.DEFAULT_UPLOAD_BYTES, MeshLoader.DEFAULT_UPLOAD_NANOS);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, mLoader.getPendingCount());
+            assertEquals(0, mLoader.getStagedCount());
+        }
+    }
+
+    @Test
+    public void cylinderDrawsOnceItsMeshesAreLoaded() {
+        Cylinder pipe = new Cylinder(new ShaderProgramCache(mGL), mBuffers, mLoader, LodSelector.fixed(16),
+                0.9f, 0.7f, 1f, 0, TURN);
+
+        assertEquals(0, pipe.getElements().length);
+        assertEquals(4, mLoader.getPendingCount());
+
+        mLoader.upload(Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(4, pipe.getElements().length);
+        assertSame(pipe.getElements(), pipe.getElements());
+    }
+
+    @Test
+    public void cylinderKeepsTheLoadedLevelUntilTheNextOneIsReady() {
+        LodSelector lod = new LodSelector(new int[] { 8, 32 }, new float[] { 50f }, 0.1f);
+        Cylinder pipe = new Cylinder(new ShaderProgramCache(mGL), mBuffers, mLoader, lod,
+                0.9f, 0.7f, 1f, 0, TURN);
+        pipe.getElements();
+        mLoader.upload(Long.MAX_VALUE, Long.MAX_VALUE);
+        OpenGLPipeElement[] coarse = pipe.getElements();
+
+        // close enough for the finer level
+        float[] modelView = new float[16], projection = new float[16];
+        Matrix4.setIdentity(modelView);
+        modelView[14] = -3f;
+        Matrix4.frustum(projection, -1f, 1f, -1f, 1f, 1f, 10f);
+        pipe.updateLevel(modelView, projection, 1000f);
+        assertEquals(1, pipe.getLevel());
+
+        assertSame(coarse, pipe.getElements());
+        mLoader.upload(Long.MAX_VALUE, Long.MAX_VALUE);
+        OpenGLPipeElement[] fine = pipe.getElements();
+        assertNotSame(coarse, fine);
+        assertEquals(4 * 2 * 32 * 3, fine[0].getMesh().getIndexCount() * 4);
+    }
+}
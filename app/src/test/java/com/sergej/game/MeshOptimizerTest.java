@@ -0,0 +1,273 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshOptimizerTest {
+
+    private static final float TURN = 2 * (float) Math.PI;
+    private static final int CACHE = MeshOptimizer.CACHE_SIZE;
+
+    @Test
+    public void acmrOfKnownOrders() {
+        // no vertex shared: every vertex misses
+        assertEquals(3f, MeshOptimizer.acmr(new short[] { 0, 1, 2, 3, 4, 5 }, 6, CACHE), 0f);
+        // a quad shares two of its four vertices
+        assertEquals(2f, MeshOptimizer.acmr(new short[] { 0, 1, 2, 0, 2, 3 }, 6, CACHE), 0f);
+        // the same triangle twice hits the second time
+        assertEquals(1.5f, MeshOptimizer.acmr(new short[] { 0, 1, 2, 0, 1, 2 }, 6, CACHE), 0f);
+    }
+
+    @Test
+    public void shuffledGridIsReorderedForTheCache() {
+        Mesh grid = grid(32, 32);
+        short[] shuffled = shuffle(grid.getIndices(), new Random(7));
+        float before = MeshOptimizer.acmr(shuffled, shuffled.length, CACHE);
+
+        Mesh optimized = MeshOptimizer.optimize(new Mesh(grid.getVertices(), shuffled));
+        float after = MeshOptimizer.acmr(optimized.getIndices(), optimized.getIndexCount(), CACHE);
+
+        assertTrue("ACMR shuffled " + before, before > 2.5f);
+        assertTrue("ACMR optimized " + after, after < 0.8f);
+        assertSameTriangles(new Mesh(grid.getVertices(), shuffled), optimized);
+    }
+
+    @Test
+    public void generatedMeshesAreNotWorse() {
+        int segments = 64;
+        float[] vertices = new float[MeshFactory.stripVertexCount(segments, true) * 3];
+        short[] tube = new short[MeshFactory.stripIndexCount(segments)];
+        short[] annulus = new short[tube.length];
+        MeshFactory.fillTube(vertices, 0, tube, 0, 1f, -1f, 1f, 0, TURN, segments, true);
+        MeshFactory.fillAnnulus(vertices, 0, annulus, 0, 0.5f, 1f, 0f, 0, TURN, segments, true);
+        short[] disc = new short[MeshFactory.fanIndexCount(segments)];
+        MeshFactory.fillDisc(vertices, 0, disc, 0, 1f, 0f, 0, TURN, segments, true);
+
+        MeshFactory factory = new MeshFactory(8);
+        assertNotWorse(tube, factory.tube(1f, -1f, 1f, 0, TURN, segments, true));
+        assertNotWorse(annulus, factory.annulus(0.5f, 1f, 0f, 0, TURN, segments, true));
+        assertNotWorse(disc, factory.disc(1f, 0f, 0, TURN, segments, true));
+    }
+
+    @Test
+    public void optimizeKeepsTrianglesAndNormals() {
+        Mesh tube = tube(24, true);
+        Mesh optimized = MeshOptimizer.optimize(tube);
+
+        assertEquals(tube.getVertexCount(), optimized.getVertexCount());
+        assertEquals(tube.getIndexCount(), optimized.getIndexCount());
+        assertSameTriangles(tube, optimized);
+
+        // every vertex still has its normal
+        for (int v = 0; v < optimized.getVertexCount(); v++) {
+            float x = optimized.getVertices()[3 * v], y = optimized.getVertices()[3 * v + 1];
+            assertEquals(x, optimized.getNormals()[3 * v], 1e-6f);
+            assertEquals(y, optimized.getNormals()[3 * v + 1], 1e-6f);
+        }
+    }
+
+    @Test
+    public void verticesFollowFirstUse() {
+        Mesh optimized = MeshOptimizer.optimize(grid(8, 8));
+        short[] indices = optimized.getIndices();
+
+        int next = 0;
+        for (int i = 0; i < optimized.getIndexCount(); i++) {
+            assertTrue(indices[i] <= next);
+            if (indices[i] == next) {
+                next++;
+            }
+        }
+        assertEquals(optimized.getVertexCount(), next);
+    }
+
+    @Test
+    public void outwardFacingRunsComeFirst() {
+        // two separate squares facing +z, the lower one listed first
+        float[] vertices = {
+                0, 0, -1,  1, 0, -1,  1, 1, -1,  0, 1, -1,
+                0, 0,  1,  1, 0,  1,  1, 1,  1,  0, 1,  1 };
+        short[] indices = { 0, 1, 2, 0, 2, 3, 4, 5, 6, 4, 6, 7 };
+
+        Mesh optimized = MeshOptimizer.optimize(new Mesh(vertices, indices));
+
+        // the upper square faces away from the center, it is drawn first
+        int first = optimized.getIndices()[0];
+        assertEquals(1f, optimized.getVertices()[3 * first + 2], 0f);
+        assertSameTriangles(new Mesh(vertices, indices), optimized);
+    }
+
+    @Test
+    public void closedTubeBecomesOneStrip() {
+        for (boolean outward : new boolean[] { true, false }) {
+            Mesh tube = tube(16, outward);
+            short[] strip = MeshOptimizer.toStrip(tube.getIndices(), tube.getIndexCount(), true);
+
+            // two vertices per column, the first column twice to close the tube
+            assertEquals(2 * 16 + 2, strip.length);
+            assertEquals(sorted(triangles(tube.getIndices(), tube.getIndexCount())), sorted(fromStrip(strip)));
+        }
+    }
+
+    @Test
+    public void stripsKeepTrianglesAndWinding() {
+        Mesh grid = grid(6, 5);
+        short[] shuffled = shuffle(grid.getIndices(), new Random(3));
+        List<String> expected = sorted(triangles(shuffled, shuffled.length));
+
+        short[] restart = MeshOptimizer.toStrip(shuffled, shuffled.length, true);
+        short[] degenerate = MeshOptimizer.toStrip(shuffled, shuffled.length, false);
+
+        assertEquals(expected, sorted(fromStrip(restart)));
+        assertEquals(expected, sorted(fromStrip(degenerate)));
+        assertFalse(contains(degenerate, MeshOptimizer.PRIMITIVE_RESTART_INDEX));
+        assertTrue("strips shorter than the list", restart.length < shuffled.length);
+    }
+
+    private static void assertNotWorse(short[] naive, Mesh optimized) {
+        float before = MeshOptimizer.acmr(naive, naive.length, CACHE);
+        float after = MeshOptimizer.acmr(optimized.getIndices(), optimized.getIndexCount(), CACHE);
+        assertTrue("ACMR " + before + " before and " + after + " after", after <= before);
+        // one new vertex per triangle is all a single row of quads allows;
+        // a fan loads its center again each time it leaves the FIFO
+        assertTrue("ACMR " + after, after <= 1.1f);
+    }
+
+    private static Mesh tube(int segments, boolean outward) {
+        float[] vertices = new float[MeshFactory.stripVertexCount(segments, true) * 3];
+        float[] normals = new float[vertices.length];
+        short[] indices = new short[MeshFactory.stripIndexCount(segments)];
+        MeshFactory.fillTube(vertices, normals, 0, indices, 0, 1f, -1f, 1f, 0, TURN, segments, outward);
+        return new Mesh(vertices, normals, indices);
+    }
+
+    /**
+     * @return - A grid of quads in the z = 0 plane, row by row.
+     */
+    private static Mesh grid(int columns, int rows) {
+        float[] vertices = new float[(columns + 1) * (rows + 1) * 3];
+        for (int y = 0; y <= rows; y++) {
+            for (int x = 0; x <= columns; x++) {
+                int v = 3 * (y * (columns + 1) + x);
+                vertices[v] = x;
+                vertices[v + 1] = y;
+            }
+        }
+        short[] indices = new short[columns * rows * 6];
+        int i = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                short a = (short) (y * (columns + 1) + x), b = (short) (a + 1);
+                short c = (short) (a + columns + 1), d = (short) (c + 1);
+                indices[i++] = a; indices[i++] = b; indices[i++] = d;
+                indices[i++] = a; indices[i++] = d; indices[i++] = c;
+            }
+        }
+        return new Mesh(vertices, indices);
+    }
+
+    private static short[] shuffle(short[] indices, Random random) {
+        List<short[]> triangles = new ArrayList<>();
+        for (int i = 0; i < indices.length; i += 3) {
+            triangles.add(Arrays.copyOfRange(indices, i, i + 3));
+        }
+        Collections.shuffle(triangles, random);
+        short[] result = new short[indices.length];
+        for (int t = 0; t < triangles.size(); t++) {
+            System.arraycopy(triangles.get(t), 0, result, 3 * t, 3);
+        }
+        return result;
+    }
+
+    /**
+     * Compares the triangles of two meshes by the positions of their
+     * corners, so renumbered vertices compare equal.
+     */
+    private static void assertSameTriangles(Mesh expected, Mesh actual) {
+        assertEquals(positions(expected), positions(actual));
+    }
+
+    private static List<String> positions(Mesh mesh) {
+        float[] v = mesh.getVertices();
+        short[] idx = mesh.getIndices();
+        List<String> result = new ArrayList<>();
+        for (int t = 0; t < mesh.getIndexCount(); t += 3) {
+            String[] corners = new String[3];
+            for (int c = 0; c < 3; c++) {
+                int i = idx[t + c] * 3;
+                corners[c] = v[i] + "," + v[i + 1] + "," + v[i + 2];
+            }
+            result.add(rotated(corners));
+        }
+        return sorted(result);
+    }
+
+    private static List<String> triangles(short[] indices, int count) {
+        List<String> result = new ArrayList<>();
+        for (int t = 0; t < count; t += 3) {
+            result.add(rotated(new String[] { "" + indices[t], "" + indices[t + 1], "" + indices[t + 2] }));
+        }
+        return result;
+    }
+
+    /**
+     * @return - The triangles GL draws from a strip, skipping degenerate
+     * ones and restarting at the restart index.
+     */
+    private static List<String> fromStrip(short[] strip) {
+        List<String> result = new ArrayList<>();
+        int begin = 0;
+        for (int i = 0; i + 2 < strip.length; i++) {
+            if (strip[i + 2] == MeshOptimizer.PRIMITIVE_RESTART_INDEX) {
+                begin = i + 3;
+                i += 2;
+                continue;
+            }
+            if (i < begin) {
+                continue;
+            }
+            short a = strip[i], b = strip[i + 1], c = strip[i + 2];
+            if (a == b || b == c || a == c) {
+                continue;
+            }
+            boolean even = (i - begin) % 2 == 0;
+            result.add(rotated(new String[] { "" + (even ? a : b), "" + (even ? b : a), "" + c }));
+        }
+        return result;
+    }
+
+    /**
+     * @return - The corners starting with the smallest, keeping their cyclic order.
+     */
+    private static String rotated(String[] corners) {
+        int first = 0;
+        for (int c = 1; c < 3; c++) {
+            if (corners[c].compareTo(corners[first]) < 0) {
+                first = c;
+            }
+        }
+        return corners[first] + " " + corners[(first + 1) % 3] + " " + corners[(first + 2) % 3];
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<>(list);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static boolean contains(short[] array, short value) {
+        for (short s : array) {
+            if (s == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
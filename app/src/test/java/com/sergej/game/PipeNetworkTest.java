@@ -0,0 +1,363 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PipeNetworkTest {
+
+    private static final float[] GREY = { 0.5f, 0.5f, 0.5f, 1f };
+
+    @Test
+    public void singlePipeIsClosed() {
+        PipeNetwork network = new PipeNetwork(12);
+        network.addEdge(network.addNode(0f, 0f, 0f), network.addNode(1f, 2f, 3f), 0.25f);
+
+        assertEquals(3, network.rebuild());
+        assertEquals(1, network.getChunkCount());
+        // the tube and a disc at each end
+        assertEquals(2 * 12 + 2 * 13, network.getChunkMesh(0).getVertexCount());
+        assertClosed(network);
+        assertNormals(network);
+    }
+
+    @Test
+    public void bendsLineUpWithTheirPipes() {
+        for (int slices : new int[] { 7, 12 }) {
+            for (float degrees : new float[] { 20f, 90f, 135f }) {
+                double angle = Math.toRadians(degrees);
+                PipeNetwork network = new PipeNetwork(slices);
+                int a = network.addNode(-2f, 0.3f, 0.1f);
+                int b = network.addNode(0f, 0f, 0f);
+                int c = network.addNode(2f * (float) Math.cos(angle), 2f * (float) Math.sin(angle), 0.7f);
+                network.addEdge(a, b, 0.2f);
+                network.addEdge(c, b, 0.3f);
+                network.rebuild();
+
+                assertClosed(network);
+                assertNormals(network);
+            }
+        }
+    }
+
+    @Test
+    public void tightTurnGetsAFitting() {
+        PipeNetwork network = new PipeNetwork(8);
+        int a = network.addNode(-2f, 0f, 0f), b = network.addNode(0f, 0f, 0f);
+        int c = network.addNode(-2f, 0.4f, 0f);
+        network.addEdge(a, b, 0.3f);
+        network.addEdge(b, c, 0.3f);
+        network.rebuild();
+
+        // two full length tubes, two caps and the fitting instead of a bend
+        assertEquals(2 * 2 * 8 + 2 * 9 + 4 * 8 + 2, network.getChunkMesh(0).getVertexCount());
+        assertNormals(network);
+    }
+
+    @Test
+    public void piecesAreOptimized() {
+        PipeNetwork network = zigzag(20);
+        network.rebuild();
+
+        // pieces are renumbered in the order their vertices are first used,
+        // and merging them keeps that order
+        Mesh mesh = network.getChunkMesh(0);
+        short[] indices = mesh.getIndices();
+        int next = 0;
+        for (int i = 0; i < mesh.getIndexCount(); i++) {
+            assertTrue(indices[i] <= next);
+            if (indices[i] == next) {
+                next++;
+            }
+        }
+        assertEquals(mesh.getVertexCount(), next);
+    }
+
+    @Test
+    public void collinearPipesRunStraightThrough() {
+        PipeNetwork network = new PipeNetwork(8);
+        int a = network.addNode(0f, 0f, 0f), b = network.addNode(0f, 1f, 0f), c = network.addNode(0f, 3f, 0f);
+        network.addEdge(a, b, 0.2f);
+        int second = network.addEdge(c, b, 0.2f);
+        network.rebuild();
+
+        // two tubes and two caps, nothing at the middle node
+        assertEquals(2 * 2 * 8 + 2 * 9, network.getChunkMesh(0).getVertexCount());
+        assertClosed(network);
+
+        // a thinner pipe gets a ring closing the step
+        network.setRadius(second, 0.1f);
+        network.rebuild();
+        assertEquals(2 * 2 * 8 + 2 * 9 + 2 * 8, network.getChunkMesh(0).getVertexCount());
+        assertClosed(network);
+        assertNormals(network);
+    }
+
+    @Test
+    public void fittingEnclosesTheEndsOfItsPipes() {
+        PipeNetwork network = new PipeNetwork(8);
+        int center = network.addNode(0f, 0f, 0f);
+        network.addEdge(center, network.addNode(-2f, 0f, 0f), 0.2f);
+        network.addEdge(center, network.addNode(2f, 0f, 0f), 0.2f);
+        network.addEdge(center, network.addNode(0f, 2f, 0f), 0.1f);
+        network.rebuild();
+
+        // three tubes, three caps and the fitting
+        assertEquals(3 * 2 * 8 + 3 * 9 + 4 * 8 + 2, network.getChunkMesh(0).getVertexCount());
+        assertNormals(network);
+
+        Aabb bounds = new Aabb();
+        network.getBounds(bounds);
+        assertEquals(-2f, bounds.minX, 1e-5f);
+        assertEquals(2f, bounds.maxY, 1e-5f);
+        // the fitting along the straight run is thicker than the pipes
+        assertEquals(-1.25f * 0.2f, bounds.minY, 1e-5f);
+    }
+
+    @Test
+    public void editRebuildsOnlyTheNearbyPieces() {
+        PipeNetwork network = zigzag(10000);
+        network.rebuild();
+        int chunks = network.getChunkCount();
+        assertTrue(chunks > 10);
+        int[] versions = versions(network);
+
+        // the edge, its nodes and the edges meeting it there
+        network.setRadius(5000, 0.15f);
+        assertEquals(5, network.getDirtyCount());
+        assertEquals(5, network.rebuild());
+        assertTrue(changed(network, versions) <= 2);
+
+        versions = versions(network);
+        network.moveNode(5000, 5000f, 0.5f, 0.5f);
+        assertEquals(7, network.rebuild());
+        assertTrue(changed(network, versions) <= 2);
+        assertEquals(chunks, network.getChunkCount());
+    }
+
+    @Test
+    public void chunksStayWithinTheirLimit() {
+        int limit = PipeNetwork.maxPieceVertices(8);
+        PipeNetwork network = new PipeNetwork(8, limit);
+        int previous = network.addNode(0f, 0f, 0f);
+        for (int i = 1; i <= 40; i++) {
+            int node = network.addNode(i, 0f, 0f);
+            network.addEdge(previous, node, 0.1f);
+            previous = node;
+        }
+        network.rebuild();
+
+        // straight joints become bends, which no longer fit where they were
+        for (int i = 1; i < 40; i += 2) {
+            network.moveNode(i, i, 0.5f, 0f);
+        }
+        network.rebuild();
+
+        int vertices = 0;
+        for (int i = 0; i < network.getChunkCount(); i++) {
+            Mesh mesh = network.getChunkMesh(i);
+            assertTrue(mesh.getVertexCount() <= limit);
+            vertices += mesh.getVertexCount();
+        }
+        assertTrue(vertices > 40 * 2 * 8);
+        assertClosed(network);
+    }
+
+    @Test
+    public void removingAnEdgeCapsItsNeighbours() {
+        PipeNetwork network = new PipeNetwork(10);
+        int a = network.addNode(0f, 0f, 0f), b = network.addNode(1f, 0f, 0f), c = network.addNode(1f, 1f, 0f);
+        network.addEdge(a, b, 0.1f);
+        int second = network.addEdge(b, c, 0.1f);
+        network.rebuild();
+
+        network.removeEdge(second);
+        network.rebuild();
+        assertEquals(1, network.getEdgeCount());
+        assertClosed(network);
+
+        Aabb bounds = new Aabb();
+        network.getBounds(bounds);
+        // no bend left, only the cap of the remaining pipe
+        assertEquals(0.1f, bounds.maxY, 0.01f);
+    }
+
+    @Test
+    public void rejectsInvalidEdits() {
+        PipeNetwork network = new PipeNetwork(8);
+        int a = network.addNode(0f, 0f, 0f), b = network.addNode(1f, 0f, 0f);
+        int edge = network.addEdge(a, b, 0.1f);
+
+        assertRejected(() -> network.addEdge(a, a, 0.1f));
+        assertRejected(() -> network.addEdge(a, b, 0f));
+        assertRejected(() -> network.setRadius(edge, Float.NaN));
+        network.removeEdge(edge);
+        assertRejected(() -> network.setRadius(edge, 0.2f));
+        assertRejected(() -> new PipeNetwork(8, 16));
+    }
+
+    @Test
+    public void batchUploadsOnlyChangedChunks() {
+        CountingGL gl = new CountingGL();
+        GpuBufferManager buffers = new GpuBufferManager(gl);
+        PipeNetwork network = zigzag(2000);
+        PipeNetworkBatch batch = new PipeNetworkBatch(new ShaderProgramCache(gl), buffers, network, GREY);
+
+        int chunks = batch.update();
+        assertEquals(network.getChunkCount(), chunks);
+        assertEquals(chunks, batch.getDrawCalls());
+        batch.draw(new float[16]);
+        assertEquals(2 * chunks, gl.bufferUploads);
+        int size = buffers.size();
+
+        network.setRadius(1000, 0.2f);
+        gl.resetFrameCounters();
+        int replaced = batch.update();
+        batch.draw(new float[16]);
+        assertTrue(replaced >= 1 && replaced <= 2);
+        assertEquals(2 * replaced, gl.bufferUploads);
+        // the replaced buffers were released
+        assertEquals(size, buffers.size());
+    }
+
+    @Test
+    public void batchKeepsFloatPositionsOnCompactFormats() {
+        CountingGL gl = new CountingGL();
+        gl.version = "OpenGL ES 3.0";
+        GpuBufferManager buffers = new GpuBufferManager(gl);
+        buffers.setMeshFormat(VertexFormat.forMeshes(GLCapabilities.query(gl, 29)));
+        assertSame(VertexFormat.POSITION_NORMAL_COMPACT, buffers.getMeshFormat());
+
+        PipeNetworkBatch batch = new PipeNetworkBatch(new ShaderProgramCache(gl), buffers, zigzag(10), GREY);
+        batch.update();
+        batch.draw(new float[16]);
+
+        // world coordinates far from the origin do not fit 16-bit floats
+        assertEquals(GLES20.GL_FLOAT, gl.lastAttribType);
+        assertEquals(VertexFormat.POSITION_FLOAT.getStride(), gl.lastAttribStride);
+    }
+
+    /**
+     * A line of pipes along x, bending up and down at every node.
+     */
+    private static PipeNetwork zigzag(int edges) {
+        PipeNetwork network = new PipeNetwork(12);
+        int previous = network.addNode(0f, 0f, 0f);
+        for (int i = 1; i <= edges; i++) {
+            int node = network.addNode(i, (i & 1) * 0.5f, 0f);
+            network.addEdge(previous, node, 0.1f);
+            previous = node;
+        }
+        return network;
+    }
+
+    private static int[] versions(PipeNetwork network) {
+        int[] versions = new int[network.getChunkCount()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = network.getChunkVersion(i);
+        }
+        return versions;
+    }
+
+    private static int changed(PipeNetwork network, int[] versions) {
+        int changed = 0;
+        for (int i = 0; i < versions.length; i++) {
+            if (network.getChunkVersion(i) != versions[i]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Welds the vertices of all chunks by position and checks that every
+     * edge of the triangles is shared by exactly one other triangle, which
+     * runs along it the other way: the surface has no cracks and a
+     * consistent winding.
+     */
+    private static void assertClosed(PipeNetwork network) {
+        List<float[]> points = new ArrayList<>();
+        Map<Long, Integer> edges = new HashMap<>();
+
+        for (int c = 0; c < network.getChunkCount(); c++) {
+            Mesh mesh = network.getChunkMesh(c);
+            if (mesh == null) {
+                continue;
+            }
+            int[] welded = new int[mesh.getVertexCount()];
+            float[] v = mesh.getVertices();
+            for (int i = 0; i < welded.length; i++) {
+                welded[i] = weld(points, v[3 * i], v[3 * i + 1], v[3 * i + 2]);
+            }
+
+            short[] indices = mesh.getIndices();
+            for (int t = 0; t < mesh.getIndexCount(); t += 3) {
+                for (int corner = 0; corner < 3; corner++) {
+                    int from = welded[indices[t + corner]], to = welded[indices[t + (corner + 1) % 3]];
+                    assertNotEquals("degenerate triangle", from, to);
+                    Long key = ((long) from << 32) | to;
+                    assertNull("edge used twice in the same direction", edges.put(key, t));
+                }
+            }
+        }
+
+        for (Long key : edges.keySet()) {
+            long reverse = (key << 32) | (key >>> 32);
+            assertTrue("crack at edge " + (key >>> 32) + "-" + (key & 0xFFFFFFFFL), edges.containsKey(reverse));
+        }
+    }
+
+    private static int weld(List<float[]> points, float x, float y, float z) {
+        for (int i = 0; i < points.size(); i++) {
+            float[] p = points.get(i);
+            if (Math.abs(p[0] - x) < 1e-4f && Math.abs(p[1] - y) < 1e-4f && Math.abs(p[2] - z) < 1e-4f) {
+                return i;
+            }
+        }
+        points.add(new float[] { x, y, z });
+        return points.size() - 1;
+    }
+
+    private static void assertNormals(PipeNetwork network) {
+        for (int c = 0; c < network.getChunkCount(); c++) {
+            Mesh mesh = network.getChunkMesh(c);
+            float[] v = mesh.getVertices();
+            float[] n = mesh.getNormals();
+            short[] idx = mesh.getIndices();
+
+            for (int i = 0; i < mesh.getVertexCount() * 3; i += 3) {
+                assertEquals(1f, n[i] * n[i] + n[i + 1] * n[i + 1] + n[i + 2] * n[i + 2], 1e-4f);
+            }
+            for (int t = 0; t < mesh.getIndexCount(); t += 3) {
+                int a = idx[t] * 3, b = idx[t + 1] * 3, d = idx[t + 2] * 3;
+
+                float ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+                float wx = v[d] - v[a], wy = v[d + 1] - v[a + 1], wz = v[d + 2] - v[a + 2];
+                float nx = uy * wz - uz * wy;
+                float ny = uz * wx - ux * wz;
+                float nz = ux * wy - uy * wx;
+
+                for (int corner : new int[] { a, b, d }) {
+                    float dot = nx * n[corner] + ny * n[corner + 1] + nz * n[corner + 2];
+                    assertTrue("normal of triangle " + t / 3 + " points to its back", dot > 0);
+                }
+            }
+        }
+    }
+
+    private static void assertRejected(Runnable edit) {
+        try {
+            edit.run();
+            fail("accepted an invalid edit");
+        } catch (IllegalArgumentException expected) {
+            // rejected
+        }
+    }
+}
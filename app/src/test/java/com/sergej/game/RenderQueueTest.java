@@ -0,0 +1,115 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderQueueTest {
+
+    private static final float[] RED = { 1f, 0f, 0f, 1f };
+    private static final float[] BLUE = { 0f, 0f, 1f, 1f };
+    private static final float[] GLASS = { 1f, 1f, 1f, 0.5f };
+
+    private CountingGL mGL;
+    private GLStateTracker mTracker;
+    private ShaderProgramCache mPrograms;
+    private GpuBufferManager mBuffers;
+
+    @Before
+    public void setUp() {
+        mGL = new CountingGL();
+        mTracker = new GLStateTracker(mGL);
+        mPrograms = new ShaderProgramCache(mTracker);
+        mBuffers = new GpuBufferManager(mTracker);
+    }
+
+    @Test
+    public void opaqueKeysSortByStateBeforeDepth() {
+        long nearBlue = RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, 1, 1, BLUE, 1f);
+        long farBlue = RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, 1, 1, BLUE, 9f);
+        long nearRedOtherBuffer = RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, 1, 2, RED, 0.5f);
+
+        assertTrue(nearBlue < farBlue);
+        assertTrue(farBlue < nearRedOtherBuffer);
+        assertTrue(nearBlue > 0);
+    }
+
+    @Test
+    public void translucentKeysSortBackToFrontAfterOpaque() {
+        long opaque = RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, 1023, 65535, RED, 1e30f);
+        long far = RenderQueue.makeKey(RenderQueue.PASS_TRANSLUCENT, 2, 2, GLASS, 9f);
+        long near = RenderQueue.makeKey(RenderQueue.PASS_TRANSLUCENT, 1, 1, GLASS, 1f);
+
+        assertTrue(opaque < far);
+        assertTrue(far < near);
+    }
+
+    @Test
+    public void sortingGroupsDrawsByBuffer() {
+        Square square = new Square(mPrograms, mBuffers);
+        Circle circle = new Circle(mPrograms, mBuffers, RED, 1);
+        RenderQueue queue = new RenderQueue(2);
+        float[][] matrices = new float[8][16];
+
+        // interleaved, as a scene graph would submit them
+        for (int i = 0; i < 8; i++) {
+            Matrix4.setIdentity(matrices[i]);
+            matrices[i][15] = 1 + i;
+            if (i % 2 == 0) {
+                square.submit(queue, matrices[i]);
+            } else {
+                circle.submit(queue, matrices[i]);
+            }
+        }
+        assertEquals(8, queue.size());
+
+        queue.flush();
+
+        assertEquals(8, mGL.drawCalls);
+        assertEquals(8, queue.getLastDrawCalls());
+        assertEquals(0, queue.size());
+        assertEquals(1, mGL.programsUsed);
+        // one vertex and one index buffer per shape
+        assertEquals(4, mGL.bufferBinds);
+        assertEquals(2, mGL.attribPointers);
+    }
+
+    @Test
+    public void queueDrawsLikeShapesDoThemselves() {
+        Triangle triangle = new Triangle(mPrograms, mBuffers);
+        Ring ring = new Ring(mPrograms, mBuffers, 1, 0.5f, 1f);
+        float[] mvp = new float[16];
+        Matrix4.setIdentity(mvp);
+
+        RenderQueue queue = new RenderQueue(4);
+        triangle.submit(queue, mvp);
+        ring.submit(queue, mvp);
+        queue.flush();
+
+        assertEquals(2, mGL.drawCalls);
+        assertEquals(1, mGL.programsUsed);
+    }
+
+    @Test
+    public void steadyFramesSkipRedundantState() {
+        Scene scene = new Scene();
+        Square square = new Square(mPrograms, mBuffers);
+        for (int i = 0; i < 10; i++) {
+            scene.getRoot().addChild(new SceneNode(square));
+        }
+
+        scene.update();
+        scene.draw();
+        mTracker.resetCounters();
+        mGL.resetFrameCounters();
+
+        scene.update();
+        scene.draw();
+
+        assertEquals(10, mGL.drawCalls);
+        // only the position array is enabled and disabled again
+        assertEquals(2, mTracker.getIssued());
+        assertEquals(0, mGL.programsUsed + mGL.bufferBinds + mGL.attribPointers + mGL.uniformUploads);
+    }
+}
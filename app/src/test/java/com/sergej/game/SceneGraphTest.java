@@ -0,0 +1,124 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SceneGraphTest {
+
+    private static final int SEGMENTS = 1000;
+
+    private Scene mScene;
+    private SceneNode mPivot;
+
+    /**
+     * Records the MVP matrix it was last drawn with.
+     */
+    private static class Recorder implements Renderable {
+        final float[] mvp = new float[16];
+        int draws;
+
+        @Override
+        public void draw(float[] mvpMatrix) {
+            System.arraycopy(mvpMatrix, 0, mvp, 0, 16);
+            draws++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mScene = new Scene();
+        mPivot = mScene.getRoot().addChild(new SceneNode());
+        for (int i = 0; i < SEGMENTS; i++) {
+            SceneNode segment = new SceneNode(new Recorder());
+            segment.getLocalTransform()[12] = i;
+            mPivot.addChild(segment);
+        }
+    }
+
+    @Test
+    public void stillSceneCostsNoMultiplies() {
+        mScene.update();
+        assertTrue(mScene.getLastUpdateMultiplies() > 0);
+
+        mScene.update();
+        assertEquals(0, mScene.getLastUpdateMultiplies());
+    }
+
+    @Test
+    public void movingParentRecomputesItsSubtreeOnce() {
+        mScene.update();
+
+        mPivot.getLocalTransform()[13] = 1f;
+        mPivot.invalidate();
+        mScene.update();
+
+        // pivot world, then world and MVP of every segment
+        assertEquals(1 + 2 * SEGMENTS, mScene.getLastUpdateMultiplies());
+    }
+
+    @Test
+    public void movingOneNodeOnlyTouchesThatNode() {
+        mScene.update();
+
+        mPivot.getChild(7).invalidate();
+        mScene.update();
+
+        assertEquals(2, mScene.getLastUpdateMultiplies());
+    }
+
+    @Test
+    public void cameraChangeOnlyRecomputesMVPs() {
+        mScene.update();
+
+        mScene.setLookAt(0f, 0f, 5f, 0f, 0f, 0f, 0f, 1f, 0f);
+        mScene.update();
+
+        // view projection, then the MVP of every segment
+        assertEquals(1 + SEGMENTS, mScene.getLastUpdateMultiplies());
+    }
+
+    @Test
+    public void worldMatrixComposesParents() {
+        Matrix4.setRotate(mPivot.getLocalTransform(), 90f, 0f, 0f, 1f);
+        mPivot.invalidate();
+        mScene.update();
+        mScene.draw();
+
+        // segment 3 sits at x = 3, rotated onto the y axis
+        SceneNode segment = mPivot.getChild(3);
+        float[] p = { 0f, 0f, 0f };
+        Matrix4.transformPoint(segment.getWorldTransform(), p, 0, p, 0);
+        assertArrayEquals(new float[] { 0f, 3f, 0f }, p, 1e-5f);
+
+        Recorder recorder = (Recorder) segment.getRenderable();
+        assertEquals(1, recorder.draws);
+        assertArrayEquals(segment.getWorldTransform(), recorder.mvp, 0f);
+    }
+
+    @Test
+    public void tessellatedNodesGetTheirModelView() {
+        final float[] seen = new float[1];
+        mScene.getRoot().addChild(new SceneNode(new Tessellated() {
+            @Override
+            public void updateLevel(float[] modelViewMatrix, float[] projectionMatrix, float viewportHeight) {
+                seen[0] = viewportHeight;
+            }
+
+            @Override
+            public void draw(float[] mvpMatrix) {
+            }
+        }));
+
+        mScene.setProjection(new float[16], 480f);
+        mScene.update();
+
+        assertEquals(480f, seen[0], 0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nodeHasOnlyOneParent() {
+        mScene.getRoot().addChild(mPivot.getChild(0));
+    }
+}
@@ -0,0 +1,623 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.awt.image.BufferedImage;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Headless {@link GL} that rasterizes into an image in memory, so frames of
+ * the renderer can be drawn and compared against golden images on any JVM.
+ *
+ * <p>It runs the flat color shaders of {@link Shaders} only, and reports
+ * OpenGL ES 2.0 without extensions so the renderer never asks for more;
+ * tests of the OpenGL ES 3.0 vertex formats set {@link #version}.
+ * Supported are buffer objects and client arrays, indexed and plain draws of
+ * triangles, strips and fans, the depth test and clipping against the near
+ * plane. Pixels are sampled at their centers without anti-aliasing, so the
+ * output of a frame only depends on its calls.</p>
+ */
+class SoftwareGL implements GL {
+
+    // locations handed out for the flat color shaders
+    private static final int POSITION = 0;
+    private static final int MVP = 1;
+    private static final int COLOR = 2;
+
+    int drawCalls;
+    long triangles;
+
+    String version = "OpenGL ES 2.0 software";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+    private final float[] mDepth;
+
+    private final float[] mClearColor = new float[4];
+    private boolean mDepthTest;
+    private int mViewportX, mViewportY, mViewportWidth, mViewportHeight;
+
+    private int mNextName = 1;
+    private final Map<Integer, String> mShaders = new HashMap<>();
+    private final Map<Integer, Program> mPrograms = new HashMap<>();
+    private final Map<Integer, ByteBuffer> mBuffers = new HashMap<>();
+    private Program mProgram;
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+
+    // the position attribute, the only one the flat color shaders read
+    private boolean mPositionEnabled;
+    private int mPositionSize;
+    private int mPositionType;
+    private boolean mPositionNormalized;
+    private int mPositionStride;
+    private int mPositionOffset;
+    private ByteBuffer mPositionData;
+
+    // scratch space of a triangle: clip coordinates, 4 per vertex, of up to
+    // 4 vertices after clipping
+    private final float[] mClip = new float[12];
+    private final float[] mClipped = new float[16];
+    private final float[] mWindow = new float[12];
+
+    /**
+     * @param width - Width of the default framebuffer in pixels.
+     * @param height - Height of the default framebuffer in pixels.
+     */
+    SoftwareGL(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = new int[width * height];
+        mDepth = new float[width * height];
+        mViewportWidth = width;
+        mViewportHeight = height;
+    }
+
+    /**
+     * Resets the per-frame counters.
+     */
+    void resetFrameCounters() {
+        drawCalls = 0;
+        triangles = 0;
+    }
+
+    /**
+     * @return - The framebuffer, top row first as images are stored.
+     */
+    BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < mHeight; y++) {
+            // GL rows start at the bottom
+            image.setRGB(0, mHeight - 1 - y, mWidth, 1, mPixels, y * mWidth, mWidth);
+        }
+        return image;
+    }
+
+    /**
+     * @return - Color of a pixel as ARGB, x and y from the bottom left as in GL.
+     */
+    int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+
+    @Override
+    public void glClear(int mask) {
+        if ((mask & GLES20.GL_COLOR_BUFFER_BIT) != 0) {
+            Arrays.fill(mPixels, toArgb(mClearColor));
+        }
+        if ((mask & GLES20.GL_DEPTH_BUFFER_BIT) != 0) {
+            Arrays.fill(mDepth, 1f);
+        }
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mClearColor[0] = red;
+        mClearColor[1] = green;
+        mClearColor[2] = blue;
+        mClearColor[3] = alpha;
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        if (cap == GLES20.GL_DEPTH_TEST) {
+            mDepthTest = true;
+        }
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        mViewportX = x;
+        mViewportY = y;
+        mViewportWidth = width;
+        mViewportHeight = height;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return mNextName++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mShaders.put(shader, string);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mShaders.remove(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        int name = mNextName++;
+        mPrograms.put(name, new Program());
+        return name;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        Program p = mPrograms.get(program);
+        String source = mShaders.get(shader);
+        if (Shaders.FLAT_COLOR_VERTEX.equals(source)) {
+            p.flatVertex = true;
+        } else if (Shaders.FLAT_COLOR_FRAGMENT.equals(source)) {
+            p.flatFragment = true;
+        }
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = 1;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        mPrograms.remove(program);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        mProgram = mPrograms.get(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return "vPosition".equals(name) ? POSITION : -1;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        switch (name) {
+            case "uMVPMatrix":
+                return MVP;
+            case "vColor":
+                return COLOR;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index == POSITION) {
+            mPositionEnabled = true;
+        }
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index == POSITION) {
+            mPositionEnabled = false;
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        if (index == POSITION) {
+            setPosition(size, type, normalized, stride, 0, toBytes(ptr));
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        if (index == POSITION) {
+            setPosition(size, type, normalized, stride, offset, mBuffers.get(mArrayBuffer));
+        }
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        if (location == COLOR) {
+            System.arraycopy(v, offset, mProgram.color, 0, 4);
+        }
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (location == MVP) {
+            System.arraycopy(value, offset, mProgram.mvp, 0, 16);
+        }
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        draw(mode, count, null, 0, 0, first);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        draw(mode, count, toBytes(indices), 0, type, 0);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        draw(mode, count, mBuffers.get(mElementArrayBuffer), offset, type, 0);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = mNextName++;
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            mArrayBuffer = buffer;
+        } else {
+            mElementArrayBuffer = buffer;
+        }
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        ByteBuffer storage = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        if (data != null) {
+            ByteBuffer bytes = toBytes(data);
+            bytes.limit(size);
+            storage.put(bytes);
+        }
+        mBuffers.put(boundBuffer(target), storage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        ByteBuffer storage = mBuffers.get(boundBuffer(target)).duplicate();
+        ByteBuffer bytes = toBytes(data);
+        bytes.limit(size);
+        storage.position(offset);
+        storage.put(bytes);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        for (int i = 0; i < n; i++) {
+            mBuffers.remove(buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return name == GLES20.GL_VERSION ? version : "";
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        params[offset] = pname == GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS ? 128 : 0;
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        throw new UnsupportedOperationException("SoftwareGL has no instancing");
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        throw new UnsupportedOperationException("SoftwareGL has no instancing");
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        throw new UnsupportedOperationException("SoftwareGL has no queries");
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        throw new UnsupportedOperationException("SoftwareGL has no queries");
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        throw new UnsupportedOperationException("SoftwareGL has no queries");
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        throw new UnsupportedOperationException("SoftwareGL has no queries");
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        throw new UnsupportedOperationException("SoftwareGL has no queries");
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES20.GL_NO_ERROR;
+    }
+
+    private int boundBuffer(int target) {
+        return target == GLES20.GL_ARRAY_BUFFER ? mArrayBuffer : mElementArrayBuffer;
+    }
+
+    private void setPosition(int size, int type, boolean normalized, int stride, int offset, ByteBuffer data) {
+        mPositionSize = size;
+        mPositionType = type;
+        mPositionNormalized = normalized;
+        mPositionStride = stride;
+        mPositionOffset = offset;
+        mPositionData = data;
+    }
+
+    private void draw(int mode, int count, ByteBuffer indices, int indexOffset, int indexType, int first) {
+        if (mProgram == null || !mProgram.flatVertex || !mProgram.flatFragment) {
+            throw new UnsupportedOperationException("SoftwareGL only runs the flat color shaders");
+        }
+        if (!mPositionEnabled) {
+            throw new IllegalStateException("vPosition is not enabled");
+        }
+        drawCalls++;
+
+        int triangleCount = mode == GLES20.GL_TRIANGLES ? count / 3 : Math.max(count - 2, 0);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int corner = 0; corner < 3; corner++) {
+                int element;
+                if (mode == GLES20.GL_TRIANGLES) {
+                    element = 3 * t + corner;
+                } else if (mode == GLES20.GL_TRIANGLE_STRIP) {
+                    // every odd triangle swaps its first two corners to keep the winding
+                    element = t + ((t & 1) != 0 && corner < 2 ? 1 - corner : corner);
+                } else if (mode == GLES20.GL_TRIANGLE_FAN) {
+                    element = corner == 0 ? 0 : t + corner;
+                } else {
+                    throw new UnsupportedOperationException("SoftwareGL only draws triangles, not mode " + mode);
+                }
+
+                int vertex = indices == null ? first + element : readIndex(indices, indexOffset, indexType, element);
+                transform(vertex, mClip, 4 * corner);
+            }
+            triangles++;
+            rasterizeClipped();
+        }
+    }
+
+    private static int readIndex(ByteBuffer indices, int offset, int type, int element) {
+        switch (type) {
+            case GLES20.GL_UNSIGNED_BYTE:
+                return indices.get(offset + element) & 0xFF;
+            case GLES20.GL_UNSIGNED_SHORT:
+                return indices.getShort(offset + 2 * element) & 0xFFFF;
+            default:
+                return indices.getInt(offset + 4 * element);
+        }
+    }
+
+    /**
+     * Runs the vertex shader: reads the position of a vertex and writes its
+     * clip coordinates.
+     */
+    private void transform(int vertex, float[] out, int outOffset) {
+        int componentSize = componentSize(mPositionType);
+        int stride = mPositionStride != 0 ? mPositionStride : mPositionSize * componentSize;
+        int base = mPositionOffset + vertex * stride;
+
+        float x = 0, y = 0, z = 0, w = 1;
+        for (int c = 0; c < mPositionSize; c++) {
+            float value = readComponent(mPositionData, base + c * componentSize, mPositionType, mPositionNormalized);
+            if (c == 0) x = value;
+            else if (c == 1) y = value;
+            else if (c == 2) z = value;
+            else w = value;
+        }
+
+        float[] m = mProgram.mvp;
+        for (int r = 0; r < 4; r++) {
+            out[outOffset + r] = m[r] * x + m[4 + r] * y + m[8 + r] * z + m[12 + r] * w;
+        }
+    }
+
+    private static int componentSize(int type) {
+        switch (type) {
+            case GLES20.GL_BYTE:
+            case GLES20.GL_UNSIGNED_BYTE:
+                return 1;
+            case GLES20.GL_SHORT:
+            case GLES20.GL_UNSIGNED_SHORT:
+            case GLES30.GL_HALF_FLOAT:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    private static float readComponent(ByteBuffer data, int offset, int type, boolean normalized) {
+        switch (type) {
+            case GLES20.GL_FLOAT:
+                return data.getFloat(offset);
+            case GLES20.GL_BYTE:
+                return normalized ? Math.max(data.get(offset) / 127f, -1f) : data.get(offset);
+            case GLES20.GL_UNSIGNED_BYTE:
+                return (data.get(offset) & 0xFF) / (normalized ? 255f : 1f);
+            case GLES20.GL_SHORT:
+                return normalized ? Math.max(data.getShort(offset) / 32767f, -1f) : data.getShort(offset);
+            case GLES20.GL_UNSIGNED_SHORT:
+                return (data.getShort(offset) & 0xFFFF) / (normalized ? 65535f : 1f);
+            case GLES30.GL_HALF_FLOAT:
+                return VertexWriter.fromHalf(data.getShort(offset));
+            default:
+                throw new UnsupportedOperationException("SoftwareGL cannot read attributes of type " + type);
+        }
+    }
+
+    /**
+     * Clips the triangle in mClip against the near plane, z >= -w, and
+     * rasterizes what is left as one or two triangles.
+     */
+    private void rasterizeClipped() {
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            int a = 4 * i, b = 4 * ((i + 1) % 3);
+            float da = mClip[a + 2] + mClip[a + 3];
+            float db = mClip[b + 2] + mClip[b + 3];
+            if (da >= 0) {
+                System.arraycopy(mClip, a, mClipped, 4 * count++, 4);
+            }
+            if ((da >= 0) != (db >= 0)) {
+                float t = da / (da - db);
+                for (int c = 0; c < 4; c++) {
+                    mClipped[4 * count + c] = mClip[a + c] + t * (mClip[b + c] - mClip[a + c]);
+                }
+                count++;
+            }
+        }
+
+        for (int i = 1; i + 1 < count; i++) {
+            toWindow(0, 0);
+            toWindow(i, 1);
+            toWindow(i + 1, 2);
+            rasterize();
+        }
+    }
+
+    private void toWindow(int clipped, int corner) {
+        float w = mClipped[4 * clipped + 3];
+        mWindow[3 * corner] = mViewportX + (mClipped[4 * clipped] / w + 1) * 0.5f * mViewportWidth;
+        mWindow[3 * corner + 1] = mViewportY + (mClipped[4 * clipped + 1] / w + 1) * 0.5f * mViewportHeight;
+        mWindow[3 * corner + 2] = (mClipped[4 * clipped + 2] / w + 1) * 0.5f;
+    }
+
+    /**
+     * Fills the pixels whose centers lie inside the triangle in mWindow.
+     */
+    private void rasterize() {
+        float x0 = mWindow[0], y0 = mWindow[1], z0 = mWindow[2];
+        float x1 = mWindow[3], y1 = mWindow[4], z1 = mWindow[5];
+        float x2 = mWindow[6], y2 = mWindow[7], z2 = mWindow[8];
+
+        float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+        if (area == 0 || Float.isNaN(area)) {
+            return;
+        }
+
+        int minX = Math.max((int) Math.floor(Math.min(x0, Math.min(x1, x2))), Math.max(mViewportX, 0));
+        int maxX = Math.min((int) Math.ceil(Math.max(x0, Math.max(x1, x2))),
+                Math.min(mViewportX + mViewportWidth, mWidth) - 1);
+        int minY = Math.max((int) Math.floor(Math.min(y0, Math.min(y1, y2))), Math.max(mViewportY, 0));
+        int maxY = Math.min((int) Math.ceil(Math.max(y0, Math.max(y1, y2))),
+                Math.min(mViewportY + mViewportHeight, mHeight) - 1);
+
+        int color = toArgb(mProgram.color);
+        for (int y = minY; y <= maxY; y++) {
+            float py = y + 0.5f;
+            for (int x = minX; x <= maxX; x++) {
+                float px = x + 0.5f;
+                // barycentric weights, all of the sign of the area inside
+                float w0 = ((x2 - x1) * (py - y1) - (px - x1) * (y2 - y1)) / area;
+                float w1 = ((x0 - x2) * (py - y2) - (px - x2) * (y0 - y2)) / area;
+                float w2 = 1 - w0 - w1;
+                if (w0 < 0 || w1 < 0 || w2 < 0) {
+                    continue;
+                }
+
+                float z = w0 * z0 + w1 * z1 + w2 * z2;
+                if (z > 1) {
+                    continue;
+                }
+                int pixel = y * mWidth + x;
+                if (mDepthTest) {
+                    if (z >= mDepth[pixel]) {
+                        continue;
+                    }
+                    mDepth[pixel] = z;
+                }
+                mPixels[pixel] = color;
+            }
+        }
+    }
+
+    private static int toArgb(float[] rgba) {
+        return channel(rgba[3]) << 24 | channel(rgba[0]) << 16 | channel(rgba[1]) << 8 | channel(rgba[2]);
+    }
+
+    private static int channel(float value) {
+        return Math.round(Math.min(Math.max(value, 0f), 1f) * 255f);
+    }
+
+    /**
+     * @return - A byte view of the data of a buffer from its position on.
+     */
+    private static ByteBuffer toBytes(Buffer data) {
+        if (data instanceof ByteBuffer) {
+            return ((ByteBuffer) data).slice().order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer bytes;
+        if (data instanceof FloatBuffer) {
+            FloatBuffer floats = ((FloatBuffer) data).duplicate();
+            bytes = ByteBuffer.allocate(4 * floats.remaining()).order(ByteOrder.nativeOrder());
+            bytes.asFloatBuffer().put(floats);
+        } else if (data instanceof ShortBuffer) {
+            ShortBuffer shorts = ((ShortBuffer) data).duplicate();
+            bytes = ByteBuffer.allocate(2 * shorts.remaining()).order(ByteOrder.nativeOrder());
+            bytes.asShortBuffer().put(shorts);
+        } else if (data instanceof IntBuffer) {
+            IntBuffer ints = ((IntBuffer) data).duplicate();
+            bytes = ByteBuffer.allocate(4 * ints.remaining()).order(ByteOrder.nativeOrder());
+            bytes.asIntBuffer().put(ints);
+        } else {
+            throw new UnsupportedOperationException("SoftwareGL cannot read " + data);
+        }
+        return bytes;
+    }
+
+    private static class Program {
+        boolean flatVertex;
+        boolean flatFragment;
+        final float[] mvp = new float[16];
+        final float[] color = new float[4];
+    }
+}
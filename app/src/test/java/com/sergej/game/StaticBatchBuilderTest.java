@@ -0,0 +1,81 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StaticBatchBuilderTest {
+
+    private static final float[] RED = { 1f, 0f, 0f, 1f };
+    private static final float[] GREEN = { 0f, 1f, 0f, 1f };
+
+    private static final float[] IDENTITY = {
+            1f, 0f, 0f, 0f,
+            0f, 1f, 0f, 0f,
+            0f, 0f, 1f, 0f,
+            0f, 0f, 0f, 1f };
+
+    private final Mesh mTriangle = new Mesh(new float[] {
+            0f, 0f, 0f,
+            1f, 0f, 0f,
+            0f, 1f, 0f }, new short[] { 0, 1, 2 });
+
+    @Test
+    public void meshesOfOneColorShareAChunk() {
+        StaticBatchBuilder builder = new StaticBatchBuilder();
+        builder.add(mTriangle, IDENTITY, RED);
+        builder.add(mTriangle, IDENTITY, GREEN);
+        builder.add(mTriangle, IDENTITY, RED.clone());
+
+        List<StaticBatchBuilder.Chunk> chunks = builder.buildChunks();
+
+        assertEquals(2, chunks.size());
+        assertArrayEquals(RED, chunks.get(0).color, 0f);
+        assertEquals(6, chunks.get(0).mesh.getVertexCount());
+        assertEquals(3, chunks.get(1).mesh.getVertexCount());
+    }
+
+    @Test
+    public void modelMatrixIsBakedAndIndicesRebased() {
+        float[] translate = IDENTITY.clone();
+        translate[12] = 5f;
+        translate[14] = -2f;
+
+        StaticBatchBuilder builder = new StaticBatchBuilder();
+        builder.add(mTriangle, IDENTITY, RED);
+        builder.add(mTriangle, translate, RED);
+
+        Mesh mesh = builder.buildChunks().get(0).mesh;
+
+        assertArrayEquals(new short[] { 0, 1, 2, 3, 4, 5 }, mesh.getIndices());
+        assertEquals(6f, mesh.getVertices()[12], 0f);
+        assertEquals(-2f, mesh.getVertices()[14], 0f);
+    }
+
+    @Test
+    public void chunksAreSplitAtSixteenBitLimit() {
+        int perMesh = 10000;
+        Mesh big = new Mesh(new float[perMesh * 3], new short[] { 0, 1, (short) (perMesh - 1) });
+
+        StaticBatchBuilder builder = new StaticBatchBuilder();
+        for (int i = 0; i < 7; i++) {
+            builder.add(big, IDENTITY, RED);
+        }
+
+        List<StaticBatchBuilder.Chunk> chunks = builder.buildChunks();
+
+        assertEquals(2, chunks.size());
+        assertEquals(6 * perMesh, chunks.get(0).mesh.getVertexCount());
+        assertEquals(perMesh, chunks.get(1).mesh.getVertexCount());
+        // largest index of the sixth mesh still fits into an unsigned short
+        short[] indices = chunks.get(0).mesh.getIndices();
+        assertEquals(6 * perMesh - 1, indices[indices.length - 1] & 0xFFFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void meshLargerThanAChunkIsRejected() {
+        new StaticBatchBuilder().add(new Mesh(new float[0x10000 * 3], new short[0]), IDENTITY, RED);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sergej.game;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TouchInputTest {
+
+    private TouchRing mRing;
+    private TouchGestures mGestures;
+
+    @Before
+    public void setUp() {
+        mRing = new TouchRing(64);
+        mGestures = new TouchGestures();
+        mGestures.setViewSize(1000, 1000);
+    }
+
+    @Test
+    public void capacityIsRoundedToPowerOfTwo() {
+        assertEquals(64, mRing.getCapacity());
+        assertEquals(128, new TouchRing(100).getCapacity());
+    }
+
+    @Test
+    public void samplesAreOnlySeenOncePublished() {
+        mRing.add(TouchRing.DOWN, 0, 100, 100);
+        mRing.add(TouchRing.SYNC, -1, 0, 0);
+        assertFalse(mGestures.update(mRing));
+
+        mRing.publish();
+        assertTrue(mGestures.update(mRing));
+        assertEquals(1, mGestures.getPointerCount());
+    }
+
+    @Test
+    public void historicalSamplesAddUp() {
+        touch(TouchRing.DOWN, 0, 100, 100);
+        // one event holding two historical samples and the current one
+        for (int i = 1; i <= 3; i++) {
+            mRing.add(TouchRing.MOVE, 0, 100 + 10 * i, 100);
+            mRing.add(TouchRing.SYNC, -1, 0, 0);
+        }
+        mRing.publish();
+
+        mGestures.update(mRing);
+        assertEquals(30, mGestures.getDragX(), 0f);
+        assertEquals(0, mGestures.getDragY(), 0f);
+        // above the middle, motion to the right spins forward
+        assertEquals(30, mGestures.getSpin(), 0f);
+    }
+
+    @Test
+    public void gesturesAreCountedPerUpdate() {
+        touch(TouchRing.DOWN, 0, 100, 700);
+        touch(TouchRing.MOVE, 0, 120, 700);
+        mGestures.update(mRing);
+        // below the middle the spin is reversed
+        assertEquals(-20, mGestures.getSpin(), 0f);
+
+        assertFalse(mGestures.update(mRing));
+        assertEquals(0, mGestures.getDragX(), 0f);
+    }
+
+    @Test
+    public void twoFingersPinchAndPan() {
+        touch(TouchRing.DOWN, 0, 400, 500);
+        touch(TouchRing.DOWN, 1, 600, 500);
+
+        mRing.add(TouchRing.MOVE, 0, 310, 550);
+        mRing.add(TouchRing.MOVE, 1, 710, 550);
+        mRing.add(TouchRing.SYNC, -1, 0, 0);
+        mRing.publish();
+
+        mGestures.update(mRing);
+        assertEquals(2, mGestures.getScale(), 1e-5f);
+        assertEquals(10, mGestures.getPanX(), 1e-5f);
+        assertEquals(50, mGestures.getPanY(), 1e-5f);
+        assertEquals(0, mGestures.getSpin(), 0f);
+    }
+
+    @Test
+    public void liftingAFingerDoesNotJump() {
+        touch(TouchRing.DOWN, 0, 400, 400);
+        touch(TouchRing.DOWN, 1, 600, 400);
+        touch(TouchRing.UP, 0, 400, 400);
+        touch(TouchRing.MOVE, 1, 610, 400);
+
+        mGestures.update(mRing);
+        assertEquals(1, mGestures.getPointerCount());
+        // only the motion after the lift, not the jump of the centroid
+        assertEquals(10, mGestures.getDragX(), 0f);
+        assertEquals(0, mGestures.getPanX(), 0f);
+    }
+
+    @Test
+    public void overflowDropsTheEventAndCancels() {
+        TouchRing ring = new TouchRing(4);
+        ring.add(TouchRing.DOWN, 0, 0, 0);
+        ring.add(TouchRing.SYNC, -1, 0, 0);
+        ring.publish();
+        assertEquals(2, ring.available());
+
+        for (int i = 0; i < 4; i++) {
+            ring.add(TouchRing.MOVE, 0, i, 0);
+        }
+        ring.publish();
+        assertEquals(4, ring.getDropped());
+
+        // the pointer went down, but the cancel took the place of its moves
+        assertEquals(3, ring.drain(mGestures));
+        assertEquals(0, mGestures.getPointerCount());
+        assertTrue(ring.add(TouchRing.DOWN, 0, 0, 0));
+    }
+
+    @Test
+    public void samplesArriveInOrderAcrossThreads() throws InterruptedException {
+        final TouchRing ring = new TouchRing(256);
+        final int count = 200000;
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (ring.available() == 0) {
+                    Thread.yield();
+                }
+                ring.add(TouchRing.MOVE, 0, i, -i);
+                ring.publish();
+            }
+        });
+        producer.start();
+
+        final int[] next = { 0 };
+        TouchRing.Receiver check = (kind, id, x, y) -> {
+            assertEquals(next[0], (int) x);
+            assertEquals(-next[0], (int) y);
+            next[0]++;
+        };
+        while (next[0] < count) {
+            ring.drain(check);
+        }
+        producer.join();
+        assertEquals(0, ring.getDropped());
+    }
+
+    private void touch(int kind, int pointerId, float x, float y) {
+        mRing.add(kind, pointerId, x, y);
+        mRing.add(TouchRing.SYNC, -1, 0, 0);
+        mRing.publish();
+    }
+}
@@ -0,0 +1,32 @@
+package com.sergej.game;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UnitCircleTest {
+
+    @Test
+    public void staysOnTheExactAngles() {
+        double from = 0.3, step = 2 * Math.PI / 4096;
+        UnitCircle circle = new UnitCircle(from, step);
+
+        for (int i = 0; i < 3 * 4096; i++, circle.next()) {
+            double theta = from + i * step;
+            assertEquals((float) Math.cos(theta), circle.cos(), 1e-6f);
+            assertEquals((float) Math.sin(theta), circle.sin(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void resyncsToTheExactPoint() {
+        float step = (float) Math.PI / 7;
+        UnitCircle circle = new UnitCircle(-1f, step);
+        for (int i = 0; i < UnitCircle.RESYNC; i++) {
+            circle.next();
+        }
+        double theta = -1f + UnitCircle.RESYNC * (double) step;
+        assertEquals((float) Math.cos(theta), circle.cos(), 0f);
+        assertEquals((float) Math.sin(theta), circle.sin(), 0f);
+    }
+}
@@ -0,0 +1,141 @@
+package com.sergej.game;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class VertexFormatTest {
+
+    @Test
+    public void presetStrides() {
+        assertEquals(12, VertexFormat.POSITION_FLOAT.getStride());
+        assertEquals(16, VertexFormat.POSITION_NORMAL_BYTE.getStride());
+        assertEquals(12, VertexFormat.POSITION_NORMAL_COMPACT.getStride());
+
+        // half as large as positions and normals of 32-bit floats
+        VertexFormat floats = new VertexFormat.Builder()
+                .position(VertexFormat.FLOAT).normal(VertexFormat.FLOAT).build();
+        assertEquals(24, floats.getStride());
+        assertEquals(12, floats.getOffset(VertexFormat.NORMAL));
+    }
+
+    @Test
+    public void attributesStayAligned() {
+        VertexFormat format = new VertexFormat.Builder()
+                .position(VertexFormat.HALF_FLOAT)
+                .normal(VertexFormat.NORMALIZED_BYTE)
+                .color(VertexFormat.NORMALIZED_UNSIGNED_BYTE)
+                .uv(VertexFormat.NORMALIZED_UNSIGNED_SHORT)
+                .build();
+
+        for (int attribute = 0; attribute < VertexFormat.ATTRIBUTES; attribute++) {
+            assertEquals(0, format.getOffset(attribute) % 4);
+        }
+        assertEquals(20, format.getStride());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPackedPositions() {
+        new VertexFormat.Builder().position(VertexFormat.PACKED_2_10_10_10);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void needsPosition() {
+        new VertexFormat.Builder().normal(VertexFormat.FLOAT).build();
+    }
+
+    @Test
+    public void halfFloatRoundTrip() {
+        for (float value : new float[] { 0f, 1f, -1f, 0.5f, 2048f, 65504f, 6.1035156e-5f }) {
+            assertEquals(value, VertexWriter.fromHalf(VertexWriter.toHalf(value)), 0f);
+        }
+        assertEquals((short) 0x3C00, VertexWriter.toHalf(1f));
+        assertEquals((short) 0xC000, VertexWriter.toHalf(-2f));
+        assertTrue(Float.isInfinite(VertexWriter.fromHalf(VertexWriter.toHalf(1e6f))));
+
+        // 11 significant bits: relative error at most 2^-11
+        for (float value = -3f; value < 3f; value += 0.0173f) {
+            float error = Math.abs(VertexWriter.fromHalf(VertexWriter.toHalf(value)) - value);
+            assertTrue(error <= Math.abs(value) * 0x1p-11f + 1e-7f);
+        }
+    }
+
+    @Test
+    public void packedNormalBits() {
+        assertEquals(511, VertexWriter.packNormal(1f, 0f, 0f));
+        assertEquals(511 << 10, VertexWriter.packNormal(0f, 1f, 0f));
+        assertEquals(511 << 20, VertexWriter.packNormal(0f, 0f, 1f));
+        // -1 is -511, two's complement within the 10 bits of z
+        assertEquals(0x201 << 20, VertexWriter.packNormal(0f, 0f, -1f));
+    }
+
+    @Test
+    public void writerInterleavesAttributes() {
+        Mesh mesh = new Mesh(new float[] { 1f, 2f, 3f, -4f, 0.5f, 0f },
+                new float[] { 0f, 0f, 1f, 1f, 0f, 0f }, new short[] { 0, 1, 0 });
+
+        ByteBuffer data = VertexWriter.write(VertexFormat.POSITION_NORMAL_COMPACT, mesh);
+        assertEquals(24, data.remaining());
+        assertEquals(2f, VertexWriter.fromHalf(data.getShort(2)), 0f);
+        assertEquals(1f, VertexWriter.fromHalf(data.getShort(6)), 0f);
+        assertEquals(511 << 20, data.getInt(8));
+        assertEquals(-4f, VertexWriter.fromHalf(data.getShort(12)), 0f);
+        assertEquals(511, data.getInt(20));
+
+        data = VertexWriter.write(VertexFormat.POSITION_NORMAL_BYTE, mesh);
+        assertEquals(32, data.remaining());
+        assertEquals(3f, data.getFloat(8), 0f);
+        assertEquals(127, data.get(14));
+        assertEquals(0.5f, data.getFloat(20), 0f);
+        assertEquals(127, data.get(28));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalsNeedMeshNormals() {
+        Mesh mesh = new Mesh(new float[] { 0f, 0f, 0f }, new short[] { 0, 0, 0 });
+        VertexWriter.write(VertexFormat.POSITION_NORMAL_BYTE, mesh);
+    }
+
+    @Test
+    public void formatFollowsContext() {
+        assertEquals(VertexFormat.POSITION_FLOAT, VertexFormat.forMeshes(capabilities("OpenGL ES 2.0")));
+        assertEquals(VertexFormat.POSITION_NORMAL_COMPACT, VertexFormat.forMeshes(capabilities("OpenGL ES 3.0")));
+    }
+
+    @Test
+    public void es3RendererUploadsCompactMeshes() {
+        CountingGL gl = new CountingGL();
+        gl.version = "OpenGL ES 3.0";
+        ShaderProgramCache programs = new ShaderProgramCache(gl);
+        GpuBufferManager buffers = new GpuBufferManager(gl);
+        buffers.setMeshFormat(VertexFormat.forMeshes(GLCapabilities.query(gl, 18)));
+
+        Ring ring = new Ring(programs, buffers, 1, 0.5f, 1f);
+        ring.draw(new float[16]);
+
+        assertEquals(VertexFormat.GL_HALF_FLOAT, gl.lastAttribType);
+        assertEquals(12, gl.lastAttribStride);
+        // 16 vertices of 12 bytes plus 48 short indices
+        assertEquals(16 * 12 + 48 * 2, buffers.getUploadedBytes());
+    }
+
+    @Test
+    public void meshesWithoutNormalsStayFloat() {
+        CountingGL gl = new CountingGL();
+        GpuBuffer buffer = new GpuBufferManager(gl).createStaticVertices(
+                new Mesh(new float[] { 0f, 0f, 0f }, new short[] { 0, 0, 0 }));
+
+        assertEquals(VertexFormat.POSITION_FLOAT, buffer.getFormat());
+        assertEquals(GLES20.GL_ARRAY_BUFFER, buffer.getTarget());
+    }
+
+    private static GLCapabilities capabilities(String version) {
+        CountingGL gl = new CountingGL();
+        gl.version = version;
+        return GLCapabilities.query(gl, 18);
+    }
+}
@@ -0,0 +1,122 @@
+package com.sergej.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cost of frustum culling against the number of objects: one cull with the
+ * {@link BoundingVolumeHierarchy}, one brute force test of every box, and a
+ * refit after a tenth of the objects moved.
+ *
+ * <p>Unit boxes are spread evenly in a cube around a camera with a 90 degree
+ * field of view, so roughly a sixth of them is visible.</p>
+ */
+@State(Scope.Thread)
+public class CullingBenchmark {
+
+    private static final float HALF_SIZE = 500f;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    int objects;
+
+    private Box[] mBoxes;
+    private final BoundingVolumeHierarchy<Box> mHierarchy = new BoundingVolumeHierarchy<>();
+    private final Frustum mFrustum = new Frustum();
+    private final List<Box> mVisible = new ArrayList<>();
+
+    // the boxes moved by a refit, between two positions each
+    private Box[] mMoved;
+    private float[][] mPositions;
+    private int mRefits;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(objects);
+        mBoxes = new Box[objects];
+        for (int i = 0; i < objects; i++) {
+            mBoxes[i] = new Box(random.nextFloat(), random.nextFloat(), random.nextFloat());
+        }
+        mHierarchy.build(Arrays.asList(mBoxes));
+
+        mMoved = new Box[objects / 10];
+        mPositions = new float[2][3 * mMoved.length];
+        for (int i = 0; i < mMoved.length; i++) {
+            mMoved[i] = mBoxes[random.nextInt(objects)];
+            for (int axis = 0; axis < 3; axis++) {
+                mPositions[0][3 * i + axis] = mMoved[i].getWorldBounds().getCenter(axis);
+                mPositions[1][3 * i + axis] = (random.nextFloat() * 2 - 1) * HALF_SIZE;
+            }
+        }
+
+        float[] projection = new float[16];
+        Matrix4.frustum(projection, -1f, 1f, -1f, 1f, 1f, 2 * HALF_SIZE);
+        float[] view = new float[16];
+        Matrix4.setLookAt(view, 0f, 0f, 0f, 0f, 0f, -1f, 0f, 1f, 0f);
+        float[] viewProjection = new float[16];
+        Matrix4.multiply(viewProjection, projection, view);
+        mFrustum.set(viewProjection);
+    }
+
+    @Benchmark
+    public int cull() {
+        mHierarchy.cull(mFrustum, mVisible);
+        return mVisible.size();
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        int visible = 0;
+        for (Box box : mBoxes) {
+            if (mFrustum.classify(box.getWorldBounds()) != Frustum.OUTSIDE) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public int refitTenth() {
+        float[] positions = mPositions[mRefits++ & 1];
+        for (int i = 0; i < mMoved.length; i++) {
+            mMoved[i].moveTo(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2]);
+            mHierarchy.refit(mMoved[i]);
+        }
+        return mMoved.length;
+    }
+
+    private static final class Box implements BoundingVolumeHierarchy.Item {
+        private final Aabb mBounds = new Aabb();
+        private int mLeaf;
+
+        Box(float x, float y, float z) {
+            moveTo((2 * x - 1) * HALF_SIZE, (2 * y - 1) * HALF_SIZE, (2 * z - 1) * HALF_SIZE);
+        }
+
+        void moveTo(float x, float y, float z) {
+            mBounds.set(x - 0.5f, y - 0.5f, z - 0.5f, x + 0.5f, y + 0.5f, z + 0.5f);
+        }
+
+        @Override
+        public Aabb getWorldBounds() {
+            return mBounds;
+        }
+
+        @Override
+        public int getBvhLeaf() {
+            return mLeaf;
+        }
+
+        @Override
+        public void setBvhLeaf(int leaf) {
+            mLeaf = leaf;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sergej.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The 4x4 matrix paths of a frame: {@link SceneNode} multiplies world
+ * matrices and model view projections, the renderer rotates the pipe and the
+ * scene sets up the camera.
+ */
+@State(Scope.Thread)
+public class MatrixBenchmark {
+
+    private final float[] mLhs = new float[16];
+    private final float[] mRhs = new float[16];
+    private final float[] mResult = new float[16];
+    private final float[] mPoint = { 1f, 2f, 3f };
+    private final float[] mTransformed = new float[3];
+    private float mAngle;
+
+    @Setup
+    public void setUp() {
+        Matrix4.setLookAt(mLhs, 0f, 2f, -4f, 0f, 0f, 0f, 0f, 1f, 0f);
+        Matrix4.setRotate(mRhs, 30f, 0f, 0f, 1f);
+    }
+
+    @Benchmark
+    public float[] multiply() {
+        Matrix4.multiply(mResult, mLhs, mRhs);
+        return mResult;
+    }
+
+    @Benchmark
+    public float[] rotate() {
+        mAngle += 0.5f;
+        Matrix4.setRotate(mResult, mAngle, 0f, 0f, 1f);
+        return mResult;
+    }
+
+    @Benchmark
+    public float[] rotateArbitraryAxis() {
+        mAngle += 0.5f;
+        Matrix4.setRotate(mResult, mAngle, 0.3f, 0.5f, 0.8f);
+        return mResult;
+    }
+
+    // what a spinning node costs per frame: its rotation, then its world matrix
+    @Benchmark
+    public float[] rotateThenMultiply() {
+        mAngle += 0.5f;
+        Matrix4.setRotate(mRhs, mAngle, 0f, 0f, 1f);
+        Matrix4.multiply(mResult, mLhs, mRhs);
+        return mResult;
+    }
+
+    @Benchmark
+    public float[] lookAt() {
+        mAngle += 0.5f;
+        Matrix4.setLookAt(mResult, 0f, 2f, -4f - mAngle * 1e-6f, 0f, 0f, 0f, 0f, 1f, 0f);
+        return mResult;
+    }
+
+    @Benchmark
+    public float[] transformPoint() {
+        Matrix4.transformPoint(mLhs, mPoint, 0, mTransformed, 0);
+        return mTransformed;
+    }
+}
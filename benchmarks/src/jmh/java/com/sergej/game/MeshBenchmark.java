@@ -0,0 +1,79 @@
+package com.sergej.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Generation of the curved geometry the shapes draw: tube walls for
+ * {@link OpenGLPipeElement}, annuli for {@link Ring} and the caps of pipe
+ * sections, discs for {@link Circle}. The fill methods write vertices and the
+ * triangle index pattern together; the factory benchmarks add sizing the
+ * arrays and the cache lookup the shapes go through.
+ */
+@State(Scope.Thread)
+public class MeshBenchmark {
+
+    private static final float FULL_TURN = 2 * (float) Math.PI;
+    private static final float QUARTER_TURN = FULL_TURN / 4;
+
+    // slices of a full turn, the range the level of detail selector uses
+    // and a high count where the cost per vertex dominates
+    @Param({ "16", "64", "256", "1024" })
+    int segments;
+
+    private float[] mVertices;
+    private short[] mIndices;
+
+    // a cache too small for the two alternating meshes, so every lookup misses
+    private MeshFactory mMissingFactory;
+    private MeshFactory mHittingFactory;
+    private int mLookups;
+
+    @Setup
+    public void setUp() {
+        mVertices = new float[Mesh.COORDS_PER_VERTEX * MeshFactory.stripVertexCount(segments, false)];
+        mIndices = new short[MeshFactory.stripIndexCount(segments)];
+
+        mMissingFactory = new MeshFactory(1);
+        mHittingFactory = new MeshFactory(16);
+        mHittingFactory.tube(1f, -1f, 1f, 0, FULL_TURN, segments, true);
+    }
+
+    @Benchmark
+    public float[] fillClosedTube() {
+        MeshFactory.fillTube(mVertices, 0, mIndices, 0, 1f, -1f, 1f, 0, FULL_TURN, segments, true);
+        return mVertices;
+    }
+
+    @Benchmark
+    public float[] fillPartialTube() {
+        MeshFactory.fillTube(mVertices, 0, mIndices, 0, 1f, -1f, 1f, 0, QUARTER_TURN, segments, false);
+        return mVertices;
+    }
+
+    @Benchmark
+    public float[] fillAnnulus() {
+        MeshFactory.fillAnnulus(mVertices, 0, mIndices, 0, 0.8f, 1f, 1f, 0, FULL_TURN, segments, true);
+        return mVertices;
+    }
+
+    @Benchmark
+    public float[] fillDisc() {
+        MeshFactory.fillDisc(mVertices, 0, mIndices, 0, 1f, 0f, 0, FULL_TURN, segments, true);
+        return mVertices;
+    }
+
+    @Benchmark
+    public Mesh createTube() {
+        float radius = (mLookups++ & 1) == 0 ? 1f : 2f;
+        return mMissingFactory.tube(radius, -1f, 1f, 0, FULL_TURN, segments, true);
+    }
+
+    @Benchmark
+    public Mesh cachedTube() {
+        return mHittingFactory.tube(1f, -1f, 1f, 0, FULL_TURN, segments, true);
+    }
+}
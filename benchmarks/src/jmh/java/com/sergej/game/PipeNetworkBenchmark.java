@@ -0,0 +1,60 @@
+package com.sergej.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Editing a {@link PipeNetwork}: a zigzag of pipes where every joint is a
+ * bend. An edit rebuilds the pieces around it and merges the chunks they
+ * are in, so it should cost about the same for both sizes; building the
+ * whole network is there to compare against.
+ */
+@State(Scope.Thread)
+public class PipeNetworkBenchmark {
+
+    private static final int SLICES = 12;
+
+    @Param({ "1000", "10000" })
+    int edges;
+
+    private PipeNetwork mNetwork;
+    private int mEdits;
+
+    @Setup
+    public void setUp() {
+        mNetwork = zigzag(edges);
+        mNetwork.rebuild();
+    }
+
+    @Benchmark
+    public int setRadius() {
+        mNetwork.setRadius(edges / 2, (mEdits++ & 1) == 0 ? 0.15f : 0.1f);
+        return mNetwork.rebuild();
+    }
+
+    @Benchmark
+    public int moveNode() {
+        int node = edges / 2;
+        mNetwork.moveNode(node, node, (mEdits++ & 1) == 0 ? 0.8f : 0.5f, 0f);
+        return mNetwork.rebuild();
+    }
+
+    @Benchmark
+    public int buildNetwork() {
+        return zigzag(edges).rebuild();
+    }
+
+    private static PipeNetwork zigzag(int edges) {
+        PipeNetwork network = new PipeNetwork(SLICES);
+        int previous = network.addNode(0f, 0f, 0f);
+        for (int i = 1; i <= edges; i++) {
+            int node = network.addNode(i, (i & 1) * 0.5f, 0f);
+            network.addEdge(previous, node, 0.1f);
+            previous = node;
+        }
+        return network;
+    }
+}